@@ -18,6 +18,9 @@ import java.util.concurrent.TimeUnit;
  * <p/>
  * Includes a HealthCheck to the Graphite instance.
  * <p/>
+ * All metrics of the default registry are reported, including the percentile gauges of any
+ * {@link com.datasift.dropwizard.metrics.HistogramLatencyRecorder}s.
+ * <p/>
  * To use this {@link ConfiguredBundle}, your {@link Configuration} must implement
  * {@link GraphiteReportingConfiguration}.
  * <p/>
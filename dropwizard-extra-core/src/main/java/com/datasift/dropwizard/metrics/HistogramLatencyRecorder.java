@@ -0,0 +1,320 @@
+package com.datasift.dropwizard.metrics;
+
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link LatencyRecorder} that counts latencies in a fixed set of log-linear buckets, in the
+ * manner of an HdrHistogram.
+ * <p/>
+ * Each bucket covers a range of no more than 1/32 of its lowest value, so percentiles are accurate
+ * to within about 3%, for latencies of up to about 18 minutes; longer latencies are counted as 18
+ * minutes. Recording a latency increments a single bucket of a stripe selected by the identity of
+ * the current thread, so it neither synchronizes nor allocates, and threads recording on different
+ * stripes do not contend with each other. Stripes are allocated the first time a thread selects
+ * them.
+ * <p/>
+ * The count, min, max, mean and percentiles of the recorded latencies are registered as gauges,
+ * in milliseconds, named like the values a reporter sends for a {@link
+ * com.yammer.metrics.core.Timer} of the same name (e.g. "get.99percentile"). Except for the count,
+ * which is the total number of latencies recorded, they describe the latencies recorded since the
+ * previous snapshot. A new
+ * snapshot is taken when a gauge is read and the current snapshot is older than the maximum age;
+ * since a reporter reads all of its gauges at once, each reporter run takes a single snapshot, as
+ * long as the maximum age is shorter than the reporting interval.
+ */
+public class HistogramLatencyRecorder implements LatencyRecorder {
+
+    /**
+     * The default maximum age of a snapshot.
+     */
+    public static final long DEFAULT_MAX_AGE = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The number of bits of each value that select its sub-bucket.
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+
+    /**
+     * The largest latency, in nanoseconds, that may be counted in its own bucket.
+     */
+    static final long MAX_VALUE = (1L << 40) - 1;
+
+    /**
+     * The number of buckets, which is one more than the bucket of the {@link #MAX_VALUE}.
+     */
+    private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    /**
+     * The index, in each stripe, of the sum of its latencies.
+     */
+    private static final int SUM = BUCKETS;
+
+    /**
+     * The index, in each stripe, of the maximum of its latencies.
+     */
+    private static final int MAX = BUCKETS + 1;
+
+    /**
+     * The number of stripes, as a power of two no smaller than the number of processors.
+     */
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(
+            Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private static final double[] QUANTILES = { 0.5, 0.75, 0.95, 0.98, 0.99, 0.999 };
+    private static final String[] QUANTILE_NAMES = {
+            "50percentile", "75percentile", "95percentile",
+            "98percentile", "99percentile", "999percentile" };
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes =
+            new AtomicReferenceArray<AtomicLongArray>(STRIPES);
+    private final long maxAge;
+    private final Clock clock;
+
+    private volatile Snapshot snapshot = null;
+
+    /**
+     * Creates a new {@link HistogramLatencyRecorder}, registering its gauges with the given {@link
+     * MetricsRegistry} under the given {@link MetricName}.
+     *
+     * @param registry the {@link MetricsRegistry} to register the gauges with.
+     * @param name the {@link MetricName} to register the gauges under.
+     */
+    public HistogramLatencyRecorder(final MetricsRegistry registry, final MetricName name) {
+        this(registry, name, DEFAULT_MAX_AGE, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a new {@link HistogramLatencyRecorder}, registering its gauges with the given {@link
+     * MetricsRegistry} under the given {@link MetricName}.
+     *
+     * @param registry the {@link MetricsRegistry} to register the gauges with.
+     * @param name the {@link MetricName} to register the gauges under.
+     * @param maxAge the maximum age, in nanoseconds, of a snapshot before a new one is taken.
+     * @param clock the {@link Clock} to measure the age of snapshots with.
+     */
+    public HistogramLatencyRecorder(final MetricsRegistry registry,
+                                    final MetricName name,
+                                    final long maxAge,
+                                    final Clock clock) {
+        this.maxAge = maxAge;
+        this.clock = clock;
+
+        registry.newGauge(nameOf(name, "count"), new Gauge<Long>() {
+            @Override public Long value() {
+                return snapshot().total;
+            }
+        });
+        registry.newGauge(nameOf(name, "min"), new Gauge<Double>() {
+            @Override public Double value() {
+                return snapshot().min;
+            }
+        });
+        registry.newGauge(nameOf(name, "max"), new Gauge<Double>() {
+            @Override public Double value() {
+                return snapshot().max;
+            }
+        });
+        registry.newGauge(nameOf(name, "mean"), new Gauge<Double>() {
+            @Override public Double value() {
+                return snapshot().mean;
+            }
+        });
+        for (int i = 0; i < QUANTILES.length; i++) {
+            final int quantile = i;
+            registry.newGauge(nameOf(name, QUANTILE_NAMES[i]), new Gauge<Double>() {
+                @Override public Double value() {
+                    return snapshot().quantiles[quantile];
+                }
+            });
+        }
+    }
+
+    public void record(final long duration, final TimeUnit unit) {
+        final long value = Math.max(0, Math.min(MAX_VALUE, unit.toNanos(duration)));
+        final AtomicLongArray stripe = stripe();
+        stripe.incrementAndGet(bucketOf(value));
+        stripe.addAndGet(SUM, value);
+        long max = stripe.get(MAX);
+        while (value > max && !stripe.compareAndSet(MAX, max, value)) {
+            max = stripe.get(MAX);
+        }
+    }
+
+    /**
+     * Gets the number of latencies recorded since this recorder was created.
+     *
+     * @return the total number of latencies recorded.
+     */
+    public long getCount() {
+        return snapshot().total;
+    }
+
+    /**
+     * Gets the given quantile of the latencies, in milliseconds, recorded before the current
+     * snapshot was taken.
+     *
+     * @param quantile the quantile to get, between 0 and 1.
+     *
+     * @return the given quantile of the latencies in the current snapshot; or zero if none were
+     *         recorded.
+     */
+    public double getQuantile(final double quantile) {
+        return snapshot().quantile(quantile);
+    }
+
+    /**
+     * Gets the current {@link Snapshot}, taking a new one if it is too old.
+     */
+    private Snapshot snapshot() {
+        final long now = clock.tick();
+        Snapshot current = snapshot;
+        if (current != null && now - current.tick < maxAge) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || now - current.tick >= maxAge) {
+                current = new Snapshot(drain(), clock.tick(), current == null ? 0 : current.total);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Claims the counts, sum and maximum of every stripe, resetting them to zero.
+     */
+    private long[] drain() {
+        final long[] counts = new long[MAX + 1];
+        for (int i = 0; i < STRIPES; i++) {
+            final AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                for (int j = 0; j < SUM; j++) {
+                    if (stripe.get(j) != 0) {
+                        counts[j] += stripe.getAndSet(j, 0);
+                    }
+                }
+                counts[SUM] += stripe.getAndSet(SUM, 0);
+                counts[MAX] = Math.max(counts[MAX], stripe.getAndSet(MAX, 0));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the stripe for the current thread, allocating it if another thread hasn't already.
+     */
+    private AtomicLongArray stripe() {
+        long h = Thread.currentThread().getId();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        final int i = (int) h & (STRIPES - 1);
+        final AtomicLongArray stripe = stripes.get(i);
+        if (stripe != null) {
+            return stripe;
+        }
+        stripes.compareAndSet(i, null, new AtomicLongArray(MAX + 1));
+        return stripes.get(i);
+    }
+
+    /**
+     * Gets the bucket that counts the given value.
+     * <p/>
+     * Values below {@link #SUB_BUCKETS} each have their own bucket; beyond that, each power of two
+     * is divided into {@link #HALF_SUB_BUCKETS} buckets of equal width.
+     */
+    static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS
+                + (shift - 1) * HALF_SUB_BUCKETS
+                + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+
+    /**
+     * Gets the value at the middle of the given bucket.
+     */
+    static long valueOf(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        final long lowest = (long) ((bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS)
+                << shift;
+        return lowest + ((1L << shift) >> 1);
+    }
+
+    private static MetricName nameOf(final MetricName name, final String value) {
+        return new MetricName(
+                name.getGroup(), name.getType(), name.getName() + "." + value, name.getScope());
+    }
+
+    private static double toMillis(final double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * A summary of the latencies recorded between two snapshots.
+     */
+    private static final class Snapshot {
+
+        private final long[] counts;
+        private final long tick;
+        private final long count;
+        private final long total;
+        private final double min;
+        private final double max;
+        private final double mean;
+        private final double[] quantiles = new double[QUANTILES.length];
+
+        Snapshot(final long[] counts, final long tick, final long previousTotal) {
+            this.counts = counts;
+            this.tick = tick;
+
+            long count = 0;
+            int lowest = -1;
+            for (int i = 0; i < SUM; i++) {
+                if (counts[i] > 0) {
+                    count += counts[i];
+                    if (lowest < 0) {
+                        lowest = i;
+                    }
+                }
+            }
+            this.count = count;
+            this.total = previousTotal + count;
+            this.min = lowest < 0 ? 0 : toMillis(Math.min(valueOf(lowest), counts[MAX]));
+            this.max = toMillis(counts[MAX]);
+            this.mean = count == 0 ? 0 : toMillis((double) counts[SUM] / count);
+            for (int i = 0; i < QUANTILES.length; i++) {
+                quantiles[i] = quantile(QUANTILES[i]);
+            }
+        }
+
+        double quantile(final double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < SUM; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return toMillis(Math.min(valueOf(i), counts[MAX]));
+                }
+            }
+            return max;
+        }
+    }
+}
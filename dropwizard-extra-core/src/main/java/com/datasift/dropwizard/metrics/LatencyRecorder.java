@@ -0,0 +1,22 @@
+package com.datasift.dropwizard.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latency of an operation.
+ * <p/>
+ * Implementations are expected to be safe for concurrent use, and cheap enough to call for every
+ * operation on a hot path.
+ *
+ * @see LatencyRecorderFactory
+ */
+public interface LatencyRecorder {
+
+    /**
+     * Records the latency of a single operation.
+     *
+     * @param duration the time taken by the operation.
+     * @param unit the {@link TimeUnit} of the {@code duration}.
+     */
+    void record(long duration, TimeUnit unit);
+}
@@ -0,0 +1,23 @@
+package com.datasift.dropwizard.metrics;
+
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+
+/**
+ * Creates {@link LatencyRecorder}s that publish their metrics to a {@link MetricsRegistry}.
+ *
+ * @see LatencyRecorderType
+ */
+public interface LatencyRecorderFactory {
+
+    /**
+     * Creates a new {@link LatencyRecorder}, registering its metrics with the given {@link
+     * MetricsRegistry} under the given {@link MetricName}.
+     *
+     * @param registry the {@link MetricsRegistry} to register the metrics of the recorder with.
+     * @param name the {@link MetricName} to register the metrics of the recorder under.
+     *
+     * @return a new {@link LatencyRecorder}.
+     */
+    LatencyRecorder newRecorder(MetricsRegistry registry, MetricName name);
+}
@@ -0,0 +1,55 @@
+package com.datasift.dropwizard.metrics;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The built-in implementations of {@link LatencyRecorder}.
+ */
+public enum LatencyRecorderType implements LatencyRecorderFactory {
+
+    /**
+     * Records latencies with a {@link com.yammer.metrics.core.Timer}, which also tracks the rate
+     * of operations, but synchronizes and allocates on each update.
+     *
+     * @see TimerLatencyRecorder
+     */
+    TIMER {
+        public LatencyRecorder newRecorder(final MetricsRegistry registry, final MetricName name) {
+            return new TimerLatencyRecorder(
+                    registry.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.SECONDS));
+        }
+    },
+
+    /**
+     * Records latencies with a {@link HistogramLatencyRecorder}, which neither synchronizes nor
+     * allocates on each update.
+     */
+    HISTOGRAM {
+        public LatencyRecorder newRecorder(final MetricsRegistry registry, final MetricName name) {
+            return new HistogramLatencyRecorder(registry, name);
+        }
+    };
+
+    /**
+     * Parses a {@link LatencyRecorderType} from its case-insensitive name.
+     *
+     * @param type the name of the {@link LatencyRecorderType}.
+     *
+     * @return the {@link LatencyRecorderType} with the given name.
+     *
+     * @throws IllegalArgumentException if there is no {@link LatencyRecorderType} with the name.
+     */
+    @JsonCreator
+    public static LatencyRecorderType parse(final String type) {
+        for (final LatencyRecorderType value : values()) {
+            if (value.name().equalsIgnoreCase(type)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid LatencyRecorderType: " + type);
+    }
+}
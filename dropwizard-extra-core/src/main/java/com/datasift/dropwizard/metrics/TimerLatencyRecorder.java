@@ -0,0 +1,36 @@
+package com.datasift.dropwizard.metrics;
+
+import com.yammer.metrics.core.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link LatencyRecorder} that records latencies with a {@link Timer}.
+ */
+public class TimerLatencyRecorder implements LatencyRecorder {
+
+    private final Timer timer;
+
+    /**
+     * Creates a new {@link TimerLatencyRecorder} that records latencies with the given {@link
+     * Timer}.
+     *
+     * @param timer the {@link Timer} to record latencies with.
+     */
+    public TimerLatencyRecorder(final Timer timer) {
+        this.timer = timer;
+    }
+
+    public void record(final long duration, final TimeUnit unit) {
+        timer.update(duration, unit);
+    }
+
+    /**
+     * Gets the {@link Timer} latencies are recorded with.
+     *
+     * @return the {@link Timer} latencies are recorded with.
+     */
+    public Timer getTimer() {
+        return timer;
+    }
+}
@@ -0,0 +1,100 @@
+package com.datasift.dropwizard.metrics;
+
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link HistogramLatencyRecorder}.
+ */
+public class HistogramLatencyRecorderTest {
+
+    private final MetricName name = new MetricName(getClass(), "get", "requests");
+
+    private MetricsRegistry registry;
+    private long now;
+    private HistogramLatencyRecorder recorder;
+
+    @Before
+    public void setUp() {
+        registry = new MetricsRegistry();
+        now = 0;
+        recorder = new HistogramLatencyRecorder(registry, name, TimeUnit.SECONDS.toNanos(1),
+                new Clock() {
+                    @Override
+                    public long tick() {
+                        return now;
+                    }
+                });
+    }
+
+    @Test
+    public void bucketsValuesWithinThreePercent() {
+        for (long value = 1; value < HistogramLatencyRecorder.MAX_VALUE; value = value * 3 + 1) {
+            final long bucketed = HistogramLatencyRecorder.valueOf(
+                    HistogramLatencyRecorder.bucketOf(value));
+            assertThat("value " + value + " is bucketed accurately",
+                    (double) Math.abs(bucketed - value) / value, is(lessThanOrEqualTo(0.03)));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        int previous = 0;
+        for (long value = 1; value < 1 << 20; value++) {
+            final int bucket = HistogramLatencyRecorder.bucketOf(value);
+            assertThat("bucket follows the previous bucket",
+                    bucket - previous, is(lessThanOrEqualTo(1)));
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void reportsPercentilesOfTheLastInterval() {
+        for (int i = 1; i <= 100; i++) {
+            recorder.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat("median is 50ms", recorder.getQuantile(0.5), is(closeTo(50, 1.5)));
+        assertThat("99th percentile is 99ms", recorder.getQuantile(0.99), is(closeTo(99, 3)));
+        assertThat("max is 100ms", gauge("get.max"), is(closeTo(100, 0.001)));
+        assertThat("mean is 50.5ms", gauge("get.mean"), is(closeTo(50.5, 0.001)));
+    }
+
+    @Test
+    public void startsANewIntervalWhenTheSnapshotExpires() {
+        recorder.record(100, TimeUnit.MILLISECONDS);
+        assertThat("max is 100ms", gauge("get.max"), is(closeTo(100, 0.001)));
+
+        recorder.record(10, TimeUnit.MILLISECONDS);
+        assertThat("snapshot is reused", gauge("get.max"), is(closeTo(100, 0.001)));
+
+        now = TimeUnit.SECONDS.toNanos(1);
+        assertThat("new snapshot only has the latest latency",
+                gauge("get.max"), is(closeTo(10, 0.001)));
+        assertThat("count is cumulative", recorder.getCount(), is(2L));
+    }
+
+    @Test
+    public void reportsZeroWhenNothingWasRecorded() {
+        assertThat("99th percentile is zero", gauge("get.99percentile"), is(0.0));
+        assertThat("count is zero", recorder.getCount(), is(0L));
+    }
+
+    @SuppressWarnings("unchecked")
+    private double gauge(final String gauge) {
+        final MetricName metric = new MetricName(
+                name.getGroup(), name.getType(), gauge, name.getScope());
+        return ((Gauge<Double>) registry.allMetrics().get(metric)).value();
+    }
+}
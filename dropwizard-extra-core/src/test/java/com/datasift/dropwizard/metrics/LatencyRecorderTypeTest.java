@@ -0,0 +1,41 @@
+package com.datasift.dropwizard.metrics;
+
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link LatencyRecorderType}.
+ */
+public class LatencyRecorderTypeTest {
+
+    @Test
+    public void parsesNamesCaseInsensitively() {
+        assertThat("parses timer", LatencyRecorderType.parse("timer"),
+                is(LatencyRecorderType.TIMER));
+        assertThat("parses histogram", LatencyRecorderType.parse("Histogram"),
+                is(LatencyRecorderType.HISTOGRAM));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownNames() {
+        LatencyRecorderType.parse("reservoir");
+    }
+
+    @Test
+    public void createsRecordersOfEachType() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final MetricName name = new MetricName(getClass(), "test");
+
+        assertThat("creates a timer recorder",
+                LatencyRecorderType.TIMER.newRecorder(registry, name),
+                is(instanceOf(TimerLatencyRecorder.class)));
+        assertThat("creates a histogram recorder",
+                LatencyRecorderType.HISTOGRAM.newRecorder(registry, name),
+                is(instanceOf(HistogramLatencyRecorder.class)));
+    }
+}
@@ -0,0 +1,44 @@
+package com.datasift.dropwizard.hbase.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the {@link HBaseClientBenchmark}s and {@link InterceptorChainBenchmark}s, single-threaded
+ * and then with a thread per processor, profiling the bytes allocated per operation with the
+ * {@link GCProfiler}.
+ * <p/>
+ * Accepts the usual JMH command line options; for example, {@code -p stack=none,bound+instrument}
+ * to only benchmark some stacks, or {@code -t 4} to run with only the given number of threads.
+ */
+public class Benchmarks {
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args the JMH command line options.
+     *
+     * @throws Exception if the options are invalid, or a benchmark fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        final CommandLineOptions options = new CommandLineOptions(args);
+        final int[] threads = options.getThreads().hasValue()
+                ? new int[] { options.getThreads().get() }
+                : new int[] { 1, Runtime.getRuntime().availableProcessors() };
+
+        for (final int count : threads) {
+            final ChainedOptionsBuilder builder = new OptionsBuilder()
+                    .parent(options)
+                    .threads(count)
+                    .addProfiler(GCProfiler.class);
+            if (options.getIncludes().isEmpty()) {
+                builder.include(HBaseClientBenchmark.class.getSimpleName())
+                        .include(InterceptorChainBenchmark.class.getSimpleName());
+            }
+            new Runner(builder.build()).run();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.datasift.dropwizard.hbase.benchmarks;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The decorators that {@link com.datasift.dropwizard.hbase.HBaseClientFactory} may layer over an
+ * {@link com.datasift.dropwizard.hbase.HBaseClient}.
+ *
+ * @see StackConfiguration
+ */
+public enum Decorator {
+
+    TIME_OUT("timeout"),
+    BOUND("bound"),
+    INSTRUMENT("instrument"),
+    BREAK_CIRCUITS("breaker"),
+    RATE_LIMIT("ratelimit"),
+    RETRY("retry"),
+    COALESCE("coalesce"),
+    CACHE("cache"),
+    AGGREGATE("aggregate"),
+    WRITE_BEHIND("writebehind");
+
+    private final String name;
+
+    Decorator(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of this {@link Decorator}, as given in a stack.
+     *
+     * @return the name of this {@link Decorator}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Parses a stack of {@link Decorator}s from their names, separated by "+".
+     * <p/>
+     * A stack of "none" has no decorators, and a stack of "all" has every decorator.
+     *
+     * @param stack the names of the {@link Decorator}s in the stack.
+     *
+     * @return the {@link Decorator}s in the stack.
+     *
+     * @throws IllegalArgumentException if a name is not that of a {@link Decorator}.
+     */
+    public static Set<Decorator> parse(final String stack) {
+        if ("none".equals(stack)) {
+            return EnumSet.noneOf(Decorator.class);
+        }
+        if ("all".equals(stack)) {
+            return EnumSet.allOf(Decorator.class);
+        }
+
+        final Set<Decorator> decorators = EnumSet.noneOf(Decorator.class);
+        for (final String name : stack.split("\\+")) {
+            decorators.add(of(name.trim()));
+        }
+        return decorators;
+    }
+
+    private static Decorator of(final String name) {
+        for (final Decorator decorator : values()) {
+            if (decorator.getName().equalsIgnoreCase(name)) {
+                return decorator;
+            }
+        }
+        throw new IllegalArgumentException("Unknown decorator: " + name);
+    }
+}
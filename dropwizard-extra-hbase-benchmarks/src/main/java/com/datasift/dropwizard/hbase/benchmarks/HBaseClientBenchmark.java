@@ -0,0 +1,138 @@
+package com.datasift.dropwizard.hbase.benchmarks;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.hbase.HBaseClientFactory;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.metrics.LatencyRecorderType;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.config.Configuration;
+import com.yammer.dropwizard.config.Environment;
+import com.yammer.dropwizard.json.ObjectMapperFactory;
+import com.yammer.dropwizard.validation.Validator;
+import org.hbase.async.AtomicIncrementRequest;
+import org.hbase.async.GetRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the overhead of each stack of {@link HBaseClient} decorators built by the {@link
+ * HBaseClientFactory}, over a {@link StubHBaseClient}.
+ * <p/>
+ * The stack is given by the {@code stack} parameter, as the names of its {@link Decorator}s
+ * separated by "+". The "none" stack measures the {@link StubHBaseClient} alone, and so is the
+ * baseline of the others.
+ * <p/>
+ * All threads share the same client, so running with several threads measures the contention in
+ * the decorators.
+ *
+ * @see Benchmarks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HBaseClientBenchmark {
+
+    private static final String TABLE = "benchmark";
+    private static final byte[] TABLE_BYTES = TABLE.getBytes();
+    private static final byte[] FAMILY = "f".getBytes();
+    private static final byte[] QUALIFIER = "q".getBytes();
+    private static final byte[] VALUE = new byte[64];
+    private static final int KEYS = 1024;
+    private static final int SCAN_BATCH_SIZE = 16;
+
+    @Param({
+            "none",
+            "timeout",
+            "bound",
+            "instrument",
+            "bound+instrument",
+            "timeout+bound+instrument",
+            "breaker",
+            "ratelimit",
+            "retry",
+            "coalesce",
+            "cache",
+            "aggregate",
+            "writebehind",
+            "all"
+    })
+    public String stack;
+
+    @Param({ "timer" })
+    public String recorder;
+
+    private HBaseClient client;
+
+    /**
+     * The keys requested by a single thread, in turn.
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+
+        private final byte[][] keys = new byte[KEYS][];
+        private int next = 0;
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < KEYS; i++) {
+                keys[i] = ("row-" + i).getBytes();
+            }
+        }
+
+        byte[] next() {
+            next = (next + 1) & (KEYS - 1);
+            return keys[next];
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        final Environment environment = new Environment(
+                "benchmarks", new Configuration(), new ObjectMapperFactory(), new Validator());
+        final ArrayList<KeyValue> row = new ArrayList<KeyValue>(Collections.singletonList(
+                new KeyValue("row".getBytes(), FAMILY, QUALIFIER, VALUE)));
+
+        client = new HBaseClientFactory(environment).decorate(
+                new StackConfiguration(
+                        Decorator.parse(stack), TABLE, LatencyRecorderType.parse(recorder)),
+                "benchmark",
+                new StubHBaseClient(row, SCAN_BATCH_SIZE));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.shutdown().join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @Benchmark
+    public Deferred<ArrayList<KeyValue>> get(final Keys keys) {
+        return client.get(new GetRequest(TABLE_BYTES, keys.next(), FAMILY));
+    }
+
+    @Benchmark
+    public Deferred<Object> put(final Keys keys) {
+        return client.put(new PutRequest(TABLE_BYTES, keys.next(), FAMILY, QUALIFIER, VALUE));
+    }
+
+    @Benchmark
+    public Deferred<Long> increment(final Keys keys) {
+        return client.bufferIncrement(
+                new AtomicIncrementRequest(TABLE_BYTES, keys.next(), FAMILY, QUALIFIER));
+    }
+
+    @Benchmark
+    public void scan(final Blackhole blackhole) {
+        final RowScanner scanner = client.scan(TABLE_BYTES).setFamily(FAMILY);
+        blackhole.consume(scanner.nextRows());
+        blackhole.consume(scanner.close());
+    }
+}
@@ -0,0 +1,121 @@
+package com.datasift.dropwizard.hbase.benchmarks;
+
+import com.datasift.dropwizard.hbase.BoundedHBaseClient;
+import com.datasift.dropwizard.hbase.DeadlineHBaseClient;
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.hbase.InstrumentedHBaseClient;
+import com.datasift.dropwizard.hbase.InterceptingHBaseClient;
+import com.datasift.dropwizard.hbase.Operation;
+import com.datasift.dropwizard.hbase.interceptor.DeadlineInterceptor;
+import com.datasift.dropwizard.hbase.interceptor.Interceptor;
+import com.datasift.dropwizard.hbase.interceptor.InterceptorChain;
+import com.datasift.dropwizard.hbase.interceptor.TimingInterceptor;
+import com.datasift.dropwizard.hbase.limiter.BlockingRequestLimiter;
+import com.datasift.dropwizard.hbase.limiter.Bulkheads;
+import com.datasift.dropwizard.hbase.metrics.HBaseInstrumentation;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.GetRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks bounding, instrumenting and timing out requests with a single {@link
+ * InterceptorChain}, against nesting the {@link BoundedHBaseClient}, {@link
+ * InstrumentedHBaseClient} and {@link DeadlineHBaseClient} decorators, over a {@link
+ * StubHBaseClient}.
+ * <p/>
+ * The {@code layout} parameter is either "nested", for the decorators, or "fused", for the chain
+ * the {@link com.datasift.dropwizard.hbase.HBaseClientFactory} builds in their place.
+ *
+ * @see Benchmarks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterceptorChainBenchmark {
+
+    private static final byte[] TABLE = "benchmark".getBytes();
+    private static final byte[] ROW = "row".getBytes();
+    private static final byte[] FAMILY = "f".getBytes();
+    private static final byte[] QUALIFIER = "q".getBytes();
+    private static final byte[] VALUE = new byte[64];
+    private static final int MAX_REQUESTS = 100000;
+    private static final int SCAN_BATCH_SIZE = 16;
+
+    @Param({ "nested", "fused" })
+    public String layout;
+
+    private HBaseClient client;
+
+    @Setup
+    public void setUp() {
+        final ArrayList<KeyValue> row = new ArrayList<KeyValue>(Collections.singletonList(
+                new KeyValue(ROW, FAMILY, QUALIFIER, VALUE)));
+        final HBaseClient stub = new StubHBaseClient(row, SCAN_BATCH_SIZE);
+        final MetricsRegistry registry = new MetricsRegistry();
+        final Duration timeout = Duration.seconds(10);
+
+        if ("nested".equals(layout)) {
+            client = new InstrumentedHBaseClient(
+                    new BoundedHBaseClient(
+                            new DeadlineHBaseClient(
+                                    stub,
+                                    timeout,
+                                    Collections.<Operation, Duration>emptyMap(),
+                                    Collections.<String, Duration>emptyMap(),
+                                    registry),
+                            MAX_REQUESTS),
+                    registry);
+        } else if ("fused".equals(layout)) {
+            client = new InterceptingHBaseClient(stub, new InterceptorChain(
+                    Arrays.<Interceptor>asList(
+                            new TimingInterceptor(new HBaseInstrumentation(stub, registry)),
+                            new DeadlineInterceptor(
+                                    stub.getTimer(),
+                                    timeout,
+                                    Collections.<Operation, Duration>emptyMap(),
+                                    Collections.<String, Duration>emptyMap(),
+                                    registry)),
+                    new Bulkheads(new BlockingRequestLimiter(MAX_REQUESTS)),
+                    Clock.defaultClock()));
+        } else {
+            throw new IllegalArgumentException("Unknown layout: " + layout);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.shutdown().join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @Benchmark
+    public Deferred<ArrayList<KeyValue>> get() {
+        return client.get(new GetRequest(TABLE, ROW, FAMILY));
+    }
+
+    @Benchmark
+    public Deferred<Object> put() {
+        return client.put(new PutRequest(TABLE, ROW, FAMILY, QUALIFIER, VALUE));
+    }
+
+    @Benchmark
+    public void scan(final Blackhole blackhole) {
+        final RowScanner scanner = client.scan(TABLE).setFamily(FAMILY);
+        blackhole.consume(scanner.nextRows());
+        blackhole.consume(scanner.close());
+    }
+}
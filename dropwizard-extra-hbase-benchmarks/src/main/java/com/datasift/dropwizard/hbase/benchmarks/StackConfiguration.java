@@ -0,0 +1,57 @@
+package com.datasift.dropwizard.hbase.benchmarks;
+
+import com.datasift.dropwizard.hbase.config.HBaseClientConfiguration;
+import com.datasift.dropwizard.metrics.LatencyRecorderType;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * An {@link HBaseClientConfiguration} that enables a given stack of {@link Decorator}s.
+ * <p/>
+ * The limits of each decorator are set high enough that no request is rejected, delayed or timed
+ * out, so that each request takes the common path through the decorator.
+ */
+public class StackConfiguration extends HBaseClientConfiguration {
+
+    /**
+     * Creates a new {@link StackConfiguration} for the given {@link Decorator}s.
+     *
+     * @param decorators the {@link Decorator}s to enable.
+     * @param table the table requests are made to.
+     * @param recorder the type of recorder for the latency of instrumented requests.
+     */
+    public StackConfiguration(final Set<Decorator> decorators,
+                              final String table,
+                              final LatencyRecorderType recorder) {
+        if (decorators.contains(Decorator.TIME_OUT)) {
+            requestTimeout = Duration.seconds(10);
+        }
+        if (decorators.contains(Decorator.BOUND)) {
+            maxConcurrentRequests = 100000;
+        }
+        instrumented = decorators.contains(Decorator.INSTRUMENT);
+        if (instrumented) {
+            maxInstrumentedTables = 1;
+            maxInstrumentedFamilies = 1;
+            latencyRecorder = recorder;
+        }
+        circuitBreaking = decorators.contains(Decorator.BREAK_CIRCUITS);
+        if (decorators.contains(Decorator.RATE_LIMIT)) {
+            maxRequestRateByTable.put(table, 1.0e12);
+        }
+        if (decorators.contains(Decorator.RETRY)) {
+            maxRetries = 3;
+        }
+        coalesceGets = decorators.contains(Decorator.COALESCE);
+        if (decorators.contains(Decorator.CACHE)) {
+            cacheSize = Size.megabytes(64);
+        }
+        aggregateIncrements = decorators.contains(Decorator.AGGREGATE);
+        if (decorators.contains(Decorator.WRITE_BEHIND)) {
+            writeBehindTables = Collections.singleton(table);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.datasift.dropwizard.hbase.benchmarks;
+
+import com.datasift.dropwizard.hbase.BulkResult;
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import org.hbase.async.*;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An in-process stand-in for an {@link org.hbase.async.HBaseClient}, for benchmarking the {@link
+ * HBaseClient} decorators without an HBase cluster.
+ * <p/>
+ * Every request completes immediately, on the calling thread, with a fixed result; so the time
+ * and allocation of a request through a stack of decorators is that of the decorators alone. As
+ * the {@link org.hbase.async.HBaseClient} is final, this stands in for the {@link
+ * com.datasift.dropwizard.hbase.HBaseClientProxy} of a real client instead.
+ * <p/>
+ * Each request is given a new {@link Deferred}, as the callbacks added to it by the decorators
+ * may not be shared between requests. The {@link ClientStats} of the client are not simulated.
+ */
+public class StubHBaseClient implements HBaseClient {
+
+    private final Timer timer = new HashedWheelTimer();
+    private final ArrayList<KeyValue> row;
+    private final ArrayList<ArrayList<KeyValue>> rows;
+    private volatile Duration flushInterval = Duration.seconds(1);
+    private volatile Size incrementBufferSize = Size.kilobytes(64);
+
+    /**
+     * Creates a new {@link StubHBaseClient} that responds to gets and scans with the given row.
+     *
+     * @param row the cells of the row to respond to gets with.
+     * @param batchSize the number of copies of the row in each scanned batch.
+     */
+    public StubHBaseClient(final List<KeyValue> row, final int batchSize) {
+        this.row = new ArrayList<KeyValue>(row);
+        this.rows = new ArrayList<ArrayList<KeyValue>>(
+                Collections.nCopies(batchSize, this.row));
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public Size getIncrementBufferSize() {
+        return incrementBufferSize;
+    }
+
+    public Duration setFlushInterval(final Duration flushInterval) {
+        final Duration previous = this.flushInterval;
+        this.flushInterval = flushInterval;
+        return previous;
+    }
+
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        final Size previous = this.incrementBufferSize;
+        this.incrementBufferSize = incrementBufferSize;
+        return previous;
+    }
+
+    public Deferred<Boolean> create(final PutRequest edit) {
+        return Deferred.fromResult(true);
+    }
+
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        return Deferred.fromResult(request.getAmount());
+    }
+
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        return Deferred.fromResult(request.getAmount());
+    }
+
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        return Deferred.fromResult(request.getAmount());
+    }
+
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        return Deferred.fromResult(true);
+    }
+
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        return Deferred.fromResult(true);
+    }
+
+    public Deferred<Object> delete(final DeleteRequest request) {
+        return done();
+    }
+
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        return Deferred.fromResult(nulls(requests.size()));
+    }
+
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return done();
+    }
+
+    public Deferred<Object> ensureTableExists(final String table) {
+        return done();
+    }
+
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        return done();
+    }
+
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return done();
+    }
+
+    public Deferred<Object> flush() {
+        return done();
+    }
+
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        return Deferred.fromResult(row);
+    }
+
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        final List<BulkResult<ArrayList<KeyValue>>> results =
+                new ArrayList<BulkResult<ArrayList<KeyValue>>>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            results.add(BulkResult.success(row));
+        }
+        return Deferred.fromResult(results);
+    }
+
+    /**
+     * Row locks are not supported, as a {@link RowLock} may not be created outside of asynchbase.
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        return Deferred.fromError(new UnsupportedOperationException("row locks"));
+    }
+
+    public RowScanner scan(final byte[] table) {
+        return new StubRowScanner(rows);
+    }
+
+    public RowScanner scan(final String table) {
+        return new StubRowScanner(rows);
+    }
+
+    public Deferred<Object> put(final PutRequest request) {
+        return done();
+    }
+
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        return Deferred.fromResult(nulls(requests.size()));
+    }
+
+    public Deferred<Object> shutdown() {
+        timer.stop();
+        return done();
+    }
+
+    public ClientStats stats() {
+        return null;
+    }
+
+    public Timer getTimer() {
+        return timer;
+    }
+
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return done();
+    }
+
+    private static Deferred<Object> done() {
+        return Deferred.fromResult(null);
+    }
+
+    private static List<BulkResult<Object>> nulls(final int size) {
+        final List<BulkResult<Object>> results = new ArrayList<BulkResult<Object>>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(BulkResult.success(null));
+        }
+        return results;
+    }
+}
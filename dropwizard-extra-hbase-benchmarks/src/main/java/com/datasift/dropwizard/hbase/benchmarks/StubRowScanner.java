@@ -0,0 +1,147 @@
+package com.datasift.dropwizard.hbase.benchmarks;
+
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.stumbleupon.async.Deferred;
+import org.hbase.async.KeyValue;
+import org.hbase.async.ScanFilter;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-process stand-in for an {@link org.hbase.async.Scanner}, that yields the same batch of
+ * rows for every call to {@link #nextRows()}.
+ * <p/>
+ * The parameters of the scan are accepted, but ignored.
+ *
+ * @see StubHBaseClient
+ */
+public class StubRowScanner implements RowScanner {
+
+    private final ArrayList<ArrayList<KeyValue>> rows;
+    private long minTimestamp = 0;
+    private long maxTimestamp = Long.MAX_VALUE;
+
+    /**
+     * Creates a new {@link StubRowScanner} that yields the given batch of rows.
+     *
+     * @param rows the batch of rows to yield for each call to {@link #nextRows()}.
+     */
+    public StubRowScanner(final ArrayList<ArrayList<KeyValue>> rows) {
+        this.rows = rows;
+    }
+
+    public RowScanner setStartKey(final byte[] key) {
+        return this;
+    }
+
+    public RowScanner setStartKey(final String key) {
+        return this;
+    }
+
+    public RowScanner setStopKey(final byte[] key) {
+        return this;
+    }
+
+    public RowScanner setStopKey(final String key) {
+        return this;
+    }
+
+    public RowScanner setFamily(final byte[] family) {
+        return this;
+    }
+
+    public RowScanner setFamily(final String family) {
+        return this;
+    }
+
+    public RowScanner setQualifier(final byte[] qualifier) {
+        return this;
+    }
+
+    public RowScanner setQualifier(final String qualifier) {
+        return this;
+    }
+
+    public RowScanner setFilters(final ScanFilter... scanFilters) {
+        return this;
+    }
+
+    public RowScanner setFilters(final List<ScanFilter> scanFilters) {
+        return this;
+    }
+
+    public RowScanner setKeyRegexp(final String regexp) {
+        return this;
+    }
+
+    public RowScanner setKeyRegexp(final String regexp, final Charset charset) {
+        return this;
+    }
+
+    public RowScanner setServerBlockCache(final boolean populateBlockcache) {
+        return this;
+    }
+
+    public RowScanner setMaxNumRows(final int maxRows) {
+        return this;
+    }
+
+    public RowScanner setMaxNumKeyValues(final int maxKeyValues) {
+        return this;
+    }
+
+    public RowScanner setMinTimestamp(final long timestamp) {
+        minTimestamp = timestamp;
+        return this;
+    }
+
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    public RowScanner setMaxTimestamp(final long timestamp) {
+        maxTimestamp = timestamp;
+        return this;
+    }
+
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public RowScanner setTimeRange(final long minTimestamp, final long maxTimestamp) {
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        return this;
+    }
+
+    public byte[] getCurrentKey() {
+        return null;
+    }
+
+    public RowScanner setAttributes(final Map<String, String> attributes) {
+        return this;
+    }
+
+    public RowScanner addAttribute(final String key, final String value) {
+        return this;
+    }
+
+    public RowScanner addAttribute(final String key, final byte[] value) {
+        return this;
+    }
+
+    public Deferred<Object> close() {
+        return Deferred.fromResult(null);
+    }
+
+    public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows() {
+        return Deferred.fromResult(rows);
+    }
+
+    public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows(final int rows) {
+        return Deferred.fromResult(this.rows);
+    }
+}
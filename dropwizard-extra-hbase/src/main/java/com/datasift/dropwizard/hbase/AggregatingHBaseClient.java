@@ -0,0 +1,895 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.limiter.RequestClass;
+import com.datasift.dropwizard.hbase.limiter.RequestContext;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.StripedLong;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link HBaseClient} that aggregates {@link #bufferIncrement(AtomicIncrementRequest) buffered
+ * increments} client-side.
+ * <p/>
+ * Buffered increments to the same cell are summed without locking, in a {@link StripedLong}
+ * per cell, and periodically flushed to the underlying client as a single {@link
+ * #increment(AtomicIncrementRequest) increment} of the total. Pending increments are flushed
+ * every flush interval, and on {@link #flush()} or {@link #shutdown()}.
+ * <p/>
+ * Cells that receive no increments for an entire flush interval are discarded. Whenever the
+ * number of cells being aggregated reaches the configured maximum, every cell is flushed and
+ * discarded, bounding the memory used for aggregation.
+ * <p/>
+ * Each buffered increment yields the value of its cell after the flush that included it. Since
+ * each waits for its flush to complete, the number of buffered increments that have yet to
+ * complete is also bounded: once the maximum is reached, every cell is flushed, and further
+ * increments are rejected with a {@link RequestRejectedException} until enough have completed.
+ * <p/>
+ * Flushes are run by the given {@link Executor}, rather than on the {@link Timer} that schedules
+ * them, so that a flush blocked by the underlying client can never stall the {@link Timer}.
+ * <p/>
+ * This implementation proxies all requests through an underlying {@link HBaseClient}; all other
+ * requests are dispatched to the underlying client verbatim.
+ */
+public class AggregatingHBaseClient implements HBaseClient {
+
+    /**
+     * The underlying {@link HBaseClient} to dispatch requests.
+     */
+    private final HBaseClient client;
+
+    private final Duration flushInterval;
+    private final int maxPendingCells;
+    private final int maxPendingIncrements;
+    private final Executor executor;
+
+    /**
+     * The cells with pending increments, by their coordinates.
+     */
+    private final ConcurrentMap<Cell, PendingIncrement> pending =
+            new ConcurrentHashMap<Cell, PendingIncrement>();
+
+    private final AtomicInteger pendingCells = new AtomicInteger();
+    private final AtomicInteger pendingIncrements = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final StripedLong aggregated = new StripedLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private volatile Timeout timeout = null;
+    private volatile boolean shutdown = false;
+
+    /**
+     * Creates a new {@link AggregatingHBaseClient} for the given underlying client.
+     * <p/>
+     * The {@link Metrics#defaultRegistry() default} {@link MetricsRegistry} will be used to
+     * register the {@link com.yammer.metrics.core.Metric}s.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param flushInterval the maximum time increments are aggregated before being flushed.
+     * @param maxPendingCells the number of cells with pending increments that forces a flush.
+     * @param maxPendingIncrements the maximum number of buffered increments that have yet to
+     *                             complete.
+     * @param executor the {@link Executor} to run flushes with.
+     */
+    public AggregatingHBaseClient(final HBaseClient client,
+                                  final Duration flushInterval,
+                                  final int maxPendingCells,
+                                  final int maxPendingIncrements,
+                                  final Executor executor) {
+        this(client, flushInterval, maxPendingCells, maxPendingIncrements, executor,
+                Metrics.defaultRegistry());
+    }
+
+    /**
+     * Creates a new {@link AggregatingHBaseClient} for the given underlying client, registering
+     * gauges for the pending and aggregated increments with the given {@link MetricsRegistry}.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param flushInterval the maximum time increments are aggregated before being flushed.
+     * @param maxPendingCells the number of cells with pending increments that forces a flush.
+     * @param maxPendingIncrements the maximum number of buffered increments that have yet to
+     *                             complete.
+     * @param executor the {@link Executor} to run flushes with.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     */
+    public AggregatingHBaseClient(final HBaseClient client,
+                                  final Duration flushInterval,
+                                  final int maxPendingCells,
+                                  final int maxPendingIncrements,
+                                  final Executor executor,
+                                  final MetricsRegistry registry) {
+        if (maxPendingCells < 1) {
+            throw new IllegalArgumentException(
+                    "maxPendingCells must be at least 1: " + maxPendingCells);
+        }
+        if (maxPendingIncrements < 1) {
+            throw new IllegalArgumentException(
+                    "maxPendingIncrements must be at least 1: " + maxPendingIncrements);
+        }
+        this.client = client;
+        this.flushInterval = flushInterval;
+        this.maxPendingCells = maxPendingCells;
+        this.maxPendingIncrements = maxPendingIncrements;
+        this.executor = executor;
+
+        if (registry == null) {
+            return;
+        }
+
+        final Class<? extends HBaseClient> clazz = getClass();
+        registry.newGauge(clazz, "pendingCells", "increments", new Gauge<Integer>() {
+            @Override public Integer value() {
+                return getPendingCells();
+            }
+        });
+        registry.newGauge(clazz, "pendingIncrements", "increments", new Gauge<Integer>() {
+            @Override public Integer value() {
+                return getPendingIncrements();
+            }
+        });
+        registry.newGauge(clazz, "rejected", "increments", new Gauge<Long>() {
+            @Override public Long value() {
+                return getRejectedIncrements();
+            }
+        });
+        registry.newGauge(clazz, "pendingDelta", "increments", new Gauge<Long>() {
+            @Override public Long value() {
+                return getPendingDelta();
+            }
+        });
+        registry.newGauge(clazz, "aggregated", "increments", new Gauge<Long>() {
+            @Override public Long value() {
+                return getAggregatedIncrements();
+            }
+        });
+        registry.newGauge(clazz, "flushed", "increments", new Gauge<Long>() {
+            @Override public Long value() {
+                return getFlushedIncrements();
+            }
+        });
+    }
+
+    /**
+     * Gets the number of cells being aggregated.
+     * <p/>
+     * This includes cells that have been flushed but not yet discarded, since they may receive
+     * further increments.
+     *
+     * @return the number of cells being aggregated.
+     */
+    public int getPendingCells() {
+        return pendingCells.get();
+    }
+
+    /**
+     * Gets the number of buffered increments that have yet to complete, whether they are still
+     * being aggregated or their flush is in-flight.
+     *
+     * @return the number of buffered increments that have yet to complete.
+     */
+    public int getPendingIncrements() {
+        return pendingIncrements.get();
+    }
+
+    /**
+     * Gets the total number of buffered increments rejected because too many were pending.
+     *
+     * @return the total number of rejected increments.
+     */
+    public long getRejectedIncrements() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the total of all increments that have not yet been flushed.
+     *
+     * @return the total of all pending increments.
+     */
+    public long getPendingDelta() {
+        long delta = 0;
+        for (final PendingIncrement increment : pending.values()) {
+            delta += increment.delta.sum();
+        }
+        return delta;
+    }
+
+    /**
+     * Gets the total number of buffered increments that have been aggregated.
+     *
+     * @return the total number of buffered increments.
+     */
+    public long getAggregatedIncrements() {
+        return aggregated.sum();
+    }
+
+    /**
+     * Gets the total number of increments flushed to the underlying client.
+     * <p/>
+     * The ratio of {@link #getAggregatedIncrements() aggregated} to flushed increments is the
+     * number of requests saved by aggregation.
+     *
+     * @return the total number of increments flushed.
+     */
+    public long getFlushedIncrements() {
+        return flushed.get();
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return client.getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return client.getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        return client.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        return client.setIncrementBufferSize(incrementBufferSize);
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        return client.create(edit);
+    }
+
+    /**
+     * Buffer a durable increment for aggregation with other increments to the same cell.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the flush that includes the increment.
+     *
+     * @throws RequestRejectedException (Deferred) if the maximum number of buffered increments
+     *                                  are pending.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        final int count = pendingIncrements.incrementAndGet();
+        if (count > maxPendingIncrements) {
+            pendingIncrements.decrementAndGet();
+            rejected.incrementAndGet();
+            return Deferred.fromError(new RequestRejectedException(String.format(
+                    "Too many buffered increments pending (%d)", maxPendingIncrements)));
+        }
+
+        final Deferred<Long> result = new Deferred<Long>();
+        aggregate(new Cell(request), request.getAmount(), Collections.singletonList(result));
+        aggregated.add(1);
+        if (count == maxPendingIncrements) {
+            requestFlush();
+        }
+        start();
+        return result;
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        return client.increment(request);
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        return client.increment(request, durable);
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        return client.compareAndSet(edit, expected);
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        return client.compareAndSet(edit, expected);
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        return client.delete(request);
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        return client.deleteAll(requests);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return client.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        return client.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        return client.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return client.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Flushes all aggregated increments, and all requests buffered on the client-side.
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        final Deferred<Object> increments = flushIncrements(false);
+        return client.flush().addBothDeferring(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return increments;
+            }
+        });
+    }
+
+    /**
+     * Retrieves the specified cells.
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        return client.get(request);
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        return client.getAll(requests);
+    }
+
+    /**
+     * Aqcuire an explicit row lock.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        return client.lockRow(request);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return client.scan(table);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return client.scan(table);
+    }
+
+    /**
+     * Store the specified cell(s).
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        return client.put(request);
+    }
+
+    /**
+     * Store the specified cell(s) for each of the given requests.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        return client.putAll(requests);
+    }
+
+    /**
+     * Performs a graceful shutdown of this client, flushing any aggregated increments and any
+     * pending requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        shutdown = true;
+        final Timeout timeout = this.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        return flushIncrements(true).addBothDeferring(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.shutdown();
+            }
+        });
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return client.stats();
+    }
+
+    /**
+     * Get the underlying {@link Timer} used by the client.
+     *
+     * @return the underlying {@link Timer} used by the async client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return client.getTimer();
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return client.unlockRow(lock);
+    }
+
+    /**
+     * Adds the given delta, and the callers waiting for it, to the pending increment for a cell.
+     */
+    private void aggregate(final Cell cell,
+                           final long delta,
+                           final List<Deferred<Long>> waiters) {
+        while (true) {
+            PendingIncrement increment = pending.get(cell);
+            if (increment == null) {
+                final PendingIncrement created = new PendingIncrement(cell);
+                increment = pending.putIfAbsent(cell, created);
+                if (increment == null) {
+                    increment = created;
+                    if (pendingCells.incrementAndGet() >= maxPendingCells) {
+                        requestFlush();
+                    }
+                }
+            }
+            if (increment.add(delta, waiters)) {
+                return;
+            }
+            // the pending increment was retired while we were adding to it; try again
+        }
+    }
+
+    /**
+     * Starts flushing increments periodically, if not already started.
+     */
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            schedule(flushInterval.getQuantity(), flushInterval.getUnit());
+        }
+    }
+
+    /**
+     * Schedules the next periodic flush of increments.
+     */
+    private void schedule(final long delay, final TimeUnit unit) {
+        if (shutdown) {
+            return;
+        }
+        timeout = client.getTimer().newTimeout(new TimerTask() {
+            public void run(final Timeout timeout) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            flushIncrements(false);
+                        } finally {
+                            schedule(flushInterval.getQuantity(), flushInterval.getUnit());
+                        }
+                    }
+                });
+            }
+        }, delay, unit);
+    }
+
+    /**
+     * Requests an immediate flush of increments, if one isn't already requested.
+     */
+    private void requestFlush() {
+        if (!shutdown && flushRequested.compareAndSet(false, true)) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    flushRequested.set(false);
+                    flushIncrements(true);
+                }
+            });
+        }
+    }
+
+    /**
+     * Flushes every pending increment to the underlying client, and discards pending increments
+     * that have been idle for an entire flush interval.
+     *
+     * @param discard whether to discard every pending increment, rather than only the idle ones.
+     *
+     * @return a {@link Deferred} indicating the completion of the flushed increments.
+     */
+    private Deferred<Object> flushIncrements(final boolean discard) {
+        final List<Deferred<Object>> flushes = new ArrayList<Deferred<Object>>();
+        for (final PendingIncrement increment : pending.values()) {
+            final Deferred<Object> flush = increment.flush(discard);
+            if (flush != null) {
+                flushes.add(flush);
+            }
+        }
+        if (flushes.isEmpty()) {
+            return Deferred.fromResult(null);
+        }
+        return Deferred.group(flushes).addCallback(new Callback<Object, ArrayList<Object>>() {
+            public Object call(final ArrayList<Object> results) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * The coordinates of a cell to increment.
+     */
+    private static final class Cell {
+
+        private final byte[] table;
+        private final byte[] key;
+        private final byte[] family;
+        private final byte[] qualifier;
+        private final int hash;
+
+        Cell(final AtomicIncrementRequest request) {
+            this.table = request.table();
+            this.key = request.key();
+            this.family = request.family();
+            this.qualifier = request.qualifier();
+
+            int hash = Arrays.hashCode(table);
+            hash = 31 * hash + Arrays.hashCode(key);
+            hash = 31 * hash + Arrays.hashCode(family);
+            this.hash = 31 * hash + Arrays.hashCode(qualifier);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Cell)) {
+                return false;
+            }
+            final Cell other = (Cell) o;
+            return hash == other.hash
+                    && Arrays.equals(key, other.key)
+                    && Arrays.equals(qualifier, other.qualifier)
+                    && Arrays.equals(family, other.family)
+                    && Arrays.equals(table, other.table);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The aggregated increments to a cell that have not yet been flushed, and the callers waiting
+     * for them.
+     * <p/>
+     * A pending increment that remains idle for an entire flush interval is retired: it is
+     * removed from the pending increments, and any delta added to it concurrently is reclaimed by
+     * the adding thread and re-added to a new pending increment for the cell. Since each part of
+     * the delta is claimed atomically, by either the flush or the adding thread, no increment is
+     * lost or counted twice.
+     */
+    private final class PendingIncrement {
+
+        private final Cell cell;
+        private final StripedLong delta = new StripedLong();
+        private final Queue<Deferred<Long>> waiters = new ConcurrentLinkedQueue<Deferred<Long>>();
+        private volatile boolean retired = false;
+        private volatile boolean idle = false;
+        private volatile RequestClass requestClass = RequestClass.DEFAULT;
+
+        PendingIncrement(final Cell cell) {
+            this.cell = cell;
+        }
+
+        /**
+         * Adds the given delta and waiting callers to this pending increment.
+         *
+         * @return true if they were added; false if this pending increment has been retired.
+         */
+        boolean add(final long delta, final List<Deferred<Long>> waiters) {
+            if (retired) {
+                return false;
+            }
+            this.delta.add(delta);
+            this.waiters.addAll(waiters);
+            requestClass = RequestContext.current();
+            idle = false;
+
+            if (retired) {
+                // raced with retirement; reclaim anything the retiring flush didn't claim
+                final long reclaimed = this.delta.sumThenReset();
+                final List<Deferred<Long>> orphans = drain();
+                if (reclaimed != 0 || !orphans.isEmpty()) {
+                    aggregate(cell, reclaimed, orphans);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Flushes the aggregated delta to the underlying client, in the {@link RequestClass} of
+         * the last increment added to it, completing the waiting callers with the result.
+         *
+         * @param discard whether to retire this pending increment even if it isn't idle.
+         *
+         * @return a {@link Deferred} indicating the completion of the flush; or null if there was
+         *         nothing to flush.
+         */
+        Deferred<Object> flush(final boolean discard) {
+            if (discard || idle) {
+                retired = true;
+                if (pending.remove(cell, this)) {
+                    pendingCells.decrementAndGet();
+                }
+            }
+
+            // claim the waiters before the delta, so that each claimed waiter's delta is included
+            final List<Deferred<Long>> claimed = drain();
+            final long amount = delta.sumThenReset();
+            // remains idle unless incremented again before the next flush
+            idle = true;
+            if (amount == 0 && claimed.isEmpty()) {
+                return null;
+            }
+
+            flushed.incrementAndGet();
+            Deferred<Long> response;
+            final RequestClass previous = RequestContext.enter(requestClass);
+            try {
+                response = client.increment(new AtomicIncrementRequest(
+                        cell.table, cell.key, cell.family, cell.qualifier, amount));
+            } catch (final RuntimeException e) {
+                response = Deferred.fromError(e);
+            } finally {
+                RequestContext.restore(previous);
+            }
+            return complete(response, claimed);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Deferred<Object> complete(final Deferred<Long> response,
+                                          final List<Deferred<Long>> claimed) {
+            // the result may be either the new value or an Exception
+            return ((Deferred<Object>) (Deferred<?>) response).addBoth(
+                    new Callback<Object, Object>() {
+                        public Object call(final Object result) {
+                            pendingIncrements.addAndGet(-claimed.size());
+                            for (final Deferred<Long> waiter : claimed) {
+                                waiter.callback(result);
+                            }
+                            return null;
+                        }
+                    });
+        }
+
+        private List<Deferred<Long>> drain() {
+            final List<Deferred<Long>> drained = new ArrayList<Deferred<Long>>();
+            Deferred<Long> waiter;
+            while ((waiter = waiters.poll()) != null) {
+                drained.add(waiter);
+            }
+            return drained;
+        }
+    }
+}
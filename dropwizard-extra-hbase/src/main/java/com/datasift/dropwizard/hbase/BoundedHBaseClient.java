@@ -1,8 +1,14 @@
 package com.datasift.dropwizard.hbase;
 
+import com.datasift.dropwizard.hbase.limiter.BlockingRequestLimiter;
+import com.datasift.dropwizard.hbase.limiter.Bulkheads;
+import com.datasift.dropwizard.hbase.limiter.QueuingRequestLimiter;
+import com.datasift.dropwizard.hbase.limiter.RequestContext;
+import com.datasift.dropwizard.hbase.limiter.RequestLimiter;
+import com.datasift.dropwizard.hbase.limiter.SchedulingRequestLimiter;
 import com.datasift.dropwizard.hbase.scanner.BoundedRowScanner;
 import com.datasift.dropwizard.hbase.scanner.RowScanner;
-import com.datasift.dropwizard.hbase.util.*;
+import com.stumbleupon.async.Callback;
 import com.stumbleupon.async.Deferred;
 import com.yammer.dropwizard.util.Duration;
 import com.yammer.dropwizard.util.Size;
@@ -10,13 +16,15 @@ import org.hbase.async.*;
 import org.jboss.netty.util.Timer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 
 /**
  * An {@link HBaseClient} that constrains the maximum number of concurrent asynchronous requests.
  * <p/>
  * This client places an upper-bounds on the number of concurrent asynchronous requests awaiting
- * completion. When this limit is reached, subsequent requests will block until an existing request
+ * completion. When this limit is reached, subsequent requests will wait until an existing request
  * completes.
  * <p/>
  * This behaviour is particularly useful for throttling high-throughput applications where HBase is
@@ -25,8 +33,15 @@ import java.util.concurrent.Semaphore;
  * reached without running out of memory, such applications can organically throttle and back-off
  * their requests.
  * <p/>
- * Book-keeping of in-flight requests is done using a {@link Semaphore} which is configured as
- * "non-fair" to reduce its impact on request throughput.
+ * How requests wait for a permit is determined by the {@link RequestLimiter}. By default, a {@link
+ * BlockingRequestLimiter} blocks the calling thread; a {@link QueuingRequestLimiter} instead queues
+ * requests without blocking, and rejects them when its queue is full; and a {@link
+ * SchedulingRequestLimiter} queues them in the same way, but grants permits by the priority and
+ * tenant of each request, given by the {@link RequestContext} of the thread making it.
+ * <p/>
+ * Requests may be isolated from one another by giving some operations or tables a dedicated pool
+ * of permits using {@link Bulkheads}, so that a slow table or operation can not consume every
+ * permit.
  */
 public class BoundedHBaseClient implements HBaseClient {
 
@@ -36,10 +51,10 @@ public class BoundedHBaseClient implements HBaseClient {
     private final HBaseClient client;
 
     /**
-     * The {@link Semaphore} constraining the maximum number of concurrent
-     * asynchronous requests.
+     * The {@link Bulkheads} selecting the {@link RequestLimiter} constraining the maximum number of
+     * concurrent asynchronous requests of each kind.
      */
-    private final Semaphore semaphore;
+    private final Bulkheads bulkheads;
 
     /**
      * Create a new instance with the given limit on concurrent requests for the given underlying
@@ -64,8 +79,31 @@ public class BoundedHBaseClient implements HBaseClient {
      * @param semaphore the {@link Semaphore} to track concurrent asynchronous requests with.
      */
     public BoundedHBaseClient(final HBaseClient client, final Semaphore semaphore) {
+        this(client, new BlockingRequestLimiter(semaphore));
+    }
+
+    /**
+     * Create a new instance that admits requests using the given {@link RequestLimiter} for the
+     * given underlying {@link HBaseClient} implementation.
+     *
+     * @param client the underlying {@link HBaseClient} implementation.
+     * @param limiter the {@link RequestLimiter} to admit concurrent asynchronous requests with.
+     */
+    public BoundedHBaseClient(final HBaseClient client, final RequestLimiter limiter) {
+        this(client, new Bulkheads(limiter));
+    }
+
+    /**
+     * Create a new instance that admits requests using the {@link RequestLimiter} selected for
+     * each request by the given {@link Bulkheads} for the given underlying {@link HBaseClient}
+     * implementation.
+     *
+     * @param client the underlying {@link HBaseClient} implementation.
+     * @param bulkheads the {@link Bulkheads} to select a {@link RequestLimiter} for each request.
+     */
+    public BoundedHBaseClient(final HBaseClient client, final Bulkheads bulkheads) {
         this.client = client;
-        this.semaphore = semaphore;
+        this.bulkheads = bulkheads;
     }
 
     /**
@@ -126,9 +164,12 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#create(PutRequest)
      */
     public Deferred<Boolean> create(final PutRequest edit) {
-        semaphore.acquireUninterruptibly();
-        return client.create(edit)
-                .addBoth(new PermitReleasingCallback<Boolean>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.CREATE, edit.table());
+        return limiter.submit(new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.create(edit);
+            }
+        });
     }
 
     /**
@@ -141,9 +182,12 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
      */
     public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
-        semaphore.acquireUninterruptibly();
-        return client.bufferIncrement(request)
-                .addBoth(new PermitReleasingCallback<Long>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.INCREMENT, request.table());
+        return limiter.submit(new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.bufferIncrement(request);
+            }
+        });
     }
 
     /**
@@ -156,8 +200,12 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#increment(AtomicIncrementRequest)
      */
     public Deferred<Long> increment(final AtomicIncrementRequest request) {
-        semaphore.acquireUninterruptibly();
-        return client.increment(request).addBoth(new PermitReleasingCallback<Long>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.INCREMENT, request.table());
+        return limiter.submit(new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.increment(request);
+            }
+        });
     }
 
     /**
@@ -171,10 +219,13 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
      */
     public Deferred<Long> increment(final AtomicIncrementRequest request,
-                                    Boolean durable) {
-        semaphore.acquireUninterruptibly();
-        return client.increment(request, durable)
-                .addBoth(new PermitReleasingCallback<Long>(semaphore));
+                                    final Boolean durable) {
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.INCREMENT, request.table());
+        return limiter.submit(new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.increment(request, durable);
+            }
+        });
     }
 
     /**
@@ -189,9 +240,13 @@ public class BoundedHBaseClient implements HBaseClient {
      */
     public Deferred<Boolean> compareAndSet(final PutRequest edit,
                                            final byte[] expected) {
-        semaphore.acquireUninterruptibly();
-        return client.compareAndSet(edit, expected)
-                .addBoth(new PermitReleasingCallback<Boolean>(semaphore));
+        final RequestLimiter limiter =
+                bulkheads.forRequest(Operation.COMPARE_AND_SET, edit.table());
+        return limiter.submit(new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.compareAndSet(edit, expected);
+            }
+        });
     }
 
     /**
@@ -206,9 +261,13 @@ public class BoundedHBaseClient implements HBaseClient {
      */
     public Deferred<Boolean> compareAndSet(final PutRequest edit,
                                            final String expected) {
-        semaphore.acquireUninterruptibly();
-        return client.compareAndSet(edit, expected)
-                .addBoth(new PermitReleasingCallback<Boolean>(semaphore));
+        final RequestLimiter limiter =
+                bulkheads.forRequest(Operation.COMPARE_AND_SET, edit.table());
+        return limiter.submit(new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.compareAndSet(edit, expected);
+            }
+        });
     }
 
     /**
@@ -221,8 +280,32 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#delete(DeleteRequest)
      */
     public Deferred<Object> delete(final DeleteRequest request) {
-        semaphore.acquireUninterruptibly();
-        return client.delete(request).addBoth(new PermitReleasingCallback<Object>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.DELETE, request.table());
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.delete(request);
+            }
+        });
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests.
+     * <p/>
+     * The whole batch is admitted as a single request.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.DELETE, tableOf(requests));
+        return limiter.submit(new Callback<Deferred<List<BulkResult<Object>>>, Object>() {
+            public Deferred<List<BulkResult<Object>>> call(final Object arg) {
+                return client.deleteAll(requests);
+            }
+        });
     }
 
     /**
@@ -237,9 +320,12 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#ensureTableExists(byte[])
      */
     public Deferred<Object> ensureTableExists(final byte[] table) {
-        semaphore.acquireUninterruptibly();
-        return client.ensureTableExists(table)
-                .addBoth(new PermitReleasingCallback<Object>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.ASSERTION, table);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableExists(table);
+            }
+        });
     }
 
     /**
@@ -254,9 +340,12 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#ensureTableExists(String)
      */
     public Deferred<Object> ensureTableExists(final String table) {
-        semaphore.acquireUninterruptibly();
-        return client.ensureTableExists(table)
-                .addBoth(new PermitReleasingCallback<Object>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.ASSERTION, table);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableExists(table);
+            }
+        });
     }
 
     /**
@@ -273,9 +362,12 @@ public class BoundedHBaseClient implements HBaseClient {
      */
     public Deferred<Object> ensureTableFamilyExists(final byte[] table,
                                                     final byte[] family) {
-        semaphore.acquireUninterruptibly();
-        return client.ensureTableFamilyExists(table, family)
-                .addBoth(new PermitReleasingCallback<Object>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.ASSERTION, table);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableFamilyExists(table, family);
+            }
+        });
     }
 
     /**
@@ -292,9 +384,12 @@ public class BoundedHBaseClient implements HBaseClient {
      */
     public Deferred<Object> ensureTableFamilyExists(final String table,
                                                     final String family) {
-        semaphore.acquireUninterruptibly();
-        return client.ensureTableFamilyExists(table, family)
-                .addBoth(new PermitReleasingCallback<Object>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.ASSERTION, table);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableFamilyExists(table, family);
+            }
+        });
     }
 
     /**
@@ -305,8 +400,12 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#flush()
      */
     public Deferred<Object> flush() {
-        semaphore.acquireUninterruptibly();
-        return client.flush().addBoth(new PermitReleasingCallback<Object>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.FLUSH, (byte[]) null);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.flush();
+            }
+        });
     }
 
     /**
@@ -319,9 +418,34 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#get(GetRequest)
      */
     public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
-        semaphore.acquireUninterruptibly();
-        return client.get(request)
-                .addBoth(new PermitReleasingCallback<ArrayList<KeyValue>>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.GET, request.table());
+        return limiter.submit(new Callback<Deferred<ArrayList<KeyValue>>, Object>() {
+            public Deferred<ArrayList<KeyValue>> call(final Object arg) {
+                return client.get(request);
+            }
+        });
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     * <p/>
+     * The whole batch is admitted as a single request.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.GET, tableOf(requests));
+        return limiter.submit(
+                new Callback<Deferred<List<BulkResult<ArrayList<KeyValue>>>>, Object>() {
+                    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> call(final Object arg) {
+                        return client.getAll(requests);
+                    }
+                });
     }
 
     /**
@@ -334,8 +458,12 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#lockRow(RowLockRequest)
      */
     public Deferred<RowLock> lockRow(final RowLockRequest request) {
-        semaphore.acquireUninterruptibly();
-        return client.lockRow(request).addBoth(new PermitReleasingCallback<RowLock>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.LOCK, request.table());
+        return limiter.submit(new Callback<Deferred<RowLock>, Object>() {
+            public Deferred<RowLock> call(final Object arg) {
+                return client.lockRow(request);
+            }
+        });
     }
 
     /**
@@ -348,7 +476,8 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#scan(byte[])
      */
     public RowScanner scan(final byte[] table) {
-        return new BoundedRowScanner(client.scan(table), semaphore);
+        return new BoundedRowScanner(client.scan(table),
+                                     bulkheads.forRequest(Operation.SCAN, table));
     }
 
     /**
@@ -361,7 +490,8 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#scan(String)
      */
     public RowScanner scan(final String table) {
-        return new BoundedRowScanner(client.scan(table), semaphore);
+        return new BoundedRowScanner(client.scan(table),
+                                     bulkheads.forRequest(Operation.SCAN, table));
     }
 
     /**
@@ -374,8 +504,32 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#put(PutRequest)
      */
     public Deferred<Object> put(final PutRequest request) {
-        semaphore.acquireUninterruptibly();
-        return client.put(request).addBoth(new PermitReleasingCallback<Object>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.PUT, request.table());
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.put(request);
+            }
+        });
+    }
+
+    /**
+     * Store the specified cell(s) for each of the given requests.
+     * <p/>
+     * The whole batch is admitted as a single request.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.PUT, tableOf(requests));
+        return limiter.submit(new Callback<Deferred<List<BulkResult<Object>>>, Object>() {
+            public Deferred<List<BulkResult<Object>>> call(final Object arg) {
+                return client.putAll(requests);
+            }
+        });
     }
 
     /**
@@ -421,7 +575,28 @@ public class BoundedHBaseClient implements HBaseClient {
      * @see HBaseClient#unlockRow(RowLock)
      */
     public Deferred<Object> unlockRow(final RowLock lock) {
-        semaphore.acquireUninterruptibly();
-        return client.unlockRow(lock).addBoth(new PermitReleasingCallback<Object>(semaphore));
+        final RequestLimiter limiter = bulkheads.forRequest(Operation.UNLOCK, (byte[]) null);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.unlockRow(lock);
+            }
+        });
+    }
+
+    /**
+     * Gets the table shared by all of the given requests.
+     *
+     * @return the table of the requests; or null if they are not all for the same table.
+     */
+    private static byte[] tableOf(final List<? extends HBaseRpc.HasTable> requests) {
+        byte[] table = null;
+        for (final HBaseRpc.HasTable request : requests) {
+            if (table == null) {
+                table = request.table();
+            } else if (!Arrays.equals(table, request.table())) {
+                return null;
+            }
+        }
+        return table;
     }
 }
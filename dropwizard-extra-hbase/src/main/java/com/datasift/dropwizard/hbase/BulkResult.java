@@ -0,0 +1,82 @@
+package com.datasift.dropwizard.hbase;
+
+/**
+ * The outcome of a single request of a bulk request.
+ * <p/>
+ * Each request of a bulk request succeeds or fails independently; a {@link BulkResult} holds
+ * either the result of a request that succeeded, or the error of a request that failed.
+ *
+ * @param <T> the type of the result of the request.
+ *
+ * @see HBaseClient#getAll(java.util.List)
+ * @see HBaseClient#putAll(java.util.List)
+ * @see HBaseClient#deleteAll(java.util.List)
+ */
+public final class BulkResult<T> {
+
+    private final T value;
+    private final Exception error;
+
+    /**
+     * Creates a {@link BulkResult} for a request that succeeded.
+     *
+     * @param value the result of the request.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the {@link BulkResult} of a successful request.
+     */
+    public static <T> BulkResult<T> success(final T value) {
+        return new BulkResult<T>(value, null);
+    }
+
+    /**
+     * Creates a {@link BulkResult} for a request that failed.
+     *
+     * @param error the error that caused the request to fail.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the {@link BulkResult} of a failed request.
+     */
+    public static <T> BulkResult<T> failure(final Exception error) {
+        return new BulkResult<T>(null, error);
+    }
+
+    private BulkResult(final T value, final Exception error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    /**
+     * Determines whether the request succeeded.
+     *
+     * @return true if the request succeeded; false if it failed.
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Gets the result of the request.
+     *
+     * @return the result of the request; or null if it failed.
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Gets the error that caused the request to fail.
+     *
+     * @return the error that caused the request to fail; or null if it succeeded.
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess()
+                ? "BulkResult{value=" + value + "}"
+                : "BulkResult{error=" + error + "}";
+    }
+}
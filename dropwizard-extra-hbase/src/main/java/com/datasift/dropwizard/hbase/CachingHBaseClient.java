@@ -0,0 +1,901 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.KeyValues;
+import com.google.common.base.Charsets;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.core.Clock;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An {@link HBaseClient} that caches the results of {@link #get(GetRequest) gets}.
+ * <p/>
+ * Results are cached by table, row, family and qualifiers in a cache bounded by the total size of
+ * the cached {@link KeyValue}s; the least recently used rows are evicted once the cache is full.
+ * Each cached result expires after the time-to-live for its table.
+ * <p/>
+ * Writes made through this client invalidate the cached results for the row they modify, both
+ * when they are dispatched and when they complete; results of gets that were in-flight when a row
+ * was invalidated are not cached. Writes made by other clients are not visible until the cached
+ * result expires.
+ * <p/>
+ * This implementation proxies all requests through an underlying {@link HBaseClient}; only gets
+ * that miss the cache are dispatched to the underlying client.
+ *
+ * @see com.datasift.dropwizard.hbase.metrics.CacheInstrumentation
+ */
+public class CachingHBaseClient implements HBaseClient {
+
+    /**
+     * The number of stripes used to detect invalidations of rows while a get is in-flight.
+     */
+    private static final int STRIPES = 1024;
+
+    /**
+     * The underlying {@link HBaseClient} to dispatch requests.
+     */
+    private final HBaseClient client;
+
+    private final Cache<Row, CachedRow> cache;
+    private final Clock clock;
+    private final long defaultTtl;
+    private final Map<byte[], Long> ttls;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Creates a new {@link CachingHBaseClient} for the given underlying client.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param maxSize the maximum total size of the cached results.
+     * @param ttl the time-to-live of cached results for tables without an explicit time-to-live.
+     * @param ttlByTable the time-to-live of cached results for each table; zero to disable caching
+     *                   for a table.
+     */
+    public CachingHBaseClient(final HBaseClient client,
+                              final Size maxSize,
+                              final Duration ttl,
+                              final Map<String, Duration> ttlByTable) {
+        this(client, maxSize, ttl, ttlByTable, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a new {@link CachingHBaseClient} for the given underlying client, that expires
+     * cached results using the given {@link Clock}.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param maxSize the maximum total size of the cached results.
+     * @param ttl the time-to-live of cached results for tables without an explicit time-to-live.
+     * @param ttlByTable the time-to-live of cached results for each table; zero to disable caching
+     *                   for a table.
+     * @param clock the {@link Clock} to expire cached results with.
+     */
+    public CachingHBaseClient(final HBaseClient client,
+                              final Size maxSize,
+                              final Duration ttl,
+                              final Map<String, Duration> ttlByTable,
+                              final Clock clock) {
+        this.client = client;
+        this.clock = clock;
+        this.defaultTtl = ttl.toNanoseconds();
+        this.ttls = new TreeMap<byte[], Long>(Bytes.MEMCMP);
+
+        long maxTtl = defaultTtl;
+        for (final Map.Entry<String, Duration> entry : ttlByTable.entrySet()) {
+            final long tableTtl = entry.getValue().toNanoseconds();
+            ttls.put(entry.getKey().getBytes(Charsets.UTF_8), tableTtl);
+            maxTtl = Math.max(maxTtl, tableTtl);
+        }
+
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher(new Weigher<Row, CachedRow>() {
+                    public int weigh(final Row row, final CachedRow cached) {
+                        return cached.weight;
+                    }
+                })
+                .expireAfterWrite(Math.max(maxTtl, 1), TimeUnit.NANOSECONDS)
+                .ticker(new Ticker() {
+                    @Override public long read() {
+                        return clock.tick();
+                    }
+                })
+                .removalListener(new RemovalListener<Row, CachedRow>() {
+                    public void onRemoval(final RemovalNotification<Row, CachedRow> notification) {
+                        bytes.addAndGet(-notification.getValue().weight);
+                        if (notification.wasEvicted()) {
+                            evictions.incrementAndGet();
+                        }
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Gets the total number of gets answered from the cache.
+     *
+     * @return the total number of cache hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the total number of cacheable gets dispatched to the underlying client.
+     *
+     * @return the total number of cache misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the total number of rows evicted from the cache, due to either size or expiry.
+     *
+     * @return the total number of evicted rows.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the estimated total size, in bytes, of the cached results.
+     *
+     * @return the size of the cache, in bytes.
+     */
+    public long getSize() {
+        return bytes.get();
+    }
+
+    /**
+     * Gets the number of rows with cached results.
+     *
+     * @return the number of cached rows.
+     */
+    public long getRows() {
+        return cache.size();
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return client.getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return client.getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        return client.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        return client.setIncrementBufferSize(incrementBufferSize);
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        final Row row = invalidate(edit.table(), edit.key());
+        return client.create(edit).addBoth(new InvalidatingCallback<Boolean>(row));
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        final Row row = invalidate(request.table(), request.key());
+        return client.bufferIncrement(request).addBoth(new InvalidatingCallback<Long>(row));
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        final Row row = invalidate(request.table(), request.key());
+        return client.increment(request).addBoth(new InvalidatingCallback<Long>(row));
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        final Row row = invalidate(request.table(), request.key());
+        return client.increment(request, durable).addBoth(new InvalidatingCallback<Long>(row));
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        final Row row = invalidate(edit.table(), edit.key());
+        return client.compareAndSet(edit, expected)
+                .addBoth(new InvalidatingCallback<Boolean>(row));
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        final Row row = invalidate(edit.table(), edit.key());
+        return client.compareAndSet(edit, expected)
+                .addBoth(new InvalidatingCallback<Boolean>(row));
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        final Row row = invalidate(request.table(), request.key());
+        return client.delete(request).addBoth(new InvalidatingCallback<Object>(row));
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        final List<Row> rows = invalidateAll(requests);
+        return client.deleteAll(requests)
+                .addBoth(new InvalidatingCallback<List<BulkResult<Object>>>(rows));
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return client.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        return client.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        return client.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return client.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Flushes all requests buffered on the client-side
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        return client.flush();
+    }
+
+    /**
+     * Retrieves the specified cells, from the cache if they have been cached.
+     * <p/>
+     * The result is always a new {@link ArrayList}, which may be modified by the caller without
+     * affecting the cache.
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        final long ttl = ttlFor(request.table());
+        if (ttl <= 0) {
+            return client.get(request);
+        }
+
+        final Row row = new Row(request.table(), request.key());
+        final Columns columns = new Columns(request);
+
+        final ArrayList<KeyValue> cached = lookup(row, columns);
+        if (cached != null) {
+            return Deferred.fromResult(cached);
+        }
+
+        final long generation = generations.get(row.stripe());
+        return client.get(request).addCallback(
+                new Callback<ArrayList<KeyValue>, ArrayList<KeyValue>>() {
+                    public ArrayList<KeyValue> call(final ArrayList<KeyValue> values) {
+                        populate(row, columns, values, generation, ttl);
+                        return values;
+                    }
+                });
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests, from the cache for those
+     * that have been cached.
+     * <p/>
+     * Only the requests that miss the cache are dispatched to the underlying client, as a single
+     * bulk request.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        final List<BulkResult<ArrayList<KeyValue>>> results =
+                new ArrayList<BulkResult<ArrayList<KeyValue>>>(requests.size());
+        final List<GetRequest> uncached = new ArrayList<GetRequest>();
+        final List<Miss> missed = new ArrayList<Miss>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            final GetRequest request = requests.get(i);
+            final long ttl = ttlFor(request.table());
+            Row row = null;
+            Columns columns = null;
+            if (ttl > 0) {
+                row = new Row(request.table(), request.key());
+                columns = new Columns(request);
+                final ArrayList<KeyValue> cached = lookup(row, columns);
+                if (cached != null) {
+                    results.add(BulkResult.success(cached));
+                    continue;
+                }
+            }
+            results.add(null);
+            uncached.add(request);
+            missed.add(new Miss(i, row, columns, ttl,
+                    row == null ? 0 : generations.get(row.stripe())));
+        }
+
+        if (uncached.isEmpty()) {
+            return Deferred.fromResult(results);
+        }
+
+        return client.getAll(uncached).addCallback(
+                new Callback<List<BulkResult<ArrayList<KeyValue>>>,
+                             List<BulkResult<ArrayList<KeyValue>>>>() {
+                    public List<BulkResult<ArrayList<KeyValue>>> call(
+                            final List<BulkResult<ArrayList<KeyValue>>> fetched) {
+                        for (int i = 0; i < missed.size(); i++) {
+                            final Miss miss = missed.get(i);
+                            final BulkResult<ArrayList<KeyValue>> result = fetched.get(i);
+                            if (miss.row != null && result.isSuccess()) {
+                                populate(miss.row, miss.columns, result.getValue(),
+                                         miss.generation, miss.ttl);
+                            }
+                            results.set(miss.index, result);
+                        }
+                        return results;
+                    }
+                });
+    }
+
+    /**
+     * Aqcuire an explicit row lock.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        return client.lockRow(request);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return client.scan(table);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return client.scan(table);
+    }
+
+    /**
+     * Store the specified cell(s).
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        final Row row = invalidate(request.table(), request.key());
+        return client.put(request).addBoth(new InvalidatingCallback<Object>(row));
+    }
+
+    /**
+     * Store the specified cell(s) for each of the given requests.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        final List<Row> rows = invalidateAll(requests);
+        return client.putAll(requests)
+                .addBoth(new InvalidatingCallback<List<BulkResult<Object>>>(rows));
+    }
+
+    /**
+     * Performs a graceful shutdown of this client, flushing any pending requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        cache.invalidateAll();
+        return client.shutdown();
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return client.stats();
+    }
+
+    /**
+     * Get the underlying {@link Timer} used by the client.
+     *
+     * @return the underlying {@link Timer} used by the async client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return client.getTimer();
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return client.unlockRow(lock);
+    }
+
+    /**
+     * Gets the time-to-live, in nanoseconds, of cached results for the given table.
+     */
+    private long ttlFor(final byte[] table) {
+        if (!ttls.isEmpty()) {
+            final Long ttl = ttls.get(table);
+            if (ttl != null) {
+                return ttl;
+            }
+        }
+        return defaultTtl;
+    }
+
+    /**
+     * Gets a copy of the cached result of a get, if it has been cached and has not expired.
+     */
+    private ArrayList<KeyValue> lookup(final Row row, final Columns columns) {
+        final CachedRow cached = cache.getIfPresent(row);
+        if (cached != null) {
+            final CachedResult result = cached.results.get(columns);
+            if (result != null && result.expires - clock.tick() > 0) {
+                hits.incrementAndGet();
+                return new ArrayList<KeyValue>(result.values);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the result of a get, unless its row was invalidated while the get was in-flight.
+     */
+    private void populate(final Row row,
+                          final Columns columns,
+                          final ArrayList<KeyValue> values,
+                          final long generation,
+                          final long ttl) {
+        final int stripe = row.stripe();
+        if (generations.get(stripe) != generation) {
+            return;
+        }
+
+        final long now = clock.tick();
+        final CachedRow cached = cache.getIfPresent(row);
+        final CachedRow updated = cached == null
+                ? new CachedRow(row, columns, new CachedResult(values, now + ttl))
+                : cached.with(columns, new CachedResult(values, now + ttl), now);
+        bytes.addAndGet(updated.weight);
+        cache.put(row, updated);
+
+        // the row may have been invalidated while we were caching it
+        if (generations.get(stripe) != generation) {
+            cache.invalidate(row);
+        }
+    }
+
+    /**
+     * Invalidates the cached results for a row that is about to be modified.
+     */
+    private Row invalidate(final byte[] table, final byte[] key) {
+        final Row row = new Row(table, key);
+        invalidate(row);
+        return row;
+    }
+
+    /**
+     * Invalidates the cached results for each row that is about to be modified.
+     */
+    private <R extends HBaseRpc.HasTable & HBaseRpc.HasKey> List<Row> invalidateAll(
+            final List<R> requests) {
+        final List<Row> rows = new ArrayList<Row>(requests.size());
+        for (final R request : requests) {
+            rows.add(invalidate(request.table(), request.key()));
+        }
+        return rows;
+    }
+
+    private void invalidate(final Row row) {
+        generations.incrementAndGet(row.stripe());
+        cache.invalidate(row);
+    }
+
+    /**
+     * Invalidates the cached results for a row when a modification of it completes.
+     */
+    private class InvalidatingCallback<T> implements Callback<T, T> {
+
+        private final List<Row> rows;
+
+        InvalidatingCallback(final Row row) {
+            this(Collections.singletonList(row));
+        }
+
+        InvalidatingCallback(final List<Row> rows) {
+            this.rows = rows;
+        }
+
+        public T call(final T arg) {
+            for (final Row row : rows) {
+                invalidate(row);
+            }
+            return arg;
+        }
+    }
+
+    /**
+     * A get of a bulk get that missed the cache.
+     */
+    private static final class Miss {
+
+        private final int index;
+        private final Row row;
+        private final Columns columns;
+        private final long ttl;
+        private final long generation;
+
+        Miss(final int index,
+             final Row row,
+             final Columns columns,
+             final long ttl,
+             final long generation) {
+            this.index = index;
+            this.row = row;
+            this.columns = columns;
+            this.ttl = ttl;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Identifies a row of a table.
+     */
+    private static final class Row {
+
+        private final byte[] table;
+        private final byte[] key;
+        private final int hash;
+
+        Row(final byte[] table, final byte[] key) {
+            this.table = table;
+            this.key = key;
+            this.hash = 31 * Arrays.hashCode(table) + Arrays.hashCode(key);
+        }
+
+        int stripe() {
+            return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Row)) {
+                return false;
+            }
+            final Row row = (Row) o;
+            return hash == row.hash
+                    && Arrays.equals(key, row.key)
+                    && Arrays.equals(table, row.table);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Identifies the cells of a row selected by a {@link GetRequest}.
+     */
+    private static final class Columns {
+
+        private final byte[] family;
+        private final byte[][] qualifiers;
+        private final int maxVersions;
+        private final int hash;
+
+        Columns(final GetRequest request) {
+            this.family = request.family();
+            this.qualifiers = request.qualifiers();
+            this.maxVersions = request.maxVersions();
+            this.hash = 31 * (31 * Arrays.hashCode(family) + Arrays.deepHashCode(qualifiers))
+                    + maxVersions;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Columns)) {
+                return false;
+            }
+            final Columns columns = (Columns) o;
+            return hash == columns.hash
+                    && maxVersions == columns.maxVersions
+                    && Arrays.equals(family, columns.family)
+                    && Arrays.deepEquals(qualifiers, columns.qualifiers);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The cached result of a get, and when it expires.
+     */
+    private static final class CachedResult {
+
+        private final ArrayList<KeyValue> values;
+        private final long expires;
+        private final int weight;
+
+        CachedResult(final ArrayList<KeyValue> values, final long expires) {
+            this.values = new ArrayList<KeyValue>(values);
+            this.expires = expires;
+
+            this.weight = KeyValues.sizeOf(values);
+        }
+    }
+
+    /**
+     * The immutable set of cached results for a row.
+     */
+    private static final class CachedRow {
+
+        private final Map<Columns, CachedResult> results;
+        private final int overhead;
+        private final int weight;
+
+        CachedRow(final Row row, final Columns columns, final CachedResult result) {
+            this(KeyValues.OVERHEAD + row.table.length + row.key.length,
+                 Collections.singletonMap(columns, result));
+        }
+
+        private CachedRow(final int overhead, final Map<Columns, CachedResult> results) {
+            this.results = results;
+            this.overhead = overhead;
+
+            int weight = overhead;
+            for (final CachedResult result : results.values()) {
+                weight += result.weight;
+            }
+            this.weight = weight;
+        }
+
+        /**
+         * Creates a copy of this row with the given result added, and any expired results
+         * removed.
+         */
+        CachedRow with(final Columns columns, final CachedResult result, final long now) {
+            final Map<Columns, CachedResult> updated =
+                    new HashMap<Columns, CachedResult>(results.size() + 1);
+            for (final Map.Entry<Columns, CachedResult> entry : results.entrySet()) {
+                if (entry.getValue().expires - now > 0) {
+                    updated.put(entry.getKey(), entry.getValue());
+                }
+            }
+            updated.put(columns, result);
+            return new CachedRow(overhead, updated);
+        }
+    }
+}
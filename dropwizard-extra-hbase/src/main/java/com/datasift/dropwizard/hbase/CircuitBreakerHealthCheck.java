@@ -0,0 +1,49 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.limiter.CircuitBreaker;
+import com.datasift.dropwizard.hbase.limiter.CircuitBreakers;
+import com.yammer.metrics.core.HealthCheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link HealthCheck} for the {@link CircuitBreaker}s of an {@link HBaseClient}.
+ */
+public class CircuitBreakerHealthCheck extends HealthCheck {
+
+    private final CircuitBreakers breakers;
+
+    /**
+     * Checks the health of the given {@link CircuitBreakers}.
+     *
+     * @param breakers the {@link CircuitBreakers} to check the health of.
+     * @param name the name of this {@link HealthCheck}.
+     */
+    public CircuitBreakerHealthCheck(final CircuitBreakers breakers, final String name) {
+        super(String.format("%s-hbase-circuits", name));
+
+        this.breakers = breakers;
+    }
+
+    /**
+     * Checks whether any of the configured {@link CircuitBreakers} are open.
+     *
+     * @return {@link Result#healthy()} if no circuits are open; or {@link
+     *         Result#unhealthy(String)} listing the open circuits.
+     *
+     * @throws Exception if an unexpected Exception occurs while checking the circuits.
+     */
+    @Override
+    protected Result check() throws Exception {
+        final List<String> open = new ArrayList<String>();
+        for (final CircuitBreaker breaker : breakers.getCircuitBreakers()) {
+            if (breaker.getState() == CircuitBreaker.State.OPEN) {
+                open.add(breaker.getName());
+            }
+        }
+        return open.isEmpty()
+                ? Result.healthy()
+                : Result.unhealthy(String.format("Circuits open: %s", open));
+    }
+}
@@ -0,0 +1,560 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.limiter.CircuitBreaker;
+import com.datasift.dropwizard.hbase.limiter.CircuitBreakers;
+import com.datasift.dropwizard.hbase.limiter.RequestLimiter;
+import com.datasift.dropwizard.hbase.scanner.BoundedRowScanner;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An {@link HBaseClient} that fails requests fast for tables whose requests are failing.
+ * <p/>
+ * Each request is admitted by the {@link CircuitBreaker} for its table (and, optionally, its
+ * {@link Operation}), selected by {@link CircuitBreakers}. Once requests for a table start failing
+ * or slowing down, its circuit opens and further requests for it fail immediately with a {@link
+ * CircuitOpenException}, rather than holding permits and memory until they time out, which would
+ * slow down requests for healthy tables too.
+ * <p/>
+ * Requests that are not for a specific table, such as {@link #flush()}, are never broken.
+ *
+ * @see CircuitBreakerHealthCheck
+ */
+public class CircuitBreakingHBaseClient implements HBaseClient {
+
+    /**
+     * The underlying {@link HBaseClient} to dispatch requests.
+     */
+    private final HBaseClient client;
+
+    /**
+     * The {@link CircuitBreakers} selecting the {@link CircuitBreaker} for each request.
+     */
+    private final CircuitBreakers breakers;
+
+    /**
+     * Create a new instance that admits requests using the {@link CircuitBreaker} selected for
+     * each request by the given {@link CircuitBreakers} for the given underlying {@link
+     * HBaseClient} implementation.
+     *
+     * @param client the underlying {@link HBaseClient} implementation.
+     * @param breakers the {@link CircuitBreakers} to select a {@link CircuitBreaker} for each
+     *                 request.
+     */
+    public CircuitBreakingHBaseClient(final HBaseClient client, final CircuitBreakers breakers) {
+        this.client = client;
+        this.breakers = breakers;
+    }
+
+    /**
+     * Gets the {@link CircuitBreakers} selecting the {@link CircuitBreaker} for each request.
+     *
+     * @return the {@link CircuitBreakers} of this client.
+     */
+    public CircuitBreakers getCircuitBreakers() {
+        return breakers;
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return client.getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return client.getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        return client.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        return client.setIncrementBufferSize(incrementBufferSize);
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.CREATE, edit.table());
+        return limiter.submit(new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.create(edit);
+            }
+        });
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.INCREMENT, request.table());
+        return limiter.submit(new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.bufferIncrement(request);
+            }
+        });
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.INCREMENT, request.table());
+        return limiter.submit(new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.increment(request);
+            }
+        });
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request,
+                                    final Boolean durable) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.INCREMENT, request.table());
+        return limiter.submit(new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.increment(request, durable);
+            }
+        });
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit,
+                                           final byte[] expected) {
+        final RequestLimiter limiter =
+                breakers.forRequest(Operation.COMPARE_AND_SET, edit.table());
+        return limiter.submit(new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.compareAndSet(edit, expected);
+            }
+        });
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit     the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit,
+                                           final String expected) {
+        final RequestLimiter limiter =
+                breakers.forRequest(Operation.COMPARE_AND_SET, edit.table());
+        return limiter.submit(new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.compareAndSet(edit, expected);
+            }
+        });
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.DELETE, request.table());
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.delete(request);
+            }
+        });
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests.
+     * <p/>
+     * The whole batch is admitted as a single request.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.DELETE, tableOf(requests));
+        return limiter.submit(new Callback<Deferred<List<BulkResult<Object>>>, Object>() {
+            public Deferred<List<BulkResult<Object>>> call(final Object arg) {
+                return client.deleteAll(requests);
+            }
+        });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.ASSERTION, table);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableExists(table);
+            }
+        });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.ASSERTION, table);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableExists(table);
+            }
+        });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table,
+                                                    final byte[] family) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.ASSERTION, table);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableFamilyExists(table, family);
+            }
+        });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table,
+                                                    final String family) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.ASSERTION, table);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableFamilyExists(table, family);
+            }
+        });
+    }
+
+    /**
+     * Flushes all requests buffered on the client-side
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        final RequestLimiter limiter = breakers.forRequest(Operation.FLUSH, (byte[]) null);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.flush();
+            }
+        });
+    }
+
+    /**
+     * Retrieves the specified cells
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.GET, request.table());
+        return limiter.submit(new Callback<Deferred<ArrayList<KeyValue>>, Object>() {
+            public Deferred<ArrayList<KeyValue>> call(final Object arg) {
+                return client.get(request);
+            }
+        });
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     * <p/>
+     * The whole batch is admitted as a single request.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.GET, tableOf(requests));
+        return limiter.submit(
+                new Callback<Deferred<List<BulkResult<ArrayList<KeyValue>>>>, Object>() {
+                    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> call(final Object arg) {
+                        return client.getAll(requests);
+                    }
+                });
+    }
+
+    /**
+     * Aqcuire an explicit row lock.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.LOCK, request.table());
+        return limiter.submit(new Callback<Deferred<RowLock>, Object>() {
+            public Deferred<RowLock> call(final Object arg) {
+                return client.lockRow(request);
+            }
+        });
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return new BoundedRowScanner(client.scan(table),
+                                     breakers.forRequest(Operation.SCAN, table));
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return new BoundedRowScanner(client.scan(table),
+                                     breakers.forRequest(Operation.SCAN, table));
+    }
+
+    /**
+     * Store the specified cell(s).
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.PUT, request.table());
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.put(request);
+            }
+        });
+    }
+
+    /**
+     * Store the specified cell(s) for each of the given requests.
+     * <p/>
+     * The whole batch is admitted as a single request.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.PUT, tableOf(requests));
+        return limiter.submit(new Callback<Deferred<List<BulkResult<Object>>>, Object>() {
+            public Deferred<List<BulkResult<Object>>> call(final Object arg) {
+                return client.putAll(requests);
+            }
+        });
+    }
+
+    /**
+     * Performs a graceful shutdown of this client, flushing any pending requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        return client.shutdown();
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return client.stats();
+    }
+
+    /**
+     * Get the underlying {@link org.jboss.netty.util.Timer} used by the client.
+     *
+     * @return the underlying {@link org.jboss.netty.util.Timer} used by the async client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return client.getTimer();
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        final RequestLimiter limiter = breakers.forRequest(Operation.UNLOCK, (byte[]) null);
+        return limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.unlockRow(lock);
+            }
+        });
+    }
+
+    /**
+     * Gets the table shared by all of the given requests.
+     *
+     * @return the table of the requests; or null if they are not all for the same table.
+     */
+    private static byte[] tableOf(final List<? extends HBaseRpc.HasTable> requests) {
+        byte[] table = null;
+        for (final HBaseRpc.HasTable request : requests) {
+            if (table == null) {
+                table = request.table();
+            } else if (!Arrays.equals(table, request.table())) {
+                return null;
+            }
+        }
+        return table;
+    }
+}
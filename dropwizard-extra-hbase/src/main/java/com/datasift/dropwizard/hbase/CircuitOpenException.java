@@ -0,0 +1,24 @@
+package com.datasift.dropwizard.hbase;
+
+/**
+ * Thrown (via a {@link com.stumbleupon.async.Deferred}) when a request is refused because the
+ * circuit for its table is open.
+ * <p/>
+ * Since the circuit only closes again once the table has recovered, there is little point in
+ * retrying the request immediately.
+ *
+ * @see com.datasift.dropwizard.hbase.limiter.CircuitBreaker
+ */
+public class CircuitOpenException extends RequestRejectedException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new {@link CircuitOpenException} with the given reason.
+     *
+     * @param message the reason the request was rejected.
+     */
+    public CircuitOpenException(final String message) {
+        super(message);
+    }
+}
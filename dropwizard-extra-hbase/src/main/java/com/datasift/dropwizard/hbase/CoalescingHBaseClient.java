@@ -0,0 +1,648 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.GetRequestKey;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An {@link HBaseClient} that coalesces identical concurrent {@link #get(GetRequest) gets}.
+ * <p/>
+ * While a get is in-flight, any identical get (for the same table, row, family, qualifiers and
+ * maximum number of versions) waits for the result of the in-flight get rather than being
+ * dispatched itself. Every caller receives its own {@link Deferred} and its own copy of the
+ * result, so callbacks added by one caller can not affect another.
+ * <p/>
+ * A get never joins a get that was dispatched before a modification of its row through this
+ * client was made or completed, so a caller that reads its own writes never receives a result
+ * from before them.
+ * <p/>
+ * Gets made with an explicit {@link RowLock} should not be made through this client, as they may
+ * be coalesced with gets made without the lock.
+ * <p/>
+ * This implementation proxies all requests through an underlying {@link HBaseClient}; all other
+ * requests are dispatched to the underlying client verbatim.
+ */
+public class CoalescingHBaseClient implements HBaseClient {
+
+    /**
+     * The number of stripes used to detect modifications of rows while a get is in-flight.
+     */
+    private static final int STRIPES = 1024;
+
+    /**
+     * The underlying {@link HBaseClient} to dispatch requests.
+     */
+    private final HBaseClient client;
+
+    /**
+     * The gets currently in-flight, by the cells they request.
+     */
+    private final ConcurrentMap<GetRequestKey, Flight> flights =
+            new ConcurrentHashMap<GetRequestKey, Flight>();
+
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Creates a new {@link CoalescingHBaseClient} for the given underlying client.
+     * <p/>
+     * The {@link Metrics#defaultRegistry() default} {@link MetricsRegistry} will be used to
+     * register the {@link com.yammer.metrics.core.Metric}s.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     */
+    public CoalescingHBaseClient(final HBaseClient client) {
+        this(client, Metrics.defaultRegistry());
+    }
+
+    /**
+     * Creates a new {@link CoalescingHBaseClient} for the given underlying client, registering
+     * gauges for the number of gets in-flight and the number of gets coalesced with the given
+     * {@link MetricsRegistry}.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     */
+    public CoalescingHBaseClient(final HBaseClient client, final MetricsRegistry registry) {
+        this.client = client;
+
+        if (registry == null) {
+            return;
+        }
+
+        final Class<? extends HBaseClient> clazz = getClass();
+        registry.newGauge(clazz, "coalesced", "gets", new Gauge<Long>() {
+            @Override public Long value() {
+                return getCoalescedGets();
+            }
+        });
+        registry.newGauge(clazz, "inFlight", "gets", new Gauge<Integer>() {
+            @Override public Integer value() {
+                return getInFlightGets();
+            }
+        });
+    }
+
+    /**
+     * Gets the total number of gets that were coalesced with an identical in-flight get, and so
+     * did not require a request of their own.
+     *
+     * @return the total number of requests saved by coalescing.
+     */
+    public long getCoalescedGets() {
+        return coalesced.get();
+    }
+
+    /**
+     * Gets the number of distinct gets currently in-flight.
+     *
+     * @return the number of distinct gets in-flight.
+     */
+    public int getInFlightGets() {
+        return flights.size();
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return client.getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return client.getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        return client.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        return client.setIncrementBufferSize(incrementBufferSize);
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        final int stripe = retire(edit.table(), edit.key());
+        return client.create(edit).addBoth(new RetiringCallback<Boolean>(stripe));
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        final int stripe = retire(request.table(), request.key());
+        return client.bufferIncrement(request).addBoth(new RetiringCallback<Long>(stripe));
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        final int stripe = retire(request.table(), request.key());
+        return client.increment(request).addBoth(new RetiringCallback<Long>(stripe));
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        final int stripe = retire(request.table(), request.key());
+        return client.increment(request, durable).addBoth(new RetiringCallback<Long>(stripe));
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        final int stripe = retire(edit.table(), edit.key());
+        return client.compareAndSet(edit, expected).addBoth(new RetiringCallback<Boolean>(stripe));
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        final int stripe = retire(edit.table(), edit.key());
+        return client.compareAndSet(edit, expected).addBoth(new RetiringCallback<Boolean>(stripe));
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        final int stripe = retire(request.table(), request.key());
+        return client.delete(request).addBoth(new RetiringCallback<Object>(stripe));
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        final int[] stripes = retireAll(requests);
+        return client.deleteAll(requests)
+                .addBoth(new RetiringCallback<List<BulkResult<Object>>>(stripes));
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return client.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        return client.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        return client.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return client.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Flushes all requests buffered on the client-side
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        return client.flush();
+    }
+
+    /**
+     * Retrieves the specified cells, waiting for the result of an identical in-flight get if
+     * there is one.
+     * <p/>
+     * The result is always a new {@link ArrayList}, which may be modified by the caller without
+     * affecting other callers.
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        final GetRequestKey key = new GetRequestKey(request);
+        final int stripe = stripe(request.table(), request.key());
+        final Deferred<ArrayList<KeyValue>> result = new Deferred<ArrayList<KeyValue>>();
+        while (true) {
+            final long generation = generations.get(stripe);
+            final Flight existing = flights.get(key);
+            if (existing != null) {
+                if (existing.generation == generation && existing.join(result)) {
+                    coalesced.incrementAndGet();
+                    return result;
+                }
+                // the flight completed while we were joining it, or its row has since been
+                // modified, so it may not see the modification: retire it
+                final Flight flight = new Flight(key, generation, result);
+                if (flights.replace(key, existing, flight)) {
+                    flight.dispatch(request);
+                    return result;
+                }
+                continue;
+            }
+
+            final Flight flight = new Flight(key, generation, result);
+            if (flights.putIfAbsent(key, flight) == null) {
+                flight.dispatch(request);
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     * <p/>
+     * Bulk gets are dispatched to the underlying client verbatim, and are not coalesced.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        return client.getAll(requests);
+    }
+
+    /**
+     * Aqcuire an explicit row lock.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        return client.lockRow(request);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return client.scan(table);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return client.scan(table);
+    }
+
+    /**
+     * Store the specified cell(s).
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        final int stripe = retire(request.table(), request.key());
+        return client.put(request).addBoth(new RetiringCallback<Object>(stripe));
+    }
+
+    /**
+     * Store the specified cell(s) for each of the given requests.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        final int[] stripes = retireAll(requests);
+        return client.putAll(requests)
+                .addBoth(new RetiringCallback<List<BulkResult<Object>>>(stripes));
+    }
+
+    /**
+     * Performs a graceful shutdown of this client, flushing any pending requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        return client.shutdown();
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return client.stats();
+    }
+
+    /**
+     * Get the underlying {@link Timer} used by the client.
+     *
+     * @return the underlying {@link Timer} used by the async client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return client.getTimer();
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return client.unlockRow(lock);
+    }
+
+    /**
+     * Retires any in-flight gets of a row that is about to be modified.
+     */
+    private int retire(final byte[] table, final byte[] key) {
+        final int stripe = stripe(table, key);
+        generations.incrementAndGet(stripe);
+        return stripe;
+    }
+
+    /**
+     * Retires any in-flight gets of each row that is about to be modified.
+     */
+    private <R extends HBaseRpc.HasTable & HBaseRpc.HasKey> int[] retireAll(
+            final List<R> requests) {
+        final int[] stripes = new int[requests.size()];
+        for (int i = 0; i < stripes.length; i++) {
+            final R request = requests.get(i);
+            stripes[i] = retire(request.table(), request.key());
+        }
+        return stripes;
+    }
+
+    private static int stripe(final byte[] table, final byte[] key) {
+        final int hash = 31 * Arrays.hashCode(table) + Arrays.hashCode(key);
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Retires any in-flight gets of the modified rows when a modification completes.
+     */
+    private class RetiringCallback<T> implements Callback<T, T> {
+
+        private final int[] stripes;
+
+        RetiringCallback(final int... stripes) {
+            this.stripes = stripes;
+        }
+
+        public T call(final T arg) {
+            for (final int stripe : stripes) {
+                generations.incrementAndGet(stripe);
+            }
+            return arg;
+        }
+    }
+
+    /**
+     * A get that is in-flight, and the callers waiting for its result.
+     */
+    private class Flight implements Callback<Object, Object> {
+
+        private final GetRequestKey key;
+        private final long generation;
+        private final List<Deferred<ArrayList<KeyValue>>> waiters =
+                new ArrayList<Deferred<ArrayList<KeyValue>>>(1);
+        private boolean done = false;
+
+        Flight(final GetRequestKey key,
+               final long generation,
+               final Deferred<ArrayList<KeyValue>> leader) {
+            this.key = key;
+            this.generation = generation;
+            this.waiters.add(leader);
+        }
+
+        /**
+         * Dispatches the get to the underlying client.
+         */
+        @SuppressWarnings("unchecked")
+        void dispatch(final GetRequest request) {
+            Deferred<ArrayList<KeyValue>> response;
+            try {
+                response = client.get(request);
+            } catch (final RuntimeException e) {
+                response = Deferred.fromError(e);
+            }
+            // the result may be either the cells or an Exception
+            ((Deferred<Object>) (Deferred<?>) response).addBoth(this);
+        }
+
+        /**
+         * Waits for the result of this get.
+         *
+         * @return true if the caller will receive the result; false if the get has already
+         *         completed.
+         */
+        synchronized boolean join(final Deferred<ArrayList<KeyValue>> waiter) {
+            if (done) {
+                return false;
+            }
+            waiters.add(waiter);
+            return true;
+        }
+
+        /**
+         * Completes the get, handing each waiting caller its own copy of the result.
+         */
+        @SuppressWarnings("unchecked")
+        public Object call(final Object result) {
+            flights.remove(key, this);
+            synchronized (this) {
+                done = true;
+            }
+
+            boolean first = true;
+            for (final Deferred<ArrayList<KeyValue>> waiter : waiters) {
+                if (result instanceof ArrayList && !first) {
+                    waiter.callback(new ArrayList<KeyValue>((ArrayList<KeyValue>) result));
+                } else {
+                    waiter.callback(result);
+                }
+                first = false;
+            }
+            return result;
+        }
+    }
+}
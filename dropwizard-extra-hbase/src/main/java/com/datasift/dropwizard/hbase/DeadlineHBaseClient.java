@@ -0,0 +1,516 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.scanner.DeadlineRowScanner;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.Deadlines;
+import com.google.common.base.Charsets;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link HBaseClient} that fails requests that do not complete within a deadline.
+ * <p/>
+ * Without a deadline, a request to a hung region server may never complete. This client fails
+ * each request with a {@link RequestTimeoutException} once its timeout, chosen by {@link
+ * Deadlines} for its table and {@link Operation}, has elapsed. Deadlines are scheduled on the
+ * {@link HBaseClient#getTimer() Timer} of the underlying client.
+ * <p/>
+ * When wrapped by a {@link BoundedHBaseClient}, the permit held by a request is released as soon
+ * as it times out, so hung requests can not exhaust the permits.
+ * <p/>
+ * {@link #bufferIncrement(AtomicIncrementRequest) Buffered increments} have no deadline, as they
+ * only complete once the increment buffer is flushed; the {@link #flush() flush} itself does.
+ * A row lock acquired after {@link #lockRow(RowLockRequest) lockRow} has timed out is released.
+ * <p/>
+ * This implementation proxies all requests through an underlying {@link HBaseClient}.
+ */
+public class DeadlineHBaseClient implements HBaseClient {
+
+    /**
+     * The underlying {@link HBaseClient} to dispatch requests.
+     */
+    private final HBaseClient client;
+
+    /**
+     * The {@link Deadlines} imposing a deadline on each request.
+     */
+    private final Deadlines deadlines;
+
+    /**
+     * Creates a new {@link DeadlineHBaseClient} that gives every request the given timeout.
+     * <p/>
+     * The {@link Metrics#defaultRegistry() default} {@link MetricsRegistry} will be used to
+     * register the {@link com.yammer.metrics.core.Metric}s.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param timeout the timeout for each request.
+     */
+    public DeadlineHBaseClient(final HBaseClient client, final Duration timeout) {
+        this(client,
+             timeout,
+             Collections.<Operation, Duration>emptyMap(),
+             Collections.<String, Duration>emptyMap(),
+             Metrics.defaultRegistry());
+    }
+
+    /**
+     * Creates a new {@link DeadlineHBaseClient} with timeouts for some operations and tables,
+     * registering a gauge for the number of timed out requests with the given {@link
+     * MetricsRegistry}.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param timeout the timeout for requests without a specific timeout.
+     * @param operations the timeout for each {@link Operation}.
+     * @param tables the timeout for each table, by table name.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     */
+    public DeadlineHBaseClient(final HBaseClient client,
+                               final Duration timeout,
+                               final Map<Operation, Duration> operations,
+                               final Map<String, Duration> tables,
+                               final MetricsRegistry registry) {
+        this.client = client;
+        this.deadlines = new Deadlines(client.getTimer(), timeout, operations, tables);
+
+        if (registry == null) {
+            return;
+        }
+        registry.newGauge(getClass(), "timeouts", "requests", new Gauge<Long>() {
+            @Override public Long value() {
+                return getTimeouts();
+            }
+        });
+    }
+
+    /**
+     * Gets the total number of requests that have missed their deadline.
+     *
+     * @return the number of requests that have timed out.
+     */
+    public long getTimeouts() {
+        return deadlines.getTimeouts();
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return client.getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return client.getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        return client.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        return client.setIncrementBufferSize(incrementBufferSize);
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        return deadlines.within(client.create(edit), Operation.CREATE, edit.table());
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        return client.bufferIncrement(request);
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        return deadlines.within(client.increment(request), Operation.INCREMENT, request.table());
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        return deadlines.within(
+                client.increment(request, durable), Operation.INCREMENT, request.table());
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        return deadlines.within(
+                client.compareAndSet(edit, expected), Operation.COMPARE_AND_SET, edit.table());
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        return deadlines.within(
+                client.compareAndSet(edit, expected), Operation.COMPARE_AND_SET, edit.table());
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        return deadlines.within(client.delete(request), Operation.DELETE, request.table());
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        return deadlines.within(client.deleteAll(requests), Operation.DELETE, tableOf(requests));
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return deadlines.within(client.ensureTableExists(table), Operation.ASSERTION, table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        return deadlines.within(
+                client.ensureTableExists(table),
+                Operation.ASSERTION,
+                table.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        return deadlines.within(
+                client.ensureTableFamilyExists(table, family), Operation.ASSERTION, table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return deadlines.within(
+                client.ensureTableFamilyExists(table, family),
+                Operation.ASSERTION,
+                table.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Flushes all requests buffered on the client-side
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        return deadlines.within(client.flush(), Operation.FLUSH, null);
+    }
+
+    /**
+     * Retrieves the specified cells.
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        return deadlines.within(client.get(request), Operation.GET, request.table());
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        return deadlines.within(client.getAll(requests), Operation.GET, tableOf(requests));
+    }
+
+    /**
+     * Acquire an explicit row lock.
+     * <p/>
+     * If the lock is acquired after the request has timed out, it is released immediately.
+     *
+     * @param request the row(s) to request a lock for.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        final Deferred<RowLock> lock = client.lockRow(request);
+        return deadlines.within(lock, Operation.LOCK, request.table())
+                .addErrback(new Callback<Object, Exception>() {
+                    public Object call(final Exception e) {
+                        if (e instanceof RequestTimeoutException) {
+                            lock.addCallback(new Callback<Object, RowLock>() {
+                                public Object call(final RowLock lock) {
+                                    return client.unlockRow(lock);
+                                }
+                            });
+                        }
+                        return e;
+                    }
+                });
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return new DeadlineRowScanner(client.scan(table), deadlines, table);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return new DeadlineRowScanner(
+                client.scan(table), deadlines, table.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Store the specified cell(s).
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        return deadlines.within(client.put(request), Operation.PUT, request.table());
+    }
+
+    /**
+     * Store the specified cell(s) for each of the given requests.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        return deadlines.within(client.putAll(requests), Operation.PUT, tableOf(requests));
+    }
+
+    /**
+     * Performs a graceful shutdown of this client, flushing any pending requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        return client.shutdown();
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return client.stats();
+    }
+
+    /**
+     * Get the underlying {@link Timer} used by the client.
+     *
+     * @return the underlying {@link Timer} used by the async client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return client.getTimer();
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return deadlines.within(client.unlockRow(lock), Operation.UNLOCK, null);
+    }
+
+    /**
+     * Gets the table common to all the given requests.
+     *
+     * @return the table of all the requests; or null if they are not all for the same table.
+     */
+    private static byte[] tableOf(final List<? extends HBaseRpc.HasTable> requests) {
+        byte[] table = null;
+        for (final HBaseRpc.HasTable request : requests) {
+            if (table == null) {
+                table = request.table();
+            } else if (!Arrays.equals(table, request.table())) {
+                return null;
+            }
+        }
+        return table;
+    }
+}
@@ -8,6 +8,7 @@ import org.hbase.async.*;
 import org.jboss.netty.util.Timer;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Client for interacting with an HBase cluster.
@@ -142,6 +143,20 @@ public interface HBaseClient {
      */
     public Deferred<Object> delete(DeleteRequest request);
 
+    /**
+     * Deletes the specified cells for each of the given requests.
+     * <p/>
+     * Each request succeeds or fails independently; the failure of one request does not fail
+     * the others.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(List<DeleteRequest> requests);
+
     /**
      * Ensures that a specific table exists.
      *
@@ -216,6 +231,20 @@ public interface HBaseClient {
      */
     public Deferred<ArrayList<KeyValue>> get(GetRequest request);
 
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     * <p/>
+     * Each request succeeds or fails independently; the failure of one request does not fail
+     * the others.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(List<GetRequest> requests);
+
     /**
      * Aqcuire an explicit row lock.
      *
@@ -260,6 +289,20 @@ public interface HBaseClient {
      */
     public Deferred<Object> put(PutRequest request);
 
+    /**
+     * Store the specified cell(s) for each of the given requests.
+     * <p/>
+     * Each request succeeds or fails independently; the failure of one request does not fail
+     * the others.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(List<PutRequest> requests);
+
     /**
      * Performs a graceful shutdown of this client, flushing any pending requests.
      *
@@ -1,10 +1,48 @@
 package com.datasift.dropwizard.hbase;
 
 import com.datasift.dropwizard.hbase.config.HBaseClientConfiguration;
+import com.datasift.dropwizard.hbase.config.HedgedHBaseClientConfiguration;
+import com.datasift.dropwizard.hbase.interceptor.DeadlineInterceptor;
+import com.datasift.dropwizard.hbase.interceptor.Interceptor;
+import com.datasift.dropwizard.hbase.interceptor.InterceptorChain;
+import com.datasift.dropwizard.hbase.interceptor.TimingInterceptor;
+import com.datasift.dropwizard.hbase.limiter.AdaptiveRequestLimiter;
+import com.datasift.dropwizard.hbase.limiter.BlockingRequestLimiter;
+import com.datasift.dropwizard.hbase.limiter.BulkheadRequestLimiter;
+import com.datasift.dropwizard.hbase.limiter.CircuitBreakers;
+import com.datasift.dropwizard.hbase.limiter.Bulkheads;
+import com.datasift.dropwizard.hbase.limiter.QueuingRequestLimiter;
+import com.datasift.dropwizard.hbase.limiter.RateLimits;
+import com.datasift.dropwizard.hbase.limiter.RequestLimiter;
+import com.datasift.dropwizard.hbase.limiter.SchedulingRequestLimiter;
+import com.datasift.dropwizard.hbase.memory.InjectedLatency;
+import com.datasift.dropwizard.hbase.metrics.CacheInstrumentation;
+import com.datasift.dropwizard.hbase.metrics.ClientStatsSampler;
+import com.datasift.dropwizard.hbase.metrics.HBaseInstrumentation;
+import com.datasift.dropwizard.hbase.metrics.ScopedMetricsRegistry;
+import com.datasift.dropwizard.hbase.metrics.TableInstrumentation;
+import com.datasift.dropwizard.hbase.util.RetryBudget;
 import com.datasift.dropwizard.zookeeper.config.ZooKeeperConfiguration;
 import com.datasift.dropwizard.zookeeper.health.ZooKeeperHealthCheck;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.yammer.dropwizard.config.Environment;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
 import org.apache.zookeeper.ZooKeeper;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A factory for creating and managing {@link HBaseClient} instances.
@@ -53,15 +91,25 @@ public class HBaseClientFactory {
      *         configuration}.
      */
     public HBaseClient build(final HBaseClientConfiguration configuration, final String name) {
-        final ZooKeeperConfiguration zkConfiguration = configuration.getZookeeper();
-
-        final HBaseClient proxy = new HBaseClientProxy(
-                new org.hbase.async.HBaseClient(
-                        zkConfiguration.getQuorumSpec(),
-                        zkConfiguration.getNamespace().toString()));
+        return build(configuration, name, Metrics.defaultRegistry());
+    }
 
-        // optionally instrument and bound requests for the client
-        final HBaseClient client = instrument(configuration, boundRequests(configuration, proxy));
+    /**
+     * Builds an {@link HBaseClient} instance from the specified {@link HBaseClientConfiguration}
+     * with the given {@code name}, registering its metrics with the given {@link MetricsRegistry}.
+     *
+     * @param configuration the {@link HBaseClientConfiguration} for the {@link HBaseClient}.
+     * @param name the name for the {@link HBaseClient}.
+     * @param registry the {@link MetricsRegistry} to register metrics with.
+     *
+     * @return an {@link HBaseClient}, managed and configured according to the {@code
+     *         configuration}.
+     */
+    private HBaseClient build(final HBaseClientConfiguration configuration,
+                              final String name,
+                              final MetricsRegistry registry) {
+        final HBaseClient client = decorate(
+                configuration, name, registry, connect(configuration));
 
         // configure client
         client.setFlushInterval(configuration.getFlushInterval());
@@ -78,47 +126,612 @@ public class HBaseClientFactory {
         return client;
     }
 
+    /**
+     * Builds an {@link HBaseClient} that hedges reads from a primary cluster against a replica,
+     * from the specified {@link HedgedHBaseClientConfiguration}, with the given {@code name}.
+     * <p/>
+     * A client is {@link #build(HBaseClientConfiguration, String) built} for each cluster, named
+     * "{@code name}-primary" and "{@code name}-replica", each managed and health checked as usual;
+     * the {@link HedgingHBaseClient} dispatches requests to them. The metrics of each are scoped
+     * by its name, so that those of the primary and the replica remain distinct.
+     *
+     * @param configuration the {@link HedgedHBaseClientConfiguration} for the {@link HBaseClient}.
+     * @param name the name for the {@link HBaseClient}.
+     *
+     * @return an {@link HBaseClient} that hedges reads against the replica.
+     */
+    public HBaseClient build(final HedgedHBaseClientConfiguration configuration,
+                             final String name) {
+        final String primaryName = name + "-primary";
+        final String replicaName = name + "-replica";
+        final HBaseClient primary = build(configuration.getPrimary(), primaryName,
+                new ScopedMetricsRegistry(Metrics.defaultRegistry(), primaryName));
+        final HBaseClient replica = build(configuration.getReplica(), replicaName,
+                new ScopedMetricsRegistry(Metrics.defaultRegistry(), replicaName));
+        return new HedgingHBaseClient(
+                primary,
+                replica,
+                configuration.getHedgePercentile(),
+                configuration.getMinHedgeDelay(),
+                new RetryBudget(
+                        configuration.getHedgeBudget(),
+                        HedgingHBaseClient.DEFAULT_MAX_SAVED_HEDGES),
+                newExecutor(name),
+                Metrics.defaultRegistry(),
+                Clock.defaultClock());
+    }
+
+    /**
+     * Builds the underlying {@link HBaseClient} according to the given {@link
+     * HBaseClientConfiguration}.
+     * <p/>
+     * If the configuration is {@link HBaseClientConfiguration#isInMemory() in memory}, this will
+     * build an {@link InMemoryHBaseClient} of the configured tables, that injects the configured
+     * latency into each request; otherwise, it will build an {@link HBaseClientProxy} for a
+     * client of the configured cluster; or a {@link PooledHBaseClient} of them, if the configured
+     * {@link HBaseClientConfiguration#getPoolSize() pool size} is more than one.
+     *
+     * @param configuration an {@link HBaseClientConfiguration} defining the {@link HBaseClient}s
+     *                      parameters.
+     * @return the underlying {@link HBaseClient} to dispatch requests to.
+     */
+    private HBaseClient connect(final HBaseClientConfiguration configuration) {
+        if (configuration.isInMemory()) {
+            final Map<Operation, Duration> operations =
+                    new EnumMap<Operation, Duration>(Operation.class);
+            for (final Map.Entry<String, Duration> entry
+                    : configuration.getInMemoryLatencyByOperation().entrySet()) {
+                operations.put(Operation.forName(entry.getKey()), entry.getValue());
+            }
+
+            final Timer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS);
+            final InMemoryHBaseClient client = new InMemoryHBaseClient(timer, new InjectedLatency(
+                    timer,
+                    configuration.getInMemoryLatencyDistribution(),
+                    configuration.getInMemoryLatency(),
+                    operations));
+            for (final String table : configuration.getInMemoryTables()) {
+                client.createTable(table);
+            }
+            return client;
+        }
+
+        final ZooKeeperConfiguration zkConfiguration = configuration.getZookeeper();
+        final List<HBaseClient> clients = new ArrayList<HBaseClient>();
+        for (int i = 0; i < configuration.getPoolSize(); i++) {
+            clients.add(new HBaseClientProxy(
+                    new org.hbase.async.HBaseClient(
+                            zkConfiguration.getQuorumSpec(),
+                            zkConfiguration.getNamespace().toString()),
+                    configuration.getScanBatchSize(),
+                    configuration.getScanLatencyBudget()));
+        }
+        return clients.size() == 1 ? clients.get(0) : new PooledHBaseClient(clients);
+    }
+
+    /**
+     * Decorates the given {@link HBaseClient} according to the given {@link
+     * HBaseClientConfiguration}.
+     * <p/>
+     * The decorators are the same as those of {@link #build(HBaseClientConfiguration, String)}, but
+     * the resulting {@link HBaseClient} is neither configured nor managed, so that they may be
+     * layered over any implementation of {@link HBaseClient}.
+     *
+     * @param configuration the {@link HBaseClientConfiguration} for the {@link HBaseClient}.
+     * @param name the name for the {@link HBaseClient}.
+     * @param client the underlying {@link HBaseClient} to decorate.
+     *
+     * @return an {@link HBaseClient} that satisfies the configuration, wrapping the given client.
+     */
+    public HBaseClient decorate(final HBaseClientConfiguration configuration,
+                                final String name,
+                                final HBaseClient client) {
+        return decorate(configuration, name, Metrics.defaultRegistry(), client);
+    }
+
+    /**
+     * Decorates the given {@link HBaseClient} according to the given {@link
+     * HBaseClientConfiguration}, registering the metrics of its decorators with the given {@link
+     * MetricsRegistry}.
+     *
+     * @param configuration the {@link HBaseClientConfiguration} for the {@link HBaseClient}.
+     * @param name the name for the {@link HBaseClient}.
+     * @param metrics the {@link MetricsRegistry} to register metrics with, if instrumented.
+     * @param client the underlying {@link HBaseClient} to decorate.
+     *
+     * @return an {@link HBaseClient} that satisfies the configuration, wrapping the given client.
+     */
+    private HBaseClient decorate(final HBaseClientConfiguration configuration,
+                                 final String name,
+                                 final MetricsRegistry metrics,
+                                 final HBaseClient client) {
+        // work scheduled by the decorators is run off the client's Timer, by an Executor built
+        // only if a decorator needs one
+        final Supplier<Executor> executor = Suppliers.memoize(new Supplier<Executor>() {
+            public Executor get() {
+                return newExecutor(name);
+            }
+        });
+
+        // decorators register no metrics unless instrumented
+        final MetricsRegistry registry = configuration.isInstrumented() ? metrics : null;
+
+        // optionally bound, instrument and time out each request dispatched, with one chain
+        final HBaseClient dispatched = intercept(configuration, registry, client);
+
+        // optionally write behind, aggregate, cache, coalesce, retry, rate limit and break circuits
+        return writeBehind(configuration, executor, registry, aggregate(
+                configuration, executor, registry, cache(configuration, registry, coalesce(
+                        configuration, registry, retry(configuration, executor, registry, rateLimit(
+                                configuration, executor, registry, breakCircuits(
+                                        configuration, name, registry, dispatched)))))));
+    }
+
     /**
      * Builds a new {@link HBaseClient} according to the given {@link HBaseClientConfiguration}.
      * <p/>
-     * If instrumentation {@link HBaseClientConfiguration#instrumented is enabled} in the
-     * configuration, this will build an {@link InstrumentedHBaseClient} wrapping the given {@link
-     * HBaseClient}.
+     * If any {@link HBaseClientConfiguration#writeBehindTables} are given in the configuration,
+     * this will build a {@link WriteBehindHBaseClient} wrapping the given {@link HBaseClient}, so
+     * that only the merged puts to those tables are bounded and instrumented.
      * <p/>
-     * If instrumentation is not enabled, the given {@link HBaseClient} will be returned verbatim.
+     * If there are none, the given {@link HBaseClient} will be returned verbatim.
      *
      * @param configuration an {@link HBaseClientConfiguration} defining the {@link HBaseClient}s
      *                      parameters.
+     * @param executor supplies the {@link Executor} to run flushes with.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
      * @param client an underlying {@link HBaseClient} implementation.
-     * @return an {@link HBaseClient} that satisfies the configuration of instrumentation.
+     * @return an {@link HBaseClient} that satisfies the configuration of write-behind puts.
      */
-    private HBaseClient instrument(final HBaseClientConfiguration configuration,
-                                   final HBaseClient client) {
-        return configuration.isInstrumented()
-                ? new InstrumentedHBaseClient(client)
-                : client;
+    private HBaseClient writeBehind(final HBaseClientConfiguration configuration,
+                                    final Supplier<Executor> executor,
+                                    final MetricsRegistry registry,
+                                    final HBaseClient client) {
+        if (configuration.getWriteBehindTables().isEmpty()) {
+            return client;
+        }
+        return new WriteBehindHBaseClient(
+                client,
+                configuration.getWriteBehindTables(),
+                configuration.getWriteBehindFlushInterval(),
+                configuration.getWriteBehindFlushSize(),
+                configuration.getWriteBehindBufferSize(),
+                executor.get(),
+                registry);
     }
 
     /**
      * Builds a new {@link HBaseClient} according to the given {@link HBaseClientConfiguration}.
      * <p/>
-     * If the {@link HBaseClientConfiguration#maxConcurrentRequests} is non-zero in the
-     * configuration, this will build a {@link BoundedHBaseClient} that wraps the given client.
+     * If {@link HBaseClientConfiguration#aggregateIncrements} is enabled in the configuration,
+     * this will build an {@link AggregatingHBaseClient} wrapping the given {@link HBaseClient}, so
+     * that only the aggregated increments are bounded and instrumented.
+     * <p/>
+     * If it is not enabled, the given {@link HBaseClient} will be returned verbatim.
+     *
+     * @param configuration an {@link HBaseClientConfiguration} defining the {@link HBaseClient}s
+     *                      parameters.
+     * @param executor supplies the {@link Executor} to run flushes with.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     * @param client an underlying {@link HBaseClient} implementation.
+     * @return an {@link HBaseClient} that satisfies the configuration of increment aggregation.
+     */
+    private HBaseClient aggregate(final HBaseClientConfiguration configuration,
+                                  final Supplier<Executor> executor,
+                                  final MetricsRegistry registry,
+                                  final HBaseClient client) {
+        if (!configuration.isAggregateIncrements()) {
+            return client;
+        }
+        return new AggregatingHBaseClient(
+                client,
+                configuration.getIncrementFlushInterval(),
+                configuration.getMaxAggregatedIncrements(),
+                configuration.getMaxPendingIncrements(),
+                executor.get(),
+                registry);
+    }
+
+    /**
+     * Builds a new {@link HBaseClient} according to the given {@link HBaseClientConfiguration}.
      * <p/>
-     * If {@link HBaseClientConfiguration#maxConcurrentRequests} is zero, the given {@link
-     * HBaseClient} will be returned verbatim.
+     * If the {@link HBaseClientConfiguration#cacheSize} is non-zero in the configuration, this
+     * will build a {@link CachingHBaseClient} wrapping the given {@link HBaseClient}, so that only
+     * gets that miss the cache are bounded and instrumented. If instrumentation is enabled, the
+     * effectiveness of the cache is reported by a {@link CacheInstrumentation}.
+     * <p/>
+     * If the {@link HBaseClientConfiguration#cacheSize} is zero, the given {@link HBaseClient}
+     * will be returned verbatim.
      *
      * @param configuration an {@link HBaseClientConfiguration} defining the {@link HBaseClient}s
      *                      parameters.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
      * @param client an underlying {@link HBaseClient} implementation.
+     * @return an {@link HBaseClient} that satisfies the configuration of caching.
+     */
+    private HBaseClient cache(final HBaseClientConfiguration configuration,
+                              final MetricsRegistry registry,
+                              final HBaseClient client) {
+        if (configuration.getCacheSize().toBytes() <= 0) {
+            return client;
+        }
+
+        final CachingHBaseClient cache = new CachingHBaseClient(
+                client,
+                configuration.getCacheSize(),
+                configuration.getCacheTtl(),
+                configuration.getCacheTtlByTable());
+        if (configuration.isInstrumented()) {
+            new CacheInstrumentation(cache, registry);
+        }
+        return cache;
+    }
+
+    /**
+     * Builds a new {@link HBaseClient} according to the given {@link HBaseClientConfiguration}.
+     * <p/>
+     * If {@link HBaseClientConfiguration#coalesceGets} is enabled in the configuration, this will
+     * build a {@link CoalescingHBaseClient} wrapping the given {@link HBaseClient}, so that only
+     * one of each set of identical concurrent gets is bounded and instrumented.
+     * <p/>
+     * If it is not enabled, the given {@link HBaseClient} will be returned verbatim.
      *
-     * @return an {@link HBaseClient} that satisfies the configuration of the maximum concurrent
-     *         requests.
+     * @param configuration an {@link HBaseClientConfiguration} defining the {@link HBaseClient}s
+     *                      parameters.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     * @param client an underlying {@link HBaseClient} implementation.
+     * @return an {@link HBaseClient} that satisfies the configuration of coalescing.
      */
-    private HBaseClient boundRequests(final HBaseClientConfiguration configuration,
+    private HBaseClient coalesce(final HBaseClientConfiguration configuration,
+                                 final MetricsRegistry registry,
+                                 final HBaseClient client) {
+        if (!configuration.isCoalesceGets()) {
+            return client;
+        }
+        return new CoalescingHBaseClient(client, registry);
+    }
+
+    /**
+     * Builds a new {@link HBaseClient} according to the given {@link HBaseClientConfiguration}.
+     * <p/>
+     * If the {@link HBaseClientConfiguration#maxRetries} is non-zero in the configuration, this
+     * will build a {@link RetryingHBaseClient} wrapping the given {@link HBaseClient}, so that
+     * each attempt is separately bounded and instrumented.
+     * <p/>
+     * If the {@link HBaseClientConfiguration#maxRetries} is zero, the given {@link HBaseClient}
+     * will be returned verbatim.
+     *
+     * @param configuration an {@link HBaseClientConfiguration} defining the {@link HBaseClient}s
+     *                      parameters.
+     * @param executor supplies the {@link Executor} to dispatch retries with.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     * @param client an underlying {@link HBaseClient} implementation.
+     * @return an {@link HBaseClient} that satisfies the configuration of retries.
+     */
+    private HBaseClient retry(final HBaseClientConfiguration configuration,
+                              final Supplier<Executor> executor,
+                              final MetricsRegistry registry,
+                              final HBaseClient client) {
+        if (configuration.getMaxRetries() <= 0) {
+            return client;
+        }
+        return new RetryingHBaseClient(
+                client,
+                configuration.getMaxRetries(),
+                configuration.getRetryBackoff(),
+                configuration.getMaxRetryBackoff(),
+                new RetryBudget(
+                        configuration.getRetryBudget(),
+                        RetryingHBaseClient.DEFAULT_MAX_SAVED_RETRIES),
+                executor.get(),
+                registry);
+    }
+
+    /**
+     * Builds a new {@link HBaseClient} according to the given {@link HBaseClientConfiguration}.
+     * <p/>
+     * If any of {@link HBaseClientConfiguration#maxRequestRateByTable}, {@link
+     * HBaseClientConfiguration#maxRequestRateByOperation} or {@link
+     * HBaseClientConfiguration#maxPutRateByTable} are given in the configuration, this will build
+     * a {@link RateLimitedHBaseClient} wrapping the given {@link HBaseClient}, so that each retry
+     * is also limited.
+     * <p/>
+     * If none are given, the given {@link HBaseClient} will be returned verbatim.
+     *
+     * @param configuration an {@link HBaseClientConfiguration} defining the {@link HBaseClient}s
+     *                      parameters.
+     * @param executor supplies the {@link Executor} to dispatch delayed requests with.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     * @param client an underlying {@link HBaseClient} implementation.
+     * @return an {@link HBaseClient} that satisfies the configuration of rate limits.
+     */
+    private HBaseClient rateLimit(final HBaseClientConfiguration configuration,
+                                  final Supplier<Executor> executor,
+                                  final MetricsRegistry registry,
+                                  final HBaseClient client) {
+        if (configuration.getMaxRequestRateByTable().isEmpty()
+                && configuration.getMaxRequestRateByOperation().isEmpty()
+                && configuration.getMaxPutRateByTable().isEmpty()) {
+            return client;
+        }
+
+        final RateLimits limits = new RateLimits(
+                configuration.getRateLimitBurst(),
+                configuration.getMaxRateLimitDelay(),
+                configuration.isBlockOnRateLimit(),
+                client.getTimer(),
+                executor.get(),
+                registry,
+                Clock.defaultClock());
+        for (final Map.Entry<String, Double> entry
+                : configuration.getMaxRequestRateByTable().entrySet()) {
+            limits.setRequestRate(entry.getKey(), entry.getValue());
+        }
+        for (final Map.Entry<String, Double> entry
+                : configuration.getMaxRequestRateByOperation().entrySet()) {
+            limits.setRequestRate(Operation.forName(entry.getKey()), entry.getValue());
+        }
+        for (final Map.Entry<String, Size> entry
+                : configuration.getMaxPutRateByTable().entrySet()) {
+            limits.setPutRate(entry.getKey(), entry.getValue());
+        }
+
+        return new RateLimitedHBaseClient(client, limits);
+    }
+
+    /**
+     * Builds a new {@link HBaseClient} according to the given {@link HBaseClientConfiguration}.
+     * <p/>
+     * If {@link HBaseClientConfiguration#circuitBreaking} is enabled in the configuration, this
+     * will build a {@link CircuitBreakingHBaseClient} wrapping the given {@link HBaseClient}, so
+     * that requests for failing tables fail fast without being bounded or instrumented. A {@link
+     * CircuitBreakerHealthCheck} reports any open circuits.
+     * <p/>
+     * If it is not enabled, the given {@link HBaseClient} will be returned verbatim.
+     *
+     * @param configuration an {@link HBaseClientConfiguration} defining the {@link HBaseClient}s
+     *                      parameters.
+     * @param name the name for the {@link HBaseClient}.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     * @param client an underlying {@link HBaseClient} implementation.
+     * @return an {@link HBaseClient} that satisfies the configuration of circuit breaking.
+     */
+    private HBaseClient breakCircuits(final HBaseClientConfiguration configuration,
+                                      final String name,
+                                      final MetricsRegistry registry,
                                       final HBaseClient client) {
-        return configuration.getMaxConcurrentRequests() > 0
-                ? new BoundedHBaseClient(client, configuration.getMaxConcurrentRequests())
-                : client;
+        if (!configuration.isCircuitBreaking()) {
+            return client;
+        }
+
+        final CircuitBreakers breakers = new CircuitBreakers(
+                configuration.isCircuitBreakingByOperation(),
+                configuration.getCircuitErrorRate(),
+                configuration.getCircuitSlowRate(),
+                configuration.getCircuitSlowTime(),
+                configuration.getCircuitMinRequests(),
+                configuration.getCircuitWindow(),
+                configuration.getCircuitOpenTime(),
+                configuration.getCircuitProbes(),
+                registry);
+        environment.addHealthCheck(new CircuitBreakerHealthCheck(breakers, name));
+        return new CircuitBreakingHBaseClient(client, breakers);
+    }
+
+    /**
+     * Builds a new {@link HBaseClient} according to the given {@link HBaseClientConfiguration}.
+     * <p/>
+     * If instrumentation, a {@link HBaseClientConfiguration#maxConcurrentRequests maximum number
+     * of concurrent requests}, or any request timeout is given in the configuration, this will
+     * build an {@link InterceptingHBaseClient} wrapping the given {@link HBaseClient}, with a
+     * single {@link InterceptorChain} that bounds, instruments and times out each request, so
+     * that each request is completed by one callback, however many of these are configured:
+     * <ul>
+     *     <li>requests are admitted by the {@link Bulkheads} built by {@link
+     *     #newBulkheads(HBaseClientConfiguration, MetricsRegistry, HBaseClient)};</li>
+     *     <li>a {@link TimingInterceptor} records the latency of requests with the configured
+     *     {@link HBaseClientConfiguration#latencyRecorder latencyRecorder}, also for up to {@link
+     *     HBaseClientConfiguration#maxInstrumentedTables maxInstrumentedTables} tables;</li>
+     *     <li>a {@link DeadlineInterceptor} fails requests that miss their deadline. Since
+     *     deadlines only start once a request has been admitted, requests that time out release
+     *     their permit immediately.</li>
+     * </ul>
+     * The metrics of the chain keep the names of those of the {@link InstrumentedHBaseClient},
+     * {@link BoundedHBaseClient} and {@link DeadlineHBaseClient} decorators it replaces.
+     * <p/>
+     * If none are given, the given {@link HBaseClient} will be returned verbatim.
+     *
+     * @param configuration an {@link HBaseClientConfiguration} defining the {@link HBaseClient}s
+     *                      parameters.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     * @param client an underlying {@link HBaseClient} implementation.
+     * @return an {@link HBaseClient} that satisfies the configuration of instrumentation, the
+     *         maximum concurrent requests and request timeouts.
+     */
+    private HBaseClient intercept(final HBaseClientConfiguration configuration,
+                                  final MetricsRegistry registry,
+                                  final HBaseClient client) {
+        final Bulkheads bulkheads = newBulkheads(configuration, registry, client);
+        final boolean timeouts = configuration.getRequestTimeout().getQuantity() > 0
+                || !configuration.getRequestTimeoutByOperation().isEmpty()
+                || !configuration.getRequestTimeoutByTable().isEmpty();
+
+        final List<Interceptor> interceptors = new ArrayList<Interceptor>();
+        if (configuration.isInstrumented()) {
+            // named by the client the InstrumentedHBaseClient would have wrapped
+            final Class<? extends HBaseClient> clazz = bulkheads != null
+                    ? BoundedHBaseClient.class
+                    : timeouts ? DeadlineHBaseClient.class : client.getClass();
+            interceptors.add(new TimingInterceptor(
+                    new HBaseInstrumentation(
+                            clazz,
+                            registry,
+                            new ClientStatsSampler(client),
+                            configuration.getLatencyRecorder(),
+                            Clock.defaultClock()),
+                    new TableInstrumentation(
+                            clazz,
+                            registry,
+                            configuration.getLatencyRecorder(),
+                            configuration.getInstrumentedTables(),
+                            configuration.getMaxInstrumentedTables(),
+                            configuration.getMaxInstrumentedFamilies())));
+        }
+        if (timeouts) {
+            final Map<Operation, Duration> operations =
+                    new EnumMap<Operation, Duration>(Operation.class);
+            for (final Map.Entry<String, Duration> entry
+                    : configuration.getRequestTimeoutByOperation().entrySet()) {
+                operations.put(Operation.forName(entry.getKey()), entry.getValue());
+            }
+            interceptors.add(new DeadlineInterceptor(
+                    client.getTimer(),
+                    configuration.getRequestTimeout(),
+                    operations,
+                    configuration.getRequestTimeoutByTable(),
+                    registry));
+        }
+
+        if (interceptors.isEmpty() && bulkheads == null) {
+            return client;
+        }
+        return new InterceptingHBaseClient(
+                client, new InterceptorChain(interceptors, bulkheads, Clock.defaultClock()));
+    }
+
+    /**
+     * Builds the {@link Bulkheads} that admit requests according to the given {@link
+     * HBaseClientConfiguration}.
+     * <p/>
+     * If the {@link HBaseClientConfiguration#maxConcurrentRequests} is non-zero in the
+     * configuration, requests will be admitted by a pool of that many permits. If {@link
+     * HBaseClientConfiguration#adaptiveConcurrency} is enabled, the limit will be adapted by an
+     * {@link AdaptiveRequestLimiter}. Otherwise, requests will be queued and scheduled by their
+     * priority and tenant by a {@link SchedulingRequestLimiter} if {@link
+     * HBaseClientConfiguration#scheduled} is enabled; queued in order by a {@link
+     * QueuingRequestLimiter} if {@link HBaseClientConfiguration#nonBlocking} is enabled; or will
+     * block if neither is.
+     * <p/>
+     * Operations and tables given a dedicated pool of permits in the configuration are isolated
+     * from all other requests.
+     *
+     * @param configuration an {@link HBaseClientConfiguration} defining the {@link HBaseClient}s
+     *                      parameters.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     * @param client the underlying {@link HBaseClient} implementation.
+     *
+     * @return the {@link Bulkheads} that satisfy the configuration of the maximum concurrent
+     *         requests; or null if {@link HBaseClientConfiguration#maxConcurrentRequests} is zero.
+     */
+    private Bulkheads newBulkheads(final HBaseClientConfiguration configuration,
+                                   final MetricsRegistry registry,
+                                   final HBaseClient client) {
+        final int maxRequests = configuration.getMaxConcurrentRequests();
+        if (maxRequests <= 0) {
+            return null;
+        }
+
+        final RequestLimiter shared =
+                newLimiter(configuration, "shared", client, maxRequests, registry);
+        final RequestLimiter overflow = configuration.isBulkheadBorrowing() ? shared : null;
+
+        final Map<Operation, RequestLimiter> operations =
+                new EnumMap<Operation, RequestLimiter>(Operation.class);
+        for (final Map.Entry<String, Integer> entry
+                : configuration.getMaxConcurrentRequestsByOperation().entrySet()) {
+            final int size = entry.getValue();
+            operations.put(Operation.forName(entry.getKey()), new BulkheadRequestLimiter(
+                    "operation-" + entry.getKey(),
+                    newLimiter(configuration, null, client, size, null),
+                    size,
+                    overflow,
+                    registry));
+        }
+
+        final Map<String, RequestLimiter> tables = new HashMap<String, RequestLimiter>();
+        for (final Map.Entry<String, Integer> entry
+                : configuration.getMaxConcurrentRequestsByTable().entrySet()) {
+            final int size = entry.getValue();
+            tables.put(entry.getKey(), new BulkheadRequestLimiter(
+                    "table-" + entry.getKey(),
+                    newLimiter(configuration, null, client, size, null),
+                    size,
+                    overflow,
+                    registry));
+        }
+
+        return new Bulkheads(shared, operations, tables);
+    }
+
+    /**
+     * Builds a new {@link Executor}, managed by the {@link Environment}, to run work scheduled by
+     * the decorators of an {@link HBaseClient}.
+     * <p/>
+     * Work scheduled on the {@link HBaseClient#getTimer() Timer} of the client, such as flushes
+     * and retries, is handed to this {@link Executor} rather than run on the {@link Timer}
+     * itself; since it may block on a bounded client, running it on the {@link Timer} would
+     * stall the flushes and deadlines that release the permits it is waiting for.
+     *
+     * @param name the name for the {@link HBaseClient}, used to name the threads.
+     *
+     * @return an {@link Executor} to run the work of the decorators of the {@link HBaseClient}.
+     */
+    private Executor newExecutor(final String name) {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        return environment.managedExecutorService(
+                "hbase-" + name + "-%d", threads, threads, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Builds a new {@link RequestLimiter} for a pool of permits according to the given {@link
+     * HBaseClientConfiguration}.
+     *
+     * @param configuration an {@link HBaseClientConfiguration} defining the {@link HBaseClient}s
+     *                      parameters.
+     * @param name the name to scope the metrics of the pool with.
+     * @param client the underlying {@link HBaseClient} implementation.
+     * @param maxRequests the maximum number of concurrent requests for the pool.
+     * @param registry the {@link MetricsRegistry} to register metrics for the pool with; or null
+     *                 to register no metrics.
+     *
+     * @return a {@link RequestLimiter} admitting at most {@code maxRequests} concurrent requests.
+     */
+    private RequestLimiter newLimiter(final HBaseClientConfiguration configuration,
+                                      final String name,
+                                      final HBaseClient client,
+                                      final int maxRequests,
+                                      final MetricsRegistry registry) {
+        if (configuration.isAdaptiveConcurrency()) {
+            final int minRequests = Math.min(configuration.getMinConcurrentRequests(), maxRequests);
+            return registry == null
+                    ? new AdaptiveRequestLimiter(minRequests, maxRequests)
+                    : new AdaptiveRequestLimiter(name, minRequests, maxRequests, registry);
+        } else if (configuration.isScheduled()) {
+            return new SchedulingRequestLimiter(
+                    maxRequests,
+                    configuration.getMaxQueuedRequests(),
+                    configuration.getMaxQueueTime(),
+                    configuration.getTenantWeights(),
+                    client.getTimer(),
+                    registry,
+                    Clock.defaultClock());
+        } else if (configuration.isNonBlocking()) {
+            return new QueuingRequestLimiter(
+                    maxRequests,
+                    configuration.getMaxQueuedRequests(),
+                    configuration.getMaxQueueTime(),
+                    client.getTimer());
+        } else {
+            return new BlockingRequestLimiter(maxRequests);
+        }
     }
 }
@@ -1,7 +1,9 @@
 package com.datasift.dropwizard.hbase;
 
+import com.datasift.dropwizard.hbase.scanner.AdaptiveRowScanner;
 import com.datasift.dropwizard.hbase.scanner.RowScanner;
 import com.datasift.dropwizard.hbase.scanner.RowScannerProxy;
+import com.datasift.dropwizard.hbase.util.BulkResults;
 import com.stumbleupon.async.Deferred;
 import com.yammer.dropwizard.util.Duration;
 import com.yammer.dropwizard.util.Size;
@@ -9,6 +11,7 @@ import org.hbase.async.*;
 import org.jboss.netty.util.Timer;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Proxies the {@link HBaseClient} API to an {@link org.hbase.async.HBaseClient}.
@@ -16,6 +19,8 @@ import java.util.ArrayList;
 public class HBaseClientProxy implements HBaseClient {
 
     private final org.hbase.async.HBaseClient client;
+    private final Size scanBatchSize;
+    private final Duration scanLatencyBudget;
 
     /**
      * Initialises this proxy for the given underlying {@code client}.
@@ -23,7 +28,25 @@ public class HBaseClientProxy implements HBaseClient {
      * @param client the client to proxy requests to.
      */
     public HBaseClientProxy(final org.hbase.async.HBaseClient client) {
+        this(client, Size.bytes(0), Duration.seconds(0));
+    }
+
+    /**
+     * Initialises this proxy for the given underlying {@code client}, with {@link
+     * AdaptiveRowScanner adaptive batch sizing} for scans.
+     *
+     * @param client the client to proxy requests to.
+     * @param scanBatchSize the target size of each batch of scanned rows; or zero to use the
+     *                      default batch size of the underlying scanner.
+     * @param scanLatencyBudget the maximum time to fetch each batch of scanned rows; or zero for
+     *                          no limit.
+     */
+    public HBaseClientProxy(final org.hbase.async.HBaseClient client,
+                            final Size scanBatchSize,
+                            final Duration scanLatencyBudget) {
         this.client = client;
+        this.scanBatchSize = scanBatchSize;
+        this.scanLatencyBudget = scanLatencyBudget;
     }
 
     /**
@@ -173,6 +196,23 @@ public class HBaseClientProxy implements HBaseClient {
         return client.delete(request);
     }
 
+    /**
+     * Deletes the specified cells for each of the given requests.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see org.hbase.async.HBaseClient#delete(org.hbase.async.DeleteRequest)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        final List<Deferred<Object>> results = new ArrayList<Deferred<Object>>(requests.size());
+        for (final DeleteRequest request : requests) {
+            results.add(client.delete(request));
+        }
+        return BulkResults.collect(results);
+    }
+
     /**
      * Ensures that a specific table exists.
      *
@@ -261,6 +301,25 @@ public class HBaseClientProxy implements HBaseClient {
         return client.get(request);
     }
 
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see org.hbase.async.HBaseClient#get(org.hbase.async.GetRequest)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        final List<Deferred<ArrayList<KeyValue>>> results =
+                new ArrayList<Deferred<ArrayList<KeyValue>>>(requests.size());
+        for (final GetRequest request : requests) {
+            results.add(client.get(request));
+        }
+        return BulkResults.collect(results);
+    }
+
     /**
      * Aqcuire an explicit row lock.
      *
@@ -284,7 +343,7 @@ public class HBaseClientProxy implements HBaseClient {
      * @see org.hbase.async.HBaseClient#newScanner(byte[])
      */
     public RowScanner scan(final byte[] table) {
-        return new RowScannerProxy(client.newScanner(table));
+        return adapt(new RowScannerProxy(client.newScanner(table)));
     }
 
     /**
@@ -297,7 +356,7 @@ public class HBaseClientProxy implements HBaseClient {
      * @see org.hbase.async.HBaseClient#newScanner(String)
      */
     public RowScanner scan(final String table) {
-        return new RowScannerProxy(client.newScanner(table));
+        return adapt(new RowScannerProxy(client.newScanner(table)));
     }
 
     /**
@@ -313,6 +372,23 @@ public class HBaseClientProxy implements HBaseClient {
         return client.put(request);
     }
 
+    /**
+     * Store the specified cell(s) for each of the given requests.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see org.hbase.async.HBaseClient#put(org.hbase.async.PutRequest)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        final List<Deferred<Object>> results = new ArrayList<Deferred<Object>>(requests.size());
+        for (final PutRequest request : requests) {
+            results.add(client.put(request));
+        }
+        return BulkResults.collect(results);
+    }
+
     /**
      * Performs a graceful shutdown of this client, flushing any pending requests.
      *
@@ -358,4 +434,14 @@ public class HBaseClientProxy implements HBaseClient {
     public Deferred<Object> unlockRow(final RowLock lock) {
         return client.unlockRow(lock);
     }
+
+    /**
+     * Wraps the given {@link RowScanner} in an {@link AdaptiveRowScanner}, if a target batch size
+     * has been configured.
+     */
+    private RowScanner adapt(final RowScanner scanner) {
+        return scanBatchSize.toBytes() > 0
+                ? new AdaptiveRowScanner(scanner, scanBatchSize, scanLatencyBudget)
+                : scanner;
+    }
 }
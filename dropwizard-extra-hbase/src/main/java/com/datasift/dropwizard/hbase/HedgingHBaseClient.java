@@ -0,0 +1,714 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.limiter.RequestClass;
+import com.datasift.dropwizard.hbase.limiter.RequestContext;
+import com.datasift.dropwizard.hbase.scanner.HedgingRowScanner;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.Hedge;
+import com.datasift.dropwizard.hbase.util.HedgeDelay;
+import com.datasift.dropwizard.hbase.util.RetryBudget;
+import com.google.common.base.Charsets;
+import com.google.common.base.Supplier;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link HBaseClient} that hedges reads against a replica cluster, to hide the latency of a
+ * slow region server in the primary cluster, e.g. during a GC pause.
+ * <p/>
+ * Each {@link #get(GetRequest) get} is dispatched to the primary cluster. If no response has
+ * arrived after a {@link HedgeDelay delay}, a duplicate is dispatched to the replica, and the
+ * first successful response of the two is the result. The delay is a percentile of the recent
+ * latency of the primary for the table, so only the slowest requests are hedged. A failure only
+ * fails the request if the other attempt, if any, fails too.
+ * <p/>
+ * {@link #scan(byte[]) Scans} hedge their first batch of rows in the same way, and then scan the
+ * remaining batches from whichever cluster won; so a small scan, that fits in a single batch, is
+ * hedged entirely.
+ * <p/>
+ * Hedges are limited by a {@link RetryBudget}, so that a struggling primary can not double the
+ * load on the replica. Each hedge is scheduled on the {@link Timer} of the primary, which hands it
+ * to an {@link Executor} to be dispatched, so that a saturated replica can not block the
+ * {@link Timer}. Hedging relies on the replica being consistent enough with the primary for
+ * the results of either to be acceptable; replication lag may make a hedged read stale.
+ * <p/>
+ * All writes, and all other requests, are dispatched to the primary cluster only.
+ */
+public class HedgingHBaseClient implements HBaseClient {
+
+    /**
+     * The clusters a hedged request may be answered by.
+     */
+    public enum Side {
+        PRIMARY, REPLICA
+    }
+
+    /**
+     * The number of hedges that may be saved up in the default {@link RetryBudget}.
+     */
+    public static final int DEFAULT_MAX_SAVED_HEDGES = 10;
+
+    /**
+     * The underlying {@link HBaseClient} for the primary cluster.
+     */
+    private final HBaseClient primary;
+
+    /**
+     * The underlying {@link HBaseClient} for the replica cluster.
+     */
+    private final HBaseClient replica;
+
+    private final double percentile;
+    private final long minDelay;
+    private final RetryBudget budget;
+    private final Executor executor;
+    private final Clock clock;
+
+    private final ConcurrentMap<String, HedgeDelay> getDelays =
+            new ConcurrentHashMap<String, HedgeDelay>();
+    private final ConcurrentMap<String, HedgeDelay> scanDelays =
+            new ConcurrentHashMap<String, HedgeDelay>();
+
+    private final Meter requests;
+    private final Meter hedges;
+    private final Meter primaryWins;
+    private final Meter replicaWins;
+    private final AtomicLong exhausted = new AtomicLong();
+
+    /**
+     * Creates a new {@link HedgingHBaseClient} that hedges up to {@code ratio} of reads.
+     * <p/>
+     * The {@link Metrics#defaultRegistry() default} {@link MetricsRegistry} will be used to
+     * register the {@link com.yammer.metrics.core.Metric}s.
+     *
+     * @param primary the underlying {@link HBaseClient} for the primary cluster.
+     * @param replica the underlying {@link HBaseClient} for the replica cluster.
+     * @param percentile the percentile of the latency of the primary to wait for before hedging.
+     * @param minDelay the minimum time to wait for the primary before hedging.
+     * @param ratio the maximum number of hedges per read, e.g. 0.05 for 5% extra load.
+     * @param executor the {@link Executor} to dispatch hedges with.
+     */
+    public HedgingHBaseClient(final HBaseClient primary,
+                              final HBaseClient replica,
+                              final double percentile,
+                              final Duration minDelay,
+                              final double ratio,
+                              final Executor executor) {
+        this(primary,
+             replica,
+             percentile,
+             minDelay,
+             new RetryBudget(ratio, DEFAULT_MAX_SAVED_HEDGES),
+             executor,
+             Metrics.defaultRegistry(),
+             Clock.defaultClock());
+    }
+
+    /**
+     * Creates a new {@link HedgingHBaseClient} limited by the given {@link RetryBudget},
+     * registering metrics for the hedges made with the given {@link MetricsRegistry}.
+     *
+     * @param primary the underlying {@link HBaseClient} for the primary cluster.
+     * @param replica the underlying {@link HBaseClient} for the replica cluster.
+     * @param percentile the percentile of the latency of the primary to wait for before hedging.
+     * @param minDelay the minimum time to wait for the primary before hedging.
+     * @param budget the {@link RetryBudget} limiting the number of hedges.
+     * @param executor the {@link Executor} to dispatch hedges with.
+     * @param registry the {@link MetricsRegistry} to register metrics with.
+     * @param clock the {@link Clock} to time requests to the primary with.
+     */
+    public HedgingHBaseClient(final HBaseClient primary,
+                              final HBaseClient replica,
+                              final double percentile,
+                              final Duration minDelay,
+                              final RetryBudget budget,
+                              final Executor executor,
+                              final MetricsRegistry registry,
+                              final Clock clock) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("percentile must be within (0, 1): " + percentile);
+        }
+        this.primary = primary;
+        this.replica = replica;
+        this.percentile = percentile;
+        this.minDelay = minDelay.toNanoseconds();
+        this.budget = budget;
+        this.executor = executor;
+        this.clock = clock;
+
+        final Class<? extends HBaseClient> clazz = getClass();
+        this.requests = registry.newMeter(clazz, "hedgeable", "requests", TimeUnit.SECONDS);
+        this.hedges = registry.newMeter(clazz, "hedges", "requests", TimeUnit.SECONDS);
+        this.primaryWins = registry.newMeter(clazz, "primaryWins", "requests", TimeUnit.SECONDS);
+        this.replicaWins = registry.newMeter(clazz, "replicaWins", "requests", TimeUnit.SECONDS);
+        registry.newGauge(clazz, "hedgeRatio", "requests", new Gauge<Double>() {
+            @Override public Double value() {
+                return getHedgeRatio();
+            }
+        });
+        registry.newGauge(clazz, "exhausted", "requests", new Gauge<Long>() {
+            @Override public Long value() {
+                return getBudgetExhausted();
+            }
+        });
+        registry.newGauge(clazz, "budget", "requests", new Gauge<Double>() {
+            @Override public Double value() {
+                return budget.getAvailable();
+            }
+        });
+    }
+
+    /**
+     * Gets the fraction of hedgeable requests that were hedged.
+     *
+     * @return the number of hedges per hedgeable request; or zero if there have been none.
+     */
+    public double getHedgeRatio() {
+        final long count = requests.count();
+        return count == 0 ? 0 : (double) hedges.count() / count;
+    }
+
+    /**
+     * Gets the total number of hedges denied because the {@link RetryBudget} was exhausted.
+     *
+     * @return the number of hedges denied by the {@link RetryBudget}.
+     */
+    public long getBudgetExhausted() {
+        return exhausted.get();
+    }
+
+    /**
+     * Gets the {@link Meter} of hedges dispatched to the replica.
+     *
+     * @return the {@link Meter} of hedges.
+     */
+    public Meter getHedges() {
+        return hedges;
+    }
+
+    /**
+     * Gets the {@link Meter} of hedged requests answered by the given cluster.
+     *
+     * @param side the cluster that answered the requests.
+     *
+     * @return the {@link Meter} of requests answered by the cluster.
+     */
+    public Meter getWins(final Side side) {
+        return side == Side.PRIMARY ? primaryWins : replicaWins;
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return primary.getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return primary.getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        return primary.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        return primary.setIncrementBufferSize(incrementBufferSize);
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        return primary.create(edit);
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        return primary.bufferIncrement(request);
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        return primary.increment(request);
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        return primary.increment(request, durable);
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        return primary.compareAndSet(edit, expected);
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        return primary.compareAndSet(edit, expected);
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        return primary.delete(request);
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        return primary.deleteAll(requests);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return primary.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        return primary.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        return primary.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return primary.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Flushes all requests buffered on the client-side
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        return primary.flush();
+    }
+
+    /**
+     * Retrieves the specified cells, hedging the request against the replica if the primary is
+     * slow to respond.
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells, from whichever cluster responded first.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        return hedge(delay(getDelays, request.table()),
+                new Supplier<Deferred<ArrayList<KeyValue>>>() {
+                    public Deferred<ArrayList<KeyValue>> get() {
+                        return primary.get(request);
+                    }
+                },
+                new Supplier<Deferred<ArrayList<KeyValue>>>() {
+                    public Deferred<ArrayList<KeyValue>> get() {
+                        // asynchbase requests may not be dispatched twice concurrently
+                        return replica.get(copy(request));
+                    }
+                }).getResult();
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     * <p/>
+     * Bulk gets are dispatched to the primary only, and are not hedged.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        return primary.getAll(requests);
+    }
+
+    /**
+     * Aqcuire an explicit row lock.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        return primary.lockRow(request);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table, that hedges its first batch of rows against
+     * the replica.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link HedgingRowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return new HedgingRowScanner(
+                this, delay(scanDelays, table), primary.scan(table), replica.scan(table));
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table, that hedges its first batch of rows against
+     * the replica.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link HedgingRowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return new HedgingRowScanner(this, delay(scanDelays, table.getBytes(Charsets.UTF_8)),
+                primary.scan(table), replica.scan(table));
+    }
+
+    /**
+     * Store the specified cell(s).
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        return primary.put(request);
+    }
+
+    /**
+     * Store the specified cell(s) for each of the given requests.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        return primary.putAll(requests);
+    }
+
+    /**
+     * Performs a graceful shutdown of the clients for both clusters, flushing any pending
+     * requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        final List<Deferred<Object>> shutdowns = new ArrayList<Deferred<Object>>(2);
+        shutdowns.add(primary.shutdown());
+        shutdowns.add(replica.shutdown());
+        return Deferred.group(shutdowns)
+                .addCallback(new Callback<Object, ArrayList<Object>>() {
+                    public Object call(final ArrayList<Object> arg) {
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return primary.stats();
+    }
+
+    /**
+     * Get the underlying {@link Timer} used by the client for the primary cluster.
+     *
+     * @return the underlying {@link Timer} used by the primary client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return primary.getTimer();
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return primary.unlockRow(lock);
+    }
+
+    /**
+     * Dispatches a read to the primary, and hedges it against the replica if the primary has not
+     * responded within the given {@link HedgeDelay}, subject to the {@link RetryBudget}.
+     * <p/>
+     * Each response from the primary, including those that lose the race, is recorded by the
+     * {@link HedgeDelay}, so that hedging does not hide the true latency of the primary.
+     *
+     * @param delay the {@link HedgeDelay} for the table read.
+     * @param primary dispatches the read to the primary.
+     * @param replica dispatches a duplicate of the read to the replica.
+     * @param <T> the type of the result of the read.
+     *
+     * @return the {@link Hedge} between the attempts of the read.
+     */
+    public <T> Hedge<T> hedge(final HedgeDelay delay,
+                              final Supplier<Deferred<T>> primary,
+                              final Supplier<Deferred<T>> replica) {
+        requests.mark();
+        budget.deposit();
+
+        final Hedge<T> hedge = new Hedge<T>();
+        final Callback<T, T> first = hedge.attempt(Side.PRIMARY);
+        final long start = clock.tick();
+        primary.get().addBoth(new Callback<T, T>() {
+            public T call(final T arg) throws Exception {
+                if (!(arg instanceof Exception)) {
+                    delay.update(clock.tick() - start);
+                }
+                return first.call(arg);
+            }
+        });
+
+        if (!hedge.isDone()) {
+            // the hedge is dispatched by the Executor, in the class of the original read
+            final RequestClass requestClass = RequestContext.current();
+            final Runnable dispatch = new Runnable() {
+                public void run() {
+                    if (hedge.isDone()) {
+                        return;
+                    }
+                    if (!budget.tryWithdraw()) {
+                        exhausted.incrementAndGet();
+                        return;
+                    }
+                    hedges.mark();
+                    final Callback<T, T> second = hedge.attempt(Side.REPLICA);
+                    final RequestClass previous = RequestContext.enter(requestClass);
+                    try {
+                        replica.get().addBoth(second);
+                    } finally {
+                        RequestContext.restore(previous);
+                    }
+                }
+            };
+            getTimer().newTimeout(new TimerTask() {
+                public void run(final Timeout timeout) {
+                    if (hedge.isDone()) {
+                        return;
+                    }
+                    try {
+                        executor.execute(dispatch);
+                    } catch (final RejectedExecutionException e) {
+                        // the executor has been shut down, so the client is shutting down
+                    }
+                }
+            }, delay.getDelay(), TimeUnit.NANOSECONDS);
+        }
+
+        hedge.getResult().addBoth(new Callback<T, T>() {
+            public T call(final T arg) {
+                if (!(arg instanceof Exception)) {
+                    getWins((Side) hedge.getWinner()).mark();
+                }
+                return arg;
+            }
+        });
+        return hedge;
+    }
+
+    private HedgeDelay delay(final ConcurrentMap<String, HedgeDelay> delays, final byte[] table) {
+        final String name = new String(table, Charsets.UTF_8);
+        final HedgeDelay delay = delays.get(name);
+        if (delay != null) {
+            return delay;
+        }
+        final HedgeDelay created =
+                new HedgeDelay(percentile, minDelay, HedgeDelay.DEFAULT_MAX_AGE, clock);
+        final HedgeDelay existing = delays.putIfAbsent(name, created);
+        return existing == null ? created : existing;
+    }
+
+    private static GetRequest copy(final GetRequest request) {
+        final GetRequest copy = new GetRequest(request.table(), request.key());
+        if (request.family() != null) {
+            copy.family(request.family());
+        }
+        if (request.qualifiers() != null) {
+            copy.qualifiers(request.qualifiers());
+        }
+        return copy.maxVersions(request.maxVersions());
+    }
+}
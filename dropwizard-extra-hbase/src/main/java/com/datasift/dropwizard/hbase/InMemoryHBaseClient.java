@@ -0,0 +1,557 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.memory.InjectedLatency;
+import com.datasift.dropwizard.hbase.memory.MemTable;
+import com.datasift.dropwizard.hbase.scanner.InMemoryRowScanner;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.BulkResults;
+import com.datasift.dropwizard.hbase.util.ClientStatistics;
+import com.datasift.dropwizard.hbase.util.StripedLong;
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheStats;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import org.hbase.async.*;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link HBaseClient} that holds its tables in memory, for load testing services locally
+ * without an HBase cluster.
+ * <p/>
+ * Puts, gets, deletes, increments, compare-and-sets and scans behave as they would against
+ * HBase, but only the latest version of each cell is kept (see {@link MemTable}). Tables must be
+ * {@link #createTable(String) created} before use; requests to any other table fail with a {@link
+ * TableNotFoundException}, but every family of a table exists. Explicit row locks are not
+ * supported, as a {@link RowLock} may not be created outside of asynchbase; nor are scan filters.
+ * <p/>
+ * Each request is applied to its table immediately, but its response may be delayed by an
+ * {@link InjectedLatency}, to simulate the latency of a remote cluster. The usage statistics of
+ * the client count each kind of request, so the client may be instrumented as usual. Responses
+ * still delayed when the client is shut down fail with an {@link IllegalStateException}.
+ */
+public class InMemoryHBaseClient implements HBaseClient {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ConcurrentMap<byte[], MemTable> tables =
+            new ConcurrentSkipListMap<byte[], MemTable>(Bytes.MEMCMP);
+    private final Timer timer;
+    private final InjectedLatency latency;
+
+    private final StripedLong gets = new StripedLong();
+    private final StripedLong puts = new StripedLong();
+    private final StripedLong deletes = new StripedLong();
+    private final StripedLong increments = new StripedLong();
+    private final StripedLong scannersOpened = new StripedLong();
+    private final StripedLong scans = new StripedLong();
+
+    private volatile Duration flushInterval = Duration.seconds(1);
+    private volatile Size incrementBufferSize = Size.kilobytes(64);
+
+    /**
+     * Creates a new {@link InMemoryHBaseClient} that responds to requests immediately.
+     */
+    public InMemoryHBaseClient() {
+        this(new HashedWheelTimer(1, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Creates a new {@link InMemoryHBaseClient} that responds to requests immediately, using the
+     * given {@link Timer}.
+     *
+     * @param timer the {@link Timer} of the client, which is stopped when it is shut down.
+     */
+    public InMemoryHBaseClient(final Timer timer) {
+        this(timer, new InjectedLatency(timer));
+    }
+
+    /**
+     * Creates a new {@link InMemoryHBaseClient} that delays its responses by the given {@link
+     * InjectedLatency}.
+     *
+     * @param timer the {@link Timer} of the client, which is stopped when it is shut down.
+     * @param latency the {@link InjectedLatency} to delay responses by.
+     */
+    public InMemoryHBaseClient(final Timer timer, final InjectedLatency latency) {
+        this.timer = timer;
+        this.latency = latency;
+    }
+
+    /**
+     * Creates a table, if it does not already exist.
+     *
+     * @param table the name of the table to create.
+     */
+    public void createTable(final byte[] table) {
+        tables.putIfAbsent(table, new MemTable());
+    }
+
+    /**
+     * Creates a table, if it does not already exist.
+     *
+     * @param table the name of the table to create, encoded as UTF-8.
+     */
+    public void createTable(final String table) {
+        createTable(table.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     * <p/>
+     * Edits are never buffered; the interval is kept only to honour the {@link HBaseClient} API.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     * <p/>
+     * Increments are never buffered; the size is kept only to honour the {@link HBaseClient} API.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return incrementBufferSize;
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        final Duration previous = this.flushInterval;
+        this.flushInterval = flushInterval;
+        return previous;
+    }
+
+    /**
+     * Sets the maximum capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the maximum number of increments to buffer.
+     *
+     * @return the previous capacity of the increment buffer.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        final Size previous = this.incrementBufferSize;
+        this.incrementBufferSize = incrementBufferSize;
+        return previous;
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        puts.add(1);
+        final MemTable table = tables.get(edit.table());
+        if (table == null) {
+            return latency.respond(Operation.CREATE, MemTable.notFound(edit.table()));
+        }
+        return latency.respond(Operation.CREATE, table.compareAndSet(edit, EMPTY));
+    }
+
+    /**
+     * Atomically increments a cell.
+     * <p/>
+     * Increments are never buffered, so this is equivalent to {@link
+     * #increment(AtomicIncrementRequest)}.
+     *
+     * @param request the increment to apply.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        return increment(request);
+    }
+
+    /**
+     * Atomically and durably increment a cell.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        increments.add(1);
+        final MemTable table = tables.get(request.table());
+        if (table == null) {
+            return latency.respond(Operation.INCREMENT, MemTable.notFound(request.table()));
+        }
+        try {
+            return latency.respond(Operation.INCREMENT, table.increment(request));
+        } catch (final IllegalArgumentException e) {
+            return latency.respond(Operation.INCREMENT, e);
+        }
+    }
+
+    /**
+     * Atomically increment a cell.
+     * <p/>
+     * Every increment is as durable as the memory of this process.
+     *
+     * @param request the increment to make.
+     * @param durable ignored.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        return increment(request);
+    }
+
+    /**
+     * Atomically sets a cell to the given value if, and only if, its current value matches the
+     * expected value.
+     *
+     * @param edit the new cell to write.
+     * @param expected the expected current value of the cell; or an empty array if the cell is
+     *                 expected not to exist.
+     *
+     * @return true if the cell was written, false if its current value was not the expected value.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        puts.add(1);
+        final MemTable table = tables.get(edit.table());
+        if (table == null) {
+            return latency.respond(Operation.COMPARE_AND_SET, MemTable.notFound(edit.table()));
+        }
+        return latency.respond(Operation.COMPARE_AND_SET, table.compareAndSet(edit, expected));
+    }
+
+    /**
+     * Atomically sets a cell to the given value if, and only if, its current value matches the
+     * expected value.
+     *
+     * @param edit the new cell to write.
+     * @param expected the expected current value of the cell, encoded as UTF-8.
+     *
+     * @return true if the cell was written, false if its current value was not the expected value.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        return compareAndSet(edit, expected.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        deletes.add(1);
+        final MemTable table = tables.get(request.table());
+        if (table == null) {
+            return latency.respond(Operation.DELETE, MemTable.notFound(request.table()));
+        }
+        table.delete(request);
+        return latency.respond(Operation.DELETE, null);
+    }
+
+    /**
+     * Deletes the specified cells, reporting the result of each delete individually.
+     *
+     * @param requests the deletes to make.
+     *
+     * @return the result of each delete, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        final List<Deferred<Object>> results = new ArrayList<Deferred<Object>>(requests.size());
+        for (final DeleteRequest request : requests) {
+            results.add(delete(request));
+        }
+        return BulkResults.collect(results);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table has not been created.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        if (!tables.containsKey(table)) {
+            return latency.respond(Operation.ASSERTION, MemTable.notFound(table));
+        }
+        return latency.respond(Operation.ASSERTION, null);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table has not been created.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        return ensureTableExists(table.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Ensures that a specific table exists, with a specific column family; as tables hold cells
+     * of any family, every family of a table that has been created exists.
+     *
+     * @param table the table to check.
+     * @param family the column family to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table has not been created.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        return ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists, with a specific column family; as tables hold cells
+     * of any family, every family of a table that has been created exists.
+     *
+     * @param table the table to check.
+     * @param family the column family to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table has not been created.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return ensureTableExists(table);
+    }
+
+    /**
+     * Flushes all buffered edits; as edits are never buffered, there are none.
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        return latency.respond(Operation.FLUSH, null);
+    }
+
+    /**
+     * Retrieves the specified cells.
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells, sorted by family and qualifier.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        gets.add(1);
+        final MemTable table = tables.get(request.table());
+        if (table == null) {
+            return latency.respond(Operation.GET, MemTable.notFound(request.table()));
+        }
+        return latency.respond(Operation.GET, table.get(
+                request.key(), request.family(), request.qualifiers(), 0, Long.MAX_VALUE));
+    }
+
+    /**
+     * Retrieves the specified cells, reporting the result of each get individually.
+     *
+     * @param requests the gets to make.
+     *
+     * @return the result of each get, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        final List<Deferred<ArrayList<KeyValue>>> results =
+                new ArrayList<Deferred<ArrayList<KeyValue>>>(requests.size());
+        for (final GetRequest request : requests) {
+            results.add(get(request));
+        }
+        return BulkResults.collect(results);
+    }
+
+    /**
+     * Row locks are not supported, as a {@link RowLock} may not be created outside of asynchbase.
+     *
+     * @param request ignored.
+     *
+     * @return a {@link Deferred} that fails with an {@link UnsupportedOperationException}.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        return latency.respond(Operation.LOCK, new UnsupportedOperationException("row locks"));
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link InMemoryRowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        scannersOpened.add(1);
+        final MemTable memTable = tables.get(table);
+        if (memTable == null) {
+            return new InMemoryRowScanner(MemTable.notFound(table), latency, scans);
+        }
+        return new InMemoryRowScanner(memTable, latency, scans);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link InMemoryRowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return scan(table.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Stores the specified cell(s).
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the store operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        puts.add(1);
+        final MemTable table = tables.get(request.table());
+        if (table == null) {
+            return latency.respond(Operation.PUT, MemTable.notFound(request.table()));
+        }
+        table.put(request);
+        return latency.respond(Operation.PUT, null);
+    }
+
+    /**
+     * Stores the specified cells, reporting the result of each put individually.
+     *
+     * @param requests the puts to make.
+     *
+     * @return the result of each put, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        final List<Deferred<Object>> results = new ArrayList<Deferred<Object>>(requests.size());
+        for (final PutRequest request : requests) {
+            results.add(put(request));
+        }
+        return BulkResults.collect(results);
+    }
+
+    /**
+     * Shuts this client down, stopping its {@link Timer} and failing any responses it had yet
+     * to deliver.
+     * <p/>
+     * The tables of the client are kept, so they may still be read until the client is discarded.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        latency.fail(timer.stop());
+        return Deferred.fromResult(null);
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     * <p/>
+     * Only the gets, puts, deletes, atomic increments, scanners opened and scans are counted;
+     * compare-and-sets are counted as puts. All other statistics are always zero.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return ClientStatistics.create(
+                0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L,
+                gets.sum(), scannersOpened.sum(), scans.sum(), puts.sum(), 0L,
+                deletes.sum(), increments.sum(), new CacheStats(0, 0, 0, 0, 0, 0));
+    }
+
+    /**
+     * Get the {@link Timer} used by the client.
+     *
+     * @return the {@link Timer} used by the client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Release an explicit row lock; as row locks are not supported, there are none to release.
+     *
+     * @param lock ignored.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return latency.respond(Operation.UNLOCK, null);
+    }
+}
@@ -1,25 +1,38 @@
 package com.datasift.dropwizard.hbase;
 
 import com.datasift.dropwizard.hbase.metrics.HBaseInstrumentation;
+import com.datasift.dropwizard.hbase.metrics.TableInstrumentation;
+import com.datasift.dropwizard.hbase.metrics.TableMetrics;
 import com.datasift.dropwizard.hbase.scanner.InstrumentedRowScanner;
 import com.datasift.dropwizard.hbase.scanner.RowScanner;
-import com.datasift.dropwizard.hbase.util.TimerStoppingCallback;
+import com.datasift.dropwizard.hbase.util.KeyValues;
+import com.datasift.dropwizard.hbase.util.RequestTimingCallback;
+import com.datasift.dropwizard.metrics.LatencyRecorder;
+import com.google.common.base.Charsets;
+import com.stumbleupon.async.Callback;
 import com.stumbleupon.async.Deferred;
 import com.yammer.dropwizard.util.Duration;
 import com.yammer.dropwizard.util.Size;
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Metric;
 import com.yammer.metrics.core.MetricsRegistry;
-import com.yammer.metrics.core.Timer;
-import com.yammer.metrics.core.TimerContext;
 import org.hbase.async.*;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * An {@link HBaseClient} that is instrumented with {@link Metric}s.
  * <p/>
- * For each asynchronous request method, a {@link Timer} tracks the time taken for the request.
+ * For each asynchronous request method, a {@link LatencyRecorder} tracks the time taken for the
+ * request. Failed requests are timed by a separate {@link LatencyRecorder}, and counted by their
+ * {@link com.datasift.dropwizard.hbase.metrics.ErrorType}, so that slow requests may be told apart
+ * from failures.
+ * <p/>
+ * Requests for a single table may also be timed for that table, and its column family, with the
+ * {@link TableMetrics} of a {@link TableInstrumentation}, which also track the size of the edits
+ * sent and cells received. Bulk requests, flushes and unlocks are only timed for the client as a
+ * whole.
  * <p/>
  * This implementation proxies all requests through an underlying {@link HBaseClient}, provided to
  * the {@link this#InstrumentedHBaseClient(HBaseClient) constructor}; it merely layers
@@ -39,6 +52,11 @@ public class InstrumentedHBaseClient implements HBaseClient {
      */
     private final HBaseInstrumentation metrics;
 
+    /**
+     * The instrumentation for each table requested through this {@link HBaseClient}.
+     */
+    private final TableInstrumentation tables;
+
     /**
      * Creates a new {@link InstrumentedHBaseClient} for the given underlying client.
      * <p/>
@@ -79,8 +97,25 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @param metrics the {@link HBaseInstrumentation} containing the {@link Metric}s to use.
      */
     public InstrumentedHBaseClient(final HBaseClient client, final HBaseInstrumentation metrics) {
+        this(client, metrics, TableInstrumentation.DISABLED);
+    }
+
+    /**
+     * Creates a new {@link InstrumentedHBaseClient} for the given underlying client.
+     * <p>
+     * Instrumentation will be contained by the given {@link HBaseInstrumentation} instance, and
+     * instrumentation of each table by the given {@link TableInstrumentation}.
+     *
+     * @param client  the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param metrics the {@link HBaseInstrumentation} containing the {@link Metric}s to use.
+     * @param tables  the {@link TableInstrumentation} containing the {@link Metric}s of each table.
+     */
+    public InstrumentedHBaseClient(final HBaseClient client,
+                                   final HBaseInstrumentation metrics,
+                                   final TableInstrumentation tables) {
         this.client = client;
         this.metrics = metrics;
+        this.tables = tables;
     }
 
     /**
@@ -141,8 +176,9 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#create(PutRequest)
      */
     public Deferred<Boolean> create(final PutRequest edit) {
-        final TimerContext ctx = metrics.getCreates().time();
-        return client.create(edit).addBoth(new TimerStoppingCallback<Boolean>(ctx));
+        final RequestTimingCallback<Boolean> timing =
+                time(metrics.getCreates(), metrics.getFailedCreates(), Operation.CREATE, edit);
+        return client.create(edit).addBoth(timing);
     }
 
     /**
@@ -155,8 +191,10 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#bufferIncrement(AtomicIncrementRequest) 
      */
     public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
-        final TimerContext ctx = metrics.getIncrements().time();
-        return client.bufferIncrement(request).addBoth(new TimerStoppingCallback<Long>(ctx));
+        final RequestTimingCallback<Long> timing = time(
+                metrics.getIncrements(), metrics.getFailedIncrements(), Operation.INCREMENT,
+                request);
+        return client.bufferIncrement(request).addBoth(timing);
     }
 
     /**
@@ -169,8 +207,10 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#increment(AtomicIncrementRequest)
      */
     public Deferred<Long> increment(final AtomicIncrementRequest request) {
-        final TimerContext ctx = metrics.getIncrements().time();
-        return client.increment(request).addBoth(new TimerStoppingCallback<Long>(ctx));
+        final RequestTimingCallback<Long> timing = time(
+                metrics.getIncrements(), metrics.getFailedIncrements(), Operation.INCREMENT,
+                request);
+        return client.increment(request).addBoth(timing);
     }
 
     /**
@@ -184,8 +224,10 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
      */
     public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
-        final TimerContext ctx = metrics.getIncrements().time();
-        return client.increment(request, durable).addBoth(new TimerStoppingCallback<Long>(ctx));
+        final RequestTimingCallback<Long> timing = time(
+                metrics.getIncrements(), metrics.getFailedIncrements(), Operation.INCREMENT,
+                request);
+        return client.increment(request, durable).addBoth(timing);
     }
 
     /**
@@ -199,9 +241,10 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#compareAndSet(PutRequest, byte[])
      */
     public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
-        final TimerContext ctx = metrics.getCompareAndSets().time();
-        return client.compareAndSet(edit, expected)
-                .addBoth(new TimerStoppingCallback<Boolean>(ctx));
+        final RequestTimingCallback<Boolean> timing = time(
+                metrics.getCompareAndSets(), metrics.getFailedCompareAndSets(),
+                Operation.COMPARE_AND_SET, edit);
+        return client.compareAndSet(edit, expected).addBoth(timing);
     }
 
     /**
@@ -215,9 +258,10 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#compareAndSet(PutRequest, String)
      */
     public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
-        final TimerContext ctx = metrics.getCompareAndSets().time();
-        return client.compareAndSet(edit, expected)
-                .addBoth(new TimerStoppingCallback<Boolean>(ctx));
+        final RequestTimingCallback<Boolean> timing = time(
+                metrics.getCompareAndSets(), metrics.getFailedCompareAndSets(),
+                Operation.COMPARE_AND_SET, edit);
+        return client.compareAndSet(edit, expected).addBoth(timing);
     }
 
     /**
@@ -230,8 +274,26 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#delete(DeleteRequest)
      */
     public Deferred<Object> delete(final DeleteRequest request) {
-        final TimerContext ctx = metrics.getDeletes().time();
-        return client.delete(request).addBoth(new TimerStoppingCallback<Object>(ctx));
+        final RequestTimingCallback<Object> timing = time(
+                metrics.getDeletes(), metrics.getFailedDeletes(), Operation.DELETE, request.table(),
+                request.family());
+        return client.delete(request).addBoth(timing);
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        final RequestTimingCallback<List<BulkResult<Object>>> timing =
+                new RequestTimingCallback<List<BulkResult<Object>>>(
+                        metrics, metrics.getFailedBulkDeletes(), metrics.getBulkDeletes());
+        return client.deleteAll(requests).addBoth(timing);
     }
 
     /**
@@ -246,8 +308,10 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#ensureTableExists(byte[])
      */
     public Deferred<Object> ensureTableExists(final byte[] table) {
-        final TimerContext ctx = metrics.getAssertions().time();
-        return client.ensureTableExists(table).addBoth(new TimerStoppingCallback<Object>(ctx));
+        final RequestTimingCallback<Object> timing = time(
+                metrics.getAssertions(), metrics.getFailedAssertions(), Operation.ASSERTION, table,
+                null);
+        return client.ensureTableExists(table).addBoth(timing);
     }
 
     /**
@@ -262,8 +326,10 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#ensureTableExists(String)
      */
     public Deferred<Object> ensureTableExists(final String table) {
-        final TimerContext ctx = metrics.getAssertions().time();
-        return client.ensureTableExists(table).addBoth(new TimerStoppingCallback<Object>(ctx));
+        final RequestTimingCallback<Object> timing = time(
+                metrics.getAssertions(), metrics.getFailedAssertions(), Operation.ASSERTION,
+                table.getBytes(Charsets.UTF_8), null);
+        return client.ensureTableExists(table).addBoth(timing);
     }
 
     /**
@@ -279,9 +345,10 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
      */
     public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
-        final TimerContext ctx = metrics.getAssertions().time();
-        return client.ensureTableFamilyExists(table, family)
-                .addBoth(new TimerStoppingCallback<Object>(ctx));
+        final RequestTimingCallback<Object> timing = time(
+                metrics.getAssertions(), metrics.getFailedAssertions(), Operation.ASSERTION, table,
+                family);
+        return client.ensureTableFamilyExists(table, family).addBoth(timing);
     }
 
     /**
@@ -297,9 +364,10 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#ensureTableFamilyExists(String, String)
      */
     public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
-        final TimerContext ctx = metrics.getAssertions().time();
-        return client.ensureTableFamilyExists(table, family)
-                .addBoth(new TimerStoppingCallback<Object>(ctx));
+        final RequestTimingCallback<Object> timing = time(
+                metrics.getAssertions(), metrics.getFailedAssertions(), Operation.ASSERTION,
+                table.getBytes(Charsets.UTF_8), family.getBytes(Charsets.UTF_8));
+        return client.ensureTableFamilyExists(table, family).addBoth(timing);
     }
 
     /**
@@ -310,8 +378,9 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#flush()
      */
     public Deferred<Object> flush() {
-        final TimerContext ctx = metrics.getFlushes().time();
-        return client.flush().addBoth(new TimerStoppingCallback<Object>(ctx));
+        final RequestTimingCallback<Object> timing = new RequestTimingCallback<Object>(
+                metrics, metrics.getFailedFlushes(), metrics.getFlushes());
+        return client.flush().addBoth(timing);
     }
 
     /**
@@ -324,8 +393,30 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#get(GetRequest)
      */
     public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
-        final TimerContext ctx = metrics.getGets().time();
-        return client.get(request).addBoth(new TimerStoppingCallback<ArrayList<KeyValue>>(ctx));
+        final TableMetrics table = tables.forTable(request.table());
+        final TableMetrics family = table == null ? null : table.forFamily(request.family());
+        final RequestTimingCallback<ArrayList<KeyValue>> timing =
+                timeFor(metrics.getGets(), metrics.getFailedGets(), Operation.GET, table, family);
+        return client.get(request)
+                .addBoth(timing)
+                .addCallback(new ResponseRecordingCallback(table, family));
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        final RequestTimingCallback<List<BulkResult<ArrayList<KeyValue>>>> timing =
+                new RequestTimingCallback<List<BulkResult<ArrayList<KeyValue>>>>(
+                        metrics, metrics.getFailedBulkGets(), metrics.getBulkGets());
+        return client.getAll(requests).addBoth(timing);
     }
 
     /**
@@ -338,8 +429,10 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#lockRow(RowLockRequest)
      */
     public Deferred<RowLock> lockRow(final RowLockRequest request) {
-        final TimerContext ctx = metrics.getLocks().time();
-        return client.lockRow(request).addBoth(new TimerStoppingCallback<RowLock>(ctx));
+        final RequestTimingCallback<RowLock> timing = time(
+                metrics.getLocks(), metrics.getFailedLocks(), Operation.LOCK, request.table(),
+                null);
+        return client.lockRow(request).addBoth(timing);
     }
 
     /**
@@ -352,7 +445,7 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#scan(byte[])
      */
     public RowScanner scan(final byte[] table) {
-        return new InstrumentedRowScanner(client.scan(table), metrics);
+        return new InstrumentedRowScanner(client.scan(table), metrics, tables.forTable(table));
     }
 
     /**
@@ -365,7 +458,8 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#scan(String)
      */
     public RowScanner scan(final String table) {
-        return new InstrumentedRowScanner(client.scan(table), metrics);
+        return new InstrumentedRowScanner(
+                client.scan(table), metrics, tables.forTable(table.getBytes(Charsets.UTF_8)));
     }
 
     /**
@@ -378,8 +472,25 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#put(PutRequest)
      */
     public Deferred<Object> put(final PutRequest request) {
-        final TimerContext ctx = metrics.getPuts().time();
-        return client.put(request).addBoth(new TimerStoppingCallback<Object>(ctx));
+        final RequestTimingCallback<Object> timing =
+                time(metrics.getPuts(), metrics.getFailedPuts(), Operation.PUT, request);
+        return client.put(request).addBoth(timing);
+    }
+
+    /**
+     * Store the specified cell(s) for each of the given requests.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        final RequestTimingCallback<List<BulkResult<Object>>> timing =
+                new RequestTimingCallback<List<BulkResult<Object>>>(
+                        metrics, metrics.getFailedBulkPuts(), metrics.getBulkPuts());
+        return client.putAll(requests).addBoth(timing);
     }
 
     /**
@@ -425,7 +536,118 @@ public class InstrumentedHBaseClient implements HBaseClient {
      * @see HBaseClient#unlockRow(RowLock)
      */
     public Deferred<Object> unlockRow(final RowLock lock) {
-        final TimerContext ctx = metrics.getUnlocks().time();
-        return client.unlockRow(lock).addBoth(new TimerStoppingCallback<Object>(ctx));
+        final RequestTimingCallback<Object> timing = new RequestTimingCallback<Object>(
+                metrics, metrics.getFailedUnlocks(), metrics.getUnlocks());
+        return client.unlockRow(lock).addBoth(timing);
+    }
+
+    /**
+     * Starts timing a request for the given table and column family.
+     *
+     * @param latency the {@link LatencyRecorder} for the client as a whole.
+     * @param failures the {@link LatencyRecorder} for failed requests.
+     * @param operation the {@link Operation} being requested.
+     * @param table the table the request is for; may be null.
+     * @param family the column family the request is for; may be null.
+     *
+     * @return a {@link RequestTimingCallback} to record the outcome of the request with.
+     */
+    private <T> RequestTimingCallback<T> time(final LatencyRecorder latency,
+                                              final LatencyRecorder failures,
+                                              final Operation operation,
+                                              final byte[] table,
+                                              final byte[] family) {
+        final TableMetrics tableMetrics = tables.forTable(table);
+        return timeFor(latency, failures, operation, tableMetrics,
+                tableMetrics == null ? null : tableMetrics.forFamily(family));
+    }
+
+    /**
+     * Starts timing the given {@link PutRequest}, recording the size of its edit.
+     */
+    private <T> RequestTimingCallback<T> time(final LatencyRecorder latency,
+                                              final LatencyRecorder failures,
+                                              final Operation operation,
+                                              final PutRequest edit) {
+        final TableMetrics table = tables.forTable(edit.table());
+        if (table == null) {
+            return timeFor(latency, failures, operation, null, null);
+        }
+        final TableMetrics family = table.forFamily(edit.family());
+        recordRequest(table, family, KeyValues.sizeOf(edit));
+        return timeFor(latency, failures, operation, table, family);
+    }
+
+    /**
+     * Starts timing the given {@link AtomicIncrementRequest}, recording the size of its edit.
+     */
+    private <T> RequestTimingCallback<T> time(final LatencyRecorder latency,
+                                              final LatencyRecorder failures,
+                                              final Operation operation,
+                                              final AtomicIncrementRequest request) {
+        final TableMetrics table = tables.forTable(request.table());
+        if (table == null) {
+            return timeFor(latency, failures, operation, null, null);
+        }
+        final TableMetrics family = table.forFamily(request.family());
+        recordRequest(table, family, KeyValues.sizeOf(request));
+        return timeFor(latency, failures, operation, table, family);
+    }
+
+    /**
+     * Starts timing a request with the given {@link TableMetrics}.
+     */
+    private <T> RequestTimingCallback<T> timeFor(final LatencyRecorder latency,
+                                                 final LatencyRecorder failures,
+                                                 final Operation operation,
+                                                 final TableMetrics table,
+                                                 final TableMetrics family) {
+        if (table == null) {
+            return new RequestTimingCallback<T>(metrics, failures, latency);
+        }
+        return family == null
+                ? new RequestTimingCallback<T>(
+                        metrics, failures, latency, table.getLatency(operation))
+                : new RequestTimingCallback<T>(
+                        metrics, failures, latency,
+                        table.getLatency(operation), family.getLatency(operation));
+    }
+
+    /**
+     * Records the size of the edits sent by a request with its {@link TableMetrics}.
+     */
+    private static void recordRequest(final TableMetrics table,
+                                      final TableMetrics family,
+                                      final long size) {
+        table.getRequestBytes().update(size);
+        if (family != null) {
+            family.getRequestBytes().update(size);
+        }
+    }
+
+    /**
+     * Records the size of the cells received for a request with its {@link TableMetrics}.
+     */
+    private static class ResponseRecordingCallback
+            implements Callback<ArrayList<KeyValue>, ArrayList<KeyValue>> {
+
+        private final TableMetrics table;
+        private final TableMetrics family;
+
+        ResponseRecordingCallback(final TableMetrics table, final TableMetrics family) {
+            this.table = table;
+            this.family = family;
+        }
+
+        public ArrayList<KeyValue> call(final ArrayList<KeyValue> row) {
+            if (row != null && table != null) {
+                final int size = KeyValues.sizeOf(row);
+                table.getResponseBytes().update(size);
+                if (family != null) {
+                    family.getResponseBytes().update(size);
+                }
+            }
+            return row;
+        }
     }
 }
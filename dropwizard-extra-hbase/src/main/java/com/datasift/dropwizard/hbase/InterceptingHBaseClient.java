@@ -0,0 +1,574 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.interceptor.Interceptor;
+import com.datasift.dropwizard.hbase.interceptor.InterceptorChain;
+import com.datasift.dropwizard.hbase.scanner.InterceptingRowScanner;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.KeyValues;
+import com.google.common.base.Charsets;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An {@link HBaseClient} that applies an {@link InterceptorChain} to each request.
+ * <p/>
+ * Where nesting a decorator for each concern, such as the {@link BoundedHBaseClient}, {@link
+ * InstrumentedHBaseClient} and {@link DeadlineHBaseClient}, allocates a callback and adds a layer
+ * of dispatch to each request for each concern, this applies every {@link Interceptor} of its
+ * chain with a single completion callback, so the cost of each request stays flat as concerns
+ * are added.
+ * <p/>
+ * Bulk requests are intercepted as a single request. Each batch of rows fetched by a scanner is
+ * a {@link Operation#SCAN scan} request, and closing a scanner is intercepted without being
+ * bounded. A row lock acquired after {@link #lockRow(RowLockRequest) lockRow} has expired is
+ * released.
+ * <p/>
+ * This implementation proxies all requests through an underlying {@link HBaseClient}.
+ */
+public class InterceptingHBaseClient implements HBaseClient {
+
+    /**
+     * The underlying {@link HBaseClient} to dispatch requests.
+     */
+    private final HBaseClient client;
+
+    /**
+     * The {@link InterceptorChain} to apply to each request.
+     */
+    private final InterceptorChain chain;
+
+    /**
+     * Creates a new {@link InterceptingHBaseClient} that applies the given {@link
+     * InterceptorChain} to each request made to the given underlying {@link HBaseClient}.
+     *
+     * @param client the underlying {@link HBaseClient} implementation.
+     * @param chain the {@link InterceptorChain} to apply to each request.
+     */
+    public InterceptingHBaseClient(final HBaseClient client, final InterceptorChain chain) {
+        this.client = client;
+        this.chain = chain;
+    }
+
+    /**
+     * Gets the {@link InterceptorChain} applied to each request.
+     *
+     * @return the {@link InterceptorChain} of this client.
+     */
+    public InterceptorChain getChain() {
+        return chain;
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return client.getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return client.getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        return client.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        return client.setIncrementBufferSize(incrementBufferSize);
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        return chain.submit(Operation.CREATE, edit.table(), edit.family(), KeyValues.sizeOf(edit),
+                new Callback<Deferred<Boolean>, Object>() {
+                    public Deferred<Boolean> call(final Object arg) {
+                        return client.create(edit);
+                    }
+                });
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        return chain.submitBuffered(Operation.INCREMENT, request.table(), request.family(),
+                KeyValues.sizeOf(request),
+                new Callback<Deferred<Long>, Object>() {
+                    public Deferred<Long> call(final Object arg) {
+                        return client.bufferIncrement(request);
+                    }
+                });
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        return chain.submit(Operation.INCREMENT, request.table(), request.family(),
+                KeyValues.sizeOf(request),
+                new Callback<Deferred<Long>, Object>() {
+                    public Deferred<Long> call(final Object arg) {
+                        return client.increment(request);
+                    }
+                });
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        return chain.submit(Operation.INCREMENT, request.table(), request.family(),
+                KeyValues.sizeOf(request),
+                new Callback<Deferred<Long>, Object>() {
+                    public Deferred<Long> call(final Object arg) {
+                        return client.increment(request, durable);
+                    }
+                });
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        return chain.submit(Operation.COMPARE_AND_SET, edit.table(), edit.family(),
+                KeyValues.sizeOf(edit),
+                new Callback<Deferred<Boolean>, Object>() {
+                    public Deferred<Boolean> call(final Object arg) {
+                        return client.compareAndSet(edit, expected);
+                    }
+                });
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        return chain.submit(Operation.COMPARE_AND_SET, edit.table(), edit.family(),
+                KeyValues.sizeOf(edit),
+                new Callback<Deferred<Boolean>, Object>() {
+                    public Deferred<Boolean> call(final Object arg) {
+                        return client.compareAndSet(edit, expected);
+                    }
+                });
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        return chain.submit(Operation.DELETE, request.table(), request.family(),
+                new Callback<Deferred<Object>, Object>() {
+                    public Deferred<Object> call(final Object arg) {
+                        return client.delete(request);
+                    }
+                });
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests.
+     * <p/>
+     * The whole batch is intercepted as a single request.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        return chain.submitAll(Operation.DELETE, tableOf(requests),
+                new Callback<Deferred<List<BulkResult<Object>>>, Object>() {
+                    public Deferred<List<BulkResult<Object>>> call(final Object arg) {
+                        return client.deleteAll(requests);
+                    }
+                });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return chain.submit(Operation.ASSERTION, table, null,
+                new Callback<Deferred<Object>, Object>() {
+                    public Deferred<Object> call(final Object arg) {
+                        return client.ensureTableExists(table);
+                    }
+                });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        return chain.submit(Operation.ASSERTION, table.getBytes(Charsets.UTF_8), null,
+                new Callback<Deferred<Object>, Object>() {
+                    public Deferred<Object> call(final Object arg) {
+                        return client.ensureTableExists(table);
+                    }
+                });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        return chain.submit(Operation.ASSERTION, table, family,
+                new Callback<Deferred<Object>, Object>() {
+                    public Deferred<Object> call(final Object arg) {
+                        return client.ensureTableFamilyExists(table, family);
+                    }
+                });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return chain.submit(Operation.ASSERTION,
+                table.getBytes(Charsets.UTF_8), family.getBytes(Charsets.UTF_8),
+                new Callback<Deferred<Object>, Object>() {
+                    public Deferred<Object> call(final Object arg) {
+                        return client.ensureTableFamilyExists(table, family);
+                    }
+                });
+    }
+
+    /**
+     * Flushes all requests buffered on the client-side
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        return chain.submit(Operation.FLUSH, null, null, new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.flush();
+            }
+        });
+    }
+
+    /**
+     * Retrieves the specified cells
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        return chain.submit(Operation.GET, request.table(), request.family(),
+                new Callback<Deferred<ArrayList<KeyValue>>, Object>() {
+                    public Deferred<ArrayList<KeyValue>> call(final Object arg) {
+                        return client.get(request);
+                    }
+                });
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     * <p/>
+     * The whole batch is intercepted as a single request.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        return chain.submitAll(Operation.GET, tableOf(requests),
+                new Callback<Deferred<List<BulkResult<ArrayList<KeyValue>>>>, Object>() {
+                    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> call(
+                            final Object arg) {
+                        return client.getAll(requests);
+                    }
+                });
+    }
+
+    /**
+     * Aqcuire an explicit row lock.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        // the lock, if it is acquired, even after the request has expired
+        final Deferred<RowLock> lock = new Deferred<RowLock>();
+        return chain.submit(Operation.LOCK, request.table(), null,
+                new Callback<Deferred<RowLock>, Object>() {
+                    public Deferred<RowLock> call(final Object arg) {
+                        return client.lockRow(request).chain(lock);
+                    }
+                })
+                .addErrback(new Callback<Object, Exception>() {
+                    public Object call(final Exception e) {
+                        if (e instanceof RequestTimeoutException) {
+                            lock.addCallback(new Callback<Object, RowLock>() {
+                                public Object call(final RowLock lock) {
+                                    return client.unlockRow(lock);
+                                }
+                            });
+                        }
+                        return e;
+                    }
+                });
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table, each batch of which is intercepted.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link InterceptingRowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return new InterceptingRowScanner(client.scan(table), table, chain);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table, each batch of which is intercepted.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link InterceptingRowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return new InterceptingRowScanner(
+                client.scan(table), table.getBytes(Charsets.UTF_8), chain);
+    }
+
+    /**
+     * Store the specified cells.
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        return chain.submit(Operation.PUT, request.table(), request.family(),
+                KeyValues.sizeOf(request),
+                new Callback<Deferred<Object>, Object>() {
+                    public Deferred<Object> call(final Object arg) {
+                        return client.put(request);
+                    }
+                });
+    }
+
+    /**
+     * Stores the specified cells for each of the given requests.
+     * <p/>
+     * The whole batch is intercepted as a single request.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        return chain.submitAll(Operation.PUT, tableOf(requests),
+                new Callback<Deferred<List<BulkResult<Object>>>, Object>() {
+                    public Deferred<List<BulkResult<Object>>> call(final Object arg) {
+                        return client.putAll(requests);
+                    }
+                });
+    }
+
+    /**
+     * Performs a graceful shutdown of this client, flushing any pending requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        return client.shutdown();
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return client.stats();
+    }
+
+    /**
+     * Get the underlying {@link Timer} used by the async client
+     *
+     * @return the underlying {@link Timer} used by the async client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return client.getTimer();
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return chain.submit(Operation.UNLOCK, null, null, new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.unlockRow(lock);
+            }
+        });
+    }
+
+
+    /**
+     * Gets the table common to all the given requests.
+     *
+     * @return the table of all the requests; or null if they are not all for the same table.
+     */
+    private static byte[] tableOf(final List<? extends HBaseRpc.HasTable> requests) {
+        byte[] table = null;
+        for (final HBaseRpc.HasTable request : requests) {
+            if (table == null) {
+                table = request.table();
+            } else if (!Arrays.equals(table, request.table())) {
+                return null;
+            }
+        }
+        return table;
+    }
+}
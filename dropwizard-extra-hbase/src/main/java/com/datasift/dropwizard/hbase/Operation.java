@@ -0,0 +1,75 @@
+package com.datasift.dropwizard.hbase;
+
+/**
+ * The classes of operation that may be performed by an {@link HBaseClient}.
+ * <p/>
+ * Each {@link Operation} has a {@link #getName() name}, used to refer to it in configuration.
+ */
+public enum Operation {
+
+    /** @see HBaseClient#create(org.hbase.async.PutRequest) */
+    CREATE("create"),
+
+    /** @see HBaseClient#increment(org.hbase.async.AtomicIncrementRequest) */
+    INCREMENT("increment"),
+
+    /** @see HBaseClient#compareAndSet(org.hbase.async.PutRequest, byte[]) */
+    COMPARE_AND_SET("compareAndSet"),
+
+    /** @see HBaseClient#delete(org.hbase.async.DeleteRequest) */
+    DELETE("delete"),
+
+    /** @see HBaseClient#ensureTableExists(byte[]) */
+    ASSERTION("assertion"),
+
+    /** @see HBaseClient#flush() */
+    FLUSH("flush"),
+
+    /** @see HBaseClient#get(org.hbase.async.GetRequest) */
+    GET("get"),
+
+    /** @see HBaseClient#lockRow(org.hbase.async.RowLockRequest) */
+    LOCK("lock"),
+
+    /** @see HBaseClient#put(org.hbase.async.PutRequest) */
+    PUT("put"),
+
+    /** @see HBaseClient#unlockRow(org.hbase.async.RowLock) */
+    UNLOCK("unlock"),
+
+    /** @see HBaseClient#scan(byte[]) */
+    SCAN("scan");
+
+    private final String name;
+
+    Operation(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of this {@link Operation}.
+     *
+     * @return the name of this {@link Operation}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the {@link Operation} with the given name.
+     *
+     * @param name the name of the {@link Operation}.
+     *
+     * @return the {@link Operation} with the given name.
+     *
+     * @throws IllegalArgumentException if there is no {@link Operation} with the given name.
+     */
+    public static Operation forName(final String name) {
+        for (final Operation operation : values()) {
+            if (operation.name.equals(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + name);
+    }
+}
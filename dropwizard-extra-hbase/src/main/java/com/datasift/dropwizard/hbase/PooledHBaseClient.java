@@ -0,0 +1,609 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.ClientStatistics;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An {@link HBaseClient} that stripes requests over a pool of underlying clients.
+ * <p/>
+ * A single asynchbase client multiplexes every request to a region server over one connection,
+ * which can limit the throughput of a busy client. Pooling several underlying clients spreads
+ * requests over several connections to each region server.
+ * <p/>
+ * Each request for a row is routed to an underlying client by the hash of its key, so every
+ * request for the same row is dispatched by the same client, and requests for a row retain their
+ * order. Bulk requests are split by client, and their results are reassembled in the order of the
+ * requests. Scans are spread over the pool in turn.
+ * <p/>
+ * Assertions, {@link #flush() flushes}, {@link #shutdown() shutdowns} and changes to the
+ * configuration of the client apply to every client in the pool, and the {@link #stats()
+ * statistics} of the pool are the sum of the statistics of every client.
+ */
+public class PooledHBaseClient implements HBaseClient {
+
+    /**
+     * The underlying {@link HBaseClient}s of the pool.
+     */
+    private final HBaseClient[] clients;
+
+    private final AtomicInteger nextScan = new AtomicInteger();
+
+    // a RowLock doesn't expose its row, so the client that acquired each lock must be tracked
+    private final ConcurrentMap<RowLock, HBaseClient> locks =
+            new ConcurrentHashMap<RowLock, HBaseClient>();
+
+    /**
+     * Creates a new {@link PooledHBaseClient} over the given underlying clients.
+     *
+     * @param clients the underlying {@link HBaseClient}s to stripe requests over.
+     */
+    public PooledHBaseClient(final List<HBaseClient> clients) {
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("A pool requires at least one client");
+        }
+        this.clients = clients.toArray(new HBaseClient[clients.size()]);
+    }
+
+    /**
+     * Gets the number of underlying clients in the pool.
+     *
+     * @return the number of underlying clients in the pool.
+     */
+    public int getPoolSize() {
+        return clients.length;
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return clients[0].getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer of each client in the pool.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return clients[0].getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed, for every
+     * client in the pool.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        final Duration previous = clients[0].setFlushInterval(flushInterval);
+        for (int i = 1; i < clients.length; i++) {
+            clients[i].setFlushInterval(flushInterval);
+        }
+        return previous;
+    }
+
+    /**
+     * Sets the capacity of the increment buffer of every client in the pool.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        final Size previous = clients[0].setIncrementBufferSize(incrementBufferSize);
+        for (int i = 1; i < clients.length; i++) {
+            clients[i].setIncrementBufferSize(incrementBufferSize);
+        }
+        return previous;
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        return client(edit.key()).create(edit);
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        return client(request.key()).bufferIncrement(request);
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        return client(request.key()).increment(request);
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        return client(request.key()).increment(request, durable);
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        return client(edit.key()).compareAndSet(edit, expected);
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        return client(edit.key()).compareAndSet(edit, expected);
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        return client(request.key()).delete(request);
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests, splitting them between the
+     * clients in the pool.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        return dispatchAll(requests, new BulkDispatch<DeleteRequest, Object>() {
+            Deferred<List<BulkResult<Object>>> dispatch(final HBaseClient client,
+                                                        final List<DeleteRequest> requests) {
+                return client.deleteAll(requests);
+            }
+        });
+    }
+
+    /**
+     * Ensures that a specific table exists, for every client in the pool.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        final List<Deferred<Object>> assertions = new ArrayList<Deferred<Object>>(clients.length);
+        for (final HBaseClient client : clients) {
+            assertions.add(client.ensureTableExists(table));
+        }
+        return all(assertions);
+    }
+
+    /**
+     * Ensures that a specific table exists, for every client in the pool.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        final List<Deferred<Object>> assertions = new ArrayList<Deferred<Object>>(clients.length);
+        for (final HBaseClient client : clients) {
+            assertions.add(client.ensureTableExists(table));
+        }
+        return all(assertions);
+    }
+
+    /**
+     * Ensures that a specific table exists, for every client in the pool.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        final List<Deferred<Object>> assertions = new ArrayList<Deferred<Object>>(clients.length);
+        for (final HBaseClient client : clients) {
+            assertions.add(client.ensureTableFamilyExists(table, family));
+        }
+        return all(assertions);
+    }
+
+    /**
+     * Ensures that a specific table exists, for every client in the pool.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        final List<Deferred<Object>> assertions = new ArrayList<Deferred<Object>>(clients.length);
+        for (final HBaseClient client : clients) {
+            assertions.add(client.ensureTableFamilyExists(table, family));
+        }
+        return all(assertions);
+    }
+
+    /**
+     * Flushes all requests buffered on the client-side, by every client in the pool.
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        final List<Deferred<Object>> flushes = new ArrayList<Deferred<Object>>(clients.length);
+        for (final HBaseClient client : clients) {
+            flushes.add(client.flush());
+        }
+        return all(flushes);
+    }
+
+    /**
+     * Retrieves the specified cells.
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        return client(request.key()).get(request);
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests, splitting them between the
+     * clients in the pool.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        return dispatchAll(requests, new BulkDispatch<GetRequest, ArrayList<KeyValue>>() {
+            Deferred<List<BulkResult<ArrayList<KeyValue>>>> dispatch(
+                    final HBaseClient client, final List<GetRequest> requests) {
+                return client.getAll(requests);
+            }
+        });
+    }
+
+    /**
+     * Aqcuire an explicit row lock.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        final HBaseClient client = client(request.key());
+        return client.lockRow(request).addCallback(new Callback<RowLock, RowLock>() {
+            public RowLock call(final RowLock lock) {
+                locks.put(lock, client);
+                return lock;
+            }
+        });
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table, from the next client in the pool.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return nextScanClient().scan(table);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table, from the next client in the pool.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return nextScanClient().scan(table);
+    }
+
+    /**
+     * Store the specified cells.
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        return client(request.key()).put(request);
+    }
+
+    /**
+     * Stores the specified cells for each of the given requests, splitting them between the
+     * clients in the pool.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        return dispatchAll(requests, new BulkDispatch<PutRequest, Object>() {
+            Deferred<List<BulkResult<Object>>> dispatch(final HBaseClient client,
+                                                        final List<PutRequest> requests) {
+                return client.putAll(requests);
+            }
+        });
+    }
+
+    /**
+     * Performs a graceful shutdown of every client in the pool, flushing any pending requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        final List<Deferred<Object>> shutdowns = new ArrayList<Deferred<Object>>(clients.length);
+        for (final HBaseClient client : clients) {
+            shutdowns.add(client.shutdown());
+        }
+        return all(shutdowns);
+    }
+
+    /**
+     * Get an immutable snapshot of the usage statistics of the pool.
+     *
+     * @return an immutable snapshot of the total usage statistics of every client in the pool.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        final List<ClientStats> stats = new ArrayList<ClientStats>(clients.length);
+        for (final HBaseClient client : clients) {
+            stats.add(client.stats());
+        }
+        return ClientStatistics.sum(stats);
+    }
+
+    /**
+     * Get the {@link Timer} used by the first client in the pool.
+     *
+     * @return the {@link Timer} used by the first client in the pool.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return clients[0].getTimer();
+    }
+
+    /**
+     * Release an explicit row lock, using the client that acquired it.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        final HBaseClient client = locks.remove(lock);
+        return (client == null ? clients[0] : client).unlockRow(lock);
+    }
+
+    /**
+     * Gets the client in the pool that dispatches requests for the given row.
+     *
+     * @param key the key of the row.
+     *
+     * @return the {@link HBaseClient} for the row.
+     */
+    HBaseClient client(final byte[] key) {
+        return clients[stripe(key)];
+    }
+
+    private int stripe(final byte[] key) {
+        if (clients.length == 1) {
+            return 0;
+        }
+        // spread the hash, as keys often share their low-order bytes
+        int h = Arrays.hashCode(key);
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return (h & Integer.MAX_VALUE) % clients.length;
+    }
+
+    private HBaseClient nextScanClient() {
+        return clients[(nextScan.getAndIncrement() & Integer.MAX_VALUE) % clients.length];
+    }
+
+    // completes once every request has, failing with the first failure
+    private Deferred<Object> all(final List<Deferred<Object>> requests) {
+        return Deferred.group(requests).addCallback(new Callback<Object, ArrayList<Object>>() {
+            public Object call(final ArrayList<Object> arg) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Splits a bulk request between the clients of the pool, and reassembles the results of each
+     * client in the order of the requests.
+     * <p/>
+     * If the bulk request of a client fails outright, each of the requests dispatched to it fails
+     * with the same error.
+     */
+    @SuppressWarnings("unchecked")
+    private <R extends HBaseRpc.HasKey, T> Deferred<List<BulkResult<T>>> dispatchAll(
+            final List<R> requests, final BulkDispatch<R, T> bulk) {
+        final int size = requests.size();
+        if (clients.length == 1 || size == 0) {
+            return bulk.dispatch(clients[0], requests);
+        }
+
+        final List<List<R>> partitions = new ArrayList<List<R>>(clients.length);
+        final List<List<Integer>> indices = new ArrayList<List<Integer>>(clients.length);
+        for (int i = 0; i < clients.length; i++) {
+            partitions.add(new ArrayList<R>());
+            indices.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < size; i++) {
+            final R request = requests.get(i);
+            final int stripe = stripe(request.key());
+            partitions.get(stripe).add(request);
+            indices.get(stripe).add(i);
+        }
+
+        int dispatched = 0;
+        for (final List<R> partition : partitions) {
+            if (!partition.isEmpty()) {
+                dispatched++;
+            }
+        }
+
+        final Deferred<List<BulkResult<T>>> collected = new Deferred<List<BulkResult<T>>>();
+        final AtomicReferenceArray<BulkResult<T>> slots =
+                new AtomicReferenceArray<BulkResult<T>>(size);
+        final AtomicInteger remaining = new AtomicInteger(dispatched);
+
+        for (int i = 0; i < clients.length; i++) {
+            final List<R> partition = partitions.get(i);
+            if (partition.isEmpty()) {
+                continue;
+            }
+            final List<Integer> index = indices.get(i);
+            // the result may be either the results of the partition or an Exception
+            final Deferred<Object> result =
+                    (Deferred<Object>) (Deferred<?>) bulk.dispatch(clients[i], partition);
+            result.addBoth(new Callback<Object, Object>() {
+                public Object call(final Object arg) {
+                    for (int j = 0; j < index.size(); j++) {
+                        slots.set(index.get(j), arg instanceof Exception
+                                ? BulkResult.<T>failure((Exception) arg)
+                                : ((List<BulkResult<T>>) arg).get(j));
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        final List<BulkResult<T>> list = new ArrayList<BulkResult<T>>(size);
+                        for (int j = 0; j < size; j++) {
+                            list.add(slots.get(j));
+                        }
+                        collected.callback(list);
+                    }
+                    return arg;
+                }
+            });
+        }
+        return collected;
+    }
+
+    /**
+     * Dispatches a bulk request to a single client of the pool.
+     */
+    private abstract static class BulkDispatch<R, T> {
+        abstract Deferred<List<BulkResult<T>>> dispatch(HBaseClient client, List<R> requests);
+    }
+}
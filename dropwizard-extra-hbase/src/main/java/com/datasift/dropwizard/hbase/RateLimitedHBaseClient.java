@@ -0,0 +1,526 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.limiter.RateLimits;
+import com.datasift.dropwizard.hbase.scanner.RateLimitedRowScanner;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.KeyValues;
+import com.google.common.base.Charsets;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link HBaseClient} that limits the rate of requests for each table and {@link Operation},
+ * and the rate of bytes put to each table.
+ * <p/>
+ * Where the {@link BoundedHBaseClient} limits how many requests may be in-flight at once, this
+ * limits how quickly they may be made; so a backfill may be kept from hammering a table hard
+ * enough to trigger throttling by its region servers, however quickly they respond.
+ * <p/>
+ * Each request takes tokens from the buckets of its {@link RateLimits}, and is delayed until
+ * they allow it, or rejected if it would be delayed for too long; see {@link RateLimits} for
+ * how. Each request of a bulk request takes its own tokens, and the whole batch is delayed until
+ * the last of them is allowed, or rejected if any of them would be. Each batch of rows fetched by
+ * a scanner is a {@link Operation#SCAN scan} request. Assertions, flushes and unlocks are never
+ * limited.
+ * <p/>
+ * The limits may be changed at runtime, through {@link #getRateLimits()}.
+ */
+public class RateLimitedHBaseClient implements HBaseClient {
+
+    /**
+     * The underlying {@link HBaseClient} to dispatch requests.
+     */
+    private final HBaseClient client;
+
+    /**
+     * The {@link RateLimits} for each table and {@link Operation}.
+     */
+    private final RateLimits limits;
+
+    /**
+     * Creates a new {@link RateLimitedHBaseClient} for the given underlying {@link HBaseClient},
+     * limited by the given {@link RateLimits}.
+     *
+     * @param client the underlying {@link HBaseClient} implementation.
+     * @param limits the {@link RateLimits} for each table and {@link Operation}.
+     */
+    public RateLimitedHBaseClient(final HBaseClient client, final RateLimits limits) {
+        this.client = client;
+        this.limits = limits;
+    }
+
+    /**
+     * Gets the {@link RateLimits} for each table and {@link Operation}, to inspect or change them.
+     *
+     * @return the {@link RateLimits} of this client.
+     */
+    public RateLimits getRateLimits() {
+        return limits;
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return client.getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return client.getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        return client.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        return client.setIncrementBufferSize(incrementBufferSize);
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        return limits.submit(Operation.CREATE, edit.table(), KeyValues.sizeOf(edit),
+                new Callback<Deferred<Boolean>, Object>() {
+                    public Deferred<Boolean> call(final Object arg) {
+                        return client.create(edit);
+                    }
+                });
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        return limits.submit(Operation.INCREMENT, request.table(), 0,
+                new Callback<Deferred<Long>, Object>() {
+                    public Deferred<Long> call(final Object arg) {
+                        return client.bufferIncrement(request);
+                    }
+                });
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        return limits.submit(Operation.INCREMENT, request.table(), 0,
+                new Callback<Deferred<Long>, Object>() {
+                    public Deferred<Long> call(final Object arg) {
+                        return client.increment(request);
+                    }
+                });
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        return limits.submit(Operation.INCREMENT, request.table(), 0,
+                new Callback<Deferred<Long>, Object>() {
+                    public Deferred<Long> call(final Object arg) {
+                        return client.increment(request, durable);
+                    }
+                });
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        return limits.submit(Operation.COMPARE_AND_SET, edit.table(), KeyValues.sizeOf(edit),
+                new Callback<Deferred<Boolean>, Object>() {
+                    public Deferred<Boolean> call(final Object arg) {
+                        return client.compareAndSet(edit, expected);
+                    }
+                });
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        return limits.submit(Operation.COMPARE_AND_SET, edit.table(), KeyValues.sizeOf(edit),
+                new Callback<Deferred<Boolean>, Object>() {
+                    public Deferred<Boolean> call(final Object arg) {
+                        return client.compareAndSet(edit, expected);
+                    }
+                });
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        return limits.submit(Operation.DELETE, request.table(), 0,
+                new Callback<Deferred<Object>, Object>() {
+                    public Deferred<Object> call(final Object arg) {
+                        return client.delete(request);
+                    }
+                });
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests.
+     * <p/>
+     * Each request takes its own tokens, and the whole batch is delayed until all of them are
+     * allowed, or rejected if any of them would be.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        final byte[][] tables = new byte[requests.size()][];
+        final long[] bytes = new long[requests.size()];
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = requests.get(i).table();
+        }
+        final long wait = limits.reserve(Operation.DELETE, tables, bytes);
+        return limits.submit(wait, new Callback<Deferred<List<BulkResult<Object>>>, Object>() {
+            public Deferred<List<BulkResult<Object>>> call(final Object arg) {
+                return client.deleteAll(requests);
+            }
+        });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return client.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        return client.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        return client.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return client.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Flushes all requests buffered on the client-side
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        return client.flush();
+    }
+
+    /**
+     * Retrieves the specified cells
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        return limits.submit(Operation.GET, request.table(), 0,
+                new Callback<Deferred<ArrayList<KeyValue>>, Object>() {
+                    public Deferred<ArrayList<KeyValue>> call(final Object arg) {
+                        return client.get(request);
+                    }
+                });
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     * <p/>
+     * Each request takes its own tokens, and the whole batch is delayed until all of them are
+     * allowed, or rejected if any of them would be.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        final byte[][] tables = new byte[requests.size()][];
+        final long[] bytes = new long[requests.size()];
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = requests.get(i).table();
+        }
+        final long wait = limits.reserve(Operation.GET, tables, bytes);
+        return limits.submit(wait,
+                new Callback<Deferred<List<BulkResult<ArrayList<KeyValue>>>>, Object>() {
+                    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> call(
+                            final Object arg) {
+                        return client.getAll(requests);
+                    }
+                });
+    }
+
+    /**
+     * Aqcuire an explicit row lock.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        return limits.submit(Operation.LOCK, request.table(), 0,
+                new Callback<Deferred<RowLock>, Object>() {
+                    public Deferred<RowLock> call(final Object arg) {
+                        return client.lockRow(request);
+                    }
+                });
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table, each batch of which is limited.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RateLimitedRowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return new RateLimitedRowScanner(client.scan(table), table, limits);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table, each batch of which is limited.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RateLimitedRowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return new RateLimitedRowScanner(
+                client.scan(table), table.getBytes(Charsets.UTF_8), limits);
+    }
+
+    /**
+     * Store the specified cells.
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        return limits.submit(Operation.PUT, request.table(), KeyValues.sizeOf(request),
+                new Callback<Deferred<Object>, Object>() {
+                    public Deferred<Object> call(final Object arg) {
+                        return client.put(request);
+                    }
+                });
+    }
+
+    /**
+     * Stores the specified cells for each of the given requests.
+     * <p/>
+     * Each request takes its own tokens, and the whole batch is delayed until all of them are
+     * allowed, or rejected if any of them would be.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        final byte[][] tables = new byte[requests.size()][];
+        final long[] bytes = new long[requests.size()];
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = requests.get(i).table();
+            bytes[i] = KeyValues.sizeOf(requests.get(i));
+        }
+        final long wait = limits.reserve(Operation.PUT, tables, bytes);
+        return limits.submit(wait, new Callback<Deferred<List<BulkResult<Object>>>, Object>() {
+            public Deferred<List<BulkResult<Object>>> call(final Object arg) {
+                return client.putAll(requests);
+            }
+        });
+    }
+
+    /**
+     * Performs a graceful shutdown of this client, flushing any pending requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        return client.shutdown();
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return client.stats();
+    }
+
+    /**
+     * Get the underlying {@link Timer} used by the async client
+     *
+     * @return the underlying {@link Timer} used by the async client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return client.getTimer();
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return client.unlockRow(lock);
+    }
+}
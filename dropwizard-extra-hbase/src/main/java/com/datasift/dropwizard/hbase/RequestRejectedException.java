@@ -0,0 +1,21 @@
+package com.datasift.dropwizard.hbase;
+
+/**
+ * Thrown (via a {@link com.stumbleupon.async.Deferred}) when a request is refused by an {@link
+ * HBaseClient} before being dispatched to the cluster.
+ * <p/>
+ * A rejected request has not been sent to HBase, so it is always safe to retry.
+ */
+public class RequestRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new {@link RequestRejectedException} with the given reason.
+     *
+     * @param message the reason the request was rejected.
+     */
+    public RequestRejectedException(final String message) {
+        super(message);
+    }
+}
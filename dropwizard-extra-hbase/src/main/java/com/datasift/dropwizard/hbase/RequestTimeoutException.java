@@ -0,0 +1,22 @@
+package com.datasift.dropwizard.hbase;
+
+/**
+ * Thrown (via a {@link com.stumbleupon.async.Deferred}) when a request does not complete within
+ * its deadline.
+ * <p/>
+ * A timed out request may already have been sent to HBase, and may yet be applied, so it is only
+ * safe to retry if it is idempotent.
+ */
+public class RequestTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new {@link RequestTimeoutException} with the given reason.
+     *
+     * @param message the reason the request timed out.
+     */
+    public RequestTimeoutException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,931 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.limiter.RequestClass;
+import com.datasift.dropwizard.hbase.limiter.RequestContext;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.RetryBudget;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link HBaseClient} that retries requests that fail with a transient error.
+ * <p/>
+ * Failed requests are retried after an exponentially increasing delay, with "full jitter": each
+ * delay is chosen at random between zero and the current backoff, so that requests that failed
+ * together do not all retry together. Delays are scheduled on the {@link HBaseClient#getTimer()
+ * Timer} of the underlying client, so waiting requests hold no threads, and each retry is then
+ * dispatched by the given {@link Executor}, so that a retry blocked by the underlying client can
+ * never stall the {@link Timer}.
+ * <p/>
+ * Errors that guarantee the request was not applied, such as a {@link RequestRejectedException},
+ * {@link PleaseThrottleException} or {@link NotServingRegionException}, are retried for every
+ * operation. Errors after which the request may or may not have been applied, such as a {@link
+ * ConnectionResetException} or {@link RequestTimeoutException}, are only retried for {@link
+ * #isIdempotent(Operation) idempotent} operations; retrying an increment or compare-and-set could
+ * otherwise apply it twice.
+ * <p/>
+ * Requests rejected by an open circuit, with a {@link CircuitOpenException}, are never retried.
+ * <p/>
+ * Retries are limited by a {@link RetryBudget}, so that retries can not multiply the load on a
+ * struggling cluster. Requests that exhaust their attempts or the budget fail with their last
+ * error.
+ * <p/>
+ * {@link #scan(byte[]) Scanners} are not retried, as their position can not be recovered. {@link
+ * #getAll(List) Bulk requests} retry only the requests of the batch that failed with a retryable
+ * error, as a single smaller batch, and each retry of a batch is withdrawn from the budget once.
+ * The result of a bulk request is always a result for each of its requests, even if a whole batch
+ * failed.
+ * <p/>
+ * This implementation proxies all requests through an underlying {@link HBaseClient}.
+ */
+public class RetryingHBaseClient implements HBaseClient {
+
+    /**
+     * The number of retries that may be saved up in the default {@link RetryBudget}.
+     */
+    public static final int DEFAULT_MAX_SAVED_RETRIES = 10;
+
+    /**
+     * The underlying {@link HBaseClient} to dispatch requests.
+     */
+    private final HBaseClient client;
+
+    private final int maxAttempts;
+    private final long backoff;
+    private final long maxBackoff;
+    private final RetryBudget budget;
+    private final Executor executor;
+    private final Random random = new Random();
+
+    private final Histogram attempts;
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+
+    /**
+     * Creates a new {@link RetryingHBaseClient} that retries up to {@code ratio} of requests.
+     * <p/>
+     * The {@link Metrics#defaultRegistry() default} {@link MetricsRegistry} will be used to
+     * register the {@link com.yammer.metrics.core.Metric}s.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param maxRetries the maximum number of times to retry each request.
+     * @param backoff the backoff before the first retry, doubled for each subsequent retry.
+     * @param maxBackoff the maximum backoff before a retry.
+     * @param ratio the maximum number of retries per request, e.g. 0.1 for 10% extra load.
+     * @param executor the {@link Executor} to dispatch retries with.
+     */
+    public RetryingHBaseClient(final HBaseClient client,
+                               final int maxRetries,
+                               final Duration backoff,
+                               final Duration maxBackoff,
+                               final double ratio,
+                               final Executor executor) {
+        this(client,
+             maxRetries,
+             backoff,
+             maxBackoff,
+             new RetryBudget(ratio, DEFAULT_MAX_SAVED_RETRIES),
+             executor,
+             Metrics.defaultRegistry());
+    }
+
+    /**
+     * Creates a new {@link RetryingHBaseClient} limited by the given {@link RetryBudget},
+     * registering metrics for the attempts made with the given {@link MetricsRegistry}.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param maxRetries the maximum number of times to retry each request.
+     * @param backoff the backoff before the first retry, doubled for each subsequent retry.
+     * @param maxBackoff the maximum backoff before a retry.
+     * @param budget the {@link RetryBudget} limiting the number of retries.
+     * @param executor the {@link Executor} to dispatch retries with.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     */
+    public RetryingHBaseClient(final HBaseClient client,
+                               final int maxRetries,
+                               final Duration backoff,
+                               final Duration maxBackoff,
+                               final RetryBudget budget,
+                               final Executor executor,
+                               final MetricsRegistry registry) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative: " + maxRetries);
+        }
+        this.client = client;
+        this.maxAttempts = maxRetries + 1;
+        this.backoff = Math.max(1, backoff.toNanoseconds());
+        this.maxBackoff = Math.max(this.backoff, maxBackoff.toNanoseconds());
+        this.budget = budget;
+        this.executor = executor;
+
+        if (registry == null) {
+            this.attempts = null;
+            return;
+        }
+
+        final Class<? extends HBaseClient> clazz = getClass();
+        this.attempts = registry.newHistogram(clazz, "attempts", "requests");
+        registry.newGauge(clazz, "retries", "requests", new Gauge<Long>() {
+            @Override public Long value() {
+                return getRetries();
+            }
+        });
+        registry.newGauge(clazz, "exhausted", "requests", new Gauge<Long>() {
+            @Override public Long value() {
+                return getBudgetExhausted();
+            }
+        });
+        registry.newGauge(clazz, "budget", "requests", new Gauge<Double>() {
+            @Override public Double value() {
+                return budget.getAvailable();
+            }
+        });
+    }
+
+    /**
+     * Gets the total number of retries made.
+     *
+     * @return the number of retries made.
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Gets the total number of retries denied because the {@link RetryBudget} was exhausted.
+     *
+     * @return the number of retries denied by the {@link RetryBudget}.
+     */
+    public long getBudgetExhausted() {
+        return exhausted.get();
+    }
+
+    /**
+     * Gets the {@link Histogram} of the number of attempts made for each request.
+     *
+     * @return the {@link Histogram} of attempts per request; or null if no metrics are
+     *         registered.
+     */
+    public Histogram getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return client.getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return client.getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        return client.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        return client.setIncrementBufferSize(incrementBufferSize);
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        return retry(Operation.CREATE, new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.create(edit);
+            }
+        });
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        return retry(Operation.INCREMENT, new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.bufferIncrement(request);
+            }
+        });
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        return retry(Operation.INCREMENT, new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.increment(request);
+            }
+        });
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request,
+                                    final Boolean durable) {
+        return retry(Operation.INCREMENT, new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.increment(request, durable);
+            }
+        });
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit,
+                                           final byte[] expected) {
+        return retry(Operation.COMPARE_AND_SET, new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.compareAndSet(edit, expected);
+            }
+        });
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit     the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit,
+                                           final String expected) {
+        return retry(Operation.COMPARE_AND_SET, new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.compareAndSet(edit, expected);
+            }
+        });
+    }
+
+    /**
+     * Deletes the specified cells.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating when the deletion completes.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        return retry(Operation.DELETE, new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.delete(request);
+            }
+        });
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests.
+     * <p/>
+     * Only the requests that failed with a retryable error are retried.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        return retryAll(Operation.DELETE, requests,
+                new Callback<Deferred<List<BulkResult<Object>>>, List<DeleteRequest>>() {
+                    public Deferred<List<BulkResult<Object>>> call(
+                            final List<DeleteRequest> batch) {
+                        return client.deleteAll(batch);
+                    }
+                });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return retry(Operation.ASSERTION, new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableExists(table);
+            }
+        });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        return retry(Operation.ASSERTION, new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableExists(table);
+            }
+        });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table,
+                                                    final byte[] family) {
+        return retry(Operation.ASSERTION, new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableFamilyExists(table, family);
+            }
+        });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table,
+                                                    final String family) {
+        return retry(Operation.ASSERTION, new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.ensureTableFamilyExists(table, family);
+            }
+        });
+    }
+
+    /**
+     * Flushes all requests buffered on the client-side
+     *
+     * @return a {@link Deferred} indicating the completion of the flush.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        return retry(Operation.FLUSH, new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.flush();
+            }
+        });
+    }
+
+    /**
+     * Retrieves the specified cells
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        return retry(Operation.GET, new Callback<Deferred<ArrayList<KeyValue>>, Object>() {
+            public Deferred<ArrayList<KeyValue>> call(final Object arg) {
+                return client.get(request);
+            }
+        });
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     * <p/>
+     * Only the requests that failed with a retryable error are retried.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        return retryAll(Operation.GET, requests,
+                new Callback<Deferred<List<BulkResult<ArrayList<KeyValue>>>>, List<GetRequest>>() {
+                    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> call(
+                            final List<GetRequest> batch) {
+                        return client.getAll(batch);
+                    }
+                });
+    }
+
+    /**
+     * Aqcuire an explicit row lock.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        return retry(Operation.LOCK, new Callback<Deferred<RowLock>, Object>() {
+            public Deferred<RowLock> call(final Object arg) {
+                return client.lockRow(request);
+            }
+        });
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return client.scan(table);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return client.scan(table);
+    }
+
+    /**
+     * Store the specified cell(s).
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put operation.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        return retry(Operation.PUT, new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.put(request);
+            }
+        });
+    }
+
+    /**
+     * Store the specified cell(s) for each of the given requests.
+     * <p/>
+     * Only the requests that failed with a retryable error are retried.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        return retryAll(Operation.PUT, requests,
+                new Callback<Deferred<List<BulkResult<Object>>>, List<PutRequest>>() {
+                    public Deferred<List<BulkResult<Object>>> call(final List<PutRequest> batch) {
+                        return client.putAll(batch);
+                    }
+                });
+    }
+
+    /**
+     * Performs a graceful shutdown of this client, flushing any pending requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        return client.shutdown();
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return client.stats();
+    }
+
+    /**
+     * Get the underlying {@link org.jboss.netty.util.Timer} used by the client.
+     *
+     * @return the underlying {@link org.jboss.netty.util.Timer} used by the async client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return client.getTimer();
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return retry(Operation.UNLOCK, new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.unlockRow(lock);
+            }
+        });
+    }
+
+    /**
+     * Determines whether requests for the given {@link Operation} may safely be applied more than
+     * once.
+     * <p/>
+     * Gets, puts and deletes are idempotent, as are assertions, flushes and unlocks; creates,
+     * increments, compare-and-sets and row locks are not.
+     *
+     * @param operation the {@link Operation} of the request.
+     *
+     * @return true if the request may be applied more than once; false if it may not.
+     */
+    protected boolean isIdempotent(final Operation operation) {
+        switch (operation) {
+            case GET:
+            case PUT:
+            case DELETE:
+            case ASSERTION:
+            case FLUSH:
+            case UNLOCK:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Determines whether a request for the given {@link Operation} that failed with the given
+     * error should be retried.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param error the error the request failed with.
+     *
+     * @return true if the request should be retried; false if it should fail.
+     */
+    protected boolean isRetryable(final Operation operation, final Exception error) {
+        // the circuit will not close again before the request is retried
+        if (error instanceof CircuitOpenException) {
+            return false;
+        }
+        // the request was refused before being applied
+        if (error instanceof RequestRejectedException
+                || error instanceof PleaseThrottleException
+                || error instanceof NotServingRegionException) {
+            return true;
+        }
+        // the request may have been applied
+        return isIdempotent(operation)
+                && (error instanceof RecoverableException
+                        || error instanceof RequestTimeoutException);
+    }
+
+    /**
+     * Dispatches a request, retrying it while it fails with a retryable error.
+     */
+    private <T> Deferred<T> retry(final Operation operation,
+                                  final Callback<Deferred<T>, Object> request) {
+        budget.deposit();
+        final Deferred<T> result = new Deferred<T>();
+        new Attempts<T>(operation, request, result).run();
+        return result;
+    }
+
+    /**
+     * Dispatches a bulk request, retrying the requests of the batch that fail with a retryable
+     * error.
+     * <p/>
+     * The result is always the latest {@link BulkResult} of each request, in the order of the
+     * requests; if a whole batch failed, each of its requests fails with the error of the batch,
+     * whichever attempt the batch was.
+     */
+    private <R, T> Deferred<List<BulkResult<T>>> retryAll(
+            final Operation operation,
+            final List<R> requests,
+            final Callback<Deferred<List<BulkResult<T>>>, List<R>> request) {
+        budget.deposit();
+        final Deferred<List<BulkResult<T>>> result = new Deferred<List<BulkResult<T>>>();
+        new BulkAttempts<R, T>(operation, requests, request, result).run();
+        return result;
+    }
+
+    /**
+     * Chooses the delay before the given retry, in nanoseconds.
+     */
+    private long delay(final int retry) {
+        final int shift = Math.min(retry - 1, 62);
+        final long ceiling = backoff > maxBackoff >> shift ? maxBackoff : backoff << shift;
+        final double jitter;
+        synchronized (random) {
+            jitter = random.nextDouble();
+        }
+        return (long) (jitter * ceiling);
+    }
+
+    /**
+     * The attempts made for a request, which dispatches each attempt and decides whether to
+     * retry its failure.
+     * <p/>
+     * Each retry is scheduled on the {@link Timer}, which hands it to the {@link Executor} to be
+     * dispatched.
+     */
+    private class Attempts<T> implements TimerTask, Runnable, Callback<Object, Object> {
+
+        protected final Operation operation;
+        private final Callback<Deferred<T>, Object> request;
+        protected final Deferred<T> result;
+        private final RequestClass requestClass;
+        private volatile int count = 0;
+        private volatile Object last = null;
+
+        Attempts(final Operation operation,
+                 final Callback<Deferred<T>, Object> request,
+                 final Deferred<T> result) {
+            this.operation = operation;
+            this.request = request;
+            this.result = result;
+            this.requestClass = RequestContext.current();
+        }
+
+        /**
+         * Hands the next attempt to the {@link Executor}, once its delay has elapsed.
+         */
+        public void run(final Timeout timeout) {
+            try {
+                executor.execute(this);
+            } catch (final RejectedExecutionException e) {
+                // the executor has been shut down, so the client is shutting down
+                complete(last);
+            }
+        }
+
+        /**
+         * Dispatches the next attempt, of the {@link RequestClass} of the original request.
+         */
+        @SuppressWarnings("unchecked")
+        public void run() {
+            count++;
+            Deferred<?> response;
+            final RequestClass previous = RequestContext.enter(requestClass);
+            try {
+                response = attempt();
+            } catch (final Exception e) {
+                response = Deferred.fromError(e);
+            } finally {
+                RequestContext.restore(previous);
+            }
+            // the response may be either the result of the request or an Exception
+            ((Deferred<Object>) response).addBoth(this);
+        }
+
+        /**
+         * Completes the request with the response to the last attempt, unless it should be
+         * retried.
+         */
+        public Object call(final Object response) {
+            if (isRetryable(response) && count < maxAttempts) {
+                if (budget.tryWithdraw()) {
+                    try {
+                        last = response;
+                        client.getTimer().newTimeout(this, delay(count), TimeUnit.NANOSECONDS);
+                        retries.incrementAndGet();
+                        return response;
+                    } catch (final IllegalStateException e) {
+                        // the timer has been stopped, so the client is shutting down
+                    }
+                } else {
+                    exhausted.incrementAndGet();
+                }
+            }
+            complete(response);
+            return response;
+        }
+
+        /**
+         * Sends the next attempt of the request.
+         */
+        protected Deferred<?> attempt() throws Exception {
+            return request.call(null);
+        }
+
+        /**
+         * Determines whether the given response to the last attempt should be retried.
+         */
+        protected boolean isRetryable(final Object response) {
+            return response instanceof Exception
+                    && RetryingHBaseClient.this.isRetryable(operation, (Exception) response);
+        }
+
+        /**
+         * Completes the request with the given response to the last attempt.
+         */
+        @SuppressWarnings("unchecked")
+        protected void complete(final Object response) {
+            if (attempts != null) {
+                attempts.update(count);
+            }
+            ((Deferred<Object>) (Deferred<?>) result).callback(response);
+        }
+    }
+
+    /**
+     * The attempts made for a bulk request, each of which retries only the requests of the
+     * previous attempt that failed with a retryable error.
+     */
+    private final class BulkAttempts<R, T> extends Attempts<List<BulkResult<T>>> {
+
+        private final List<R> requests;
+        private final Callback<Deferred<List<BulkResult<T>>>, List<R>> request;
+
+        /**
+         * The latest result of each request.
+         */
+        private final List<BulkResult<T>> results;
+
+        /**
+         * The indices of the requests to send in the next attempt.
+         */
+        private List<Integer> pending;
+
+        BulkAttempts(final Operation operation,
+                     final List<R> requests,
+                     final Callback<Deferred<List<BulkResult<T>>>, List<R>> request,
+                     final Deferred<List<BulkResult<T>>> result) {
+            super(operation, null, result);
+            this.requests = requests;
+            this.request = request;
+            this.results = new ArrayList<BulkResult<T>>(
+                    Collections.<BulkResult<T>>nCopies(requests.size(), null));
+            this.pending = new ArrayList<Integer>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                pending.add(i);
+            }
+        }
+
+        @Override
+        protected Deferred<?> attempt() throws Exception {
+            if (pending.size() == requests.size()) {
+                return request.call(requests);
+            }
+            final List<R> batch = new ArrayList<R>(pending.size());
+            for (final int index : pending) {
+                batch.add(requests.get(index));
+            }
+            return request.call(batch);
+        }
+
+        /**
+         * Records the result of each request of the last attempt, and determines whether any
+         * failed with a retryable error.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        protected boolean isRetryable(final Object response) {
+            final List<Integer> retryable = new ArrayList<Integer>();
+            for (int i = 0; i < pending.size(); i++) {
+                final int index = pending.get(i);
+                final BulkResult<T> result = response instanceof Exception
+                        ? BulkResult.<T>failure((Exception) response)
+                        : ((List<BulkResult<T>>) response).get(i);
+                results.set(index, result);
+                if (!result.isSuccess()
+                        && RetryingHBaseClient.this.isRetryable(operation, result.getError())) {
+                    retryable.add(index);
+                }
+            }
+            if (retryable.isEmpty()) {
+                return false;
+            }
+            pending = retryable;
+            return true;
+        }
+
+        /**
+         * Completes the request with the latest result of each request, which
+         * {@link #isRetryable(Object)} has already recorded from the response.
+         */
+        @Override
+        protected void complete(final Object response) {
+            super.complete(results);
+        }
+    }
+}
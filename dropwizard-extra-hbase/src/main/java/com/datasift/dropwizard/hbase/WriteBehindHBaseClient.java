@@ -0,0 +1,1242 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.limiter.RequestClass;
+import com.datasift.dropwizard.hbase.limiter.RequestContext;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.BulkResults;
+import com.datasift.dropwizard.hbase.util.KeyValues;
+import com.google.common.base.Charsets;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.*;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link HBaseClient} that buffers {@link #put(PutRequest) puts} to selected tables and writes
+ * them behind the caller.
+ * <p/>
+ * Puts to write-behind tables are buffered in memory, and repeated writes to the same cell
+ * replace each other, so only the last value written is sent. Buffered puts are sent to the
+ * underlying client, one request per row, on each {@link #flush()}, which happens every flush
+ * interval and whenever the buffered puts reach the flush size. Each caller's {@link Deferred}
+ * completes when the put that includes its cells completes.
+ * <p/>
+ * Once the buffered and in-flight puts reach the maximum buffer size, further puts to
+ * write-behind tables are rejected with a {@link RequestRejectedException} until enough in-flight
+ * puts have completed; callers are never blocked.
+ * <p/>
+ * Deletes, increments and compare-and-sets of a row with buffered or in-flight puts are sent only
+ * once those puts have completed, so they are never overtaken by earlier puts. Gets, however, do
+ * not observe buffered puts, and puts made with an explicit {@link RowLock} or with durability
+ * disabled should not be made to write-behind tables, as these properties are lost when puts are
+ * merged.
+ * <p/>
+ * Flushes are run by the given {@link Executor}, rather than on the {@link Timer} that schedules
+ * them, so that a flush blocked by the underlying client can never stall the {@link Timer}.
+ * <p/>
+ * This implementation proxies all requests through an underlying {@link HBaseClient}; all
+ * requests for other tables are dispatched to the underlying client verbatim.
+ */
+public class WriteBehindHBaseClient implements HBaseClient {
+
+    /**
+     * The underlying {@link HBaseClient} to dispatch requests.
+     */
+    private final HBaseClient client;
+
+    private final Set<byte[]> tables;
+    private final Duration flushInterval;
+    private final long flushBytes;
+    private final long maxBytes;
+    private final Executor executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The buffered rows, in the order they were first written; guarded by {@link #lock}.
+     */
+    private Map<Row, BufferedRow> buffer = new LinkedHashMap<Row, BufferedRow>();
+
+    /**
+     * The buffered and in-flight puts to each row, and the requests ordered after them, by the
+     * table and key of the row; guarded by {@link #lock}.
+     */
+    private final Map<RowKey, PendingRow> rows = new HashMap<RowKey, PendingRow>();
+    private long bufferedBytes = 0;
+    private long inFlightBytes = 0;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private volatile Timeout timeout = null;
+    private volatile boolean shutdown = false;
+
+    /**
+     * Creates a new {@link WriteBehindHBaseClient} for the given underlying client.
+     * <p/>
+     * The {@link Metrics#defaultRegistry() default} {@link MetricsRegistry} will be used to
+     * register the {@link com.yammer.metrics.core.Metric}s.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param tables the names of the tables to buffer puts for.
+     * @param flushInterval the maximum time puts are buffered before being flushed.
+     * @param flushSize the size of buffered puts that forces a flush.
+     * @param maxSize the maximum size of buffered and in-flight puts before puts are rejected.
+     * @param executor the {@link Executor} to run flushes with.
+     */
+    public WriteBehindHBaseClient(final HBaseClient client,
+                                  final Collection<String> tables,
+                                  final Duration flushInterval,
+                                  final Size flushSize,
+                                  final Size maxSize,
+                                  final Executor executor) {
+        this(client, tables, flushInterval, flushSize, maxSize, executor,
+                Metrics.defaultRegistry());
+    }
+
+    /**
+     * Creates a new {@link WriteBehindHBaseClient} for the given underlying client, registering
+     * gauges for the buffered puts with the given {@link MetricsRegistry}.
+     *
+     * @param client the underlying {@link HBaseClient} implementation to dispatch requests.
+     * @param tables the names of the tables to buffer puts for.
+     * @param flushInterval the maximum time puts are buffered before being flushed.
+     * @param flushSize the size of buffered puts that forces a flush.
+     * @param maxSize the maximum size of buffered and in-flight puts before puts are rejected.
+     * @param executor the {@link Executor} to run flushes with.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     */
+    public WriteBehindHBaseClient(final HBaseClient client,
+                                  final Collection<String> tables,
+                                  final Duration flushInterval,
+                                  final Size flushSize,
+                                  final Size maxSize,
+                                  final Executor executor,
+                                  final MetricsRegistry registry) {
+        this.client = client;
+        this.tables = new TreeSet<byte[]>(Bytes.MEMCMP);
+        for (final String table : tables) {
+            this.tables.add(table.getBytes(Charsets.UTF_8));
+        }
+        this.flushInterval = flushInterval;
+        this.flushBytes = flushSize.toBytes();
+        this.maxBytes = maxSize.toBytes();
+        this.executor = executor;
+
+        if (registry == null) {
+            return;
+        }
+
+        final Class<? extends HBaseClient> clazz = getClass();
+        registry.newGauge(clazz, "bufferedRows", "writeBehind", new Gauge<Integer>() {
+            @Override public Integer value() {
+                return getBufferedRows();
+            }
+        });
+        registry.newGauge(clazz, "bufferedBytes", "writeBehind", new Gauge<Long>() {
+            @Override public Long value() {
+                return getBufferedBytes();
+            }
+        });
+        registry.newGauge(clazz, "inFlightBytes", "writeBehind", new Gauge<Long>() {
+            @Override public Long value() {
+                return getInFlightBytes();
+            }
+        });
+        registry.newGauge(clazz, "written", "writeBehind", new Gauge<Long>() {
+            @Override public Long value() {
+                return getWrittenCells();
+            }
+        });
+        registry.newGauge(clazz, "coalesced", "writeBehind", new Gauge<Long>() {
+            @Override public Long value() {
+                return getCoalescedCells();
+            }
+        });
+        registry.newGauge(clazz, "rejected", "writeBehind", new Gauge<Long>() {
+            @Override public Long value() {
+                return getRejectedPuts();
+            }
+        });
+        registry.newGauge(clazz, "coalesceRatio", "writeBehind", new Gauge<Double>() {
+            @Override public Double value() {
+                final long written = getWrittenCells();
+                return written == 0 ? 0.0 : (double) getCoalescedCells() / written;
+            }
+        });
+    }
+
+    /**
+     * Gets the number of rows with buffered puts.
+     *
+     * @return the number of rows with buffered puts.
+     */
+    public int getBufferedRows() {
+        lock.lock();
+        try {
+            return buffer.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the estimated size of the buffered puts, in bytes.
+     *
+     * @return the estimated size of the buffered puts, in bytes.
+     */
+    public long getBufferedBytes() {
+        lock.lock();
+        try {
+            return bufferedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the estimated size of the flushed puts that have not yet completed, in bytes.
+     *
+     * @return the estimated size of the in-flight puts, in bytes.
+     */
+    public long getInFlightBytes() {
+        lock.lock();
+        try {
+            return inFlightBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the total number of cells written to write-behind tables.
+     *
+     * @return the total number of cells written.
+     */
+    public long getWrittenCells() {
+        return written.get();
+    }
+
+    /**
+     * Gets the total number of cells written to write-behind tables that replaced a buffered
+     * write to the same cell, and so did not need to be sent.
+     *
+     * @return the total number of cells coalesced.
+     */
+    public long getCoalescedCells() {
+        return coalesced.get();
+    }
+
+    /**
+     * Gets the total number of puts to write-behind tables rejected because the buffer was full.
+     *
+     * @return the total number of puts rejected.
+     */
+    public long getRejectedPuts() {
+        return rejected.get();
+    }
+
+    /**
+     * Get the maximum time for which edits may be buffered before being flushed.
+     *
+     * @return the maximum time for which edits may be buffered.
+     *
+     * @see HBaseClient#getFlushInterval()
+     */
+    public Duration getFlushInterval() {
+        return client.getFlushInterval();
+    }
+
+    /**
+     * Get the capacity of the increment buffer.
+     *
+     * @return the capacity of the increment buffer.
+     *
+     * @see HBaseClient#getIncrementBufferSize()
+     */
+    public Size getIncrementBufferSize() {
+        return client.getIncrementBufferSize();
+    }
+
+    /**
+     * Sets the maximum time for which edits may be buffered before being flushed.
+     *
+     * @param flushInterval the maximum time for which edits may be buffered.
+     *
+     * @return the previous flush interval.
+     *
+     * @see HBaseClient#setFlushInterval(Duration)
+     */
+    public Duration setFlushInterval(final Duration flushInterval) {
+        return client.setFlushInterval(flushInterval);
+    }
+
+    /**
+     * Sets the capacity of the increment buffer.
+     *
+     * @param incrementBufferSize the capacity of the increment buffer.
+     *
+     * @return the previous increment buffer capacity.
+     *
+     * @see HBaseClient#setIncrementBufferSize(Size)
+     */
+    public Size setIncrementBufferSize(final Size incrementBufferSize) {
+        return client.setIncrementBufferSize(incrementBufferSize);
+    }
+
+    /**
+     * Atomically creates a cell if, and only if, it doesn't already exist.
+     *
+     * @param edit the new cell to create.
+     *
+     * @return true if the cell was created, false if the cell already exists.
+     *
+     * @see HBaseClient#create(PutRequest)
+     */
+    public Deferred<Boolean> create(final PutRequest edit) {
+        final OrderedRequest ordered = order(edit.table(), edit.key());
+        if (ordered == null) {
+            return client.create(edit);
+        }
+        return ordered.send(new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.create(edit);
+            }
+        });
+    }
+
+    /**
+     * Buffer a durable increment for coalescing.
+     *
+     * @param request the increment to buffer.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#bufferIncrement(AtomicIncrementRequest)
+     */
+    public Deferred<Long> bufferIncrement(final AtomicIncrementRequest request) {
+        final OrderedRequest ordered = order(request.table(), request.key());
+        if (ordered == null) {
+            return client.bufferIncrement(request);
+        }
+        return ordered.send(new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.bufferIncrement(request);
+            }
+        });
+    }
+
+    /**
+     * Atomically and durably increment a cell value.
+     *
+     * @param request the increment to make.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request) {
+        final OrderedRequest ordered = order(request.table(), request.key());
+        if (ordered == null) {
+            return client.increment(request);
+        }
+        return ordered.send(new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.increment(request);
+            }
+        });
+    }
+
+    /**
+     * Atomically increment a cell value, with optional durability.
+     *
+     * @param request the increment to make.
+     * @param durable whether to guarantee this increment succeeded durably.
+     *
+     * @return the new value of the cell, after the increment.
+     *
+     * @see HBaseClient#increment(AtomicIncrementRequest, Boolean)
+     */
+    public Deferred<Long> increment(final AtomicIncrementRequest request, final Boolean durable) {
+        final OrderedRequest ordered = order(request.table(), request.key());
+        if (ordered == null) {
+            return client.increment(request, durable);
+        }
+        return ordered.send(new Callback<Deferred<Long>, Object>() {
+            public Deferred<Long> call(final Object arg) {
+                return client.increment(request, durable);
+            }
+        });
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, byte[])
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final byte[] expected) {
+        final OrderedRequest ordered = order(edit.table(), edit.key());
+        if (ordered == null) {
+            return client.compareAndSet(edit, expected);
+        }
+        return ordered.send(new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.compareAndSet(edit, expected);
+            }
+        });
+    }
+
+    /**
+     * Atomically compares and sets (CAS) a single cell.
+     *
+     * @param edit the cell to set.
+     * @param expected the expected current value.
+     *
+     * @return true if the expectation was met and the cell was set; otherwise, false.
+     *
+     * @see HBaseClient#compareAndSet(PutRequest, String)
+     */
+    public Deferred<Boolean> compareAndSet(final PutRequest edit, final String expected) {
+        final OrderedRequest ordered = order(edit.table(), edit.key());
+        if (ordered == null) {
+            return client.compareAndSet(edit, expected);
+        }
+        return ordered.send(new Callback<Deferred<Boolean>, Object>() {
+            public Deferred<Boolean> call(final Object arg) {
+                return client.compareAndSet(edit, expected);
+            }
+        });
+    }
+
+    /**
+     * Deletes the specified cells, once any buffered and in-flight puts to the row complete.
+     *
+     * @param request the cell(s) to delete.
+     *
+     * @return a {@link Deferred} indicating the completion of the delete.
+     *
+     * @see HBaseClient#delete(DeleteRequest)
+     */
+    public Deferred<Object> delete(final DeleteRequest request) {
+        final OrderedRequest ordered = order(request.table(), request.key());
+        if (ordered == null) {
+            return client.delete(request);
+        }
+        return ordered.send(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.delete(request);
+            }
+        });
+    }
+
+    /**
+     * Deletes the specified cells for each of the given requests, once any buffered and in-flight
+     * puts to their rows complete.
+     *
+     * @param requests the cell(s) to delete.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#deleteAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> deleteAll(final List<DeleteRequest> requests) {
+        final List<RowKey> keys = new ArrayList<RowKey>(requests.size());
+        for (final DeleteRequest request : requests) {
+            if (tables.contains(request.table())) {
+                keys.add(new RowKey(request.table(), request.key()));
+            }
+        }
+        final OrderedRequest ordered = keys.isEmpty() ? null : order(keys);
+        if (ordered == null) {
+            return client.deleteAll(requests);
+        }
+        return ordered.send(new Callback<Deferred<List<BulkResult<Object>>>, Object>() {
+            public Deferred<List<BulkResult<Object>>> call(final Object arg) {
+                return client.deleteAll(requests);
+            }
+        });
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(byte[])
+     */
+    public Deferred<Object> ensureTableExists(final byte[] table) {
+        return client.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     *
+     * @see HBaseClient#ensureTableExists(String)
+     */
+    public Deferred<Object> ensureTableExists(final String table) {
+        return client.ensureTableExists(table);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(byte[], byte[])
+     */
+    public Deferred<Object> ensureTableFamilyExists(final byte[] table, final byte[] family) {
+        return client.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Ensures that a specific table exists.
+     *
+     * @param table the table to check.
+     *
+     * @return a {@link Deferred} indicating the completion of the assertion.
+     *
+     * @throws TableNotFoundException (Deferred) if the table does not exist.
+     * @throws NoSuchColumnFamilyException (Deferred) if the family doesn't exist.
+     *
+     * @see HBaseClient#ensureTableFamilyExists(String, String)
+     */
+    public Deferred<Object> ensureTableFamilyExists(final String table, final String family) {
+        return client.ensureTableFamilyExists(table, family);
+    }
+
+    /**
+     * Sends all buffered puts, and flushes all requests buffered on the client-side.
+     *
+     * @return a {@link Deferred} indicating the completion of the flush and the buffered puts.
+     *
+     * @see HBaseClient#flush()
+     */
+    public Deferred<Object> flush() {
+        final Deferred<Object> puts = dispatch(drain());
+        return client.flush().addBothDeferring(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return puts;
+            }
+        });
+    }
+
+    /**
+     * Retrieves the specified cells.
+     *
+     * @param request the cells to get.
+     *
+     * @return the requested cells.
+     *
+     * @see HBaseClient#get(GetRequest)
+     */
+    public Deferred<ArrayList<KeyValue>> get(final GetRequest request) {
+        return client.get(request);
+    }
+
+    /**
+     * Retrieves the specified cells for each of the given requests.
+     *
+     * @param requests the cells to get.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#getAll(List)
+     */
+    public Deferred<List<BulkResult<ArrayList<KeyValue>>>> getAll(
+            final List<GetRequest> requests) {
+        return client.getAll(requests);
+    }
+
+    /**
+     * Aqcuire an explicit row lock.
+     *
+     * @param request the row(s) to lock.
+     *
+     * @return the row lock.
+     *
+     * @see HBaseClient#lockRow(RowLockRequest)
+     */
+    public Deferred<RowLock> lockRow(final RowLockRequest request) {
+        return client.lockRow(request);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(byte[])
+     */
+    public RowScanner scan(final byte[] table) {
+        return client.scan(table);
+    }
+
+    /**
+     * Create a new {@link RowScanner} for a table.
+     *
+     * @param table the table to scan.
+     *
+     * @return a new {@link RowScanner} for the specified table.
+     *
+     * @see HBaseClient#scan(String)
+     */
+    public RowScanner scan(final String table) {
+        return client.scan(table);
+    }
+
+    /**
+     * Store the specified cell(s), buffering them if the table is a write-behind table.
+     * <p/>
+     * If the buffer is full, the put is rejected rather than blocking the caller.
+     *
+     * @param request the cell(s) to store.
+     *
+     * @return a {@link Deferred} indicating the completion of the put.
+     *
+     * @throws RequestRejectedException (Deferred) if the write-behind buffer is full.
+     *
+     * @see HBaseClient#put(PutRequest)
+     */
+    public Deferred<Object> put(final PutRequest request) {
+        if (shutdown || !tables.contains(request.table())) {
+            return client.put(request);
+        }
+
+        final Row row = new Row(request);
+        final Deferred<Object> result = new Deferred<Object>();
+        final long size;
+        final boolean full;
+        final boolean flush;
+        lock.lock();
+        try {
+            size = bufferedBytes + inFlightBytes;
+            if (size >= maxBytes) {
+                full = true;
+                flush = true;
+            } else {
+                BufferedRow buffered = buffer.get(row);
+                if (buffered == null) {
+                    buffered = new BufferedRow(row);
+                    buffer.put(row, buffered);
+                    buffered.index();
+                }
+                bufferedBytes += buffered.add(request.qualifiers(), request.values(), result);
+                full = false;
+                flush = bufferedBytes >= flushBytes;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (full) {
+            rejected.incrementAndGet();
+            requestFlush();
+            return Deferred.fromError(new RequestRejectedException(String.format(
+                    "Write-behind buffer is full (%d bytes buffered and in-flight)", size)));
+        }
+        if (flush) {
+            requestFlush();
+        }
+        start();
+        return result;
+    }
+
+    /**
+     * Store the specified cell(s) for each of the given requests, buffering those for
+     * write-behind tables.
+     *
+     * @param requests the cell(s) to store.
+     *
+     * @return the result of each request, in the same order as the requests.
+     *
+     * @see HBaseClient#putAll(List)
+     */
+    public Deferred<List<BulkResult<Object>>> putAll(final List<PutRequest> requests) {
+        final List<Deferred<Object>> results = new ArrayList<Deferred<Object>>(requests.size());
+        for (final PutRequest request : requests) {
+            results.add(put(request));
+        }
+        return BulkResults.collect(results);
+    }
+
+    /**
+     * Performs a graceful shutdown of this client, sending any buffered puts and flushing any
+     * pending requests.
+     *
+     * @return a {@link Deferred} indicating the completion of the shutdown operation.
+     *
+     * @see HBaseClient#shutdown()
+     */
+    public Deferred<Object> shutdown() {
+        shutdown = true;
+        final Timeout timeout = this.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        return flush().addBothDeferring(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return client.shutdown();
+            }
+        });
+    }
+
+    /**
+     * Get an immutable snapshot of client usage statistics.
+     *
+     * @return an immutable snapshot of client usage statistics.
+     *
+     * @see HBaseClient#stats()
+     */
+    public ClientStats stats() {
+        return client.stats();
+    }
+
+    /**
+     * Get the underlying {@link Timer} used by the client.
+     *
+     * @return the underlying {@link Timer} used by the async client.
+     *
+     * @see HBaseClient#getTimer()
+     */
+    public Timer getTimer() {
+        return client.getTimer();
+    }
+
+    /**
+     * Release an explicit row lock.
+     *
+     * @param lock the lock to release.
+     *
+     * @return a {@link Deferred} indicating the completion of the unlock operation.
+     *
+     * @see HBaseClient#unlockRow(RowLock)
+     */
+    public Deferred<Object> unlockRow(final RowLock lock) {
+        return client.unlockRow(lock);
+    }
+
+    /**
+     * Starts flushing buffered puts periodically, if not already started.
+     */
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    /**
+     * Schedules the next periodic flush.
+     */
+    private void schedule() {
+        if (shutdown) {
+            return;
+        }
+        timeout = client.getTimer().newTimeout(new TimerTask() {
+            public void run(final Timeout timeout) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            flush();
+                        } finally {
+                            schedule();
+                        }
+                    }
+                });
+            }
+        }, flushInterval.getQuantity(), flushInterval.getUnit());
+    }
+
+    /**
+     * Requests an immediate flush, if one isn't already requested.
+     */
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    flushRequested.set(false);
+                    flush();
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes all buffered rows from the buffer, accounting for them as in-flight.
+     */
+    private List<BufferedRow> drain() {
+        lock.lock();
+        try {
+            final List<BufferedRow> drained = new ArrayList<BufferedRow>(buffer.values());
+            for (final BufferedRow row : drained) {
+                row.buffered = false;
+            }
+            buffer = new LinkedHashMap<Row, BufferedRow>();
+            inFlightBytes += bufferedBytes;
+            bufferedBytes = 0;
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Orders a request to a single row after the buffered and in-flight puts to the row.
+     *
+     * @return the {@link OrderedRequest} to send the request with, or null if the request can be
+     *         sent immediately.
+     */
+    private OrderedRequest order(final byte[] table, final byte[] key) {
+        if (!tables.contains(table)) {
+            return null;
+        }
+        return order(Collections.singletonList(new RowKey(table, key)));
+    }
+
+    /**
+     * Orders a request to the given rows after the buffered and in-flight puts to them, and after
+     * any requests already ordered after those puts, immediately sending any buffered puts.
+     *
+     * @return the {@link OrderedRequest} to send the request with, or null if the request can be
+     *         sent immediately.
+     */
+    private OrderedRequest order(final Collection<RowKey> keys) {
+        final OrderedRequest ordered = new OrderedRequest();
+        final List<BufferedRow> dispatched = new ArrayList<BufferedRow>();
+        lock.lock();
+        try {
+            for (final RowKey key : keys) {
+                final PendingRow pending = rows.get(key);
+                if (pending != null) {
+                    for (final BufferedRow row : pending.puts) {
+                        if (row.buffered) {
+                            row.buffered = false;
+                            buffer.remove(row.row);
+                            bufferedBytes -= row.bytes;
+                            inFlightBytes += row.bytes;
+                            dispatched.add(row);
+                        }
+                        ordered.prior.add(row.whenComplete());
+                    }
+                    for (final OrderedRequest request : pending.requests) {
+                        ordered.prior.add(request.whenComplete());
+                    }
+                    pending.requests.add(ordered);
+                    ordered.keys.add(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        dispatch(dispatched);
+        return ordered.keys.isEmpty() ? null : ordered;
+    }
+
+    /**
+     * Sends the given buffered rows to the underlying client.
+     *
+     * @return a {@link Deferred} indicating the completion of all the puts.
+     */
+    private Deferred<Object> dispatch(final List<BufferedRow> rows) {
+        if (rows.isEmpty()) {
+            return Deferred.fromResult(null);
+        }
+        final List<Deferred<Object>> puts = new ArrayList<Deferred<Object>>(rows.size());
+        for (final BufferedRow row : rows) {
+            puts.add(row.dispatch());
+        }
+        return all(puts);
+    }
+
+    /**
+     * Gets a {@link Deferred} that completes once all of the given {@link Deferred}s complete.
+     */
+    private static Deferred<Object> all(final List<Deferred<Object>> deferreds) {
+        if (deferreds.size() == 1) {
+            return deferreds.get(0);
+        }
+        return Deferred.group(deferreds).addCallback(new Callback<Object, ArrayList<Object>>() {
+            public Object call(final ArrayList<Object> results) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * The table and key of a row.
+     */
+    private static final class RowKey {
+
+        private final byte[] table;
+        private final byte[] key;
+        private final int hash;
+
+        RowKey(final byte[] table, final byte[] key) {
+            this.table = table;
+            this.key = key;
+            this.hash = 31 * Arrays.hashCode(table) + Arrays.hashCode(key);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RowKey)) {
+                return false;
+            }
+            final RowKey other = (RowKey) o;
+            return hash == other.hash
+                    && Arrays.equals(key, other.key)
+                    && Arrays.equals(table, other.table);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The coordinates of a buffered row: the cells of a family with the same timestamp.
+     */
+    private static final class Row {
+
+        private final byte[] table;
+        private final byte[] key;
+        private final byte[] family;
+        private final long timestamp;
+        private final int hash;
+
+        Row(final PutRequest request) {
+            this.table = request.table();
+            this.key = request.key();
+            this.family = request.family();
+            this.timestamp = request.timestamp();
+
+            int hash = Arrays.hashCode(table);
+            hash = 31 * hash + Arrays.hashCode(key);
+            hash = 31 * hash + Arrays.hashCode(family);
+            this.hash = 31 * hash + (int) (timestamp ^ (timestamp >>> 32));
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Row)) {
+                return false;
+            }
+            final Row other = (Row) o;
+            return hash == other.hash
+                    && timestamp == other.timestamp
+                    && Arrays.equals(key, other.key)
+                    && Arrays.equals(family, other.family)
+                    && Arrays.equals(table, other.table);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The buffered and in-flight puts to a row, and the requests ordered after them.
+     * <p/>
+     * Guarded by {@link #lock}.
+     */
+    private static final class PendingRow {
+
+        private final List<BufferedRow> puts = new ArrayList<BufferedRow>(1);
+        private final List<OrderedRequest> requests = new ArrayList<OrderedRequest>(1);
+
+        boolean isEmpty() {
+            return puts.isEmpty() && requests.isEmpty();
+        }
+    }
+
+    /**
+     * A request that others may be waiting for the completion of.
+     */
+    private abstract class Pending {
+
+        /**
+         * The {@link Deferred}s waiting for this request to complete; guarded by {@link #lock}.
+         */
+        private List<Deferred<Object>> completions = null;
+
+        /**
+         * Gets a {@link Deferred} that completes once this request completes.
+         * <p/>
+         * Must be called with {@link #lock} held, while this request is pending.
+         */
+        Deferred<Object> whenComplete() {
+            if (completions == null) {
+                completions = new ArrayList<Deferred<Object>>(1);
+            }
+            final Deferred<Object> completion = new Deferred<Object>();
+            completions.add(completion);
+            return completion;
+        }
+
+        /**
+         * Completes this request, removing it from the pending rows and waking each
+         * {@link Deferred} waiting for it.
+         */
+        void complete() {
+            final List<Deferred<Object>> completions;
+            lock.lock();
+            try {
+                remove();
+                completions = this.completions;
+                this.completions = null;
+            } finally {
+                lock.unlock();
+            }
+            if (completions != null) {
+                for (final Deferred<Object> completion : completions) {
+                    completion.callback(null);
+                }
+            }
+        }
+
+        /**
+         * Removes this request from the pending rows; called with {@link #lock} held.
+         */
+        abstract void remove();
+
+        /**
+         * Removes the given request from the pending requests to the given row.
+         */
+        void remove(final RowKey key, final Pending request) {
+            final PendingRow pending = rows.get(key);
+            pending.puts.remove(request);
+            pending.requests.remove(request);
+            if (pending.isEmpty()) {
+                rows.remove(key);
+            }
+        }
+    }
+
+    /**
+     * A request sent once the buffered and in-flight puts to its rows have completed.
+     */
+    private final class OrderedRequest extends Pending {
+
+        private final List<Deferred<Object>> prior = new ArrayList<Deferred<Object>>();
+        private final List<RowKey> keys = new ArrayList<RowKey>(1);
+        private final RequestClass requestClass = RequestContext.current();
+
+        /**
+         * Sends the given request, in the {@link RequestClass} of the caller, once every prior
+         * request to its rows has completed.
+         *
+         * @return the result of the request.
+         */
+        <T> Deferred<T> send(final Callback<Deferred<T>, Object> request) {
+            final Callback<Deferred<T>, Object> classified = new Callback<Deferred<T>, Object>() {
+                public Deferred<T> call(final Object arg) throws Exception {
+                    final RequestClass previous = RequestContext.enter(requestClass);
+                    try {
+                        return request.call(arg);
+                    } finally {
+                        RequestContext.restore(previous);
+                    }
+                }
+            };
+            // the result may be either the result of the request or an Exception
+            return all(prior).addBothDeferring(classified).addBoth(new Callback<T, T>() {
+                public T call(final T result) {
+                    complete();
+                    return result;
+                }
+            });
+        }
+
+        @Override
+        void remove() {
+            for (final RowKey key : keys) {
+                remove(key, this);
+            }
+        }
+    }
+
+    /**
+     * The buffered cells of a row, and the callers waiting for them to be written.
+     * <p/>
+     * Guarded by {@link #lock} until dispatched.
+     */
+    private final class BufferedRow extends Pending implements Callback<Object, Object> {
+
+        private final Row row;
+        private final RowKey key;
+        private final Map<byte[], byte[]> cells = new TreeMap<byte[], byte[]>(Bytes.MEMCMP);
+        private final List<Deferred<Object>> waiters = new ArrayList<Deferred<Object>>(1);
+        private List<Deferred<Object>> prior = null;
+        private boolean buffered = true;
+        private long bytes = KeyValues.OVERHEAD;
+        private RequestClass requestClass = RequestClass.DEFAULT;
+
+        BufferedRow(final Row row) {
+            this.row = row;
+            this.key = new RowKey(row.table, row.key);
+        }
+
+        /**
+         * Adds this row to the pending rows, after any in-flight puts to the row and any requests
+         * already ordered after them, so that a retry of an earlier put can not overwrite it.
+         */
+        void index() {
+            PendingRow pending = rows.get(key);
+            if (pending == null) {
+                pending = new PendingRow();
+                rows.put(key, pending);
+            }
+            for (final BufferedRow put : pending.puts) {
+                if (!put.buffered) {
+                    after(put);
+                }
+            }
+            for (final OrderedRequest request : pending.requests) {
+                after(request);
+            }
+            pending.puts.add(this);
+        }
+
+        /**
+         * Orders this row after the given pending request; called with {@link #lock} held.
+         */
+        private void after(final Pending request) {
+            if (prior == null) {
+                prior = new ArrayList<Deferred<Object>>(1);
+            }
+            prior.add(request.whenComplete());
+        }
+
+        /**
+         * Adds the given cells to this row, replacing any buffered values for them.
+         *
+         * @return the change in the size of this row, in bytes.
+         */
+        long add(final byte[][] qualifiers, final byte[][] values, final Deferred<Object> waiter) {
+            final long before = waiters.isEmpty() ? 0 : bytes;
+            for (int i = 0; i < qualifiers.length; i++) {
+                final byte[] previous = cells.put(qualifiers[i], values[i]);
+                if (previous == null) {
+                    bytes += KeyValues.OVERHEAD + qualifiers[i].length + values[i].length;
+                } else {
+                    bytes += values[i].length - previous.length;
+                    coalesced.incrementAndGet();
+                }
+            }
+            written.addAndGet(qualifiers.length);
+            waiters.add(waiter);
+            requestClass = RequestContext.current();
+            return bytes - before;
+        }
+
+        /**
+         * Sends this row to the underlying client, once any requests ordered before it have
+         * completed.
+         *
+         * @return a {@link Deferred} indicating the completion of the put.
+         */
+        Deferred<Object> dispatch() {
+            if (prior == null) {
+                return send();
+            }
+            return all(prior).addBothDeferring(new Callback<Deferred<Object>, Object>() {
+                public Deferred<Object> call(final Object arg) {
+                    return send();
+                }
+            });
+        }
+
+        /**
+         * Sends this row to the underlying client, in the {@link RequestClass} of the last put
+         * to it.
+         */
+        private Deferred<Object> send() {
+            final byte[][] qualifiers = cells.keySet().toArray(new byte[cells.size()][]);
+            final byte[][] values = cells.values().toArray(new byte[cells.size()][]);
+            Deferred<Object> response;
+            final RequestClass previous = RequestContext.enter(requestClass);
+            try {
+                response = client.put(new PutRequest(
+                        row.table, row.key, row.family, qualifiers, values, row.timestamp));
+            } catch (final RuntimeException e) {
+                response = Deferred.fromError(e);
+            } finally {
+                RequestContext.restore(previous);
+            }
+            // the result may be either the result of the put or an Exception
+            return response.addBoth(this);
+        }
+
+        /**
+         * Completes the put, releasing its bytes and handing the result to each waiting caller.
+         */
+        public Object call(final Object result) {
+            complete();
+            for (final Deferred<Object> waiter : waiters) {
+                waiter.callback(result);
+            }
+            return null;
+        }
+
+        @Override
+        void remove() {
+            inFlightBytes -= bytes;
+            remove(key, this);
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package com.datasift.dropwizard.hbase.config;
 
 import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.hbase.memory.LatencyDistribution;
+import com.datasift.dropwizard.metrics.LatencyRecorderType;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.datasift.dropwizard.zookeeper.config.ZooKeeperConfiguration;
 import com.yammer.dropwizard.util.Duration;
 import com.yammer.dropwizard.util.Size;
+import com.yammer.dropwizard.validation.ValidationMethod;
 
 import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Configuration for an {@link HBaseClient}.
@@ -62,19 +71,594 @@ public class HBaseClientConfiguration {
     @Min(0)
     protected int maxConcurrentRequests = 0;
 
+    /**
+     * Whether the limit on concurrent asynchronous requests should adapt to the observed latency
+     * and error rate of the cluster.
+     * <p/>
+     * When enabled, the limit adapts between {@link
+     * HBaseClientConfiguration#minConcurrentRequests minConcurrentRequests} and {@link
+     * HBaseClientConfiguration#maxConcurrentRequests maxConcurrentRequests}, and requests
+     * exceeding the current limit are rejected with a {@link
+     * com.datasift.dropwizard.hbase.RequestRejectedException}. Since requests are never queued,
+     * this may not be combined with {@link HBaseClientConfiguration#nonBlocking nonBlocking} or
+     * {@link HBaseClientConfiguration#scheduled scheduled}.
+     *
+     * @see com.datasift.dropwizard.hbase.limiter.AdaptiveRequestLimiter
+     */
+    @JsonProperty
+    protected boolean adaptiveConcurrency = false;
+
+    /**
+     * The lower bound of the limit on concurrent asynchronous requests when {@link
+     * HBaseClientConfiguration#adaptiveConcurrency adaptiveConcurrency} is enabled.
+     */
+    @JsonProperty
+    @Min(1)
+    protected int minConcurrentRequests = 10;
+
+    /**
+     * The maximum number of concurrent asynchronous requests for each operation with a dedicated
+     * pool of permits, keyed by the name of the {@link com.datasift.dropwizard.hbase.Operation}.
+     * <p/>
+     * Requests for these operations are admitted by their own pool, isolating them from all other
+     * requests, rather than by the pool of {@link HBaseClientConfiguration#maxConcurrentRequests
+     * maxConcurrentRequests}.
+     *
+     * @see com.datasift.dropwizard.hbase.limiter.Bulkheads
+     */
+    @JsonProperty
+    @NotNull
+    protected Map<String, Integer> maxConcurrentRequestsByOperation =
+            new HashMap<String, Integer>();
+
+    /**
+     * The maximum number of concurrent asynchronous requests for each table with a dedicated pool
+     * of permits, keyed by the name of the table.
+     * <p/>
+     * Requests for these tables are admitted by their own pool, regardless of operation, isolating
+     * them from all other requests.
+     *
+     * @see com.datasift.dropwizard.hbase.limiter.Bulkheads
+     */
+    @JsonProperty
+    @NotNull
+    protected Map<String, Integer> maxConcurrentRequestsByTable = new HashMap<String, Integer>();
+
+    /**
+     * The maximum time to wait for a request to complete, for operations and tables without an
+     * explicit timeout.
+     * <p/>
+     * Requests that do not complete in time fail with a {@link
+     * com.datasift.dropwizard.hbase.RequestTimeoutException}. When this is zero ("0"), requests
+     * may wait indefinitely.
+     *
+     * @see com.datasift.dropwizard.hbase.DeadlineHBaseClient
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration requestTimeout = Duration.seconds(0);
+
+    /**
+     * The maximum time to wait for requests for each operation to complete, keyed by the name of
+     * the {@link com.datasift.dropwizard.hbase.Operation}.
+     * <p/>
+     * When the timeout for an operation is zero ("0"), requests for it may wait indefinitely.
+     */
+    @JsonProperty
+    @NotNull
+    protected Map<String, Duration> requestTimeoutByOperation = new HashMap<String, Duration>();
+
+    /**
+     * The maximum time to wait for requests for each table to complete, regardless of operation,
+     * keyed by the name of the table.
+     * <p/>
+     * When the timeout for a table is zero ("0"), requests for it may wait indefinitely.
+     */
+    @JsonProperty
+    @NotNull
+    protected Map<String, Duration> requestTimeoutByTable = new HashMap<String, Duration>();
+
+    /**
+     * The maximum number of times to retry a request that fails with a transient error.
+     * <p/>
+     * When this is zero ("0"), requests are never retried.
+     *
+     * @see com.datasift.dropwizard.hbase.RetryingHBaseClient
+     */
+    @JsonProperty
+    @Min(0)
+    protected int maxRetries = 0;
+
+    /**
+     * The backoff before the first retry of a request; doubled for each subsequent retry, up to
+     * {@link HBaseClientConfiguration#maxRetryBackoff maxRetryBackoff}.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration retryBackoff = Duration.milliseconds(50);
+
+    /**
+     * The maximum backoff before a retry of a request.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration maxRetryBackoff = Duration.seconds(1);
+
+    /**
+     * The maximum number of retries per request, as a fraction of the requests made.
+     * <p/>
+     * This caps the extra load retries may place on the cluster; e.g. "0.1" allows at most 10%
+     * extra load. Must be between 0 and 1.
+     */
+    @JsonProperty
+    protected double retryBudget = 0.1;
+
+    /**
+     * Whether requests for a table should fail fast once requests for it start failing.
+     *
+     * @see com.datasift.dropwizard.hbase.CircuitBreakingHBaseClient
+     */
+    @JsonProperty
+    protected boolean circuitBreaking = false;
+
+    /**
+     * Whether circuits are broken for each operation on a table separately, rather than for the
+     * table as a whole.
+     */
+    @JsonProperty
+    protected boolean circuitBreakingByOperation = false;
+
+    /**
+     * The fraction of failed requests that opens the circuit for a table.
+     * <p/>
+     * When this is zero ("0"), circuits never open on errors.
+     */
+    @DecimalMin("0")
+    @DecimalMax("1")
+    @JsonProperty
+    protected double circuitErrorRate = 0.5;
+
+    /**
+     * The fraction of requests taking at least {@link HBaseClientConfiguration#circuitSlowTime
+     * circuitSlowTime} that opens the circuit for a table.
+     * <p/>
+     * When this is zero ("0"), circuits never open on slow requests.
+     */
+    @DecimalMin("0")
+    @DecimalMax("1")
+    @JsonProperty
+    protected double circuitSlowRate = 0.5;
+
+    /**
+     * The time after which a request counts as slow towards {@link
+     * HBaseClientConfiguration#circuitSlowRate circuitSlowRate}.
+     * <p/>
+     * When this is zero ("0"), circuits never open on latency.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration circuitSlowTime = Duration.seconds(0);
+
+    /**
+     * The minimum number of requests for a table in a {@link
+     * HBaseClientConfiguration#circuitWindow circuitWindow} before its circuit may open.
+     */
+    @JsonProperty
+    @Min(1)
+    protected int circuitMinRequests = 20;
+
+    /**
+     * The duration of each window over which the error and slow request rates are measured.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration circuitWindow = Duration.seconds(10);
+
+    /**
+     * The time a circuit stays open before probing whether its table has recovered.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration circuitOpenTime = Duration.seconds(5);
+
+    /**
+     * The number of successful probe requests that close a circuit.
+     */
+    @JsonProperty
+    @Min(1)
+    protected int circuitProbes = 3;
+
+    /**
+     * Whether requests for an operation or table with a saturated dedicated pool may borrow a
+     * permit from the pool of {@link HBaseClientConfiguration#maxConcurrentRequests
+     * maxConcurrentRequests}, when one is immediately available.
+     */
+    @JsonProperty
+    protected boolean bulkheadBorrowing = false;
+
+    /**
+     * Whether requests exceeding {@link HBaseClientConfiguration#maxConcurrentRequests
+     * maxConcurrentRequests} should be queued without blocking the calling thread.
+     * <p/>
+     * When disabled, the calling thread blocks until a permit is available. When enabled, requests
+     * are queued and dispatched as permits become available; requests are rejected with a {@link
+     * com.datasift.dropwizard.hbase.RequestRejectedException} when the queue is full or they have
+     * waited for longer than {@link HBaseClientConfiguration#maxQueueTime maxQueueTime}.
+     *
+     * @see com.datasift.dropwizard.hbase.limiter.QueuingRequestLimiter
+     */
+    @JsonProperty
+    protected boolean nonBlocking = false;
+
+    /**
+     * The maximum number of requests that may be queued awaiting a permit when {@link
+     * HBaseClientConfiguration#nonBlocking nonBlocking} is enabled.
+     * <p/>
+     * When this is zero ("0"), requests are rejected immediately if no permit is available.
+     */
+    @JsonProperty
+    @Min(0)
+    protected int maxQueuedRequests = 1000;
+
+    /**
+     * The maximum time a request may be queued awaiting a permit when {@link
+     * HBaseClientConfiguration#nonBlocking nonBlocking} is enabled.
+     * <p/>
+     * When this is zero ("0"), requests may be queued indefinitely.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration maxQueueTime = Duration.seconds(5);
+
+    /**
+     * Whether requests waiting for a permit should be scheduled by their priority and tenant,
+     * rather than in the order they were made.
+     * <p/>
+     * When enabled, requests are queued without blocking the calling thread, as when {@link
+     * HBaseClientConfiguration#nonBlocking nonBlocking} is enabled; but permits are granted by
+     * strict priority and, between the tenants of each priority, in proportion to their {@link
+     * HBaseClientConfiguration#tenantWeights tenantWeights}. The priority and tenant of requests
+     * are given by the {@link com.datasift.dropwizard.hbase.limiter.RequestContext} of the thread
+     * making them.
+     *
+     * @see com.datasift.dropwizard.hbase.limiter.SchedulingRequestLimiter
+     */
+    @JsonProperty
+    protected boolean scheduled = false;
+
+    /**
+     * The share of the permits of each priority to give to each tenant, relative to the other
+     * tenants, when {@link HBaseClientConfiguration#scheduled scheduled} is enabled.
+     * <p/>
+     * Tenants not given have a weight of one ("1").
+     */
+    @JsonProperty
+    @NotNull
+    protected Map<String, Integer> tenantWeights = new HashMap<String, Integer>();
+
+    /**
+     * The maximum rate of requests, per second, for each table, regardless of operation, keyed by
+     * the name of the table.
+     * <p/>
+     * Requests in excess of the rate are delayed until it allows them. Tables not given are not
+     * limited.
+     *
+     * @see com.datasift.dropwizard.hbase.RateLimitedHBaseClient
+     */
+    @JsonProperty
+    @NotNull
+    protected Map<String, Double> maxRequestRateByTable = new HashMap<String, Double>();
+
+    /**
+     * The maximum rate of requests, per second, for each operation, regardless of table, keyed by
+     * the name of the {@link com.datasift.dropwizard.hbase.Operation}.
+     * <p/>
+     * Each batch of rows fetched by a scanner is one request. Operations not given are not limited.
+     */
+    @JsonProperty
+    @NotNull
+    protected Map<String, Double> maxRequestRateByOperation = new HashMap<String, Double>();
+
+    /**
+     * The maximum size of the cells put, per second, to each table, keyed by the name of the
+     * table.
+     * <p/>
+     * The size of a put is its estimated size in memory, including an allowance for the overhead
+     * of the row and each of its cells. Tables not given are not limited.
+     */
+    @JsonProperty
+    @NotNull
+    protected Map<String, Size> maxPutRateByTable = new HashMap<String, Size>();
+
+    /**
+     * The time over which unused requests may accrue for each rate limit, allowing a burst after a
+     * quiet period to briefly exceed the rate.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration rateLimitBurst = Duration.seconds(1);
+
+    /**
+     * The maximum time a request may be delayed by a rate limit.
+     * <p/>
+     * Requests that would be delayed for longer are rejected rather than queued, so that the
+     * delay of a client making requests faster than its limits allow remains bounded.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration maxRateLimitDelay = Duration.seconds(1);
+
+    /**
+     * Whether to block the calling thread until a request delayed by a rate limit may be made.
+     * <p/>
+     * When disabled, delayed requests are made later by the executor of the client, without
+     * blocking the calling thread. Requests made on the timer of the client are never blocked.
+     */
+    @JsonProperty
+    protected boolean blockOnRateLimit = false;
+
+    /**
+     * The maximum total size of the results of gets to cache.
+     * <p/>
+     * When this is zero ("0"), the results of gets will not be cached.
+     *
+     * @see com.datasift.dropwizard.hbase.CachingHBaseClient
+     */
+    @JsonProperty
+    @NotNull
+    protected Size cacheSize = Size.bytes(0);
+
+    /**
+     * The time-to-live of cached results of gets, for tables without an explicit time-to-live in
+     * {@link HBaseClientConfiguration#cacheTtlByTable cacheTtlByTable}.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration cacheTtl = Duration.seconds(1);
+
+    /**
+     * The time-to-live of cached results of gets for each table, keyed by the name of the table.
+     * <p/>
+     * When the time-to-live for a table is zero ("0"), results for the table will not be cached.
+     */
+    @JsonProperty
+    @NotNull
+    protected Map<String, Duration> cacheTtlByTable = new HashMap<String, Duration>();
+
+    /**
+     * Whether identical concurrent gets should be coalesced into a single request.
+     *
+     * @see com.datasift.dropwizard.hbase.CoalescingHBaseClient
+     */
+    @JsonProperty
+    protected boolean coalesceGets = false;
+
+    /**
+     * Whether {@link HBaseClient#bufferIncrement buffered increments} should be aggregated
+     * client-side, rather than by the increment buffer of the underlying client.
+     *
+     * @see com.datasift.dropwizard.hbase.AggregatingHBaseClient
+     */
+    @JsonProperty
+    protected boolean aggregateIncrements = false;
+
+    /**
+     * The maximum time increments are aggregated before being flushed when {@link
+     * HBaseClientConfiguration#aggregateIncrements aggregateIncrements} is enabled.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration incrementFlushInterval = Duration.seconds(1);
+
+    /**
+     * The maximum number of cells whose increments are aggregated at once when {@link
+     * HBaseClientConfiguration#aggregateIncrements aggregateIncrements} is enabled.
+     * <p/>
+     * Once this many cells are being aggregated, all pending increments are flushed.
+     */
+    @JsonProperty
+    @Min(1)
+    protected int maxAggregatedIncrements = 100000;
+
+    /**
+     * The maximum number of buffered increments that may be pending, awaiting the completion of
+     * their flush, when {@link HBaseClientConfiguration#aggregateIncrements aggregateIncrements}
+     * is enabled.
+     * <p/>
+     * Once this many increments are pending, all pending increments are flushed, and further
+     * increments are rejected with a {@link com.datasift.dropwizard.hbase.RequestRejectedException}
+     * until enough have completed.
+     */
+    @JsonProperty
+    @Min(1)
+    protected int maxPendingIncrements = 1000000;
+
+    /**
+     * The names of the tables whose puts should be buffered and written behind the caller.
+     * <p/>
+     * Repeated puts to the same cell of these tables are merged, so that only the last value
+     * written is sent. When this is empty, puts are never buffered.
+     *
+     * @see com.datasift.dropwizard.hbase.WriteBehindHBaseClient
+     */
+    @JsonProperty
+    @NotNull
+    protected Set<String> writeBehindTables = new HashSet<String>();
+
+    /**
+     * The maximum time puts to {@link HBaseClientConfiguration#writeBehindTables
+     * writeBehindTables} are buffered before being flushed.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration writeBehindFlushInterval = Duration.seconds(1);
+
+    /**
+     * The size of buffered puts to {@link HBaseClientConfiguration#writeBehindTables
+     * writeBehindTables} that causes them to be flushed immediately.
+     */
+    @JsonProperty
+    @NotNull
+    protected Size writeBehindFlushSize = Size.megabytes(4);
+
+    /**
+     * The maximum size of buffered and in-flight puts to {@link
+     * HBaseClientConfiguration#writeBehindTables writeBehindTables}.
+     * <p/>
+     * Once this is reached, further puts are rejected until in-flight puts complete.
+     */
+    @JsonProperty
+    @NotNull
+    protected Size writeBehindBufferSize = Size.megabytes(32);
+
+    /**
+     * The target size of the response for each batch of rows fetched by scanners.
+     * <p/>
+     * When this is non-zero, the number of rows fetched in each batch adapts to the observed size
+     * of rows to approach this size. When this is zero ("0"), each batch fetches the number of
+     * rows set on the scanner.
+     *
+     * @see com.datasift.dropwizard.hbase.scanner.AdaptiveRowScanner
+     */
+    @JsonProperty
+    @NotNull
+    protected Size scanBatchSize = Size.bytes(0);
+
+    /**
+     * The maximum time to fetch each batch of rows when {@link
+     * HBaseClientConfiguration#scanBatchSize scanBatchSize} is non-zero.
+     * <p/>
+     * Batches taking longer than this shrink the size of the next batch. When this is zero ("0"),
+     * batches are sized by {@link HBaseClientConfiguration#scanBatchSize scanBatchSize} alone.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration scanLatencyBudget = Duration.milliseconds(500);
+
     /**
      * The maximum time to wait for a connection to a region server before failing.
      */
     @JsonProperty
     @NotNull
-    protected Duration connectionTimeout = Duration.seconds(5);
+    protected Duration connectionTimeout = Duration.seconds(5);
+
+    /**
+     * The number of underlying asynchbase clients to stripe requests over, each with its own
+     * connection to each region server.
+     * <p/>
+     * Requests for each row are always dispatched by the same client, so requests for a row retain
+     * their order. When this is one ("1"), a single client is used. In-memory clients are never
+     * pooled, as each would hold its own tables.
+     *
+     * @see com.datasift.dropwizard.hbase.PooledHBaseClient
+     */
+    @JsonProperty
+    @Min(1)
+    protected int poolSize = 1;
+
+    /**
+     * Whether the {@link HBaseClient} should be instrumented with {@link
+     * com.yammer.metrics.core.Metric}s.
+     */
+    @JsonProperty
+    protected boolean instrumented = true;
+
+    /**
+     * The maximum number of tables to record {@link com.yammer.metrics.core.Metric}s for, when
+     * the {@link HBaseClient} is {@link HBaseClientConfiguration#instrumented instrumented}.
+     * <p/>
+     * Requests for further tables are recorded by a single set of metrics shared by them all. When
+     * this is zero, requests are only recorded for the client as a whole.
+     *
+     * @see com.datasift.dropwizard.hbase.metrics.TableInstrumentation
+     */
+    @JsonProperty
+    @Min(0)
+    protected int maxInstrumentedTables = 0;
+
+    /**
+     * The tables to record {@link com.yammer.metrics.core.Metric}s for, up to {@link
+     * HBaseClientConfiguration#maxInstrumentedTables maxInstrumentedTables}.
+     * <p/>
+     * When this is empty, metrics are recorded for the first tables requested.
+     */
+    @JsonProperty
+    @NotNull
+    protected Set<String> instrumentedTables = new HashSet<String>();
+
+    /**
+     * The maximum number of column families of each instrumented table to record {@link
+     * com.yammer.metrics.core.Metric}s for.
+     * <p/>
+     * When this is zero, requests are only recorded for each table as a whole.
+     */
+    @JsonProperty
+    @Min(0)
+    protected int maxInstrumentedFamilies = 0;
+
+    /**
+     * The type of recorder to record the latency of requests with, when the {@link HBaseClient} is
+     * {@link HBaseClientConfiguration#instrumented instrumented}.
+     * <p/>
+     * A {@link LatencyRecorderType#HISTOGRAM histogram} recorder is cheaper to update than the
+     * default {@link LatencyRecorderType#TIMER timer} under contention, and reports the
+     * percentiles of each reporting interval.
+     *
+     * @see LatencyRecorderType
+     */
+    @JsonProperty
+    @NotNull
+    protected LatencyRecorderType latencyRecorder = LatencyRecorderType.TIMER;
+
+    /**
+     * Whether to hold all tables in memory, rather than connect to the HBase cluster, for load
+     * testing locally.
+     * <p/>
+     * The {@link HBaseClientConfiguration#zookeeper zookeeper} quorum is ignored; all other
+     * settings apply as usual.
+     *
+     * @see com.datasift.dropwizard.hbase.InMemoryHBaseClient
+     */
+    @JsonProperty
+    protected boolean inMemory = false;
+
+    /**
+     * The tables to create in an {@link HBaseClientConfiguration#inMemory inMemory} client.
+     * <p/>
+     * Requests to any other table fail with a {@link org.hbase.async.TableNotFoundException}, as
+     * they would against a cluster without the table.
+     */
+    @JsonProperty
+    @NotNull
+    protected Set<String> inMemoryTables = new HashSet<String>();
 
     /**
-     * Whether the {@link HBaseClient} should be instrumented with {@link
-     * com.yammer.metrics.core.Metric}s.
+     * The mean latency to inject into each request to an {@link
+     * HBaseClientConfiguration#inMemory inMemory} client, unless overridden for its operation.
      */
     @JsonProperty
-    protected boolean instrumented = true;
+    @NotNull
+    protected Duration inMemoryLatency = Duration.milliseconds(0);
+
+    /**
+     * The mean latency to inject into requests to an {@link HBaseClientConfiguration#inMemory
+     * inMemory} client, for each type of operation.
+     *
+     * @see com.datasift.dropwizard.hbase.Operation
+     */
+    @JsonProperty
+    @NotNull
+    protected Map<String, Duration> inMemoryLatencyByOperation = new HashMap<String, Duration>();
+
+    /**
+     * The distribution of the latency injected into requests to an {@link
+     * HBaseClientConfiguration#inMemory inMemory} client.
+     *
+     * @see LatencyDistribution
+     */
+    @JsonProperty
+    @NotNull
+    protected LatencyDistribution inMemoryLatencyDistribution = LatencyDistribution.CONSTANT;
 
     /**
      * @see HBaseClientConfiguration#zookeeper
@@ -104,6 +688,328 @@ public class HBaseClientConfiguration {
         return maxConcurrentRequests;
     }
 
+    /**
+     * @see HBaseClientConfiguration#adaptiveConcurrency
+     */
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#minConcurrentRequests
+     */
+    public int getMinConcurrentRequests() {
+        return minConcurrentRequests;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxConcurrentRequestsByOperation
+     */
+    public Map<String, Integer> getMaxConcurrentRequestsByOperation() {
+        return maxConcurrentRequestsByOperation;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxConcurrentRequestsByTable
+     */
+    public Map<String, Integer> getMaxConcurrentRequestsByTable() {
+        return maxConcurrentRequestsByTable;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#requestTimeout
+     */
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#requestTimeoutByOperation
+     */
+    public Map<String, Duration> getRequestTimeoutByOperation() {
+        return requestTimeoutByOperation;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#requestTimeoutByTable
+     */
+    public Map<String, Duration> getRequestTimeoutByTable() {
+        return requestTimeoutByTable;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxRetries
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#retryBackoff
+     */
+    public Duration getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxRetryBackoff
+     */
+    public Duration getMaxRetryBackoff() {
+        return maxRetryBackoff;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#retryBudget
+     */
+    public double getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#circuitBreaking
+     */
+    public boolean isCircuitBreaking() {
+        return circuitBreaking;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#circuitBreakingByOperation
+     */
+    public boolean isCircuitBreakingByOperation() {
+        return circuitBreakingByOperation;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#circuitErrorRate
+     */
+    public double getCircuitErrorRate() {
+        return circuitErrorRate;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#circuitSlowRate
+     */
+    public double getCircuitSlowRate() {
+        return circuitSlowRate;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#circuitSlowTime
+     */
+    public Duration getCircuitSlowTime() {
+        return circuitSlowTime;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#circuitMinRequests
+     */
+    public int getCircuitMinRequests() {
+        return circuitMinRequests;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#circuitWindow
+     */
+    public Duration getCircuitWindow() {
+        return circuitWindow;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#circuitOpenTime
+     */
+    public Duration getCircuitOpenTime() {
+        return circuitOpenTime;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#circuitProbes
+     */
+    public int getCircuitProbes() {
+        return circuitProbes;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#bulkheadBorrowing
+     */
+    public boolean isBulkheadBorrowing() {
+        return bulkheadBorrowing;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#nonBlocking
+     */
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxQueuedRequests
+     */
+    public int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxQueueTime
+     */
+    public Duration getMaxQueueTime() {
+        return maxQueueTime;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#scheduled
+     */
+    public boolean isScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#tenantWeights
+     */
+    public Map<String, Integer> getTenantWeights() {
+        return tenantWeights;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxRequestRateByTable
+     */
+    public Map<String, Double> getMaxRequestRateByTable() {
+        return maxRequestRateByTable;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxRequestRateByOperation
+     */
+    public Map<String, Double> getMaxRequestRateByOperation() {
+        return maxRequestRateByOperation;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxPutRateByTable
+     */
+    public Map<String, Size> getMaxPutRateByTable() {
+        return maxPutRateByTable;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#rateLimitBurst
+     */
+    public Duration getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxRateLimitDelay
+     */
+    public Duration getMaxRateLimitDelay() {
+        return maxRateLimitDelay;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#blockOnRateLimit
+     */
+    public boolean isBlockOnRateLimit() {
+        return blockOnRateLimit;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#cacheSize
+     */
+    public Size getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#cacheTtl
+     */
+    public Duration getCacheTtl() {
+        return cacheTtl;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#cacheTtlByTable
+     */
+    public Map<String, Duration> getCacheTtlByTable() {
+        return cacheTtlByTable;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#coalesceGets
+     */
+    public boolean isCoalesceGets() {
+        return coalesceGets;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#aggregateIncrements
+     */
+    public boolean isAggregateIncrements() {
+        return aggregateIncrements;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#incrementFlushInterval
+     */
+    public Duration getIncrementFlushInterval() {
+        return incrementFlushInterval;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxAggregatedIncrements
+     */
+    public int getMaxAggregatedIncrements() {
+        return maxAggregatedIncrements;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxPendingIncrements
+     */
+    public int getMaxPendingIncrements() {
+        return maxPendingIncrements;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#writeBehindTables
+     */
+    public Set<String> getWriteBehindTables() {
+        return writeBehindTables;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#writeBehindFlushInterval
+     */
+    public Duration getWriteBehindFlushInterval() {
+        return writeBehindFlushInterval;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#writeBehindFlushSize
+     */
+    public Size getWriteBehindFlushSize() {
+        return writeBehindFlushSize;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#writeBehindBufferSize
+     */
+    public Size getWriteBehindBufferSize() {
+        return writeBehindBufferSize;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#scanBatchSize
+     */
+    public Size getScanBatchSize() {
+        return scanBatchSize;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#scanLatencyBudget
+     */
+    public Duration getScanLatencyBudget() {
+        return scanLatencyBudget;
+    }
+
     /**
      * @see HBaseClientConfiguration#connectionTimeout
      */
@@ -111,10 +1017,103 @@ public class HBaseClientConfiguration {
         return connectionTimeout;
     }
 
+    /**
+     * @see HBaseClientConfiguration#poolSize
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
     /**
      * @see HBaseClientConfiguration#instrumented
      */
     public boolean isInstrumented() {
         return instrumented;
     }
+
+    /**
+     * @see HBaseClientConfiguration#maxInstrumentedTables
+     */
+    public int getMaxInstrumentedTables() {
+        return maxInstrumentedTables;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#instrumentedTables
+     */
+    public Set<String> getInstrumentedTables() {
+        return instrumentedTables;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#maxInstrumentedFamilies
+     */
+    public int getMaxInstrumentedFamilies() {
+        return maxInstrumentedFamilies;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#latencyRecorder
+     */
+    public LatencyRecorderType getLatencyRecorder() {
+        return latencyRecorder;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#inMemory
+     */
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#inMemoryTables
+     */
+    public Set<String> getInMemoryTables() {
+        return inMemoryTables;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#inMemoryLatency
+     */
+    public Duration getInMemoryLatency() {
+        return inMemoryLatency;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#inMemoryLatencyByOperation
+     */
+    public Map<String, Duration> getInMemoryLatencyByOperation() {
+        return inMemoryLatencyByOperation;
+    }
+
+    /**
+     * @see HBaseClientConfiguration#inMemoryLatencyDistribution
+     */
+    public LatencyDistribution getInMemoryLatencyDistribution() {
+        return inMemoryLatencyDistribution;
+    }
+
+    /**
+     * Validates that an adaptive limit on concurrent requests is not combined with queuing or
+     * scheduling of requests, as it rejects requests over the limit rather than queuing them.
+     *
+     * @return true if the limit is not adaptive, or requests are not queued; otherwise, false.
+     */
+    @ValidationMethod(message = "adaptiveConcurrency may not be combined with nonBlocking or "
+            + "scheduled")
+    public boolean isAdaptiveConcurrencyValid() {
+        return !adaptiveConcurrency || !(nonBlocking || scheduled);
+    }
+
+    /**
+     * Validates that the {@link HBaseClientConfiguration#retryBudget retryBudget} is a fraction
+     * of the requests made, between 0 and 1.
+     *
+     * @return true if the retry budget is within range; otherwise, false.
+     */
+    @ValidationMethod(message = "retryBudget must be between 0 and 1")
+    public boolean isRetryBudgetValid() {
+        return retryBudget >= 0 && retryBudget <= 1;
+    }
 }
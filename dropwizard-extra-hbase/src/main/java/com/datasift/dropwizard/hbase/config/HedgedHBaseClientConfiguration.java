@@ -0,0 +1,92 @@
+package com.datasift.dropwizard.hbase.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.yammer.dropwizard.util.Duration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration for an {@link com.datasift.dropwizard.hbase.HedgingHBaseClient}, that hedges
+ * reads from a primary HBase cluster against a replica.
+ */
+public class HedgedHBaseClientConfiguration {
+
+    /**
+     * The primary HBase cluster, to which every request is dispatched.
+     *
+     * @see HBaseClientConfiguration
+     */
+    @JsonProperty
+    @NotNull
+    @Valid
+    protected HBaseClientConfiguration primary = new HBaseClientConfiguration();
+
+    /**
+     * The replica HBase cluster, to which slow reads are hedged.
+     *
+     * @see HBaseClientConfiguration
+     */
+    @JsonProperty
+    @NotNull
+    @Valid
+    protected HBaseClientConfiguration replica = new HBaseClientConfiguration();
+
+    /**
+     * The percentile of the recent latency of the primary for a table to wait for before hedging
+     * a read from it; e.g. "0.95" hedges the slowest 5% of reads.
+     */
+    @JsonProperty
+    protected double hedgePercentile = 0.95;
+
+    /**
+     * The minimum time to wait for the primary before hedging a read.
+     */
+    @JsonProperty
+    @NotNull
+    protected Duration minHedgeDelay = Duration.milliseconds(5);
+
+    /**
+     * The maximum number of hedges per read, as a fraction of the reads made.
+     * <p/>
+     * This caps the extra load hedges may place on the replica; e.g. "0.05" allows at most 5%
+     * extra load.
+     */
+    @JsonProperty
+    protected double hedgeBudget = 0.05;
+
+    /**
+     * @see HedgedHBaseClientConfiguration#primary
+     */
+    public HBaseClientConfiguration getPrimary() {
+        return primary;
+    }
+
+    /**
+     * @see HedgedHBaseClientConfiguration#replica
+     */
+    public HBaseClientConfiguration getReplica() {
+        return replica;
+    }
+
+    /**
+     * @see HedgedHBaseClientConfiguration#hedgePercentile
+     */
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    /**
+     * @see HedgedHBaseClientConfiguration#minHedgeDelay
+     */
+    public Duration getMinHedgeDelay() {
+        return minHedgeDelay;
+    }
+
+    /**
+     * @see HedgedHBaseClientConfiguration#hedgeBudget
+     */
+    public double getHedgeBudget() {
+        return hedgeBudget;
+    }
+}
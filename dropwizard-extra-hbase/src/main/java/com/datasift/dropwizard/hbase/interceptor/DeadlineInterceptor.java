@@ -0,0 +1,115 @@
+package com.datasift.dropwizard.hbase.interceptor;
+
+import com.datasift.dropwizard.hbase.DeadlineHBaseClient;
+import com.datasift.dropwizard.hbase.Operation;
+import com.datasift.dropwizard.hbase.util.Deadlines;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link Interceptor} that fails requests that do not complete within a deadline.
+ * <p/>
+ * Each request is given the timeout chosen by {@link Deadlines} for its table and {@link
+ * Operation}; once it has elapsed, the request is {@link Invocation#expire(Exception) expired}
+ * with a {@link com.datasift.dropwizard.hbase.RequestTimeoutException}, completing it with the
+ * other {@link Interceptor}s straight away, so a hung request releases any permit it holds.
+ * Deadlines are scheduled on a {@link Timer}.
+ * <p/>
+ * Buffered requests have no deadline, as they only complete once the buffer is flushed.
+ *
+ * @see DeadlineHBaseClient
+ */
+public class DeadlineInterceptor implements Interceptor {
+
+    private final Timer timer;
+    private final Deadlines deadlines;
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * Creates a new {@link DeadlineInterceptor} with timeouts for some operations and tables,
+     * registering a gauge for the number of timed out requests with the given {@link
+     * MetricsRegistry}.
+     *
+     * @param timer the {@link Timer} to schedule deadlines on.
+     * @param timeout the timeout for requests without a specific timeout.
+     * @param operations the timeout for each {@link Operation}.
+     * @param tables the timeout for each table, by table name.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     */
+    public DeadlineInterceptor(final Timer timer,
+                               final Duration timeout,
+                               final Map<Operation, Duration> operations,
+                               final Map<String, Duration> tables,
+                               final MetricsRegistry registry) {
+        this.timer = timer;
+        this.deadlines = new Deadlines(timer, timeout, operations, tables);
+
+        if (registry == null) {
+            return;
+        }
+        // named as the gauge of the decorator, so that it keeps its name when intercepted
+        registry.newGauge(DeadlineHBaseClient.class, "timeouts", "requests", new Gauge<Long>() {
+            @Override public Long value() {
+                return getTimeouts();
+            }
+        });
+    }
+
+    /**
+     * Gets the total number of requests that have missed their deadline.
+     *
+     * @return the number of requests that have timed out.
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Schedules the deadline of the request, detaching its response so that it may expire.
+     *
+     * @param invocation the {@link Invocation} of the request.
+     *
+     * @return the {@link Timeout} of the deadline; or null if the request has no deadline.
+     */
+    public Object before(final Invocation<?> invocation) {
+        if (invocation.isBuffered()) {
+            return null;
+        }
+        final Duration timeout =
+                deadlines.forRequest(invocation.getOperation(), invocation.getTable());
+        if (timeout.getQuantity() <= 0) {
+            return null;
+        }
+
+        invocation.detach();
+        return timer.newTimeout(new TimerTask() {
+            public void run(final Timeout deadline) {
+                if (invocation.expire(Deadlines.newTimeoutException(
+                        invocation.getOperation(), invocation.getTable(), timeout))) {
+                    timeouts.incrementAndGet();
+                }
+            }
+        }, timeout.getQuantity(), timeout.getUnit());
+    }
+
+    /**
+     * Cancels the deadline of the request.
+     *
+     * @param invocation the {@link Invocation} of the request.
+     * @param state the {@link Timeout} of the deadline; or null if the request has no deadline.
+     * @param result the result of the request; or the {@link Exception} it failed with.
+     */
+    public void after(final Invocation<?> invocation, final Object state, final Object result) {
+        if (state != null) {
+            ((Timeout) state).cancel();
+        }
+    }
+}
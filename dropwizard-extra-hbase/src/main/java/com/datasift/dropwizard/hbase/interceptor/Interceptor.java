@@ -0,0 +1,50 @@
+package com.datasift.dropwizard.hbase.interceptor;
+
+/**
+ * A concern applied to each request made through an {@link InterceptorChain}, such as timing or
+ * imposing a deadline on it.
+ * <p/>
+ * Once a request has been admitted by its chain, the {@link #before(Invocation) before} method of
+ * each {@link Interceptor} in the chain is called, in order, before the request is dispatched;
+ * once it completes, the {@link #after(Invocation, Object, Object) after} method of each is
+ * called, in reverse order, from the single completion callback of its {@link Invocation}. Any
+ * state an {@link Interceptor} needs to complete a request is returned by {@link
+ * #before(Invocation) before}, and given back to {@link #after(Invocation, Object, Object)
+ * after}, so that it need not allocate a callback of its own.
+ * <p/>
+ * The {@link #after(Invocation, Object, Object) after} method of every {@link Interceptor} is
+ * called exactly once for each request, whether it completes, fails, {@link
+ * Invocation#expire(Exception) expires}, or is rejected before it is dispatched. If the request
+ * was rejected before the {@link #before(Invocation) before} method of an {@link Interceptor} was
+ * called, its state is null.
+ */
+public interface Interceptor {
+
+    /**
+     * Intercepts a request before it is dispatched.
+     * <p/>
+     * This is called once the request has been admitted, so it should not block.
+     *
+     * @param invocation the {@link Invocation} of the request.
+     *
+     * @return the state to complete the request with, given to {@link #after(Invocation, Object,
+     *         Object) after}; or null if there is none.
+     *
+     * @throws Exception to reject the request, failing it with the thrown exception without
+     *                   dispatching it.
+     */
+    public Object before(Invocation<?> invocation) throws Exception;
+
+    /**
+     * Intercepts a request once it has completed, failed, expired or been rejected.
+     * <p/>
+     * This is called from the completion callback of the request, so it must not block, nor
+     * throw.
+     *
+     * @param invocation the {@link Invocation} of the request.
+     * @param state the state returned for the request by {@link #before(Invocation) before}; or
+     *              null if it was rejected before {@link #before(Invocation) before} was called.
+     * @param result the result of the request; or the {@link Exception} it failed with.
+     */
+    public void after(Invocation<?> invocation, Object state, Object result);
+}
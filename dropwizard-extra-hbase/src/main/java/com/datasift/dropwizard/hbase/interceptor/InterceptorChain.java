@@ -0,0 +1,205 @@
+package com.datasift.dropwizard.hbase.interceptor;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.datasift.dropwizard.hbase.limiter.Bulkheads;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.metrics.core.Clock;
+
+import java.util.List;
+
+/**
+ * An ordered chain of {@link Interceptor}s, applied to each request made through it.
+ * <p/>
+ * Each request is made as a single {@link Invocation}. If the chain bounds requests, it is first
+ * admitted by the {@link com.datasift.dropwizard.hbase.limiter.RequestLimiter} its {@link
+ * Bulkheads} select for it; once admitted, it is passed to each {@link Interceptor} in order and
+ * dispatched, and then, from a single completion callback, completed with each {@link
+ * Interceptor} in reverse order. Unlike nesting a decorator for each concern, the allocations and
+ * dispatch of each request stay flat as {@link Interceptor}s are added.
+ * <p/>
+ * Each request is timed from when it is made, so time spent waiting to be admitted is included;
+ * but {@link Interceptor}s only see a request once it has been admitted, so that, for example, a
+ * deadline only runs while the request holds a permit, and a request that misses its deadline
+ * releases its permit straight away. Closing a scanner is never bounded.
+ * <p/>
+ * The chain is immutable, and should be composed once and shared by all requests.
+ *
+ * @see com.datasift.dropwizard.hbase.InterceptingHBaseClient
+ */
+public class InterceptorChain {
+
+    private final Interceptor[] interceptors;
+    private final Bulkheads bulkheads;
+    private final Clock clock;
+
+    /**
+     * Creates a new {@link InterceptorChain} of the given {@link Interceptor}s, that does not
+     * bound requests and times them with the {@link Clock#defaultClock() default} {@link Clock}.
+     *
+     * @param interceptors the {@link Interceptor}s to apply to each request, in order.
+     */
+    public InterceptorChain(final List<? extends Interceptor> interceptors) {
+        this(interceptors, null, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a new {@link InterceptorChain} of the given {@link Interceptor}s, that admits
+     * requests with the given {@link Bulkheads} and times them with the given {@link Clock}.
+     *
+     * @param interceptors the {@link Interceptor}s to apply to each request, in order.
+     * @param bulkheads the {@link Bulkheads} to admit requests with; or null to not bound
+     *                  requests.
+     * @param clock the {@link Clock} to time requests with.
+     */
+    public InterceptorChain(final List<? extends Interceptor> interceptors,
+                            final Bulkheads bulkheads,
+                            final Clock clock) {
+        this.interceptors = interceptors.toArray(new Interceptor[interceptors.size()]);
+        this.bulkheads = bulkheads;
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the number of {@link Interceptor}s in this chain.
+     *
+     * @return the number of {@link Interceptor}s in this chain.
+     */
+    public int size() {
+        return interceptors.length;
+    }
+
+    /**
+     * Gets the {@link Bulkheads} that admit requests made through this chain.
+     *
+     * @return the {@link Bulkheads} of this chain; or null if it does not bound requests.
+     */
+    public Bulkheads getBulkheads() {
+        return bulkheads;
+    }
+
+    /**
+     * Makes a request through this chain.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the table the request is for; or null if it is not for a specific table.
+     * @param family the column family the request is for; or null if it is not for a specific
+     *               column family.
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request; or the error it failed with, if it was rejected or
+     *         expired.
+     */
+    public <T> Deferred<T> submit(final Operation operation,
+                                  final byte[] table,
+                                  final byte[] family,
+                                  final Callback<Deferred<T>, Object> request) {
+        return submit(operation, table, family, 0, request);
+    }
+
+    /**
+     * Makes a request that sends an edit through this chain.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the table the request is for.
+     * @param family the column family the request is for; or null if it is not for a specific
+     *               column family.
+     * @param size the size, in bytes, of the edit sent by the request.
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request; or the error it failed with, if it was rejected or
+     *         expired.
+     */
+    public <T> Deferred<T> submit(final Operation operation,
+                                  final byte[] table,
+                                  final byte[] family,
+                                  final long size,
+                                  final Callback<Deferred<T>, Object> request) {
+        return invoke(new Invocation<T>(
+                interceptors, clock, operation, table, family, size, 0), request);
+    }
+
+    /**
+     * Makes a bulk request through this chain.
+     *
+     * @param operation the {@link Operation} of each of the requests in the bulk request.
+     * @param table the table common to all the requests; or null if they are not all for the
+     *              same table.
+     * @param request a {@link Callback} that dispatches the bulk request when called.
+     * @param <T> the type of the result of the bulk request.
+     *
+     * @return the result of the bulk request; or the error it failed with, if it was rejected
+     *         or expired.
+     */
+    public <T> Deferred<T> submitAll(final Operation operation,
+                                     final byte[] table,
+                                     final Callback<Deferred<T>, Object> request) {
+        return invoke(new Invocation<T>(
+                interceptors, clock, operation, table, null, 0, Invocation.BULK), request);
+    }
+
+    /**
+     * Makes a request that is buffered on the client-side through this chain.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the table the request is for.
+     * @param family the column family the request is for.
+     * @param size the size, in bytes, of the edit buffered by the request.
+     * @param request a {@link Callback} that buffers the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request, once the buffer has been flushed; or the error it
+     *         failed with, if it was rejected.
+     */
+    public <T> Deferred<T> submitBuffered(final Operation operation,
+                                          final byte[] table,
+                                          final byte[] family,
+                                          final long size,
+                                          final Callback<Deferred<T>, Object> request) {
+        return invoke(new Invocation<T>(
+                interceptors, clock, operation, table, family, size, Invocation.BUFFERED),
+                request);
+    }
+
+    /**
+     * Closes a scanner through this chain, without bounding it.
+     *
+     * @param table the table being scanned.
+     * @param request a {@link Callback} that closes the scanner when called.
+     * @param <T> the type of the result of closing the scanner.
+     *
+     * @return the result of closing the scanner; or the error it failed with, if it expired.
+     */
+    public <T> Deferred<T> submitClose(final byte[] table,
+                                       final Callback<Deferred<T>, Object> request) {
+        return new Invocation<T>(
+                interceptors, clock, Operation.SCAN, table, null, 0, Invocation.CLOSE)
+                .invoke(request);
+    }
+
+    /**
+     * Admits the request, then invokes it.
+     */
+    private <T> Deferred<T> invoke(final Invocation<T> invocation,
+                                   final Callback<Deferred<T>, Object> request) {
+        if (bulkheads == null) {
+            return invocation.invoke(request);
+        }
+
+        final Deferred<T> result = bulkheads
+                .forRequest(invocation.getOperation(), invocation.getTable())
+                .submit(new Callback<Deferred<T>, Object>() {
+                    public Deferred<T> call(final Object arg) {
+                        return invocation.invoke(request);
+                    }
+                });
+
+        // a request that is yet to be admitted may be rejected, which completes it
+        if (invocation.isPending()) {
+            result.addBoth(invocation);
+        }
+        return result;
+    }
+}
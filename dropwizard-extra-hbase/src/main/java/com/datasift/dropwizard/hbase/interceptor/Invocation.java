@@ -0,0 +1,335 @@
+package com.datasift.dropwizard.hbase.interceptor;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.metrics.core.Clock;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A single request made through an {@link InterceptorChain}.
+ * <p/>
+ * An {@link Invocation} is both the record of the request given to each {@link Interceptor},
+ * and the single {@link Callback} that completes it, calling every {@link Interceptor} in turn;
+ * so however many {@link Interceptor}s are in the chain, a request allocates only its {@link
+ * Invocation}.
+ * <p/>
+ * A request completes exactly once: either with its result, when it is {@link
+ * #expire(Exception) expired} by an {@link Interceptor}, or when it is rejected before it is
+ * dispatched, whichever is first. Its progress is tracked by a single state, changed by
+ * compare-and-set, so that completing a request takes no lock.
+ *
+ * @param <T> the type of the result of the request.
+ */
+public class Invocation<T> implements Callback<T, T> {
+
+    /**
+     * The request is a bulk request.
+     */
+    static final int BULK = 1;
+
+    /**
+     * The request is buffered on the client-side until a flush.
+     */
+    static final int BUFFERED = 2;
+
+    /**
+     * The request closes a scanner.
+     */
+    static final int CLOSE = 4;
+
+    // not yet admitted
+    private static final int PENDING = 0;
+    // being admitted by each Interceptor
+    private static final int ADMITTING = 1;
+    // dispatched and awaiting its result
+    private static final int DISPATCHED = 2;
+    // expired while being admitted, so will not be dispatched
+    private static final int EXPIRING = 3;
+    private static final int COMPLETED = 4;
+    private static final int EXPIRED = 5;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Invocation> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Invocation.class, "state");
+
+    private final Interceptor[] interceptors;
+    private final Object[] states;
+    private final Clock clock;
+    private final Operation operation;
+    private final byte[] table;
+    private final byte[] family;
+    private final long size;
+    private final int flags;
+    private final long start;
+
+    private volatile int state = PENDING;
+
+    // written while being admitted, and read once the state has changed from ADMITTING
+    private Deferred<T> response;
+    private volatile Exception expiry;
+
+    // written by the thread that completes the request
+    private long end;
+
+    /**
+     * Creates a new {@link Invocation} of a request, starting it now.
+     *
+     * @param interceptors the {@link Interceptor}s to apply to the request, in order.
+     * @param clock the {@link Clock} to time the request with.
+     * @param operation the {@link Operation} of the request.
+     * @param table the table the request is for; or null if it is not for a specific table.
+     * @param family the column family the request is for; or null if it is not for a specific
+     *               column family.
+     * @param size the size, in bytes, of the edit sent by the request; or zero if it sends none.
+     * @param flags the {@link #BULK}, {@link #BUFFERED} and {@link #CLOSE} flags of the request.
+     */
+    Invocation(final Interceptor[] interceptors,
+               final Clock clock,
+               final Operation operation,
+               final byte[] table,
+               final byte[] family,
+               final long size,
+               final int flags) {
+        this.interceptors = interceptors;
+        this.states = interceptors.length == 0 ? null : new Object[interceptors.length];
+        this.clock = clock;
+        this.operation = operation;
+        this.table = table;
+        this.family = family;
+        this.size = size;
+        this.flags = flags;
+        this.start = clock.tick();
+    }
+
+    /**
+     * Gets the {@link Operation} of the request.
+     *
+     * @return the {@link Operation} of the request.
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Gets the table the request is for.
+     *
+     * @return the table the request is for; or null if it is not for a specific table, or is a
+     *         bulk request for several tables.
+     */
+    public byte[] getTable() {
+        return table;
+    }
+
+    /**
+     * Gets the column family the request is for.
+     *
+     * @return the column family the request is for; or null if it is not for a specific column
+     *         family.
+     */
+    public byte[] getFamily() {
+        return family;
+    }
+
+    /**
+     * Gets the size of the edit sent by the request.
+     *
+     * @return the size, in bytes, of the edit sent by the request; or zero if it sends none.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets whether the request is a bulk request.
+     *
+     * @return true if the request is a bulk request; otherwise, false.
+     */
+    public boolean isBulk() {
+        return (flags & BULK) != 0;
+    }
+
+    /**
+     * Gets whether the request is buffered on the client-side, only completing once the buffer
+     * is flushed.
+     *
+     * @return true if the request is buffered; otherwise, false.
+     */
+    public boolean isBuffered() {
+        return (flags & BUFFERED) != 0;
+    }
+
+    /**
+     * Gets whether the request closes a scanner.
+     *
+     * @return true if the request closes a scanner; otherwise, false.
+     */
+    public boolean isClose() {
+        return (flags & CLOSE) != 0;
+    }
+
+    /**
+     * Gets the time at which the request was started, by the {@link Clock} of its chain.
+     *
+     * @return the time the request was started, in nanoseconds.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Gets the time taken by the request, from its start until it completed.
+     * <p/>
+     * This is only meaningful once the request has completed, as when called by {@link
+     * Interceptor#after(Invocation, Object, Object)}.
+     *
+     * @return the time taken by the request, in nanoseconds.
+     */
+    public long getElapsed() {
+        return end - start;
+    }
+
+    /**
+     * Gets whether the request was {@link #expire(Exception) expired} before it completed.
+     *
+     * @return true if the request expired; otherwise, false.
+     */
+    public boolean isExpired() {
+        final int current = state;
+        return current == EXPIRING || current == EXPIRED;
+    }
+
+    /**
+     * Detaches the response to the request from its result, so that it may be {@link
+     * #expire(Exception) expired} before the result is available.
+     * <p/>
+     * This must be called by {@link Interceptor#before(Invocation)}, before the request is
+     * dispatched.
+     */
+    public void detach() {
+        if (response == null) {
+            response = new Deferred<T>();
+        }
+    }
+
+    /**
+     * Completes the request with the given error if it has not already completed, discarding its
+     * eventual result.
+     * <p/>
+     * Unless its response was {@link #detach() detached}, the caller still waits for the result
+     * of the request; only the {@link Interceptor}s see it as complete. A request that expires
+     * while it is being admitted is not dispatched.
+     *
+     * @param error the error to complete the request with.
+     *
+     * @return true if the request expired; false if it had already completed.
+     */
+    public boolean expire(final Exception error) {
+        while (true) {
+            final int current = state;
+            if (current == DISPATCHED) {
+                if (STATE.compareAndSet(this, DISPATCHED, EXPIRED)) {
+                    complete(error);
+                    return true;
+                }
+            } else if (current == ADMITTING) {
+                // the admitting thread completes the request once it has been admitted
+                expiry = error;
+                if (STATE.compareAndSet(this, ADMITTING, EXPIRING)) {
+                    return true;
+                }
+            } else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Completes the request with its result, or the error it failed with.
+     * <p/>
+     * A request that has not yet been admitted is completed as rejected.
+     *
+     * @param arg the result of the request; or the {@link Exception} it failed with.
+     *
+     * @return the argument, proxied verbatim.
+     */
+    public T call(final T arg) {
+        if (STATE.compareAndSet(this, DISPATCHED, COMPLETED)
+                || STATE.compareAndSet(this, PENDING, COMPLETED)) {
+            complete(arg);
+        }
+        return arg;
+    }
+
+    /**
+     * Gets whether the request has yet to be admitted.
+     *
+     * @return true if the request has not been admitted, nor completed; otherwise, false.
+     */
+    boolean isPending() {
+        return state == PENDING;
+    }
+
+    /**
+     * Admits the request through each {@link Interceptor}, then dispatches it.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     *
+     * @return the response to the request.
+     */
+    Deferred<T> invoke(final Callback<Deferred<T>, Object> request) {
+        state = ADMITTING;
+        for (int i = 0; i < interceptors.length; i++) {
+            try {
+                states[i] = interceptors[i].before(this);
+            } catch (final Exception e) {
+                if (STATE.compareAndSet(this, ADMITTING, COMPLETED)) {
+                    return fail(e);
+                }
+                state = EXPIRED;
+                return fail(expiry);
+            }
+        }
+
+        if (!STATE.compareAndSet(this, ADMITTING, DISPATCHED)) {
+            // expired while being admitted
+            state = EXPIRED;
+            return fail(expiry);
+        }
+
+        final Deferred<T> dispatched;
+        try {
+            dispatched = request.call(null);
+        } catch (final Exception e) {
+            if (STATE.compareAndSet(this, DISPATCHED, COMPLETED)) {
+                return fail(e);
+            }
+            return response == null ? Deferred.<T>fromError(e) : response;
+        }
+        dispatched.addBoth(this);
+        return response == null ? dispatched : response;
+    }
+
+    /**
+     * Completes a request that failed before it was dispatched with the given error.
+     */
+    private Deferred<T> fail(final Exception error) {
+        complete(error);
+        return response == null ? Deferred.<T>fromError(error) : response;
+    }
+
+    /**
+     * Completes the request with each {@link Interceptor}, in reverse order, then calls back its
+     * detached response, if any.
+     */
+    private void complete(final Object outcome) {
+        end = clock.tick();
+        for (int i = interceptors.length - 1; i >= 0; i--) {
+            interceptors[i].after(this, states[i], outcome);
+        }
+        if (response != null) {
+            response.callback(outcome);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.datasift.dropwizard.hbase.interceptor;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.datasift.dropwizard.hbase.metrics.HBaseInstrumentation;
+import com.datasift.dropwizard.hbase.metrics.TableInstrumentation;
+import com.datasift.dropwizard.hbase.metrics.TableMetrics;
+import com.datasift.dropwizard.hbase.util.KeyValues;
+import com.datasift.dropwizard.metrics.LatencyRecorder;
+import org.hbase.async.KeyValue;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link Interceptor} that times the success and failure of each request separately, with
+ * the {@link LatencyRecorder}s of an {@link HBaseInstrumentation}.
+ * <p/>
+ * Each request is timed from when it entered the {@link InterceptorChain}, so time spent waiting
+ * to be admitted is included. Failures are also counted by their {@link
+ * com.datasift.dropwizard.hbase.metrics.ErrorType}, and the number of rows and size of each
+ * scanned batch are recorded.
+ * <p/>
+ * Requests for a single table are also timed for that table, and its column family, with the
+ * {@link TableMetrics} of a {@link TableInstrumentation}, which also track the size of the edits
+ * sent and cells received. Bulk requests, flushes, unlocks and closes are only timed for the
+ * client as a whole.
+ *
+ * @see com.datasift.dropwizard.hbase.InstrumentedHBaseClient
+ */
+public class TimingInterceptor implements Interceptor {
+
+    private final HBaseInstrumentation metrics;
+    private final TableInstrumentation tables;
+    private final Map<Operation, LatencyRecorder> successes =
+            new EnumMap<Operation, LatencyRecorder>(Operation.class);
+    private final Map<Operation, LatencyRecorder> failures =
+            new EnumMap<Operation, LatencyRecorder>(Operation.class);
+    private final Map<Operation, LatencyRecorder> bulkSuccesses =
+            new EnumMap<Operation, LatencyRecorder>(Operation.class);
+    private final Map<Operation, LatencyRecorder> bulkFailures =
+            new EnumMap<Operation, LatencyRecorder>(Operation.class);
+
+    /**
+     * Creates a new {@link TimingInterceptor} that times requests with the given {@link
+     * HBaseInstrumentation}, for the client as a whole only.
+     *
+     * @param metrics the {@link HBaseInstrumentation} to time requests with.
+     */
+    public TimingInterceptor(final HBaseInstrumentation metrics) {
+        this(metrics, TableInstrumentation.DISABLED);
+    }
+
+    /**
+     * Creates a new {@link TimingInterceptor} that times requests with the given {@link
+     * HBaseInstrumentation}, and for each table with the given {@link TableInstrumentation}.
+     *
+     * @param metrics the {@link HBaseInstrumentation} to time requests with.
+     * @param tables the {@link TableInstrumentation} to time requests for each table with.
+     */
+    public TimingInterceptor(final HBaseInstrumentation metrics,
+                             final TableInstrumentation tables) {
+        this.metrics = metrics;
+        this.tables = tables;
+
+        time(Operation.CREATE, metrics.getCreates(), metrics.getFailedCreates());
+        time(Operation.INCREMENT, metrics.getIncrements(), metrics.getFailedIncrements());
+        time(Operation.COMPARE_AND_SET,
+                metrics.getCompareAndSets(), metrics.getFailedCompareAndSets());
+        time(Operation.DELETE, metrics.getDeletes(), metrics.getFailedDeletes());
+        time(Operation.ASSERTION, metrics.getAssertions(), metrics.getFailedAssertions());
+        time(Operation.FLUSH, metrics.getFlushes(), metrics.getFailedFlushes());
+        time(Operation.GET, metrics.getGets(), metrics.getFailedGets());
+        time(Operation.LOCK, metrics.getLocks(), metrics.getFailedLocks());
+        time(Operation.PUT, metrics.getPuts(), metrics.getFailedPuts());
+        time(Operation.UNLOCK, metrics.getUnlocks(), metrics.getFailedUnlocks());
+        time(Operation.SCAN, metrics.getScans(), metrics.getFailedScans());
+
+        // bulk requests of other operations are timed as single requests
+        bulkSuccesses.putAll(successes);
+        bulkFailures.putAll(failures);
+        bulkSuccesses.put(Operation.DELETE, metrics.getBulkDeletes());
+        bulkFailures.put(Operation.DELETE, metrics.getFailedBulkDeletes());
+        bulkSuccesses.put(Operation.GET, metrics.getBulkGets());
+        bulkFailures.put(Operation.GET, metrics.getFailedBulkGets());
+        bulkSuccesses.put(Operation.PUT, metrics.getBulkPuts());
+        bulkFailures.put(Operation.PUT, metrics.getFailedBulkPuts());
+    }
+
+    /**
+     * Gets the {@link TableMetrics} of the table the request is for, recording the size of any
+     * edit it sends.
+     *
+     * @param invocation the {@link Invocation} of the request.
+     *
+     * @return the {@link TableMetrics} of the table; or null if the request is not timed for a
+     *         table.
+     */
+    public Object before(final Invocation<?> invocation) {
+        if (invocation.isBulk() || invocation.isClose()) {
+            return null;
+        }
+        final TableMetrics table = tables.forTable(invocation.getTable());
+        if (table != null && invocation.getSize() > 0) {
+            final TableMetrics family = table.forFamily(invocation.getFamily());
+            table.getRequestBytes().update(invocation.getSize());
+            if (family != null) {
+                family.getRequestBytes().update(invocation.getSize());
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Records the time taken by the request, by whether it succeeded or failed.
+     *
+     * @param invocation the {@link Invocation} of the request.
+     * @param state the {@link TableMetrics} of the table the request is for; or null if it is not
+     *              timed for a table.
+     * @param result the result of the request; or the {@link Exception} it failed with.
+     */
+    @SuppressWarnings("unchecked")
+    public void after(final Invocation<?> invocation, final Object state, final Object result) {
+        final Operation operation = invocation.getOperation();
+        final long elapsed = invocation.getElapsed();
+        if (result instanceof Exception) {
+            failures(invocation).record(elapsed, TimeUnit.NANOSECONDS);
+            metrics.markError((Exception) result);
+            return;
+        }
+
+        successes(invocation).record(elapsed, TimeUnit.NANOSECONDS);
+        final TableMetrics table = (TableMetrics) state;
+        final TableMetrics family = table == null ? null : table.forFamily(invocation.getFamily());
+        if (table != null) {
+            table.getLatency(operation).record(elapsed, TimeUnit.NANOSECONDS);
+            if (family != null) {
+                family.getLatency(operation).record(elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        if (result == null || invocation.isClose()) {
+            return;
+        }
+        if (operation == Operation.SCAN) {
+            recordBatch(result, table, family);
+        } else if (operation == Operation.GET && table != null) {
+            recordResponse(KeyValues.sizeOf((List<KeyValue>) result), table, family);
+        }
+    }
+
+    private LatencyRecorder successes(final Invocation<?> invocation) {
+        if (invocation.isClose()) {
+            return metrics.getCloses();
+        }
+        return (invocation.isBulk() ? bulkSuccesses : successes).get(invocation.getOperation());
+    }
+
+    private LatencyRecorder failures(final Invocation<?> invocation) {
+        if (invocation.isClose()) {
+            return metrics.getFailedCloses();
+        }
+        return (invocation.isBulk() ? bulkFailures : failures).get(invocation.getOperation());
+    }
+
+    private void time(final Operation operation,
+                      final LatencyRecorder success,
+                      final LatencyRecorder failure) {
+        successes.put(operation, success);
+        failures.put(operation, failure);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recordBatch(final Object result,
+                             final TableMetrics table,
+                             final TableMetrics family) {
+        final ArrayList<ArrayList<KeyValue>> batch = (ArrayList<ArrayList<KeyValue>>) result;
+        final long size = KeyValues.sizeOfRows(batch);
+        metrics.getScanBatchRows().update(batch.size());
+        metrics.getScanBatchBytes().update(size);
+        if (table != null) {
+            recordResponse(size, table, family);
+        }
+    }
+
+    private static void recordResponse(final long size,
+                                       final TableMetrics table,
+                                       final TableMetrics family) {
+        table.getResponseBytes().update(size);
+        if (family != null) {
+            family.getResponseBytes().update(size);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.PleaseThrottleException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link RequestLimiter} that adapts its limit on concurrent requests to the observed latency
+ * and error rate of the cluster.
+ * <p/>
+ * Completed requests are sampled in windows, each closing once as many requests have completed as
+ * the current limit, or after one second, whichever comes first. At the end of each window:
+ * <ul>
+ *     <li>if any request failed because the cluster was overloaded (a {@link
+ *     PleaseThrottleException} or a {@link RequestRejectedException}), the limit is
+ *     multiplicatively decreased; other failures, such as a region moving, are not taken as a
+ *     sign of overload;</li>
+ *     <li>otherwise, the limit is scaled by the ratio of the long-term average latency to the
+ *     latency of the window, so it shrinks as latency rises above its long-term average, and, if
+ *     the window saw at least half of the limit in use, additively increased by its square
+ *     root.</li>
+ * </ul>
+ * The limit is always kept between the configured minimum and maximum.
+ * <p/>
+ * Completions are recorded in each window without locking; only the thread that closes a window
+ * adapts the limit.
+ * <p/>
+ * Requests that exceed the current limit are rejected immediately with a {@link
+ * RequestRejectedException}, shedding load that the cluster can't currently handle.
+ */
+public class AdaptiveRequestLimiter implements RequestLimiter {
+
+    private static final long MAX_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 1.5;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final int LONG_TERM_WINDOWS = 20;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Clock clock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile int limit;
+
+    private final AtomicReference<Window> window;
+
+    // guarded by this
+    private double longTermLatency;
+
+    /**
+     * Creates a new {@link AdaptiveRequestLimiter} whose limit adapts between the given bounds.
+     * <p/>
+     * The limit will begin at the maximum.
+     *
+     * @param minLimit the minimum limit on concurrent requests.
+     * @param maxLimit the maximum limit on concurrent requests.
+     */
+    public AdaptiveRequestLimiter(final int minLimit, final int maxLimit) {
+        this(minLimit, maxLimit, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a new {@link AdaptiveRequestLimiter} whose limit adapts between the given bounds,
+     * registering gauges for its limit, in-flight requests and rejections with the given {@link
+     * MetricsRegistry}.
+     *
+     * @param name the name of the limiter, used to scope its metrics.
+     * @param minLimit the minimum limit on concurrent requests.
+     * @param maxLimit the maximum limit on concurrent requests.
+     * @param registry the {@link MetricsRegistry} to register metrics with.
+     */
+    public AdaptiveRequestLimiter(final String name,
+                                  final int minLimit,
+                                  final int maxLimit,
+                                  final MetricsRegistry registry) {
+        this(minLimit, maxLimit, Clock.defaultClock());
+
+        final Class<? extends RequestLimiter> clazz = getClass();
+        registry.newGauge(clazz, "limit", name, new Gauge<Integer>() {
+            @Override public Integer value() {
+                return getLimit();
+            }
+        });
+        registry.newGauge(clazz, "inFlight", name, new Gauge<Integer>() {
+            @Override public Integer value() {
+                return getInFlight();
+            }
+        });
+        registry.newGauge(clazz, "rejected", name, new Gauge<Long>() {
+            @Override public Long value() {
+                return getRejected();
+            }
+        });
+    }
+
+    /**
+     * Creates a new {@link AdaptiveRequestLimiter} whose limit adapts between the given bounds,
+     * measuring latency with the given {@link Clock}.
+     *
+     * @param minLimit the minimum limit on concurrent requests.
+     * @param maxLimit the maximum limit on concurrent requests.
+     * @param clock the {@link Clock} to measure request latency with.
+     */
+    public AdaptiveRequestLimiter(final int minLimit, final int maxLimit, final Clock clock) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.clock = clock;
+        this.limit = this.maxLimit;
+        this.window = new AtomicReference<Window>(new Window(clock.tick()));
+    }
+
+    /**
+     * Dispatches the request if the current limit has not been reached; otherwise, rejects it.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request.
+     *
+     * @throws RequestRejectedException (Deferred) if the current limit has been reached.
+     */
+    public <T> Deferred<T> submit(final Callback<Deferred<T>, Object> request) {
+        final Deferred<T> result = trySubmit(request);
+        if (result == null) {
+            rejected.incrementAndGet();
+            return Deferred.fromError(new RequestRejectedException(String.format(
+                    "Concurrent request limit reached (%d requests in-flight)", limit)));
+        }
+        return result;
+    }
+
+    /**
+     * Dispatches the request if the current limit has not been reached.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request; or null if the current limit has been reached.
+     */
+    public <T> Deferred<T> trySubmit(final Callback<Deferred<T>, Object> request) {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return null;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+
+        final int concurrency = current + 1;
+        final long start = clock.tick();
+        final Deferred<T> result;
+        try {
+            result = request.call(null);
+        } catch (final Exception e) {
+            inFlight.decrementAndGet();
+            return Deferred.fromError(e);
+        }
+        return result.addBoth(new Callback<T, T>() {
+            public T call(final T arg) {
+                complete(start, concurrency, arg);
+                return arg;
+            }
+        });
+    }
+
+    /**
+     * Gets the current limit on concurrent requests.
+     *
+     * @return the current limit on concurrent requests.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets the number of requests currently in-flight.
+     *
+     * @return the number of requests currently in-flight.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Gets the total number of requests rejected by this {@link RequestLimiter}.
+     *
+     * @return the total number of requests rejected.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Records the completion of a request and, at the end of a window, adapts the limit.
+     *
+     * @param start the time the request was dispatched.
+     * @param concurrency the number of requests in-flight when the request was dispatched.
+     * @param result the result of the request.
+     */
+    private void complete(final long start, final int concurrency, final Object result) {
+        inFlight.decrementAndGet();
+        final long now = clock.tick();
+        final boolean overloaded = result instanceof PleaseThrottleException
+                || result instanceof RequestRejectedException;
+
+        final Window current = window.get();
+        if (overloaded) {
+            current.overloaded = true;
+        }
+        if (!(result instanceof Exception)) {
+            current.latency.addAndGet(now - start);
+            current.samples.incrementAndGet();
+        }
+        int max;
+        do {
+            max = current.maxInFlight.get();
+        } while (concurrency > max && !current.maxInFlight.compareAndSet(max, concurrency));
+        final int completions = current.completions.incrementAndGet();
+
+        // only the thread that replaces the window adapts the limit to it
+        if ((completions >= limit || now - current.start >= MAX_WINDOW_NANOS)
+                && window.compareAndSet(current, new Window(now))) {
+            adapt(current);
+        }
+    }
+
+    /**
+     * Adapts the limit to the given closed window.
+     *
+     * @param closed the window to adapt the limit to.
+     */
+    private synchronized void adapt(final Window closed) {
+        final int samples = closed.samples.get();
+        double next = limit;
+        if (closed.overloaded) {
+            next = next * BACKOFF_RATIO;
+        } else if (samples > 0) {
+            final double latency = (double) closed.latency.get() / samples;
+            longTermLatency = longTermLatency == 0
+                    ? latency
+                    : longTermLatency + (latency - longTermLatency) / LONG_TERM_WINDOWS;
+
+            if (latency > 0) {
+                next = next * Math.max(MIN_GRADIENT,
+                        Math.min(1.0, LATENCY_TOLERANCE * longTermLatency / latency));
+            }
+            if (closed.maxInFlight.get() * 2 >= limit) {
+                next = next + Math.sqrt(next);
+            }
+        }
+        limit = (int) Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    /**
+     * The completions recorded in a window.
+     */
+    private static final class Window {
+
+        private final long start;
+        private final AtomicLong latency = new AtomicLong();
+        private final AtomicInteger samples = new AtomicInteger();
+        private final AtomicInteger completions = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private volatile boolean overloaded;
+
+        Window(final long start) {
+            this.start = start;
+        }
+    }
+}
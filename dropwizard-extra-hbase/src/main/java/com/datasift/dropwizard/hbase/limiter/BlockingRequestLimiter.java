@@ -0,0 +1,80 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.util.PermitReleasingCallback;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A {@link RequestLimiter} that blocks the calling thread until a permit is available.
+ * <p/>
+ * Book-keeping of in-flight requests is done using a {@link Semaphore} which is configured as
+ * "non-fair" to reduce its impact on request throughput.
+ */
+public class BlockingRequestLimiter implements RequestLimiter {
+
+    /**
+     * The {@link Semaphore} constraining the maximum number of concurrent asynchronous requests.
+     */
+    private final Semaphore semaphore;
+
+    /**
+     * Creates a new {@link BlockingRequestLimiter} that admits at most {@code maxRequests}
+     * concurrent requests.
+     *
+     * @param maxRequests the maximum number of concurrent requests.
+     */
+    public BlockingRequestLimiter(final int maxRequests) {
+        this(new Semaphore(maxRequests));
+    }
+
+    /**
+     * Creates a new {@link BlockingRequestLimiter} that tracks requests with the given {@link
+     * Semaphore}.
+     *
+     * @param semaphore the {@link Semaphore} to track concurrent asynchronous requests with.
+     */
+    public BlockingRequestLimiter(final Semaphore semaphore) {
+        this.semaphore = semaphore;
+    }
+
+    /**
+     * Blocks until a permit is available and then dispatches the request.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request.
+     */
+    public <T> Deferred<T> submit(final Callback<Deferred<T>, Object> request) {
+        semaphore.acquireUninterruptibly();
+        return dispatch(request);
+    }
+
+    /**
+     * Dispatches the request if a permit is immediately available.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request; or null if no permit was available.
+     */
+    public <T> Deferred<T> trySubmit(final Callback<Deferred<T>, Object> request) {
+        return semaphore.tryAcquire() ? dispatch(request) : null;
+    }
+
+    /**
+     * Dispatches a request that holds a permit, releasing the permit when it completes.
+     */
+    private <T> Deferred<T> dispatch(final Callback<Deferred<T>, Object> request) {
+        final Deferred<T> result;
+        try {
+            result = request.call(null);
+        } catch (final Exception e) {
+            semaphore.release();
+            return Deferred.fromError(e);
+        }
+        return result.addBoth(new PermitReleasingCallback<T>(semaphore));
+    }
+}
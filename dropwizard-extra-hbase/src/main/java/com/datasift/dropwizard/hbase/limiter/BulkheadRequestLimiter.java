@@ -0,0 +1,177 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link RequestLimiter} for a dedicated pool of permits, isolating a class of requests from
+ * all others.
+ * <p/>
+ * Requests are admitted by the {@link RequestLimiter} for the pool. If the pool is saturated and
+ * an overflow {@link RequestLimiter} is given, the request may instead borrow a permit from the
+ * overflow if one is immediately available, unless that would skip a request of the same or a
+ * higher {@link Priority} waiting for the pool; otherwise, it waits for the pool as normal.
+ * <p/>
+ * Each pool tracks its own in-flight requests, and is instrumented with gauges for its in-flight
+ * requests and utilization, and counters for the number of times it was saturated and the number
+ * of permits borrowed from the overflow.
+ *
+ * @see Bulkheads
+ */
+public class BulkheadRequestLimiter implements RequestLimiter {
+
+    private final RequestLimiter pool;
+    private final RequestLimiter overflow;
+    private final int size;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter saturated;
+    private final Counter borrowed;
+
+    /**
+     * Creates a new {@link BulkheadRequestLimiter} for a pool of permits.
+     *
+     * @param name the name of the pool, used to scope its metrics.
+     * @param pool the {@link RequestLimiter} for the pool of permits.
+     * @param size the number of permits in the pool.
+     * @param overflow the {@link RequestLimiter} to borrow permits from when the pool is
+     *                 saturated; or null to never borrow permits.
+     * @param registry the {@link MetricsRegistry} to register metrics for the pool with; or null
+     *                 to register no metrics.
+     */
+    public BulkheadRequestLimiter(final String name,
+                                  final RequestLimiter pool,
+                                  final int size,
+                                  final RequestLimiter overflow,
+                                  final MetricsRegistry registry) {
+        this.pool = pool;
+        this.overflow = overflow;
+        this.size = size;
+
+        if (registry == null) {
+            saturated = null;
+            borrowed = null;
+            return;
+        }
+
+        final Class<? extends RequestLimiter> clazz = getClass();
+        saturated = registry.newCounter(clazz, "saturated", name);
+        borrowed = registry.newCounter(clazz, "borrowed", name);
+        registry.newGauge(clazz, "inFlight", name, new Gauge<Integer>() {
+            @Override public Integer value() {
+                return getInFlight();
+            }
+        });
+        registry.newGauge(clazz, "utilization", name, new Gauge<Double>() {
+            @Override public Double value() {
+                return getUtilization();
+            }
+        });
+    }
+
+    /**
+     * Dispatches the request with a permit from the pool, borrowing a permit from the overflow if
+     * the pool is saturated and borrowing is enabled.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request.
+     */
+    public <T> Deferred<T> submit(final Callback<Deferred<T>, Object> request) {
+        final Callback<Deferred<T>, Object> tracked = track(request);
+        final Deferred<T> result = admit(tracked);
+        return result == null ? pool.submit(tracked) : result;
+    }
+
+    /**
+     * Dispatches the request if a permit is immediately available from the pool or, if borrowing
+     * is enabled, from the overflow.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request; or null if no permit was available.
+     */
+    public <T> Deferred<T> trySubmit(final Callback<Deferred<T>, Object> request) {
+        return admit(track(request));
+    }
+
+    /**
+     * Gets the number of requests in-flight with permits from this pool, or borrowed by it.
+     *
+     * @return the number of requests in-flight.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Gets the ratio of in-flight requests to the size of this pool.
+     *
+     * @return the utilization of this pool; greater than 1 when permits have been borrowed.
+     */
+    public double getUtilization() {
+        return (double) inFlight.get() / size;
+    }
+
+    /**
+     * Dispatches a tracked request if a permit is immediately available from the pool or the
+     * overflow.
+     */
+    private <T> Deferred<T> admit(final Callback<Deferred<T>, Object> tracked) {
+        Deferred<T> result = pool.trySubmit(tracked);
+        if (result != null) {
+            return result;
+        }
+
+        if (saturated != null) {
+            saturated.inc();
+        }
+        if (overflow != null && !isWaiting(pool)) {
+            result = overflow.trySubmit(tracked);
+            if (result != null && borrowed != null) {
+                borrowed.inc();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines whether a request of the {@link Priority} of the calling thread, or a higher
+     * one, is waiting for a permit from the given pool, which a borrowed permit would skip.
+     */
+    private static boolean isWaiting(final RequestLimiter pool) {
+        return pool instanceof SchedulingRequestLimiter
+                && ((SchedulingRequestLimiter) pool).isWaiting(
+                        RequestContext.current().getPriority());
+    }
+
+    /**
+     * Wraps a request to track it as in-flight from dispatch until completion.
+     */
+    private <T> Callback<Deferred<T>, Object> track(final Callback<Deferred<T>, Object> request) {
+        return new Callback<Deferred<T>, Object>() {
+            public Deferred<T> call(final Object arg) throws Exception {
+                inFlight.incrementAndGet();
+                final Deferred<T> result;
+                try {
+                    result = request.call(arg);
+                } catch (final Exception e) {
+                    inFlight.decrementAndGet();
+                    throw e;
+                }
+                return result.addBoth(new Callback<T, T>() {
+                    public T call(final T arg) {
+                        inFlight.decrementAndGet();
+                        return arg;
+                    }
+                });
+            }
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.google.common.base.Charsets;
+import org.hbase.async.Bytes;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Selects the {@link RequestLimiter} that admits each request, isolating classes of requests from
+ * one another.
+ * <p/>
+ * Requests for a table with a dedicated pool are admitted by the pool for that table; otherwise,
+ * requests for an {@link Operation} with a dedicated pool are admitted by the pool for that
+ * {@link Operation}. All other requests are admitted by the shared {@link RequestLimiter}.
+ *
+ * @see BulkheadRequestLimiter
+ */
+public class Bulkheads {
+
+    private final RequestLimiter shared;
+    private final Map<Operation, RequestLimiter> operations;
+    private final Map<byte[], RequestLimiter> tables;
+
+    /**
+     * Creates a new {@link Bulkheads} that admits all requests with a single, shared {@link
+     * RequestLimiter}.
+     *
+     * @param shared the {@link RequestLimiter} to admit all requests with.
+     */
+    public Bulkheads(final RequestLimiter shared) {
+        this(shared,
+             Collections.<Operation, RequestLimiter>emptyMap(),
+             Collections.<String, RequestLimiter>emptyMap());
+    }
+
+    /**
+     * Creates a new {@link Bulkheads} with dedicated pools for some operations and tables.
+     *
+     * @param shared the {@link RequestLimiter} to admit requests without a dedicated pool with.
+     * @param operations the {@link RequestLimiter} dedicated to each {@link Operation}.
+     * @param tables the {@link RequestLimiter} dedicated to each table, by table name.
+     */
+    public Bulkheads(final RequestLimiter shared,
+                     final Map<Operation, ? extends RequestLimiter> operations,
+                     final Map<String, ? extends RequestLimiter> tables) {
+        this.shared = shared;
+        this.operations = new EnumMap<Operation, RequestLimiter>(Operation.class);
+        this.operations.putAll(operations);
+        this.tables = new TreeMap<byte[], RequestLimiter>(Bytes.MEMCMP);
+        for (final Map.Entry<String, ? extends RequestLimiter> entry : tables.entrySet()) {
+            this.tables.put(entry.getKey().getBytes(Charsets.UTF_8), entry.getValue());
+        }
+    }
+
+    /**
+     * Gets the {@link RequestLimiter} that admits requests for the given {@link Operation} on the
+     * given table.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the table the request is for; or null if it is not for a specific table.
+     *
+     * @return the {@link RequestLimiter} to admit the request with.
+     */
+    public RequestLimiter forRequest(final Operation operation, final byte[] table) {
+        if (table != null && !tables.isEmpty()) {
+            final RequestLimiter limiter = tables.get(table);
+            if (limiter != null) {
+                return limiter;
+            }
+        }
+        if (!operations.isEmpty()) {
+            final RequestLimiter limiter = operations.get(operation);
+            if (limiter != null) {
+                return limiter;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Gets the {@link RequestLimiter} that admits requests for the given {@link Operation} on the
+     * given table.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the name of the table the request is for; or null if it is not for a specific
+     *              table.
+     *
+     * @return the {@link RequestLimiter} to admit the request with.
+     */
+    public RequestLimiter forRequest(final Operation operation, final String table) {
+        return forRequest(operation, table == null ? null : table.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Gets the {@link RequestLimiter} shared by requests without a dedicated pool.
+     *
+     * @return the shared {@link RequestLimiter}.
+     */
+    public RequestLimiter getShared() {
+        return shared;
+    }
+}
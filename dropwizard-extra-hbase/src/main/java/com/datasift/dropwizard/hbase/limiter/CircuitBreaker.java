@@ -0,0 +1,340 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.CircuitOpenException;
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Clock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link RequestLimiter} that stops dispatching requests once they start failing, so that
+ * requests fail fast rather than waiting on an unavailable table.
+ * <p/>
+ * While the circuit is {@link State#CLOSED closed}, every request is dispatched and its outcome
+ * recorded, without locking, in windows of a fixed duration. Once a window has seen the minimum
+ * number of requests, if the fraction of them that failed reaches the error rate, or the fraction
+ * that took at least the slow request time reaches the slow request rate, the circuit {@link
+ * State#OPEN opens}.
+ * <p/>
+ * While the circuit is open, every request is rejected immediately with a {@link
+ * CircuitOpenException}. After the open time has elapsed, the circuit becomes {@link
+ * State#HALF_OPEN half-open} and admits a limited number of probe requests: if they all succeed
+ * promptly, the circuit closes; if any fails, it opens again. Probes that have not completed
+ * within the open time are considered failed, so a probe that never completes can not hold the
+ * circuit half-open.
+ * <p/>
+ * Requests rejected by a {@link RequestLimiter} beneath this one are not counted as failures, as
+ * they say nothing about the health of the table.
+ */
+public class CircuitBreaker implements RequestLimiter {
+
+    /**
+     * The states of a {@link CircuitBreaker}.
+     */
+    public enum State {
+
+        /** Requests are dispatched and their outcomes recorded. */
+        CLOSED,
+
+        /** Only a limited number of probe requests are dispatched. */
+        HALF_OPEN,
+
+        /** All requests are rejected. */
+        OPEN
+    }
+
+    /**
+     * The result of {@link #admit()} for a request dispatched normally.
+     */
+    private static final int ADMITTED = 0;
+
+    /**
+     * The result of {@link #admit()} for a request that must be rejected.
+     */
+    private static final int REJECTED = -1;
+
+    private final String name;
+    private final double errorRate;
+    private final double slowRate;
+    private final long slowNanos;
+    private final int minRequests;
+    private final long windowNanos;
+    private final long openNanos;
+    private final int probes;
+    private final Clock clock;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicReference<Window> window;
+    private volatile State state = State.CLOSED;
+
+    // guarded by this
+    private long openedAt;
+    private long halfOpenedAt;
+    private int round;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    /**
+     * Creates a new {@link CircuitBreaker}.
+     *
+     * @param name the name of the circuit.
+     * @param errorRate the fraction of failed requests in a window that opens the circuit; or
+     *                  zero to never open the circuit on errors.
+     * @param slowRate the fraction of slow requests in a window that opens the circuit; or zero
+     *                 to never open the circuit on latency.
+     * @param slowTime the time after which a request is slow; or zero to never open the circuit on
+     *                 latency.
+     * @param minRequests the minimum number of requests in a window before the circuit may open.
+     * @param window the duration of each window.
+     * @param openTime the time the circuit stays open before admitting probe requests.
+     * @param probes the number of successful probe requests that close the circuit.
+     * @param clock the {@link Clock} to measure time with.
+     */
+    public CircuitBreaker(final String name,
+                          final double errorRate,
+                          final double slowRate,
+                          final Duration slowTime,
+                          final int minRequests,
+                          final Duration window,
+                          final Duration openTime,
+                          final int probes,
+                          final Clock clock) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("errorRate must be between 0 and 1: " + errorRate);
+        }
+        if (slowRate < 0 || slowRate > 1) {
+            throw new IllegalArgumentException("slowRate must be between 0 and 1: " + slowRate);
+        }
+        this.name = name;
+        this.errorRate = errorRate;
+        this.slowRate = slowRate;
+        this.slowNanos = slowTime.toNanoseconds();
+        this.minRequests = Math.max(1, minRequests);
+        this.windowNanos = window.toNanoseconds();
+        this.openNanos = openTime.toNanoseconds();
+        this.probes = Math.max(1, probes);
+        this.clock = clock;
+        this.window = new AtomicReference<Window>(new Window(clock.tick()));
+    }
+
+    /**
+     * Dispatches the request unless the circuit is open; otherwise, rejects it.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request.
+     *
+     * @throws CircuitOpenException (Deferred) if the circuit is open.
+     */
+    public <T> Deferred<T> submit(final Callback<Deferred<T>, Object> request) {
+        final Deferred<T> result = trySubmit(request);
+        if (result == null) {
+            rejected.incrementAndGet();
+            return Deferred.fromError(new CircuitOpenException(
+                    String.format("Circuit '%s' is %s", name, state)));
+        }
+        return result;
+    }
+
+    /**
+     * Dispatches the request unless the circuit is open.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request; or null if the circuit is open.
+     */
+    public <T> Deferred<T> trySubmit(final Callback<Deferred<T>, Object> request) {
+        final int probe = admit();
+        if (probe == REJECTED) {
+            return null;
+        }
+
+        final long start = clock.tick();
+        final Deferred<T> result;
+        try {
+            result = request.call(null);
+        } catch (final Exception e) {
+            complete(probe, start, e);
+            return Deferred.fromError(e);
+        }
+        return result.addBoth(new Callback<T, T>() {
+            public T call(final T arg) {
+                complete(probe, start, arg);
+                return arg;
+            }
+        });
+    }
+
+    /**
+     * Gets the name of this circuit.
+     *
+     * @return the name of this circuit.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the current {@link State} of this circuit.
+     * <p/>
+     * An open circuit whose open time has elapsed is reported as open until it admits a probe.
+     *
+     * @return the current {@link State} of this circuit.
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Gets the total number of requests rejected by this circuit.
+     *
+     * @return the total number of requests rejected.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the total number of times this circuit has opened.
+     *
+     * @return the total number of times this circuit has opened.
+     */
+    public long getOpened() {
+        return opened.get();
+    }
+
+    /**
+     * Decides whether a request may be dispatched.
+     *
+     * @return {@link #ADMITTED} to dispatch the request normally; the round of probes to
+     *         dispatch it as a probe in; or {@link #REJECTED} to reject it.
+     */
+    private int admit() {
+        if (state == State.CLOSED) {
+            return ADMITTED;
+        }
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return ADMITTED;
+            }
+            final long now = clock.tick();
+            if (state == State.OPEN) {
+                if (now - openedAt < openNanos) {
+                    return REJECTED;
+                }
+                state = State.HALF_OPEN;
+                halfOpenedAt = now;
+                round = round == Integer.MAX_VALUE ? 1 : round + 1;
+                probesInFlight = 0;
+                probeSuccesses = 0;
+            }
+            if (probesInFlight + probeSuccesses >= probes) {
+                if (probesInFlight > 0 && now - halfOpenedAt >= openNanos) {
+                    // the probes have not completed within the open time, so they have failed
+                    open(now);
+                }
+                return REJECTED;
+            }
+            probesInFlight++;
+            return round;
+        }
+    }
+
+    /**
+     * Records the outcome of a request, opening or closing the circuit if necessary.
+     *
+     * @param probe the round of probes the request was dispatched in; or {@link #ADMITTED} if
+     *              it was not a probe.
+     * @param start the time the request was dispatched.
+     * @param result the result of the request.
+     */
+    private void complete(final int probe, final long start, final Object result) {
+        final long now = clock.tick();
+        final boolean failed = result instanceof Exception
+                && !(result instanceof RequestRejectedException);
+        final boolean slow = slowNanos > 0 && now - start >= slowNanos;
+
+        if (probe != ADMITTED) {
+            completeProbe(probe, now, failed || slow);
+            return;
+        }
+        if (state != State.CLOSED) {
+            return;
+        }
+
+        Window current = window.get();
+        if (now - current.start >= windowNanos) {
+            final Window next = new Window(now);
+            current = window.compareAndSet(current, next) ? next : window.get();
+        }
+        final int requests = current.requests.incrementAndGet();
+        final int failures = failed
+                ? current.failures.incrementAndGet()
+                : current.failures.get();
+        final int slowRequests = slow
+                ? current.slow.incrementAndGet()
+                : current.slow.get();
+        if (requests >= minRequests
+                && ((errorRate > 0 && failures >= errorRate * requests)
+                    || (slowRate > 0 && slowNanos > 0 && slowRequests >= slowRate * requests))) {
+            synchronized (this) {
+                if (state == State.CLOSED && window.get() == current) {
+                    open(now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the outcome of a probe, opening or closing the circuit if necessary.
+     *
+     * @param probe the round of probes the probe was dispatched in.
+     * @param now the time the probe completed.
+     * @param failed whether the probe failed or was slow.
+     */
+    private synchronized void completeProbe(final int probe, final long now, final boolean failed) {
+        // probes from an earlier round have already been considered failed
+        if (probe != round || state != State.HALF_OPEN) {
+            return;
+        }
+        probesInFlight--;
+        if (failed) {
+            open(now);
+        } else if (++probeSuccesses >= probes) {
+            state = State.CLOSED;
+            window.set(new Window(now));
+        }
+    }
+
+    /**
+     * Opens the circuit. Must be called while holding the lock on this.
+     */
+    private void open(final long now) {
+        state = State.OPEN;
+        openedAt = now;
+        opened.incrementAndGet();
+    }
+
+    /**
+     * The outcomes of the requests completed in a window.
+     */
+    private static final class Window {
+
+        private final long start;
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger slow = new AtomicInteger();
+
+        Window(final long start) {
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.google.common.base.Charsets;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.Bytes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Selects the {@link CircuitBreaker} for each request, so that the failure of one table does not
+ * cause requests for other tables to fail fast.
+ * <p/>
+ * Each table has its own {@link CircuitBreaker}, or, if circuits are broken by operation, one for
+ * each {@link Operation} on the table. {@link CircuitBreaker}s are created the first time a table
+ * (or operation) is requested, and their state, rejections and openings are registered as gauges
+ * scoped by the name of the circuit.
+ * <p/>
+ * Requests that are not for a specific table are never broken.
+ */
+public class CircuitBreakers {
+
+    /**
+     * A {@link RequestLimiter} that dispatches every request immediately.
+     */
+    private static final RequestLimiter UNBROKEN = new RequestLimiter() {
+        public <T> Deferred<T> submit(final Callback<Deferred<T>, Object> request) {
+            return trySubmit(request);
+        }
+
+        public <T> Deferred<T> trySubmit(final Callback<Deferred<T>, Object> request) {
+            try {
+                return request.call(null);
+            } catch (final Exception e) {
+                return Deferred.fromError(e);
+            }
+        }
+    };
+
+    private final boolean byOperation;
+    private final double errorRate;
+    private final double slowRate;
+    private final Duration slowTime;
+    private final int minRequests;
+    private final Duration window;
+    private final Duration openTime;
+    private final int probes;
+    private final Clock clock;
+    private final MetricsRegistry registry;
+
+    private final ConcurrentMap<byte[], AtomicReferenceArray<CircuitBreaker>> tables =
+            new ConcurrentSkipListMap<byte[], AtomicReferenceArray<CircuitBreaker>>(Bytes.MEMCMP);
+
+    /**
+     * Creates a new {@link CircuitBreakers} that creates {@link CircuitBreaker}s with the given
+     * settings.
+     *
+     * @param byOperation whether to break circuits for each operation on a table separately.
+     * @param errorRate the fraction of failed requests in a window that opens a circuit; or zero
+     *                  to never open a circuit on errors.
+     * @param slowRate the fraction of slow requests in a window that opens a circuit.
+     * @param slowTime the time after which a request is slow; or zero to never open a circuit on
+     *                 latency.
+     * @param minRequests the minimum number of requests in a window before a circuit may open.
+     * @param window the duration of each window.
+     * @param openTime the time a circuit stays open before admitting probe requests.
+     * @param probes the number of successful probe requests that close a circuit.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     */
+    public CircuitBreakers(final boolean byOperation,
+                           final double errorRate,
+                           final double slowRate,
+                           final Duration slowTime,
+                           final int minRequests,
+                           final Duration window,
+                           final Duration openTime,
+                           final int probes,
+                           final MetricsRegistry registry) {
+        this(byOperation, errorRate, slowRate, slowTime, minRequests, window, openTime, probes,
+             Clock.defaultClock(), registry);
+    }
+
+    /**
+     * Creates a new {@link CircuitBreakers} that creates {@link CircuitBreaker}s with the given
+     * settings, measuring time with the given {@link Clock}.
+     *
+     * @param byOperation whether to break circuits for each operation on a table separately.
+     * @param errorRate the fraction of failed requests in a window that opens a circuit; or zero
+     *                  to never open a circuit on errors.
+     * @param slowRate the fraction of slow requests in a window that opens a circuit.
+     * @param slowTime the time after which a request is slow; or zero to never open a circuit on
+     *                 latency.
+     * @param minRequests the minimum number of requests in a window before a circuit may open.
+     * @param window the duration of each window.
+     * @param openTime the time a circuit stays open before admitting probe requests.
+     * @param probes the number of successful probe requests that close a circuit.
+     * @param clock the {@link Clock} to measure time with.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     */
+    public CircuitBreakers(final boolean byOperation,
+                           final double errorRate,
+                           final double slowRate,
+                           final Duration slowTime,
+                           final int minRequests,
+                           final Duration window,
+                           final Duration openTime,
+                           final int probes,
+                           final Clock clock,
+                           final MetricsRegistry registry) {
+        this.byOperation = byOperation;
+        this.errorRate = errorRate;
+        this.slowRate = slowRate;
+        this.slowTime = slowTime;
+        this.minRequests = minRequests;
+        this.window = window;
+        this.openTime = openTime;
+        this.probes = probes;
+        this.clock = clock;
+        this.registry = registry;
+    }
+
+    /**
+     * Gets the {@link RequestLimiter} that admits requests for the given {@link Operation} on the
+     * given table.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the table the request is for; or null if it is not for a specific table.
+     *
+     * @return the {@link CircuitBreaker} for the request; or a {@link RequestLimiter} that admits
+     *         every request if it is not for a specific table.
+     */
+    public RequestLimiter forRequest(final Operation operation, final byte[] table) {
+        if (table == null) {
+            return UNBROKEN;
+        }
+
+        AtomicReferenceArray<CircuitBreaker> breakers = tables.get(table);
+        if (breakers == null) {
+            final AtomicReferenceArray<CircuitBreaker> created =
+                    new AtomicReferenceArray<CircuitBreaker>(
+                            byOperation ? Operation.values().length : 1);
+            breakers = tables.putIfAbsent(table, created);
+            if (breakers == null) {
+                breakers = created;
+            }
+        }
+
+        final int index = byOperation ? operation.ordinal() : 0;
+        final CircuitBreaker breaker = breakers.get(index);
+        if (breaker != null) {
+            return breaker;
+        }
+
+        final String name = byOperation
+                ? new String(table, Charsets.UTF_8) + "-" + operation.getName()
+                : new String(table, Charsets.UTF_8);
+        final CircuitBreaker created = new CircuitBreaker(
+                name, errorRate, slowRate, slowTime, minRequests, window, openTime, probes, clock);
+        if (!breakers.compareAndSet(index, null, created)) {
+            return breakers.get(index);
+        }
+        register(created);
+        return created;
+    }
+
+    /**
+     * Gets the {@link RequestLimiter} that admits requests for the given {@link Operation} on the
+     * given table.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the name of the table the request is for; or null if it is not for a specific
+     *              table.
+     *
+     * @return the {@link CircuitBreaker} for the request; or a {@link RequestLimiter} that admits
+     *         every request if it is not for a specific table.
+     */
+    public RequestLimiter forRequest(final Operation operation, final String table) {
+        return forRequest(operation, table == null ? null : table.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Gets all the {@link CircuitBreaker}s created so far.
+     *
+     * @return the {@link CircuitBreaker}s for every table (and operation) requested so far.
+     */
+    public List<CircuitBreaker> getCircuitBreakers() {
+        final List<CircuitBreaker> all = new ArrayList<CircuitBreaker>();
+        for (final AtomicReferenceArray<CircuitBreaker> breakers : tables.values()) {
+            for (int i = 0; i < breakers.length(); i++) {
+                final CircuitBreaker breaker = breakers.get(i);
+                if (breaker != null) {
+                    all.add(breaker);
+                }
+            }
+        }
+        return all;
+    }
+
+    private void register(final CircuitBreaker breaker) {
+        if (registry == null) {
+            return;
+        }
+        final String scope = "circuit-" + breaker.getName();
+        registry.newGauge(CircuitBreaker.class, "state", scope, new Gauge<Integer>() {
+            @Override public Integer value() {
+                return breaker.getState().ordinal();
+            }
+        });
+        registry.newGauge(CircuitBreaker.class, "rejected", scope, new Gauge<Long>() {
+            @Override public Long value() {
+                return breaker.getRejected();
+            }
+        });
+        registry.newGauge(CircuitBreaker.class, "opened", scope, new Gauge<Long>() {
+            @Override public Long value() {
+                return breaker.getOpened();
+            }
+        });
+    }
+}
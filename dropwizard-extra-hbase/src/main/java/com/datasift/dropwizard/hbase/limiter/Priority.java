@@ -0,0 +1,27 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+/**
+ * The priorities of requests waiting for a permit from a {@link SchedulingRequestLimiter}.
+ * <p/>
+ * Priorities are strict: a waiting request is only granted a permit when no request of a higher
+ * priority is waiting.
+ *
+ * @see RequestClass
+ */
+public enum Priority {
+
+    /**
+     * Requests on which a user is waiting, e.g. those serving an API.
+     */
+    INTERACTIVE,
+
+    /**
+     * Requests of no particular priority.
+     */
+    NORMAL,
+
+    /**
+     * Requests that may wait for all others, e.g. those of backfills and batch jobs.
+     */
+    BATCH
+}
@@ -0,0 +1,270 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link RequestLimiter} that never blocks the calling thread.
+ * <p/>
+ * When no permit is available, requests are placed on a bounded wait queue and dispatched, in
+ * order, as permits are released by completing requests. The {@link Deferred} returned for a
+ * queued request fires once the request has been dispatched and has completed.
+ * <p/>
+ * A request is rejected with a {@link RequestRejectedException} if the wait queue is full when it
+ * is submitted, or if it waits on the queue for longer than the configured maximum queue time.
+ * <p/>
+ * Since permits are handed directly from completing requests to queued requests, the {@link
+ * Semaphore} used by this {@link RequestLimiter} must not be shared with any other {@link
+ * RequestLimiter}; share the {@link QueuingRequestLimiter} itself instead.
+ * <p/>
+ * A queued request granted a permit while another granted request is being dispatched on the
+ * same thread, e.g. because that request completed immediately, is dispatched once the other
+ * has been, rather than on top of it, so that a long queue of immediately completing requests can
+ * not overflow the stack.
+ */
+public class QueuingRequestLimiter implements RequestLimiter {
+
+    private final Semaphore semaphore;
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final int maxQueuedRequests;
+    private final Duration maxQueueTime;
+    private final Timer timer;
+    private final ThreadLocal<Queue<Deferred<Object>>> granting =
+            new ThreadLocal<Queue<Deferred<Object>>>();
+
+    /**
+     * Creates a new {@link QueuingRequestLimiter} that admits at most {@code maxRequests}
+     * concurrent requests.
+     *
+     * @param maxRequests the maximum number of concurrent requests.
+     * @param maxQueuedRequests the maximum number of requests that may wait for a permit.
+     * @param maxQueueTime the maximum time a request may wait for a permit; zero to wait
+     *                     indefinitely.
+     * @param timer the {@link Timer} used to expire requests that have waited for too long.
+     */
+    public QueuingRequestLimiter(final int maxRequests,
+                                 final int maxQueuedRequests,
+                                 final Duration maxQueueTime,
+                                 final Timer timer) {
+        this.semaphore = new Semaphore(maxRequests);
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.maxQueueTime = maxQueueTime;
+        this.timer = timer;
+    }
+
+    /**
+     * Dispatches the request immediately if a permit is available; otherwise, queues it until one
+     * is.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request.
+     *
+     * @throws RequestRejectedException (Deferred) if the wait queue is full, or the request waited
+     *                                  for longer than the maximum queue time.
+     */
+    public <T> Deferred<T> submit(final Callback<Deferred<T>, Object> request) {
+        if (semaphore.tryAcquire()) {
+            return dispatch(request);
+        }
+
+        if (queued.incrementAndGet() > maxQueuedRequests) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return Deferred.fromError(new RequestRejectedException(String.format(
+                    "Request queue is full (%d requests waiting)", maxQueuedRequests)));
+        }
+
+        final Waiter waiter = new Waiter();
+        waiters.add(waiter);
+        if (timer != null && maxQueueTime.getQuantity() > 0) {
+            waiter.expiry = timer.newTimeout(
+                    waiter, maxQueueTime.getQuantity(), maxQueueTime.getUnit());
+        }
+
+        // a permit may have been released while we were queuing
+        drain();
+
+        return waiter.permit.addCallbackDeferring(new Callback<Deferred<T>, Object>() {
+            public Deferred<T> call(final Object arg) {
+                return dispatch(request);
+            }
+        });
+    }
+
+    /**
+     * Dispatches the request if a permit is immediately available, without queuing it.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request; or null if no permit was available.
+     */
+    public <T> Deferred<T> trySubmit(final Callback<Deferred<T>, Object> request) {
+        return semaphore.tryAcquire() ? dispatch(request) : null;
+    }
+
+    /**
+     * Gets the number of requests waiting for a permit.
+     *
+     * @return the number of requests waiting for a permit.
+     */
+    public int getQueuedRequests() {
+        return queued.get();
+    }
+
+    /**
+     * Gets the total number of requests rejected by this {@link RequestLimiter}.
+     *
+     * @return the total number of requests rejected.
+     */
+    public long getRejectedRequests() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the number of permits currently available.
+     *
+     * @return the number of permits currently available.
+     */
+    public int getAvailablePermits() {
+        return semaphore.availablePermits();
+    }
+
+    /**
+     * Dispatches a request that holds a permit, releasing the permit when it completes.
+     */
+    private <T> Deferred<T> dispatch(final Callback<Deferred<T>, Object> request) {
+        final Deferred<T> result;
+        try {
+            result = request.call(null);
+        } catch (final Exception e) {
+            release();
+            return Deferred.fromError(e);
+        }
+        return result.addBoth(new Callback<T, T>() {
+            public T call(final T arg) {
+                release();
+                return arg;
+            }
+        });
+    }
+
+    /**
+     * Hands a permit to the next waiting request or, if there is none, returns it to the pool.
+     */
+    private void release() {
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            if (waiter.grant()) {
+                return;
+            }
+        }
+        semaphore.release();
+
+        // a request may have been queued while we were releasing
+        drain();
+    }
+
+    /**
+     * Grants available permits to waiting requests.
+     */
+    private void drain() {
+        while (!waiters.isEmpty() && semaphore.tryAcquire()) {
+            Waiter waiter;
+            boolean granted = false;
+            while (!granted && (waiter = waiters.poll()) != null) {
+                granted = waiter.grant();
+            }
+            if (!granted) {
+                semaphore.release();
+            }
+        }
+    }
+
+    /**
+     * Dispatches a queued request that has been granted a permit.
+     * <p/>
+     * If the current thread is already dispatching a granted request, the request is dispatched
+     * by that thread once the earlier request has been, so that each grant is made from the same
+     * stack frame.
+     *
+     * @param permit the permit of the granted request.
+     */
+    private void dispatchGranted(final Deferred<Object> permit) {
+        final Queue<Deferred<Object>> pending = granting.get();
+        if (pending != null) {
+            pending.add(permit);
+            return;
+        }
+
+        final Queue<Deferred<Object>> grants = new ArrayDeque<Deferred<Object>>();
+        granting.set(grants);
+        try {
+            Deferred<Object> next = permit;
+            do {
+                next.callback(null);
+            } while ((next = grants.poll()) != null);
+        } finally {
+            granting.remove();
+        }
+    }
+
+    /**
+     * A request waiting on the queue for a permit.
+     */
+    private class Waiter implements TimerTask {
+
+        private final Deferred<Object> permit = new Deferred<Object>();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile Timeout expiry;
+
+        /**
+         * Hands a permit to this request, dispatching it.
+         *
+         * @return true if the permit was taken; false if this request has already expired.
+         */
+        boolean grant() {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            queued.decrementAndGet();
+            final Timeout expiry = this.expiry;
+            if (expiry != null) {
+                expiry.cancel();
+            }
+            dispatchGranted(permit);
+            return true;
+        }
+
+        /**
+         * Expires this request after waiting for the maximum queue time.
+         */
+        public void run(final Timeout timeout) {
+            if (done.compareAndSet(false, true)) {
+                waiters.remove(this);
+                queued.decrementAndGet();
+                rejected.incrementAndGet();
+                permit.callback(new RequestRejectedException(String.format(
+                        "Timed out waiting for a permit after %s", maxQueueTime)));
+            }
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.google.common.base.Charsets;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limits the rate of requests for each table and {@link Operation}, and the rate of bytes put to
+ * each table, with a {@link TokenBucket} for each.
+ * <p/>
+ * A request takes a token from the bucket for its table and the bucket for its {@link
+ * Operation}, if either has a limit; and a put also takes a token for each byte of its estimated
+ * size from the bucket for the bytes put to its table. If any bucket is in debt, the request is
+ * delayed until every bucket it took from will have repaid its debt. A request that would be
+ * delayed for longer than the maximum delay takes no tokens, and is rejected with a {@link
+ * RequestRejectedException}, bounding the debt of each bucket.
+ * <p/>
+ * Delayed requests are either scheduled by the {@link Timer} of the client and dispatched by the
+ * given {@link Executor}, in the {@link RequestClass} of the caller, without blocking the calling
+ * thread; or, in blocking mode, the calling thread sleeps until the request may be dispatched,
+ * pushing back on the caller. Since the {@link Timer} must never block, requests made on its
+ * thread, such as hedges, are delayed without blocking even in blocking mode.
+ * <p/>
+ * The limit for each table and {@link Operation} may be changed at runtime.
+ *
+ * @see com.datasift.dropwizard.hbase.RateLimitedHBaseClient
+ */
+public class RateLimits {
+
+    private final ConcurrentMap<String, TokenBucket> tables =
+            new ConcurrentHashMap<String, TokenBucket>();
+    private final ConcurrentMap<Operation, TokenBucket> operations =
+            new ConcurrentHashMap<Operation, TokenBucket>();
+    private final ConcurrentMap<String, TokenBucket> putBytes =
+            new ConcurrentHashMap<String, TokenBucket>();
+
+    private final long burst;
+    private final Duration maxDelay;
+    private final boolean blocking;
+    private final Timer timer;
+    private final Executor executor;
+    private final Clock clock;
+    private final Meter throttled;
+    private final Meter rejected;
+
+    private volatile Thread timerThread = null;
+
+    /**
+     * Creates a new {@link RateLimits} with no limits.
+     *
+     * @param burst the time over which unused tokens may accrue in each bucket.
+     * @param maxDelay the maximum time a request may be delayed before it is rejected.
+     * @param blocking whether to block the calling thread until a delayed request may be
+     *                 dispatched, rather than dispatching it with the {@link Executor}.
+     * @param timer the {@link Timer} to schedule delayed requests with.
+     * @param executor the {@link Executor} to dispatch delayed requests with.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     * @param clock the {@link Clock} to accrue tokens by.
+     */
+    public RateLimits(final Duration burst,
+                      final Duration maxDelay,
+                      final boolean blocking,
+                      final Timer timer,
+                      final Executor executor,
+                      final MetricsRegistry registry,
+                      final Clock clock) {
+        this.burst = burst.toNanoseconds();
+        this.maxDelay = maxDelay;
+        this.blocking = blocking;
+        this.timer = timer;
+        this.executor = executor;
+        this.clock = clock;
+        this.throttled = registry == null
+                ? null
+                : registry.newMeter(getClass(), "throttled", "requests", TimeUnit.SECONDS);
+        this.rejected = registry == null
+                ? null
+                : registry.newMeter(getClass(), "rejected", "requests", TimeUnit.SECONDS);
+
+        if (blocking) {
+            // the thread of the Timer is only known from a task it runs
+            try {
+                timer.newTimeout(new TimerTask() {
+                    public void run(final Timeout timeout) {
+                        timerThread = Thread.currentThread();
+                    }
+                }, 0, TimeUnit.NANOSECONDS);
+            } catch (final IllegalStateException e) {
+                // the timer has been stopped, so nothing will run on it
+            }
+        }
+    }
+
+    /**
+     * Sets the maximum rate of requests for a table.
+     *
+     * @param table the name of the table.
+     * @param rate the maximum requests per second; zero for no limit.
+     */
+    public void setRequestRate(final String table, final double rate) {
+        bucket(tables, table, rate).setRate(rate);
+    }
+
+    /**
+     * Sets the maximum rate of requests for an {@link Operation}.
+     *
+     * @param operation the {@link Operation}.
+     * @param rate the maximum requests per second; zero for no limit.
+     */
+    public void setRequestRate(final Operation operation, final double rate) {
+        bucket(operations, operation, rate).setRate(rate);
+    }
+
+    /**
+     * Sets the maximum rate of bytes put to a table.
+     *
+     * @param table the name of the table.
+     * @param rate the maximum size of puts per second; zero for no limit.
+     */
+    public void setPutRate(final String table, final Size rate) {
+        bucket(putBytes, table, rate.toBytes()).setRate(rate.toBytes());
+    }
+
+    /**
+     * Gets the maximum rate of requests for a table.
+     *
+     * @param table the name of the table.
+     *
+     * @return the maximum requests per second; or zero if there is no limit.
+     */
+    public double getRequestRate(final String table) {
+        return rate(tables.get(table));
+    }
+
+    /**
+     * Gets the maximum rate of requests for an {@link Operation}.
+     *
+     * @param operation the {@link Operation}.
+     *
+     * @return the maximum requests per second; or zero if there is no limit.
+     */
+    public double getRequestRate(final Operation operation) {
+        return rate(operations.get(operation));
+    }
+
+    /**
+     * Gets the maximum rate of bytes put to a table.
+     *
+     * @param table the name of the table.
+     *
+     * @return the maximum size of puts per second; or zero if there is no limit.
+     */
+    public Size getPutRate(final String table) {
+        return Size.bytes((long) rate(putBytes.get(table)));
+    }
+
+    /**
+     * Gets the {@link Meter} of requests delayed by a limit.
+     *
+     * @return the {@link Meter} of delayed requests; or null if no metrics are registered.
+     */
+    public Meter getThrottled() {
+        return throttled;
+    }
+
+    /**
+     * Gets the {@link Meter} of requests rejected for exceeding the maximum delay.
+     *
+     * @return the {@link Meter} of rejected requests; or null if no metrics are registered.
+     */
+    public Meter getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Reserves the tokens for a request, and gets how long it must wait before it is dispatched.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the table of the request.
+     * @param bytes the number of bytes put by the request; zero if it is not a put.
+     *
+     * @return the time to wait before dispatching the request, in nanoseconds; or {@link
+     *         TokenBucket#REJECTED} if it would wait for longer than the maximum delay, in which
+     *         case no tokens were reserved.
+     */
+    public long reserve(final Operation operation, final byte[] table, final long bytes) {
+        final TokenBucket[] buckets = buckets(operation, table, bytes);
+        final long[] counts = { 1, 1, bytes };
+        final long maxWait = maxDelay.toNanoseconds();
+        long wait = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            final long reserved = buckets[i] == null ? 0 : buckets[i].reserve(counts[i], maxWait);
+            if (reserved == TokenBucket.REJECTED) {
+                for (int j = 0; j < i; j++) {
+                    refund(buckets[j], counts[j]);
+                }
+                return TokenBucket.REJECTED;
+            }
+            wait = Math.max(wait, reserved);
+        }
+        return wait;
+    }
+
+    /**
+     * Reserves the tokens for each request of a bulk request, and gets how long the whole batch
+     * must wait before it is dispatched.
+     *
+     * @param operation the {@link Operation} of the requests.
+     * @param tables the table of each request.
+     * @param bytes the number of bytes put by each request; zero for each that is not a put.
+     *
+     * @return the time to wait before dispatching the batch, in nanoseconds; or {@link
+     *         TokenBucket#REJECTED} if any request would wait for longer than the maximum delay,
+     *         in which case no tokens were reserved.
+     */
+    public long reserve(final Operation operation, final byte[][] tables, final long[] bytes) {
+        long wait = 0;
+        for (int i = 0; i < tables.length; i++) {
+            final long reserved = reserve(operation, tables[i], bytes[i]);
+            if (reserved == TokenBucket.REJECTED) {
+                for (int j = 0; j < i; j++) {
+                    refund(operation, tables[j], bytes[j]);
+                }
+                return TokenBucket.REJECTED;
+            }
+            wait = Math.max(wait, reserved);
+        }
+        return wait;
+    }
+
+    /**
+     * Returns the tokens reserved for a request that will not be dispatched.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the table of the request.
+     * @param bytes the number of bytes put by the request; zero if it is not a put.
+     */
+    public void refund(final Operation operation, final byte[] table, final long bytes) {
+        final TokenBucket[] buckets = buckets(operation, table, bytes);
+        refund(buckets[0], 1);
+        refund(buckets[1], 1);
+        refund(buckets[2], bytes);
+    }
+
+    /**
+     * Dispatches a request once the limits for it allow.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the table of the request.
+     * @param bytes the number of bytes put by the request; zero if it is not a put.
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request.
+     */
+    public <T> Deferred<T> submit(final Operation operation,
+                                  final byte[] table,
+                                  final long bytes,
+                                  final Callback<Deferred<T>, Object> request) {
+        return submit(reserve(operation, table, bytes), request);
+    }
+
+    /**
+     * Dispatches a request after the given delay.
+     *
+     * @param wait the time to wait before dispatching the request, in nanoseconds; or {@link
+     *             TokenBucket#REJECTED} to reject the request.
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request.
+     *
+     * @throws RequestRejectedException (Deferred) if the request would have been delayed for
+     *                                  longer than the maximum delay.
+     */
+    public <T> Deferred<T> submit(final long wait, final Callback<Deferred<T>, Object> request) {
+        if (wait == TokenBucket.REJECTED) {
+            if (rejected != null) {
+                rejected.mark();
+            }
+            return Deferred.fromError(new RequestRejectedException(String.format(
+                    "Rate limit would delay request for longer than %s", maxDelay)));
+        }
+        if (wait <= 0) {
+            return dispatch(request);
+        }
+
+        if (throttled != null) {
+            throttled.mark();
+        }
+        if (blocking && Thread.currentThread() != timerThread) {
+            final long deadline = clock.tick() + wait;
+            long remaining = wait;
+            while (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+                remaining = deadline - clock.tick();
+            }
+            return dispatch(request);
+        }
+
+        final Deferred<T> result = new Deferred<T>();
+        final RequestClass requestClass = RequestContext.current();
+        final Runnable delayed = new Runnable() {
+            public void run() {
+                final RequestClass previous = RequestContext.enter(requestClass);
+                try {
+                    dispatch(request).chain(result);
+                } finally {
+                    RequestContext.restore(previous);
+                }
+            }
+        };
+        try {
+            timer.newTimeout(new TimerTask() {
+                public void run(final Timeout timeout) {
+                    try {
+                        executor.execute(delayed);
+                    } catch (final RejectedExecutionException e) {
+                        // the executor has been shut down, so the client is shutting down
+                        result.callback(e);
+                    }
+                }
+            }, wait, TimeUnit.NANOSECONDS);
+        } catch (final IllegalStateException e) {
+            // the timer has been stopped, so the client is shutting down
+            return dispatch(request);
+        }
+        return result;
+    }
+
+    private <T> Deferred<T> dispatch(final Callback<Deferred<T>, Object> request) {
+        try {
+            return request.call(null);
+        } catch (final Exception e) {
+            return Deferred.fromError(e);
+        }
+    }
+
+    /**
+     * Gets the buckets a request takes from: those for its {@link Operation}, its table, and the
+     * bytes put to its table; each of which is null if it has no limit.
+     */
+    private TokenBucket[] buckets(final Operation operation, final byte[] table, final long bytes) {
+        final TokenBucket[] buckets = new TokenBucket[3];
+        buckets[0] = operations.get(operation);
+        if (!tables.isEmpty() || (bytes > 0 && !putBytes.isEmpty())) {
+            final String name = new String(table, Charsets.UTF_8);
+            buckets[1] = tables.get(name);
+            buckets[2] = bytes > 0 ? putBytes.get(name) : null;
+        }
+        return buckets;
+    }
+
+    private static void refund(final TokenBucket bucket, final long count) {
+        if (bucket != null && count > 0) {
+            bucket.refund(count);
+        }
+    }
+
+    private static double rate(final TokenBucket bucket) {
+        return bucket == null ? 0 : bucket.getRate();
+    }
+
+    private <K> TokenBucket bucket(final ConcurrentMap<K, TokenBucket> buckets,
+                                   final K key,
+                                   final double rate) {
+        final TokenBucket existing = buckets.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        final TokenBucket created = new TokenBucket(rate, burst, clock);
+        final TokenBucket raced = buckets.putIfAbsent(key, created);
+        return raced == null ? created : raced;
+    }
+}
@@ -0,0 +1,77 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+/**
+ * The class of a request, by which a {@link SchedulingRequestLimiter} schedules it: its {@link
+ * Priority} and the tenant on whose behalf it is made.
+ *
+ * @see RequestContext
+ */
+public final class RequestClass {
+
+    /**
+     * The tenant of requests not made on behalf of any particular tenant.
+     */
+    public static final String DEFAULT_TENANT = "default";
+
+    /**
+     * The class of requests made outside of any {@link RequestContext}.
+     */
+    public static final RequestClass DEFAULT = new RequestClass(Priority.NORMAL, DEFAULT_TENANT);
+
+    private final Priority priority;
+    private final String tenant;
+
+    /**
+     * Creates a new {@link RequestClass}.
+     *
+     * @param priority the {@link Priority} of the requests.
+     * @param tenant the tenant on whose behalf the requests are made.
+     */
+    public RequestClass(final Priority priority, final String tenant) {
+        if (priority == null || tenant == null) {
+            throw new IllegalArgumentException("A request class requires a priority and tenant");
+        }
+        this.priority = priority;
+        this.tenant = tenant;
+    }
+
+    /**
+     * Gets the {@link Priority} of requests of this class.
+     *
+     * @return the {@link Priority} of requests of this class.
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Gets the tenant on whose behalf requests of this class are made.
+     *
+     * @return the tenant of requests of this class.
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RequestClass)) {
+            return false;
+        }
+        final RequestClass that = (RequestClass) o;
+        return priority == that.priority && tenant.equals(that.tenant);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * priority.hashCode() + tenant.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return priority.name().toLowerCase() + "." + tenant;
+    }
+}
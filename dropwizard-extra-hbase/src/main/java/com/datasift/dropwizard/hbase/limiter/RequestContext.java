@@ -0,0 +1,70 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+/**
+ * The {@link RequestClass} of the requests made by the current thread.
+ * <p/>
+ * Requests are classified when they are submitted to a {@link SchedulingRequestLimiter}, which
+ * is usually on the thread that made them:
+ * <pre>
+ * final RequestClass previous = RequestContext.enter(
+ *         new RequestClass(Priority.BATCH, "backfill"));
+ * try {
+ *     client.put(request);
+ * } finally {
+ *     RequestContext.restore(previous);
+ * }
+ * </pre>
+ * Decorators that dispatch requests on other threads capture the {@link RequestClass} when the
+ * request is made, and {@link #enter(RequestClass) enter} it when dispatching: retries and
+ * hedges are of the class of the original request, rate limited requests of the class of the
+ * caller, and increments and puts buffered by the client and flushed in the background of the
+ * class of the last request buffered for their cell or row.
+ */
+public class RequestContext {
+
+    private static final ThreadLocal<RequestClass> CURRENT = new ThreadLocal<RequestClass>();
+
+    private RequestContext() {
+        // utility class
+    }
+
+    /**
+     * Gets the {@link RequestClass} of requests made by the current thread.
+     *
+     * @return the {@link RequestClass} of the current thread; or the {@link RequestClass#DEFAULT
+     *         default} class, if none has been entered.
+     */
+    public static RequestClass current() {
+        final RequestClass requestClass = CURRENT.get();
+        return requestClass == null ? RequestClass.DEFAULT : requestClass;
+    }
+
+    /**
+     * Classifies all subsequent requests made by the current thread.
+     *
+     * @param requestClass the {@link RequestClass} of subsequent requests.
+     *
+     * @return the {@link RequestClass} previously entered by the current thread, to be {@link
+     *         #restore(RequestClass) restored} afterwards; or null if there was none.
+     */
+    public static RequestClass enter(final RequestClass requestClass) {
+        final RequestClass previous = CURRENT.get();
+        CURRENT.set(requestClass);
+        return previous;
+    }
+
+    /**
+     * Restores the {@link RequestClass} of the current thread to that returned by {@link
+     * #enter(RequestClass)}.
+     *
+     * @param previous the {@link RequestClass} to restore; or null to clear the {@link
+     *                 RequestClass} of the current thread.
+     */
+    public static void restore(final RequestClass previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+
+/**
+ * Admission control for asynchronous requests.
+ * <p/>
+ * A {@link RequestLimiter} decides when a request may be dispatched and tracks it until its {@link
+ * Deferred} result completes.
+ *
+ * @see com.datasift.dropwizard.hbase.BoundedHBaseClient
+ * @see com.datasift.dropwizard.hbase.scanner.BoundedRowScanner
+ */
+public interface RequestLimiter {
+
+    /**
+     * Dispatches a request once it has been admitted by this {@link RequestLimiter}.
+     * <p/>
+     * The given {@link Callback} is called, with a {@code null} argument, to dispatch the request;
+     * the request is tracked until the {@link Deferred} it returns completes.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request.
+     *
+     * @throws com.datasift.dropwizard.hbase.RequestRejectedException (Deferred) if the request
+     *         could not be admitted.
+     */
+    public <T> Deferred<T> submit(Callback<Deferred<T>, Object> request);
+
+    /**
+     * Dispatches a request only if it can be admitted by this {@link RequestLimiter} immediately.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request; or null if the request could not be admitted without
+     *         waiting, in which case it has not been dispatched.
+     */
+    public <T> Deferred<T> trySubmit(Callback<Deferred<T>, Object> request);
+}
@@ -0,0 +1,522 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link RequestLimiter} that schedules waiting requests by their {@link RequestClass}, rather
+ * than in the order they were submitted.
+ * <p/>
+ * Like the {@link QueuingRequestLimiter}, this never blocks the calling thread: when no permit is
+ * available, requests wait on a bounded queue, and are rejected with a {@link
+ * RequestRejectedException} if the queue is full or they wait for longer than the maximum queue
+ * time.
+ * <p/>
+ * As permits are released, they are granted to waiting requests by strict {@link Priority}; so a
+ * backfill of {@link Priority#BATCH batch} requests can not delay {@link Priority#INTERACTIVE
+ * interactive} requests for longer than it takes for a permit to be released. Between the tenants
+ * of the same priority, permits are shared in proportion to the weight of each tenant, by stride
+ * scheduling: each tenant advances by the inverse of its weight for each permit it is granted,
+ * and the waiting tenant that has advanced the least is granted the next permit. A tenant that
+ * has been idle may not claim permits for the time it was idle, and is forgotten once it has
+ * no advantage to remember.
+ * <p/>
+ * The class of each request is taken from the {@link RequestContext} of the submitting thread,
+ * or may be given explicitly. The time each class of requests waits for a permit is timed
+ * separately, and requests rejected are counted by class.
+ */
+public class SchedulingRequestLimiter implements RequestLimiter {
+
+    /**
+     * The weight of tenants for which no weight is given.
+     */
+    public static final int DEFAULT_WEIGHT = 1;
+
+    private final Object lock = new Object();
+    private final Level[] levels = new Level[Priority.values().length];
+    private final Map<String, Integer> weights;
+    private final int maxQueuedRequests;
+    private final Duration maxQueueTime;
+    private final Timer timer;
+    private final MetricsRegistry registry;
+    private final Clock clock;
+
+    private final ConcurrentMap<RequestClass, com.yammer.metrics.core.Timer> waits =
+            new ConcurrentHashMap<RequestClass, com.yammer.metrics.core.Timer>();
+    private final ConcurrentMap<RequestClass, Counter> rejections =
+            new ConcurrentHashMap<RequestClass, Counter>();
+    private final AtomicLong rejected = new AtomicLong();
+
+    // guarded by lock
+    private int available;
+    private int queued = 0;
+
+    /**
+     * Creates a new {@link SchedulingRequestLimiter} that admits at most {@code maxRequests}
+     * concurrent requests.
+     * <p/>
+     * The {@link Metrics#defaultRegistry() default} {@link MetricsRegistry} will be used to
+     * register the {@link com.yammer.metrics.core.Metric}s.
+     *
+     * @param maxRequests the maximum number of concurrent requests.
+     * @param maxQueuedRequests the maximum number of requests that may wait for a permit.
+     * @param maxQueueTime the maximum time a request may wait for a permit; zero to wait
+     *                     indefinitely.
+     * @param weights the weight of each tenant; tenants not given have the {@link
+     *                #DEFAULT_WEIGHT default weight}.
+     * @param timer the {@link Timer} used to expire requests that have waited for too long.
+     */
+    public SchedulingRequestLimiter(final int maxRequests,
+                                    final int maxQueuedRequests,
+                                    final Duration maxQueueTime,
+                                    final Map<String, Integer> weights,
+                                    final Timer timer) {
+        this(maxRequests, maxQueuedRequests, maxQueueTime, weights, timer,
+             Metrics.defaultRegistry(), Clock.defaultClock());
+    }
+
+    /**
+     * Creates a new {@link SchedulingRequestLimiter} that admits at most {@code maxRequests}
+     * concurrent requests, registering metrics for each class of request with the given {@link
+     * MetricsRegistry}.
+     *
+     * @param maxRequests the maximum number of concurrent requests.
+     * @param maxQueuedRequests the maximum number of requests that may wait for a permit.
+     * @param maxQueueTime the maximum time a request may wait for a permit; zero to wait
+     *                     indefinitely.
+     * @param weights the weight of each tenant; tenants not given have the {@link
+     *                #DEFAULT_WEIGHT default weight}.
+     * @param timer the {@link Timer} used to expire requests that have waited for too long.
+     * @param registry the {@link MetricsRegistry} to register metrics with; or null to register no
+     *                 metrics.
+     * @param clock the {@link Clock} to time waiting requests with.
+     */
+    public SchedulingRequestLimiter(final int maxRequests,
+                                    final int maxQueuedRequests,
+                                    final Duration maxQueueTime,
+                                    final Map<String, Integer> weights,
+                                    final Timer timer,
+                                    final MetricsRegistry registry,
+                                    final Clock clock) {
+        for (final Map.Entry<String, Integer> entry : weights.entrySet()) {
+            if (entry.getValue() <= 0) {
+                throw new IllegalArgumentException(
+                        "weight of tenant " + entry.getKey() + " must be positive");
+            }
+        }
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new Level();
+        }
+        this.available = maxRequests;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.maxQueueTime = maxQueueTime;
+        this.weights = Collections.unmodifiableMap(new HashMap<String, Integer>(weights));
+        this.timer = timer;
+        this.registry = registry;
+        this.clock = clock;
+
+        if (registry == null) {
+            return;
+        }
+        registry.newGauge(getClass(), "queued", "limiter", new Gauge<Integer>() {
+            @Override public Integer value() {
+                return getQueuedRequests();
+            }
+        });
+    }
+
+    /**
+     * Dispatches the request immediately if a permit is available; otherwise, queues it until it
+     * is scheduled a permit, by the {@link RequestClass} of the {@link RequestContext} of the
+     * calling thread.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request.
+     *
+     * @throws RequestRejectedException (Deferred) if the wait queue is full, or the request waited
+     *                                  for longer than the maximum queue time.
+     */
+    public <T> Deferred<T> submit(final Callback<Deferred<T>, Object> request) {
+        return submit(RequestContext.current(), request);
+    }
+
+    /**
+     * Dispatches the request immediately if a permit is available; otherwise, queues it until it
+     * is scheduled a permit, by the given {@link RequestClass}.
+     *
+     * @param requestClass the {@link RequestClass} of the request.
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request.
+     *
+     * @throws RequestRejectedException (Deferred) if the wait queue is full, or the request waited
+     *                                  for longer than the maximum queue time.
+     */
+    public <T> Deferred<T> submit(final RequestClass requestClass,
+                                  final Callback<Deferred<T>, Object> request) {
+        final boolean admitted;
+        Waiter waiter = null;
+        synchronized (lock) {
+            admitted = available > 0;
+            if (admitted) {
+                available--;
+            } else if (queued < maxQueuedRequests) {
+                waiter = new Waiter(requestClass, clock.tick());
+                enqueue(waiter);
+            }
+        }
+
+        if (admitted) {
+            recordWait(requestClass, 0);
+            return dispatch(request);
+        } else if (waiter == null) {
+            reject(requestClass);
+            return Deferred.fromError(new RequestRejectedException(String.format(
+                    "Request queue is full (%d requests waiting)", maxQueuedRequests)));
+        }
+
+        if (timer != null && maxQueueTime.getQuantity() > 0) {
+            waiter.expiry = timer.newTimeout(
+                    waiter, maxQueueTime.getQuantity(), maxQueueTime.getUnit());
+        }
+
+        final Waiter scheduled = waiter;
+        return scheduled.permit.addCallbackDeferring(new Callback<Deferred<T>, Object>() {
+            public Deferred<T> call(final Object arg) {
+                return dispatch(request);
+            }
+        });
+    }
+
+    /**
+     * Dispatches the request if a permit is immediately available, without queuing it, unless a
+     * request of the same or a higher {@link Priority} than that of the {@link RequestContext}
+     * of the calling thread is waiting.
+     *
+     * @param request a {@link Callback} that dispatches the request when called.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request; or null if no permit was available.
+     */
+    public <T> Deferred<T> trySubmit(final Callback<Deferred<T>, Object> request) {
+        final Priority priority = RequestContext.current().getPriority();
+        synchronized (lock) {
+            if (available <= 0 || isWaiting(priority)) {
+                return null;
+            }
+            available--;
+        }
+        return dispatch(request);
+    }
+
+    /**
+     * Determines whether any request of the given or a higher {@link Priority} is waiting for a
+     * permit.
+     *
+     * @param priority the {@link Priority} to check for waiting requests of.
+     *
+     * @return true if a request of the given or a higher {@link Priority} is waiting; otherwise,
+     *         false.
+     */
+    public boolean isWaiting(final Priority priority) {
+        synchronized (lock) {
+            for (int i = 0; i <= priority.ordinal(); i++) {
+                if (levels[i].waiting > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Gets the number of requests waiting for a permit.
+     *
+     * @return the number of requests waiting for a permit.
+     */
+    public int getQueuedRequests() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    /**
+     * Gets the number of permits currently available.
+     *
+     * @return the number of permits currently available.
+     */
+    public int getAvailablePermits() {
+        synchronized (lock) {
+            return available;
+        }
+    }
+
+    /**
+     * Gets the total number of requests rejected by this {@link RequestLimiter}.
+     *
+     * @return the total number of requests rejected.
+     */
+    public long getRejectedRequests() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the weight of the given tenant.
+     *
+     * @param tenant the tenant to get the weight of.
+     *
+     * @return the weight of the tenant.
+     */
+    public int getWeight(final String tenant) {
+        final Integer weight = weights.get(tenant);
+        return weight == null ? DEFAULT_WEIGHT : weight;
+    }
+
+    /**
+     * Gets the {@link com.yammer.metrics.core.Timer} of the time requests of the given class
+     * waited for a permit, including those that did not wait at all.
+     *
+     * @param requestClass the {@link RequestClass} of the requests.
+     *
+     * @return the {@link com.yammer.metrics.core.Timer} of the time requests of the class waited;
+     *         or null if no metrics are registered.
+     */
+    public com.yammer.metrics.core.Timer getWaitTime(final RequestClass requestClass) {
+        if (registry == null) {
+            return null;
+        }
+        final com.yammer.metrics.core.Timer existing = waits.get(requestClass);
+        if (existing != null) {
+            return existing;
+        }
+        final com.yammer.metrics.core.Timer created = registry.newTimer(
+                getClass(), "queue-wait", requestClass.toString(),
+                TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+        waits.putIfAbsent(requestClass, created);
+        return waits.get(requestClass);
+    }
+
+    /**
+     * Gets the {@link Counter} of requests of the given class rejected.
+     *
+     * @param requestClass the {@link RequestClass} of the requests.
+     *
+     * @return the {@link Counter} of requests of the class rejected; or null if no metrics are
+     *         registered.
+     */
+    public Counter getRejected(final RequestClass requestClass) {
+        if (registry == null) {
+            return null;
+        }
+        final Counter existing = rejections.get(requestClass);
+        if (existing != null) {
+            return existing;
+        }
+        final Counter created =
+                registry.newCounter(getClass(), "rejected", requestClass.toString());
+        rejections.putIfAbsent(requestClass, created);
+        return rejections.get(requestClass);
+    }
+
+    private void recordWait(final RequestClass requestClass, final long nanos) {
+        if (registry != null) {
+            getWaitTime(requestClass).update(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void reject(final RequestClass requestClass) {
+        rejected.incrementAndGet();
+        if (registry != null) {
+            getRejected(requestClass).inc();
+        }
+    }
+
+    /**
+     * Dispatches a request that holds a permit, releasing the permit when it completes.
+     */
+    private <T> Deferred<T> dispatch(final Callback<Deferred<T>, Object> request) {
+        final Deferred<T> result;
+        try {
+            result = request.call(null);
+        } catch (final Exception e) {
+            release();
+            return Deferred.fromError(e);
+        }
+        return result.addBoth(new Callback<T, T>() {
+            public T call(final T arg) {
+                release();
+                return arg;
+            }
+        });
+    }
+
+    /**
+     * Hands a permit to the next scheduled request or, if there is none, returns it to the pool.
+     */
+    private void release() {
+        final Waiter waiter;
+        synchronized (lock) {
+            waiter = dequeue();
+            if (waiter == null) {
+                available++;
+            }
+        }
+        if (waiter != null) {
+            waiter.grant();
+        }
+    }
+
+    // guarded by lock
+    private void enqueue(final Waiter waiter) {
+        final Level level = levels[waiter.requestClass.getPriority().ordinal()];
+        final String tenant = waiter.requestClass.getTenant();
+        Flow flow = level.flows.get(tenant);
+        if (flow == null) {
+            flow = new Flow(1.0 / getWeight(tenant));
+            level.flows.put(tenant, flow);
+        }
+        if (flow.waiters.isEmpty()) {
+            // an idle tenant may not claim the permits it would have been granted while idle
+            flow.pass = Math.max(flow.pass, level.pass);
+        }
+        flow.waiters.add(waiter);
+        level.waiting++;
+        queued++;
+    }
+
+    // guarded by lock
+    private Waiter dequeue() {
+        for (final Level level : levels) {
+            if (level.waiting == 0) {
+                continue;
+            }
+            Flow next = null;
+            final Iterator<Flow> flows = level.flows.values().iterator();
+            while (flows.hasNext()) {
+                final Flow flow = flows.next();
+                if (flow.waiters.isEmpty()) {
+                    // an idle tenant that is not ahead would rejoin at the pass of the level
+                    if (flow.pass <= level.pass) {
+                        flows.remove();
+                    }
+                } else if (next == null || flow.pass < next.pass) {
+                    next = flow;
+                }
+            }
+            level.pass = next.pass;
+            next.pass += next.stride;
+            final Waiter waiter = next.waiters.poll();
+            left(level);
+            return waiter;
+        }
+        return null;
+    }
+
+    // guarded by lock
+    private boolean remove(final Waiter waiter) {
+        final Level level = levels[waiter.requestClass.getPriority().ordinal()];
+        final Flow flow = level.flows.get(waiter.requestClass.getTenant());
+        if (flow == null || !flow.waiters.remove(waiter)) {
+            return false;
+        }
+        left(level);
+        return true;
+    }
+
+    // guarded by lock
+    private void left(final Level level) {
+        level.waiting--;
+        queued--;
+        if (level.waiting == 0) {
+            // every tenant of the level is idle, so none may claim permits for its idle time
+            level.flows.clear();
+        }
+    }
+
+    /**
+     * The requests waiting for a permit at a {@link Priority}.
+     */
+    private static class Level {
+        private final Map<String, Flow> flows = new HashMap<String, Flow>();
+        private double pass = 0;
+        private int waiting = 0;
+    }
+
+    /**
+     * The requests of a tenant waiting for a permit at a {@link Priority}.
+     */
+    private static class Flow {
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<Waiter>();
+        private final double stride;
+        private double pass = 0;
+
+        private Flow(final double stride) {
+            this.stride = stride;
+        }
+    }
+
+    /**
+     * A request waiting for a permit.
+     */
+    private class Waiter implements TimerTask {
+
+        private final Deferred<Object> permit = new Deferred<Object>();
+        private final RequestClass requestClass;
+        private final long queuedAt;
+        private volatile Timeout expiry;
+
+        Waiter(final RequestClass requestClass, final long queuedAt) {
+            this.requestClass = requestClass;
+            this.queuedAt = queuedAt;
+        }
+
+        /**
+         * Hands a permit to this request, dispatching it.
+         */
+        void grant() {
+            final Timeout expiry = this.expiry;
+            if (expiry != null) {
+                expiry.cancel();
+            }
+            recordWait(requestClass, clock.tick() - queuedAt);
+            permit.callback(null);
+        }
+
+        /**
+         * Expires this request after waiting for the maximum queue time.
+         */
+        public void run(final Timeout timeout) {
+            synchronized (lock) {
+                if (!remove(this)) {
+                    return;
+                }
+            }
+            reject(requestClass);
+            permit.callback(new RequestRejectedException(String.format(
+                    "Timed out waiting for a permit after %s", maxQueueTime)));
+        }
+    }
+}
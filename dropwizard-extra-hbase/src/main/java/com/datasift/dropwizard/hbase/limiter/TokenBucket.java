@@ -0,0 +1,139 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.yammer.metrics.core.Clock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket, limiting the rate at which tokens may be taken.
+ * <p/>
+ * Tokens accrue at a fixed rate, up to the number that would accrue over the burst time, so that
+ * a burst after a quiet period may briefly exceed the rate. Taking more tokens than are in the
+ * bucket leaves the bucket in debt; the caller must then wait for the returned time, until the
+ * debt will have been repaid, before proceeding. As the debt grows with each reservation, waiting
+ * callers proceed in the order they reserved their tokens. The debt may be bounded by the
+ * maximum time a caller may wait: a reservation that would wait for longer takes no tokens.
+ * <p/>
+ * The rate may be changed at any time; reservations already made are unaffected.
+ */
+public class TokenBucket {
+
+    /**
+     * The result of a reservation that would have waited for longer than the maximum wait.
+     */
+    public static final long REJECTED = -1;
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long burst;
+    private final Clock clock;
+
+    // guarded by this
+    private double rate;
+    private double tokens;
+    private long last;
+
+    /**
+     * Creates a new {@link TokenBucket}, starting full.
+     *
+     * @param rate the number of tokens that accrue per second; zero for no limit.
+     * @param burst the time over which tokens may accrue, in nanoseconds.
+     * @param clock the {@link Clock} to accrue tokens by.
+     */
+    public TokenBucket(final double rate, final long burst, final Clock clock) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("rate must not be negative: " + rate);
+        }
+        this.burst = burst;
+        this.clock = clock;
+        this.rate = rate;
+        this.tokens = capacity(rate);
+        this.last = clock.tick();
+    }
+
+    /**
+     * Takes the given number of tokens from the bucket, however long the caller must wait for
+     * them.
+     *
+     * @param count the number of tokens to take.
+     *
+     * @return the time to wait before proceeding, in nanoseconds; zero if there were enough tokens
+     *         in the bucket.
+     */
+    public long reserve(final long count) {
+        return reserve(count, Long.MAX_VALUE);
+    }
+
+    /**
+     * Takes the given number of tokens from the bucket, unless the caller would have to wait for
+     * longer than the given maximum wait.
+     *
+     * @param count the number of tokens to take.
+     * @param maxWait the maximum time to wait for the tokens, in nanoseconds.
+     *
+     * @return the time to wait before proceeding, in nanoseconds; zero if there were enough tokens
+     *         in the bucket; or {@link #REJECTED} if the wait would be longer than {@code
+     *         maxWait}, in which case no tokens were taken.
+     */
+    public synchronized long reserve(final long count, final long maxWait) {
+        if (rate <= 0) {
+            return 0;
+        }
+        refill();
+        final double remaining = tokens - count;
+        final long wait = remaining >= 0 ? 0 : (long) (-remaining / rate * NANOS_PER_SECOND);
+        if (wait > maxWait) {
+            return REJECTED;
+        }
+        tokens = remaining;
+        return wait;
+    }
+
+    /**
+     * Returns the given number of tokens, previously reserved by a request that will not be
+     * made, to the bucket.
+     *
+     * @param count the number of tokens to return.
+     */
+    public synchronized void refund(final long count) {
+        if (rate <= 0) {
+            return;
+        }
+        refill();
+        tokens = Math.min(capacity(rate), tokens + count);
+    }
+
+    /**
+     * Gets the number of tokens that accrue per second.
+     *
+     * @return the number of tokens that accrue per second; or zero if there is no limit.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Sets the number of tokens that accrue per second.
+     *
+     * @param rate the number of tokens that accrue per second; zero for no limit.
+     */
+    public synchronized void setRate(final double rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("rate must not be negative: " + rate);
+        }
+        refill();
+        this.rate = rate;
+        tokens = rate <= 0 ? 0 : Math.min(tokens, capacity(rate));
+    }
+
+    // guarded by this
+    private void refill() {
+        final long now = clock.tick();
+        tokens = Math.min(capacity(rate), tokens + (now - last) * rate / NANOS_PER_SECOND);
+        last = now;
+    }
+
+    private double capacity(final double rate) {
+        return rate * burst / NANOS_PER_SECOND;
+    }
+}
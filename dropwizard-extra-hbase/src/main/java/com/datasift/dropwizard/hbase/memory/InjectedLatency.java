@@ -0,0 +1,149 @@
+package com.datasift.dropwizard.hbase.memory;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delays the responses to requests by latencies drawn from a {@link LatencyDistribution}, to
+ * simulate the latency of a remote HBase cluster.
+ * <p/>
+ * Each {@link Operation} may have its own mean latency. Delayed responses are scheduled on a
+ * {@link Timer}, so they hold no threads while they wait, and are completed on the thread of the
+ * {@link Timer}, as the responses of a remote cluster would be completed on an I/O thread.
+ * Responses with no latency are completed immediately, on the calling thread.
+ * <p/>
+ * Once the {@link Timer} has been stopped, delayed responses fail with an {@link
+ * IllegalStateException}; responses still pending when it was stopped should be {@link
+ * #fail(Collection) failed}, so that no request is left without a response.
+ */
+public class InjectedLatency {
+
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private final Timer timer;
+    private final LatencyDistribution distribution;
+    private final long[] means = new long[Operation.values().length];
+
+    /**
+     * Creates a new {@link InjectedLatency} that injects no latency.
+     *
+     * @param timer the {@link Timer} to schedule delayed responses with.
+     */
+    public InjectedLatency(final Timer timer) {
+        this(timer, LatencyDistribution.CONSTANT, Duration.seconds(0),
+                Collections.<Operation, Duration>emptyMap());
+    }
+
+    /**
+     * Creates a new {@link InjectedLatency} that draws the latency of each request from the given
+     * {@link LatencyDistribution}.
+     *
+     * @param timer the {@link Timer} to schedule delayed responses with.
+     * @param distribution the {@link LatencyDistribution} to draw latencies from.
+     * @param latency the mean latency of operations without an explicit latency.
+     * @param latencyByOperation the mean latency of each {@link Operation}.
+     */
+    public InjectedLatency(final Timer timer,
+                           final LatencyDistribution distribution,
+                           final Duration latency,
+                           final Map<Operation, Duration> latencyByOperation) {
+        this.timer = timer;
+        this.distribution = distribution;
+        for (final Operation operation : Operation.values()) {
+            final Duration mean = latencyByOperation.containsKey(operation)
+                    ? latencyByOperation.get(operation)
+                    : latency;
+            means[operation.ordinal()] = mean.toNanoseconds();
+        }
+    }
+
+    /**
+     * Gets the mean latency injected into requests for the given {@link Operation}.
+     *
+     * @param operation the {@link Operation} to get the mean latency of.
+     *
+     * @return the mean latency of the {@link Operation}.
+     */
+    public Duration getMean(final Operation operation) {
+        return Duration.nanoseconds(means[operation.ordinal()]);
+    }
+
+    /**
+     * Responds to a request for the given {@link Operation} with the given result, after a
+     * latency drawn from the {@link LatencyDistribution}.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param result the result of the request; or an {@link Exception} if it failed.
+     * @param <T> the type of the result of the request.
+     *
+     * @return a {@link Deferred} that fires with the result once the latency has elapsed.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Deferred<T> respond(final Operation operation, final Object result) {
+        final long mean = means[operation.ordinal()];
+        final long latency = mean > 0 ? distribution.sample(mean, RANDOM.get()) : 0;
+        if (latency <= 0) {
+            return result instanceof Exception
+                    ? Deferred.<T>fromError((Exception) result)
+                    : Deferred.fromResult((T) result);
+        }
+
+        final Deferred<T> response = new Deferred<T>();
+        try {
+            timer.newTimeout(new Response(response, result), latency, TimeUnit.NANOSECONDS);
+        } catch (final IllegalStateException e) {
+            // the timer has been stopped, so the client has been shut down
+            return Deferred.fromError(e);
+        }
+        return response;
+    }
+
+    /**
+     * Fails the delayed responses of the given {@link Timeout}s, such as those that had yet to
+     * expire when the {@link Timer} was stopped.
+     *
+     * @param timeouts the {@link Timeout}s to fail the delayed responses of; any that are not
+     *                 delayed responses are ignored.
+     */
+    public void fail(final Collection<Timeout> timeouts) {
+        for (final Timeout timeout : timeouts) {
+            if (timeout.getTask() instanceof Response) {
+                ((Response) timeout.getTask()).response.callback(
+                        new IllegalStateException("Client was shut down before responding"));
+            }
+        }
+    }
+
+    /**
+     * A delayed response, which completes its {@link Deferred} once its latency has elapsed.
+     */
+    private static final class Response implements TimerTask {
+
+        private final Deferred<?> response;
+        private final Object result;
+
+        Response(final Deferred<?> response, final Object result) {
+            this.response = response;
+            this.result = result;
+        }
+
+        public void run(final Timeout timeout) {
+            response.callback(result);
+        }
+    }
+}
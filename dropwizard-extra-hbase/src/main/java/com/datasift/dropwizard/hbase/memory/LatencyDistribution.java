@@ -0,0 +1,89 @@
+package com.datasift.dropwizard.hbase.memory;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+import java.util.Random;
+
+/**
+ * The distributions from which the latency injected into each request of an {@link
+ * com.datasift.dropwizard.hbase.InMemoryHBaseClient} may be drawn.
+ * <p/>
+ * Each distribution is parameterised only by its mean.
+ *
+ * @see InjectedLatency
+ */
+public enum LatencyDistribution {
+
+    /**
+     * Every request takes exactly the mean latency.
+     */
+    CONSTANT {
+        public long sample(final long mean, final Random random) {
+            return mean;
+        }
+    },
+
+    /**
+     * Latencies are uniformly distributed between zero and twice the mean.
+     */
+    UNIFORM {
+        public long sample(final long mean, final Random random) {
+            return (long) (random.nextDouble() * 2 * mean);
+        }
+    },
+
+    /**
+     * Latencies are exponentially distributed, as for requests arriving at random at a server
+     * that is never saturated.
+     */
+    EXPONENTIAL {
+        public long sample(final long mean, final Random random) {
+            return (long) (-mean * Math.log(1 - random.nextDouble()));
+        }
+    },
+
+    /**
+     * Latencies are log-normally distributed, with a shape of one; most requests take less than
+     * the mean, but nearly 2 in 100 take over five times the mean.
+     */
+    LOG_NORMAL {
+        public long sample(final long mean, final Random random) {
+            if (mean <= 0) {
+                return 0;
+            }
+            // mean = exp(mu + sigma^2 / 2), with sigma = 1
+            final double mu = Math.log(mean) - 0.5;
+            return (long) Math.exp(mu + random.nextGaussian());
+        }
+    };
+
+    /**
+     * Draws a latency from this distribution.
+     *
+     * @param mean the mean latency of the distribution, in nanoseconds.
+     * @param random the source of randomness to draw the latency with.
+     *
+     * @return a latency drawn from this distribution, in nanoseconds.
+     */
+    public abstract long sample(long mean, Random random);
+
+    /**
+     * Parses a {@link LatencyDistribution} from its case-insensitive name, in which words may be
+     * separated by either "_" or "-".
+     *
+     * @param distribution the name of the {@link LatencyDistribution}.
+     *
+     * @return the {@link LatencyDistribution} with the given name.
+     *
+     * @throws IllegalArgumentException if there is no {@link LatencyDistribution} with the name.
+     */
+    @JsonCreator
+    public static LatencyDistribution parse(final String distribution) {
+        for (final LatencyDistribution value : values()) {
+            if (value.name().equalsIgnoreCase(distribution.replace('-', '_'))) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid LatencyDistribution: " + distribution);
+    }
+}
@@ -0,0 +1,362 @@
+package com.datasift.dropwizard.hbase.memory;
+
+import org.hbase.async.AtomicIncrementRequest;
+import org.hbase.async.Bytes;
+import org.hbase.async.DeleteRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.hbase.async.TableNotFoundException;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An HBase table, held in memory.
+ * <p/>
+ * Rows are held in a {@link ConcurrentSkipListMap}, sorted by key as HBase sorts them; each row
+ * holds the cells of each of its families, sorted by family and qualifier. Every request is
+ * atomic with respect to the row it affects, as in HBase.
+ * <p/>
+ * Only the latest version of each cell is kept. A cell written with an older timestamp than that
+ * of the existing cell is discarded, and a cell written with {@link KeyValue#TIMESTAMP_NOW} is
+ * given the current time.
+ */
+public class MemTable {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Creates a {@link TableNotFoundException} for the given table, as a request to a table that
+     * does not exist would fail with.
+     * <p/>
+     * The constructors of {@link TableNotFoundException} are not public, as asynchbase does not
+     * expect it to be created elsewhere, so it is created reflectively.
+     *
+     * @param table the name of the table that does not exist.
+     *
+     * @return a {@link TableNotFoundException} for the table.
+     */
+    public static TableNotFoundException notFound(final byte[] table) {
+        try {
+            final Constructor<TableNotFoundException> constructor =
+                    TableNotFoundException.class.getDeclaredConstructor(byte[].class);
+            constructor.setAccessible(true);
+            return constructor.newInstance(table);
+        } catch (final Exception e) {
+            throw new IllegalStateException("Unable to create a TableNotFoundException", e);
+        }
+    }
+
+    /**
+     * The cells of a row, by family and qualifier.
+     * <p/>
+     * All access to a row is synchronized on it. A row that has been removed from the table, as
+     * it has no cells left, may not be written to; writers must retry with a new row.
+     */
+    private static class Row {
+        final TreeMap<byte[], TreeMap<byte[], KeyValue>> families =
+                new TreeMap<byte[], TreeMap<byte[], KeyValue>>(Bytes.MEMCMP);
+        boolean removed = false;
+    }
+
+    private final ConcurrentSkipListMap<byte[], Row> rows =
+            new ConcurrentSkipListMap<byte[], Row>(Bytes.MEMCMP);
+
+    /**
+     * Writes the cells of the given {@link PutRequest}.
+     *
+     * @param request the cells to write.
+     */
+    public void put(final PutRequest request) {
+        while (true) {
+            final Row row = row(request.key());
+            synchronized (row) {
+                if (row.removed) {
+                    continue;
+                }
+                write(row, request);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the cells of the given {@link PutRequest} if, and only if, the current value of its
+     * cell is the expected value.
+     *
+     * @param request the cell to write.
+     * @param expected the expected value of the cell; or an empty array if the cell is expected
+     *                 not to exist.
+     *
+     * @return true if the cell was written; false if its current value was not the expected value.
+     */
+    public boolean compareAndSet(final PutRequest request, final byte[] expected) {
+        while (true) {
+            final Row row = row(request.key());
+            synchronized (row) {
+                if (row.removed) {
+                    continue;
+                }
+                final KeyValue current = cell(row, request.family(), request.qualifier());
+                final boolean matches = expected.length == 0
+                        ? current == null
+                        : current != null && Arrays.equals(current.value(), expected);
+                if (matches) {
+                    write(row, request);
+                } else {
+                    removeIfEmpty(request.key(), row);
+                }
+                return matches;
+            }
+        }
+    }
+
+    /**
+     * Atomically increments the value of a cell, which is created with a value of zero if it does
+     * not already exist.
+     *
+     * @param request the cell to increment.
+     *
+     * @return the value of the cell after the increment.
+     *
+     * @throws IllegalArgumentException if the current value of the cell is not a 64-bit integer.
+     */
+    public long increment(final AtomicIncrementRequest request) {
+        while (true) {
+            final Row row = row(request.key());
+            synchronized (row) {
+                if (row.removed) {
+                    continue;
+                }
+                final KeyValue current = cell(row, request.family(), request.qualifier());
+                if (current != null && current.value().length != 8) {
+                    removeIfEmpty(request.key(), row);
+                    throw new IllegalArgumentException("Value of " + current + " is not a"
+                            + " 64-bit integer; it is " + current.value().length + " bytes");
+                }
+                final long value = (current == null ? 0 : Bytes.getLong(current.value()))
+                        + request.getAmount();
+                family(row, request.family()).put(request.qualifier(), new KeyValue(
+                        request.key(), request.family(), request.qualifier(),
+                        System.currentTimeMillis(), Bytes.fromLong(value)));
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Deletes the cells of the given {@link DeleteRequest}.
+     * <p/>
+     * Only cells with a timestamp no later than that of the request are deleted; or, if the
+     * request {@link DeleteRequest#deleteAtTimestampOnly() deletes at its timestamp only}, only
+     * the cells with the same timestamp as the request.
+     *
+     * @param request the row, family or cells to delete.
+     */
+    public void delete(final DeleteRequest request) {
+        final Row row = rows.get(request.key());
+        if (row == null) {
+            return;
+        }
+        synchronized (row) {
+            if (row.removed) {
+                return;
+            }
+            final byte[] family = request.family();
+            if (family == null || family.length == 0) {
+                for (final TreeMap<byte[], KeyValue> cells : row.families.values()) {
+                    delete(cells.values().iterator(), request);
+                }
+            } else {
+                final TreeMap<byte[], KeyValue> cells = row.families.get(family);
+                if (cells != null) {
+                    final byte[][] qualifiers = request.qualifiers();
+                    if (qualifiers == null || isWholeFamily(qualifiers)) {
+                        delete(cells.values().iterator(), request);
+                    } else {
+                        for (final byte[] qualifier : qualifiers) {
+                            final KeyValue cell = cells.get(qualifier);
+                            if (cell != null && isDeleted(cell, request)) {
+                                cells.remove(qualifier);
+                            }
+                        }
+                    }
+                }
+            }
+            removeIfEmpty(request.key(), row);
+        }
+    }
+
+    /**
+     * Reads the cells of a row.
+     *
+     * @param key the key of the row to read.
+     * @param family the family of the cells to read; or null to read every family.
+     * @param qualifiers the qualifiers of the cells to read; or null to read every cell of the
+     *                   family.
+     * @param minTimestamp the earliest timestamp of the cells to read, inclusive.
+     * @param maxTimestamp the latest timestamp of the cells to read, exclusive.
+     *
+     * @return the cells read, sorted by family and qualifier; empty if there are none.
+     */
+    public ArrayList<KeyValue> get(final byte[] key,
+                                   final byte[] family,
+                                   final byte[][] qualifiers,
+                                   final long minTimestamp,
+                                   final long maxTimestamp) {
+        final ArrayList<KeyValue> result = new ArrayList<KeyValue>();
+        final Row row = rows.get(key);
+        if (row == null) {
+            return result;
+        }
+        synchronized (row) {
+            if (family == null || family.length == 0) {
+                for (final TreeMap<byte[], KeyValue> cells : row.families.values()) {
+                    read(cells.values(), minTimestamp, maxTimestamp, result);
+                }
+            } else {
+                final TreeMap<byte[], KeyValue> cells = row.families.get(family);
+                if (cells == null) {
+                    return result;
+                }
+                if (qualifiers == null || qualifiers.length == 0) {
+                    read(cells.values(), minTimestamp, maxTimestamp, result);
+                } else {
+                    final byte[][] sorted = qualifiers.clone();
+                    Arrays.sort(sorted, Bytes.MEMCMP);
+                    for (final byte[] qualifier : sorted) {
+                        final KeyValue cell = cells.get(qualifier);
+                        if (cell != null) {
+                            read(Arrays.asList(cell), minTimestamp, maxTimestamp, result);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the keys of the rows in the given range, in order.
+     * <p/>
+     * The keys are a weakly consistent view of the table; rows added or removed while the keys
+     * are iterated may or may not be seen.
+     *
+     * @param from the key from which the range starts; or an empty array to start at the first row.
+     * @param inclusive whether the range includes the row with the key it starts from.
+     * @param to the key before which the range stops; or an empty array to stop after the last
+     *           row.
+     *
+     * @return the keys of the rows in the range.
+     */
+    public NavigableSet<byte[]> keys(final byte[] from, final boolean inclusive, final byte[] to) {
+        ConcurrentNavigableMap<byte[], Row> range = rows;
+        if (from.length > 0) {
+            range = range.tailMap(from, inclusive);
+        }
+        if (to.length > 0) {
+            range = range.headMap(to, false);
+        }
+        return range.keySet();
+    }
+
+    /**
+     * Gets the number of rows in the table.
+     *
+     * @return the number of rows in the table.
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    // Gets the row with the given key, creating it if it doesn't exist
+    private Row row(final byte[] key) {
+        final Row row = rows.get(key);
+        if (row != null) {
+            return row;
+        }
+        final Row created = new Row();
+        final Row existing = rows.putIfAbsent(key, created);
+        return existing == null ? created : existing;
+    }
+
+    private void removeIfEmpty(final byte[] key, final Row row) {
+        final Iterator<TreeMap<byte[], KeyValue>> families = row.families.values().iterator();
+        while (families.hasNext()) {
+            if (families.next().isEmpty()) {
+                families.remove();
+            }
+        }
+        if (row.families.isEmpty() && !row.removed) {
+            row.removed = true;
+            rows.remove(key, row);
+        }
+    }
+
+    private static void write(final Row row, final PutRequest request) {
+        final long timestamp = request.timestamp() == KeyValue.TIMESTAMP_NOW
+                ? System.currentTimeMillis()
+                : request.timestamp();
+        final TreeMap<byte[], KeyValue> cells = family(row, request.family());
+        final byte[][] qualifiers = request.qualifiers();
+        final byte[][] values = request.values();
+        for (int i = 0; i < qualifiers.length; i++) {
+            final KeyValue current = cells.get(qualifiers[i]);
+            if (current == null || timestamp >= current.timestamp()) {
+                cells.put(qualifiers[i], new KeyValue(
+                        request.key(), request.family(), qualifiers[i], timestamp, values[i]));
+            }
+        }
+    }
+
+    private static TreeMap<byte[], KeyValue> family(final Row row, final byte[] family) {
+        TreeMap<byte[], KeyValue> cells = row.families.get(family);
+        if (cells == null) {
+            cells = new TreeMap<byte[], KeyValue>(Bytes.MEMCMP);
+            row.families.put(family, cells);
+        }
+        return cells;
+    }
+
+    private static KeyValue cell(final Row row, final byte[] family, final byte[] qualifier) {
+        final Map<byte[], KeyValue> cells = row.families.get(family);
+        return cells == null ? null : cells.get(qualifier);
+    }
+
+    private static void read(final Iterable<KeyValue> cells,
+                             final long minTimestamp,
+                             final long maxTimestamp,
+                             final ArrayList<KeyValue> result) {
+        for (final KeyValue cell : cells) {
+            if (cell.timestamp() >= minTimestamp && cell.timestamp() < maxTimestamp) {
+                result.add(cell);
+            }
+        }
+    }
+
+    private static void delete(final Iterator<KeyValue> cells, final DeleteRequest request) {
+        while (cells.hasNext()) {
+            if (isDeleted(cells.next(), request)) {
+                cells.remove();
+            }
+        }
+    }
+
+    private static boolean isDeleted(final KeyValue cell, final DeleteRequest request) {
+        return request.deleteAtTimestampOnly()
+                ? cell.timestamp() == request.timestamp()
+                : cell.timestamp() <= request.timestamp();
+    }
+
+    // a request to delete a whole family has a single, empty, qualifier
+    private static boolean isWholeFamily(final byte[][] qualifiers) {
+        return qualifiers.length == 1 && Arrays.equals(qualifiers[0], EMPTY);
+    }
+}
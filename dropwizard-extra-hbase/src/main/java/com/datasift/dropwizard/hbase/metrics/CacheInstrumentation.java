@@ -0,0 +1,58 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.datasift.dropwizard.hbase.CachingHBaseClient;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+
+/**
+ * A container for {@link Gauge}s reporting the effectiveness of the cache of a {@link
+ * CachingHBaseClient}.
+ *
+ * @see CachingHBaseClient
+ */
+public class CacheInstrumentation {
+
+    /**
+     * Initialises instrumentation for the given {@link CachingHBaseClient} using the given {@link
+     * MetricsRegistry}.
+     *
+     * @param client the client to create metrics for.
+     * @param registry the registry to register the metrics with.
+     */
+    public CacheInstrumentation(final CachingHBaseClient client, final MetricsRegistry registry) {
+        final Class<? extends CachingHBaseClient> clazz = client.getClass();
+
+        registry.newGauge(clazz, "hits", "cache", new Gauge<Long>() {
+            @Override public Long value() {
+                return client.getHits();
+            }
+        });
+        registry.newGauge(clazz, "misses", "cache", new Gauge<Long>() {
+            @Override public Long value() {
+                return client.getMisses();
+            }
+        });
+        registry.newGauge(clazz, "hitRatio", "cache", new Gauge<Double>() {
+            @Override public Double value() {
+                final long hits = client.getHits();
+                final long total = hits + client.getMisses();
+                return total == 0 ? 0.0 : (double) hits / total;
+            }
+        });
+        registry.newGauge(clazz, "evictions", "cache", new Gauge<Long>() {
+            @Override public Long value() {
+                return client.getEvictions();
+            }
+        });
+        registry.newGauge(clazz, "bytes", "cache", new Gauge<Long>() {
+            @Override public Long value() {
+                return client.getSize();
+            }
+        });
+        registry.newGauge(clazz, "rows", "cache", new Gauge<Long>() {
+            @Override public Long value() {
+                return client.getRows();
+            }
+        });
+    }
+}
@@ -0,0 +1,293 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Clock;
+import org.hbase.async.ClientStats;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the {@link ClientStats} of an {@link HBaseClient}, so that many gauges may be served
+ * from a single, consistent snapshot.
+ * <p/>
+ * A new snapshot is taken when one is requested and the current snapshot is older than the
+ * maximum age. Since a reporter reads all of its gauges at once, each reporter run takes a single
+ * snapshot, as long as the maximum age is shorter than the reporting interval.
+ * <p/>
+ * The rate of each cumulative {@link Total} is derived from the last two snapshots, so it is
+ * measured over the interval between consecutive reporter runs.
+ */
+public class ClientStatsSampler {
+
+    /**
+     * The default maximum age of a snapshot.
+     */
+    public static final Duration DEFAULT_MAX_AGE = Duration.seconds(1);
+
+    /**
+     * The cumulative totals of {@link ClientStats}.
+     */
+    public enum Total {
+
+        /** @see ClientStats#atomicIncrements() */
+        ATOMIC_INCREMENTS("atomicIncrements") {
+            @Override public long of(final ClientStats stats) {
+                return stats.atomicIncrements();
+            }
+        },
+
+        /** @see ClientStats#connectionsCreated() */
+        CONNECTIONS_CREATED("connectionsCreated") {
+            @Override public long of(final ClientStats stats) {
+                return stats.connectionsCreated();
+            }
+        },
+
+        /** @see ClientStats#contendedMetaLookups() */
+        CONTENDED_META_LOOKUPS("contendedMetaLookups") {
+            @Override public long of(final ClientStats stats) {
+                return stats.contendedMetaLookups();
+            }
+        },
+
+        /** @see ClientStats#deletes() */
+        DELETES("deletes") {
+            @Override public long of(final ClientStats stats) {
+                return stats.deletes();
+            }
+        },
+
+        /** @see ClientStats#flushes() */
+        FLUSHES("flushes") {
+            @Override public long of(final ClientStats stats) {
+                return stats.flushes();
+            }
+        },
+
+        /** @see ClientStats#gets() */
+        GETS("gets") {
+            @Override public long of(final ClientStats stats) {
+                return stats.gets();
+            }
+        },
+
+        /** @see ClientStats#noSuchRegionExceptions() */
+        NO_SUCH_REGION_EXCEPTIONS("noSuchRegionExceptions") {
+            @Override public long of(final ClientStats stats) {
+                return stats.noSuchRegionExceptions();
+            }
+        },
+
+        /** @see ClientStats#numBatchedRpcSent() */
+        BATCHED_RPCS_SENT("numBatchedRpcSent") {
+            @Override public long of(final ClientStats stats) {
+                return stats.numBatchedRpcSent();
+            }
+        },
+
+        /** @see ClientStats#numRpcDelayedDueToNSRE() */
+        RPCS_DELAYED_BY_NSRE("numRpcDelayedDueToNSRE") {
+            @Override public long of(final ClientStats stats) {
+                return stats.numRpcDelayedDueToNSRE();
+            }
+        },
+
+        /** @see ClientStats#puts() */
+        PUTS("puts") {
+            @Override public long of(final ClientStats stats) {
+                return stats.puts();
+            }
+        },
+
+        /** @see ClientStats#rootLookups() */
+        ROOT_LOOKUPS("rootLookups") {
+            @Override public long of(final ClientStats stats) {
+                return stats.rootLookups();
+            }
+        },
+
+        /** @see ClientStats#rowLocks() */
+        ROW_LOCKS("rowLocks") {
+            @Override public long of(final ClientStats stats) {
+                return stats.rowLocks();
+            }
+        },
+
+        /** @see ClientStats#scannersOpened() */
+        SCANNERS_OPENED("scannersOpened") {
+            @Override public long of(final ClientStats stats) {
+                return stats.scannersOpened();
+            }
+        },
+
+        /** @see ClientStats#scans() */
+        SCANS("scans") {
+            @Override public long of(final ClientStats stats) {
+                return stats.scans();
+            }
+        },
+
+        /** @see ClientStats#uncontendedMetaLookups() */
+        UNCONTENDED_META_LOOKUPS("uncontendedMetaLookups") {
+            @Override public long of(final ClientStats stats) {
+                return stats.uncontendedMetaLookups();
+            }
+        },
+
+        /** The total of all data requests: gets, scans, puts, deletes, increments and locks. */
+        RPCS("rpcs") {
+            @Override public long of(final ClientStats stats) {
+                return stats.gets() + stats.scans() + stats.puts() + stats.deletes()
+                        + stats.atomicIncrements() + stats.rowLocks();
+            }
+        };
+
+        private final String name;
+
+        Total(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the name of this {@link Total}, used to name its metrics.
+         *
+         * @return the name of this {@link Total}.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the value of this {@link Total} from the given {@link ClientStats}.
+         *
+         * @param stats the {@link ClientStats} to get the value from.
+         *
+         * @return the value of this {@link Total}.
+         */
+        public abstract long of(ClientStats stats);
+    }
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final HBaseClient client;
+    private final long maxAge;
+    private final Clock clock;
+
+    private volatile Sample sample = null;
+
+    /**
+     * Creates a new {@link ClientStatsSampler} for the given {@link HBaseClient}, with the
+     * {@link #DEFAULT_MAX_AGE default maximum age}.
+     *
+     * @param client the {@link HBaseClient} to sample the {@link ClientStats} of.
+     */
+    public ClientStatsSampler(final HBaseClient client) {
+        this(client, DEFAULT_MAX_AGE, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a new {@link ClientStatsSampler} for the given {@link HBaseClient}.
+     *
+     * @param client the {@link HBaseClient} to sample the {@link ClientStats} of.
+     * @param maxAge the maximum age of a snapshot before a new one is taken.
+     * @param clock the {@link Clock} to measure the age of snapshots with.
+     */
+    public ClientStatsSampler(final HBaseClient client,
+                              final Duration maxAge,
+                              final Clock clock) {
+        this.client = client;
+        this.maxAge = maxAge.toNanoseconds();
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the current snapshot of the {@link ClientStats}, taking a new one if it is too old.
+     *
+     * @return the current snapshot of the {@link ClientStats}.
+     */
+    public ClientStats getStats() {
+        return sample().stats;
+    }
+
+    /**
+     * Gets the change in the given {@link Total} between the last two snapshots.
+     *
+     * @param total the {@link Total} to get the change in.
+     *
+     * @return the change in the {@link Total}; or zero if only one snapshot has been taken.
+     */
+    public long getDelta(final Total total) {
+        final Sample sample = sample();
+        return sample.previous == null
+                ? 0
+                : total.of(sample.stats) - total.of(sample.previous);
+    }
+
+    /**
+     * Gets the rate of the given {@link Total}, per second, between the last two snapshots.
+     *
+     * @param total the {@link Total} to get the rate of.
+     *
+     * @return the rate of the {@link Total} per second; or zero if only one snapshot has been
+     *         taken.
+     */
+    public double getRate(final Total total) {
+        final Sample sample = sample();
+        if (sample.previous == null || sample.elapsed <= 0) {
+            return 0;
+        }
+        return (total.of(sample.stats) - total.of(sample.previous))
+                * NANOS_PER_SECOND / sample.elapsed;
+    }
+
+    /**
+     * Gets the average number of edits (puts and deletes) sent in each batched RPC between the
+     * last two snapshots.
+     *
+     * @return the average number of edits per batched RPC; or zero if no batched RPCs were sent.
+     */
+    public double getBatchedRpcSize() {
+        final long batches = getDelta(Total.BATCHED_RPCS_SENT);
+        return batches <= 0
+                ? 0
+                : (double) (getDelta(Total.PUTS) + getDelta(Total.DELETES)) / batches;
+    }
+
+    /**
+     * Gets the current {@link Sample}, taking a new one if it is too old.
+     */
+    private Sample sample() {
+        final long now = clock.tick();
+        Sample current = sample;
+        if (current != null && now - current.tick < maxAge) {
+            return current;
+        }
+        synchronized (this) {
+            current = sample;
+            if (current == null || now - current.tick >= maxAge) {
+                current = new Sample(client.stats(), clock.tick(), current);
+                sample = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * A snapshot of the {@link ClientStats}, and the snapshot before it.
+     */
+    private static final class Sample {
+
+        private final ClientStats stats;
+        private final long tick;
+        private final ClientStats previous;
+        private final long elapsed;
+
+        Sample(final ClientStats stats, final long tick, final Sample previous) {
+            this.stats = stats;
+            this.tick = tick;
+            this.previous = previous == null ? null : previous.stats;
+            this.elapsed = previous == null ? 0 : tick - previous.tick;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.datasift.dropwizard.hbase.RequestTimeoutException;
+import com.stumbleupon.async.DeferredGroupException;
+import org.hbase.async.ConnectionResetException;
+import org.hbase.async.NoSuchColumnFamilyException;
+import org.hbase.async.NotServingRegionException;
+import org.hbase.async.PleaseThrottleException;
+import org.hbase.async.TableNotFoundException;
+
+/**
+ * The types of failure counted by {@link HBaseInstrumentation}.
+ */
+public enum ErrorType {
+
+    /** @see NotServingRegionException */
+    NOT_SERVING_REGION("notServingRegion"),
+
+    /** @see PleaseThrottleException */
+    THROTTLED("throttled"),
+
+    /** @see RequestTimeoutException */
+    TIMED_OUT("timedOut"),
+
+    /** @see RequestRejectedException */
+    REJECTED("rejected"),
+
+    /** @see TableNotFoundException */
+    TABLE_NOT_FOUND("tableNotFound"),
+
+    /** @see NoSuchColumnFamilyException */
+    NO_SUCH_COLUMN_FAMILY("noSuchColumnFamily"),
+
+    /** @see ConnectionResetException */
+    CONNECTION_RESET("connectionReset"),
+
+    /** Any other failure. */
+    OTHER("other");
+
+    private final String name;
+
+    ErrorType(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of this {@link ErrorType}, used to name its metrics.
+     *
+     * @return the name of this {@link ErrorType}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the {@link ErrorType} of the given failure.
+     * <p/>
+     * A {@link DeferredGroupException} is classified by the failure that caused it.
+     *
+     * @param error the failure to classify.
+     *
+     * @return the {@link ErrorType} of the failure.
+     */
+    public static ErrorType of(final Throwable error) {
+        if (error instanceof DeferredGroupException && error.getCause() != null) {
+            return of(error.getCause());
+        } else if (error instanceof NotServingRegionException) {
+            return NOT_SERVING_REGION;
+        } else if (error instanceof PleaseThrottleException) {
+            return THROTTLED;
+        } else if (error instanceof RequestTimeoutException) {
+            return TIMED_OUT;
+        } else if (error instanceof RequestRejectedException) {
+            return REJECTED;
+        } else if (error instanceof TableNotFoundException) {
+            return TABLE_NOT_FOUND;
+        } else if (error instanceof NoSuchColumnFamilyException) {
+            return NO_SUCH_COLUMN_FAMILY;
+        } else if (error instanceof ConnectionResetException) {
+            return CONNECTION_RESET;
+        } else {
+            return OTHER;
+        }
+    }
+}
@@ -1,30 +1,82 @@
 package com.datasift.dropwizard.hbase.metrics;
 
 import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.metrics.LatencyRecorder;
+import com.datasift.dropwizard.metrics.LatencyRecorderFactory;
+import com.datasift.dropwizard.metrics.LatencyRecorderType;
+import com.yammer.metrics.core.Clock;
 import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.MetricName;
 import com.yammer.metrics.core.MetricsRegistry;
-import com.yammer.metrics.core.Timer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- * A container for {@link Timer}s used to time {@link HBaseClient} requests.
+ * A container for {@link LatencyRecorder}s used to time {@link HBaseClient} requests, and {@link
+ * Histogram}s of the size of scanned batches.
+ * <p/>
+ * The {@link LatencyRecorder}s are created by a {@link LatencyRecorderFactory}; by default, each
+ * records latencies with a {@link com.yammer.metrics.core.Timer}. Requests are timed with a single
+ * {@link Clock}, so that one start time may be shared by several recorders.
+ * <p/>
+ * Successful and failed requests are timed separately: the request recorders only record
+ * successful requests, while failed requests are recorded by a matching recorder scoped by
+ * "failures", and counted by their {@link ErrorType}.
+ * <p/>
+ * Gauges of the {@link org.hbase.async.ClientStats} of the client, and their rates per second,
+ * are served from snapshots taken by a {@link ClientStatsSampler}.
  *
  * @see com.datasift.dropwizard.hbase.InstrumentedHBaseClient
  */
 public class HBaseInstrumentation {
 
+    // the clock requests are timed with
+    private final Clock clock;
+
     // request timers
-    private final Timer creates;
-    private final Timer increments;
-    private final Timer compareAndSets;
-    private final Timer deletes;
-    private final Timer assertions;
-    private final Timer flushes;
-    private final Timer gets;
-    private final Timer locks;
-    private final Timer puts;
-    private final Timer unlocks;
-    private final Timer scans;
-    private final Timer closes;
+    private final LatencyRecorder creates;
+    private final LatencyRecorder increments;
+    private final LatencyRecorder compareAndSets;
+    private final LatencyRecorder deletes;
+    private final LatencyRecorder assertions;
+    private final LatencyRecorder flushes;
+    private final LatencyRecorder gets;
+    private final LatencyRecorder bulkGets;
+    private final LatencyRecorder bulkPuts;
+    private final LatencyRecorder bulkDeletes;
+    private final LatencyRecorder locks;
+    private final LatencyRecorder puts;
+    private final LatencyRecorder unlocks;
+    private final LatencyRecorder scans;
+    private final LatencyRecorder closes;
+
+    // failed request timers
+    private final LatencyRecorder failedCreates;
+    private final LatencyRecorder failedIncrements;
+    private final LatencyRecorder failedCompareAndSets;
+    private final LatencyRecorder failedDeletes;
+    private final LatencyRecorder failedAssertions;
+    private final LatencyRecorder failedFlushes;
+    private final LatencyRecorder failedGets;
+    private final LatencyRecorder failedBulkGets;
+    private final LatencyRecorder failedBulkPuts;
+    private final LatencyRecorder failedBulkDeletes;
+    private final LatencyRecorder failedLocks;
+    private final LatencyRecorder failedPuts;
+    private final LatencyRecorder failedUnlocks;
+    private final LatencyRecorder failedScans;
+    private final LatencyRecorder failedCloses;
+
+    // failure counts, by type
+    private final AtomicLongArray errors = new AtomicLongArray(ErrorType.values().length);
+
+    // scan batch histograms
+    private final Histogram scanBatchRows;
+    private final Histogram scanBatchBytes;
+
+    // client stats
+    private final ClientStatsSampler stats;
 
     /**
      * Initialises instrumentation for the given {@link HBaseClient} using the given {@link
@@ -34,96 +86,184 @@ public class HBaseInstrumentation {
      * @param registry the registry to register the metrics with.
      */
     public HBaseInstrumentation(final HBaseClient client, final MetricsRegistry registry) {
-        final Class<? extends HBaseClient> clazz = client.getClass();
+        this(client, registry, new ClientStatsSampler(client));
+    }
+
+    /**
+     * Initialises instrumentation for the given {@link HBaseClient} using the given {@link
+     * MetricsRegistry}, serving the client stats from the given {@link ClientStatsSampler}.
+     *
+     * @param client the client to create metrics for.
+     * @param registry the registry to register the metrics with.
+     * @param stats the {@link ClientStatsSampler} to sample the client stats with.
+     */
+    public HBaseInstrumentation(final HBaseClient client,
+                                final MetricsRegistry registry,
+                                final ClientStatsSampler stats) {
+        this(client, registry, stats, LatencyRecorderType.TIMER, Clock.defaultClock());
+    }
+
+    /**
+     * Initialises instrumentation for the given {@link HBaseClient} using the given {@link
+     * MetricsRegistry}, serving the client stats from the given {@link ClientStatsSampler} and
+     * recording the latency of requests with {@link LatencyRecorder}s created by the given {@link
+     * LatencyRecorderFactory}.
+     *
+     * @param client the client to create metrics for.
+     * @param registry the registry to register the metrics with.
+     * @param stats the {@link ClientStatsSampler} to sample the client stats with.
+     * @param recorders the {@link LatencyRecorderFactory} to create {@link LatencyRecorder}s with.
+     * @param clock the {@link Clock} to time requests with.
+     */
+    public HBaseInstrumentation(final HBaseClient client,
+                                final MetricsRegistry registry,
+                                final ClientStatsSampler stats,
+                                final LatencyRecorderFactory recorders,
+                                final Clock clock) {
+        this(client.getClass(), registry, stats, recorders, clock);
+    }
+
+    /**
+     * Initialises instrumentation using the given {@link MetricsRegistry}, naming the metrics by
+     * the given class of {@link HBaseClient}, serving the client stats from the given {@link
+     * ClientStatsSampler} and recording the latency of requests with {@link LatencyRecorder}s
+     * created by the given {@link LatencyRecorderFactory}.
+     *
+     * @param clazz the class of {@link HBaseClient} to name the metrics by.
+     * @param registry the registry to register the metrics with.
+     * @param stats the {@link ClientStatsSampler} to sample the client stats with.
+     * @param recorders the {@link LatencyRecorderFactory} to create {@link LatencyRecorder}s with.
+     * @param clock the {@link Clock} to time requests with.
+     */
+    public HBaseInstrumentation(final Class<? extends HBaseClient> clazz,
+                                final MetricsRegistry registry,
+                                final ClientStatsSampler stats,
+                                final LatencyRecorderFactory recorders,
+                                final Clock clock) {
+        this.clock = clock;
         
         // timers
-        creates        = registry.newTimer(clazz, "create",        "requests");
-        increments     = registry.newTimer(clazz, "increment",     "requests");
-        compareAndSets = registry.newTimer(clazz, "compareAndSet", "requests");
-        deletes        = registry.newTimer(clazz, "delete",        "requests");
-        assertions     = registry.newTimer(clazz, "assertion",     "requests");
-        flushes        = registry.newTimer(clazz, "flush",         "requests");
-        gets           = registry.newTimer(clazz, "get",           "requests");
-        locks          = registry.newTimer(clazz, "lock",          "requests");
-        puts           = registry.newTimer(clazz, "put",           "requests");
-        unlocks        = registry.newTimer(clazz, "unlock",        "requests");
-        scans          = registry.newTimer(clazz, "scans",         "scanner");
-        closes         = registry.newTimer(clazz, "closes",        "scanner");
-
-        // client stats
+        creates        = recorder(recorders, registry, clazz, "create",       "requests");
+        increments     = recorder(recorders, registry, clazz, "increment",    "requests");
+        compareAndSets = recorder(recorders, registry, clazz, "compareAndSet", "requests");
+        deletes        = recorder(recorders, registry, clazz, "delete",       "requests");
+        assertions     = recorder(recorders, registry, clazz, "assertion",    "requests");
+        flushes        = recorder(recorders, registry, clazz, "flush",        "requests");
+        gets           = recorder(recorders, registry, clazz, "get",          "requests");
+        bulkGets       = recorder(recorders, registry, clazz, "getAll",       "requests");
+        bulkPuts       = recorder(recorders, registry, clazz, "putAll",       "requests");
+        bulkDeletes    = recorder(recorders, registry, clazz, "deleteAll",    "requests");
+        locks          = recorder(recorders, registry, clazz, "lock",         "requests");
+        puts           = recorder(recorders, registry, clazz, "put",          "requests");
+        unlocks        = recorder(recorders, registry, clazz, "unlock",       "requests");
+        scans          = recorder(recorders, registry, clazz, "scans",        "scanner");
+        closes         = recorder(recorders, registry, clazz, "closes",       "scanner");
+
+        // failed request timers
+        failedCreates        = recorder(recorders, registry, clazz, "create",       "failures");
+        failedIncrements     = recorder(recorders, registry, clazz, "increment",    "failures");
+        failedCompareAndSets = recorder(recorders, registry, clazz, "compareAndSet", "failures");
+        failedDeletes        = recorder(recorders, registry, clazz, "delete",       "failures");
+        failedAssertions     = recorder(recorders, registry, clazz, "assertion",    "failures");
+        failedFlushes        = recorder(recorders, registry, clazz, "flush",        "failures");
+        failedGets           = recorder(recorders, registry, clazz, "get",          "failures");
+        failedBulkGets       = recorder(recorders, registry, clazz, "getAll",       "failures");
+        failedBulkPuts       = recorder(recorders, registry, clazz, "putAll",       "failures");
+        failedBulkDeletes    = recorder(recorders, registry, clazz, "deleteAll",    "failures");
+        failedLocks          = recorder(recorders, registry, clazz, "lock",         "failures");
+        failedPuts           = recorder(recorders, registry, clazz, "put",          "failures");
+        failedUnlocks        = recorder(recorders, registry, clazz, "unlock",       "failures");
+        failedScans          = recorder(recorders, registry, clazz, "scans",        "failures");
+        failedCloses         = recorder(recorders, registry, clazz, "closes",       "failures");
+
+        // failure counts
+        for (final ErrorType type : ErrorType.values()) {
+            registry.newGauge(clazz, type.getName(), "errors", new Gauge<Long>() {
+                @Override public Long value() {
+                    return errors.get(type.ordinal());
+                }
+            });
+        }
+
+        // histograms
+        scanBatchRows  = registry.newHistogram(clazz, "batchRows",  "scanner");
+        scanBatchBytes = registry.newHistogram(clazz, "batchBytes", "scanner");
+
+        // client stats, served from a single snapshot per reporter run
+        this.stats = stats;
         registry.newGauge(clazz, "atomicIncrements", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().atomicIncrements();
+                return stats.getStats().atomicIncrements();
             }
         });
         registry.newGauge(clazz, "connectionsCreated", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().connectionsCreated();
+                return stats.getStats().connectionsCreated();
             }
         });
         registry.newGauge(clazz, "contendedMetaLookups", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().contendedMetaLookups();
+                return stats.getStats().contendedMetaLookups();
             }
         });
         registry.newGauge(clazz, "deletes", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().deletes();
+                return stats.getStats().deletes();
             }
         });
         registry.newGauge(clazz, "flushes", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().flushes();
+                return stats.getStats().flushes();
             }
         });
         registry.newGauge(clazz, "gets", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().gets();
+                return stats.getStats().gets();
             }
         });
         registry.newGauge(clazz, "noSuchRegionExceptions", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().noSuchRegionExceptions();
+                return stats.getStats().noSuchRegionExceptions();
             }
         });
         registry.newGauge(clazz, "numBatchedRpcSent", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().numBatchedRpcSent();
+                return stats.getStats().numBatchedRpcSent();
             }
         });
         registry.newGauge(clazz, "numRpcDelayedDueToNSRE", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().numRpcDelayedDueToNSRE();
+                return stats.getStats().numRpcDelayedDueToNSRE();
             }
         });
         registry.newGauge(clazz, "puts", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().puts();
+                return stats.getStats().puts();
             }
         });
         registry.newGauge(clazz, "rootLookups", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().rootLookups();
+                return stats.getStats().rootLookups();
             }
         });
         registry.newGauge(clazz, "rowLocks", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().rowLocks();
+                return stats.getStats().rowLocks();
             }
         });
         registry.newGauge(clazz, "scannersOpened", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().scannersOpened();
+                return stats.getStats().scannersOpened();
             }
         });
         registry.newGauge(clazz, "scans", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().scans();
+                return stats.getStats().scans();
             }
         });
         registry.newGauge(clazz, "uncontendedMetaLookups", "totals", new Gauge<Long>() {
             @Override public Long value() {
-                return client.stats().uncontendedMetaLookups();
+                return stats.getStats().uncontendedMetaLookups();
             }
         });
 
@@ -131,192 +271,432 @@ public class HBaseInstrumentation {
         registry.newGauge(clazz, "averageLoadPenalty", "incrementBuffer",
                 new Gauge<Double>() {
                     @Override public Double value() {
-                        return client.stats().incrementBufferStats()
+                        return stats.getStats().incrementBufferStats()
                                 .averageLoadPenalty();
                     }
                 });
         registry.newGauge(clazz, "evictionCount", "incrementBuffer",
                 new Gauge<Long>() {
                     @Override public Long value() {
-                        return client.stats().incrementBufferStats()
+                        return stats.getStats().incrementBufferStats()
                                 .evictionCount();
                     }
                 });
         registry.newGauge(clazz, "hitCount", "incrementBuffer",
                 new Gauge<Long>() {
                     @Override public Long value() {
-                        return client.stats().incrementBufferStats().hitCount();
+                        return stats.getStats().incrementBufferStats().hitCount();
                     }
                 });
         registry.newGauge(clazz, "hitRate", "incrementBuffer",
                 new Gauge<Double>() {
                     @Override public Double value() {
-                        return client.stats().incrementBufferStats().hitRate();
+                        return stats.getStats().incrementBufferStats().hitRate();
                     }
                 });
         registry.newGauge(clazz, "loadCount", "incrementBuffer",
                 new Gauge<Long>() {
                     @Override public Long value() {
-                        return client.stats().incrementBufferStats()
+                        return stats.getStats().incrementBufferStats()
                                 .loadCount();
                     }
                 });
         registry.newGauge(clazz, "loadExceptionCount", "incrementBuffer",
                 new Gauge<Long>() {
                     @Override public Long value() {
-                        return client.stats().incrementBufferStats()
+                        return stats.getStats().incrementBufferStats()
                                 .loadExceptionCount();
                     }
                 });
         registry.newGauge(clazz, "loadExceptionRate", "incrementBuffer",
                 new Gauge<Double>() {
                     @Override public Double value() {
-                        return client.stats().incrementBufferStats()
+                        return stats.getStats().incrementBufferStats()
                                 .loadExceptionRate();
                     }
                 });
         registry.newGauge(clazz, "loadSuccessCount", "incrementBuffer",
                 new Gauge<Long>() {
                     @Override public Long value() {
-                        return client.stats().incrementBufferStats()
+                        return stats.getStats().incrementBufferStats()
                                 .loadSuccessCount();
                     }
                 });
         registry.newGauge(clazz, "missCount", "incrementBuffer",
                 new Gauge<Long>() {
                     @Override public Long value() {
-                        return client.stats().incrementBufferStats()
+                        return stats.getStats().incrementBufferStats()
                                 .missCount();
                     }
                 });
         registry.newGauge(clazz, "missRate", "incrementBuffer",
                 new Gauge<Double>() {
                     @Override public Double value() {
-                        return client.stats().incrementBufferStats()
+                        return stats.getStats().incrementBufferStats()
                                 .missRate();
                     }
                 });
         registry.newGauge(clazz, "requestCount", "incrementBuffer",
                 new Gauge<Long>() {
                     @Override public Long value() {
-                        return client.stats().incrementBufferStats()
+                        return stats.getStats().incrementBufferStats()
                                 .requestCount();
                     }
                 });
         registry.newGauge(clazz, "totalLoadTime", "incrementBuffer",
                 new Gauge<Long>() {
                     @Override public Long value() {
-                        return client.stats().incrementBufferStats()
+                        return stats.getStats().incrementBufferStats()
                                 .totalLoadTime();
                     }
                 });
+
+        // rates of client stats
+        for (final ClientStatsSampler.Total total : ClientStatsSampler.Total.values()) {
+            registry.newGauge(clazz, total.getName(), "rates", new Gauge<Double>() {
+                @Override public Double value() {
+                    return stats.getRate(total);
+                }
+            });
+        }
+        registry.newGauge(clazz, "batchedRpcSize", "rates", new Gauge<Double>() {
+            @Override public Double value() {
+                return stats.getBatchedRpcSize();
+            }
+        });
+    }
+
+    /**
+     * Gets the {@link Clock} requests are timed with.
+     *
+     * @return the {@link Clock} requests are timed with.
+     */
+    public Clock getClock() {
+        return clock;
     }
 
     /**
-     * Gets the {@link Timer} for create requests.
+     * Gets the {@link LatencyRecorder} for create requests.
      *
-     * @return the {@link Timer} for create requests.
+     * @return the {@link LatencyRecorder} for create requests.
      */
-    public Timer getCreates() {
+    public LatencyRecorder getCreates() {
         return creates;
     }
 
     /**
-     * Gets the {@link Timer} for increment requests.
+     * Gets the {@link LatencyRecorder} for increment requests.
      *
-     * @return the {@link Timer} for increment requests.
+     * @return the {@link LatencyRecorder} for increment requests.
      */
-    public Timer getIncrements() {
+    public LatencyRecorder getIncrements() {
         return increments;
     }
 
     /**
-     * Gets the {@link Timer} for compare-and-set requests.
+     * Gets the {@link LatencyRecorder} for compare-and-set requests.
      *
-     * @return the {@link Timer} for compare-and-set requests.
+     * @return the {@link LatencyRecorder} for compare-and-set requests.
      */
-    public Timer getCompareAndSets() {
+    public LatencyRecorder getCompareAndSets() {
         return compareAndSets;
     }
 
     /**
-     * Gets the {@link Timer} for delete requests.
+     * Gets the {@link LatencyRecorder} for delete requests.
      *
-     * @return the {@link Timer} for delete requests.
+     * @return the {@link LatencyRecorder} for delete requests.
      */
-    public Timer getDeletes() {
+    public LatencyRecorder getDeletes() {
         return deletes;
     }
 
     /**
-     * Gets the {@link Timer} for assertion requests.
+     * Gets the {@link LatencyRecorder} for assertion requests.
      *
-     * @return the {@link Timer} for assertion requests.
+     * @return the {@link LatencyRecorder} for assertion requests.
      */
-    public Timer getAssertions() {
+    public LatencyRecorder getAssertions() {
         return assertions;
     }
 
     /**
-     * Gets the {@link Timer} for flush requests.
+     * Gets the {@link LatencyRecorder} for flush requests.
      *
-     * @return the {@link Timer} for flush requests.
+     * @return the {@link LatencyRecorder} for flush requests.
      */
-    public Timer getFlushes() {
+    public LatencyRecorder getFlushes() {
         return flushes;
     }
 
     /**
-     * Gets the {@link Timer} for get requests.
+     * Gets the {@link LatencyRecorder} for get requests.
      *
-     * @return the {@link Timer} for get requests.
+     * @return the {@link LatencyRecorder} for get requests.
      */
-    public Timer getGets() {
+    public LatencyRecorder getGets() {
         return gets;
     }
 
     /**
-     * Gets the {@link Timer} for lock requests.
+     * Gets the {@link LatencyRecorder} for bulk get requests.
      *
-     * @return the {@link Timer} for lock requests.
+     * @return the {@link LatencyRecorder} for bulk get requests.
      */
-    public Timer getLocks() {
+    public LatencyRecorder getBulkGets() {
+        return bulkGets;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for bulk put requests.
+     *
+     * @return the {@link LatencyRecorder} for bulk put requests.
+     */
+    public LatencyRecorder getBulkPuts() {
+        return bulkPuts;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for bulk delete requests.
+     *
+     * @return the {@link LatencyRecorder} for bulk delete requests.
+     */
+    public LatencyRecorder getBulkDeletes() {
+        return bulkDeletes;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for lock requests.
+     *
+     * @return the {@link LatencyRecorder} for lock requests.
+     */
+    public LatencyRecorder getLocks() {
         return locks;
     }
 
     /**
-     * Gets the {@link Timer} for put requests.
+     * Gets the {@link LatencyRecorder} for put requests.
      *
-     * @return the {@link Timer} for put requests.
+     * @return the {@link LatencyRecorder} for put requests.
      */
-    public Timer getPuts() {
+    public LatencyRecorder getPuts() {
         return puts;
     }
 
     /**
-     * Gets the {@link Timer} for unlock requests.
+     * Gets the {@link LatencyRecorder} for unlock requests.
      *
-     * @return the {@link Timer} for unlock requests.
+     * @return the {@link LatencyRecorder} for unlock requests.
      */
-    public Timer getUnlocks() {
+    public LatencyRecorder getUnlocks() {
         return unlocks;
     }
 
     /**
-     * Gets the {@link Timer} for scan requests.
+     * Gets the {@link LatencyRecorder} for scan requests.
      *
-     * @return the {@link Timer} for scan requests.
+     * @return the {@link LatencyRecorder} for scan requests.
      */
-    public Timer getScans() {
+    public LatencyRecorder getScans() {
         return scans;
     }
 
     /**
-     * Gets the {@link Timer} for close requests.
+     * Gets the {@link LatencyRecorder} for close requests.
      *
-     * @return the {@link Timer} for close requests.
+     * @return the {@link LatencyRecorder} for close requests.
      */
-    public Timer getCloses() {
+    public LatencyRecorder getCloses() {
         return closes;
     }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed create requests.
+     *
+     * @return the {@link LatencyRecorder} for failed create requests.
+     */
+    public LatencyRecorder getFailedCreates() {
+        return failedCreates;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed increment requests.
+     *
+     * @return the {@link LatencyRecorder} for failed increment requests.
+     */
+    public LatencyRecorder getFailedIncrements() {
+        return failedIncrements;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed compare-and-set requests.
+     *
+     * @return the {@link LatencyRecorder} for failed compare-and-set requests.
+     */
+    public LatencyRecorder getFailedCompareAndSets() {
+        return failedCompareAndSets;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed delete requests.
+     *
+     * @return the {@link LatencyRecorder} for failed delete requests.
+     */
+    public LatencyRecorder getFailedDeletes() {
+        return failedDeletes;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed assertion requests.
+     *
+     * @return the {@link LatencyRecorder} for failed assertion requests.
+     */
+    public LatencyRecorder getFailedAssertions() {
+        return failedAssertions;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed flush requests.
+     *
+     * @return the {@link LatencyRecorder} for failed flush requests.
+     */
+    public LatencyRecorder getFailedFlushes() {
+        return failedFlushes;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed get requests.
+     *
+     * @return the {@link LatencyRecorder} for failed get requests.
+     */
+    public LatencyRecorder getFailedGets() {
+        return failedGets;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed bulk get requests.
+     *
+     * @return the {@link LatencyRecorder} for failed bulk get requests.
+     */
+    public LatencyRecorder getFailedBulkGets() {
+        return failedBulkGets;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed bulk put requests.
+     *
+     * @return the {@link LatencyRecorder} for failed bulk put requests.
+     */
+    public LatencyRecorder getFailedBulkPuts() {
+        return failedBulkPuts;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed bulk delete requests.
+     *
+     * @return the {@link LatencyRecorder} for failed bulk delete requests.
+     */
+    public LatencyRecorder getFailedBulkDeletes() {
+        return failedBulkDeletes;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed lock requests.
+     *
+     * @return the {@link LatencyRecorder} for failed lock requests.
+     */
+    public LatencyRecorder getFailedLocks() {
+        return failedLocks;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed put requests.
+     *
+     * @return the {@link LatencyRecorder} for failed put requests.
+     */
+    public LatencyRecorder getFailedPuts() {
+        return failedPuts;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed unlock requests.
+     *
+     * @return the {@link LatencyRecorder} for failed unlock requests.
+     */
+    public LatencyRecorder getFailedUnlocks() {
+        return failedUnlocks;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed scan requests.
+     *
+     * @return the {@link LatencyRecorder} for failed scan requests.
+     */
+    public LatencyRecorder getFailedScans() {
+        return failedScans;
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for failed close requests.
+     *
+     * @return the {@link LatencyRecorder} for failed close requests.
+     */
+    public LatencyRecorder getFailedCloses() {
+        return failedCloses;
+    }
+
+    /**
+     * Counts the given failure by its {@link ErrorType}.
+     *
+     * @param error the failure to count.
+     */
+    public void markError(final Throwable error) {
+        errors.incrementAndGet(ErrorType.of(error).ordinal());
+    }
+
+    /**
+     * Gets the number of failures of the given {@link ErrorType}.
+     *
+     * @param type the {@link ErrorType} to get the number of failures of.
+     *
+     * @return the number of failures of the given type.
+     */
+    public long getErrors(final ErrorType type) {
+        return errors.get(type.ordinal());
+    }
+
+    /**
+     * Gets the {@link Histogram} of the number of rows in each scanned batch.
+     *
+     * @return the {@link Histogram} of the number of rows in each scanned batch.
+     */
+    public Histogram getScanBatchRows() {
+        return scanBatchRows;
+    }
+
+    /**
+     * Gets the {@link Histogram} of the size, in bytes, of each scanned batch.
+     *
+     * @return the {@link Histogram} of the size, in bytes, of each scanned batch.
+     */
+    public Histogram getScanBatchBytes() {
+        return scanBatchBytes;
+    }
+
+    /**
+     * Gets the {@link ClientStatsSampler} serving the client stats.
+     *
+     * @return the {@link ClientStatsSampler} serving the client stats.
+     */
+    public ClientStatsSampler getStats() {
+        return stats;
+    }
+
+    private static LatencyRecorder recorder(final LatencyRecorderFactory recorders,
+                                            final MetricsRegistry registry,
+                                            final Class<?> clazz,
+                                            final String name,
+                                            final String scope) {
+        return recorders.newRecorder(registry, new MetricName(clazz, name, scope));
+    }
 }
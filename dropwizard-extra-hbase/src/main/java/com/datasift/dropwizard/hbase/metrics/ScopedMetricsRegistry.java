@@ -0,0 +1,81 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link MetricsRegistry} that registers metrics with another {@link MetricsRegistry}, each
+ * scoped by a given name.
+ * <p/>
+ * Each metric is registered with the underlying {@link MetricsRegistry} under a scope prefixed
+ * by the given name, so that the metrics of several
+ * {@link com.datasift.dropwizard.hbase.HBaseClient}s built from the same classes remain
+ * distinct.
+ */
+public class ScopedMetricsRegistry extends MetricsRegistry {
+
+    private final MetricsRegistry registry;
+    private final String name;
+
+    /**
+     * Creates a new {@link ScopedMetricsRegistry} that registers metrics with the given {@link
+     * MetricsRegistry}, scoped by the given name.
+     *
+     * @param registry the {@link MetricsRegistry} to register metrics with.
+     * @param name the name to scope each metric by.
+     */
+    public ScopedMetricsRegistry(final MetricsRegistry registry, final String name) {
+        this.registry = registry;
+        this.name = name;
+    }
+
+    @Override
+    public <T> Gauge<T> newGauge(final MetricName metricName, final Gauge<T> metric) {
+        return registry.newGauge(scoped(metricName), metric);
+    }
+
+    @Override
+    public Counter newCounter(final MetricName metricName) {
+        return registry.newCounter(scoped(metricName));
+    }
+
+    @Override
+    public Histogram newHistogram(final MetricName metricName, final boolean biased) {
+        return registry.newHistogram(scoped(metricName), biased);
+    }
+
+    @Override
+    public Meter newMeter(final MetricName metricName,
+                          final String eventType,
+                          final TimeUnit unit) {
+        return registry.newMeter(scoped(metricName), eventType, unit);
+    }
+
+    @Override
+    public Timer newTimer(final MetricName metricName,
+                          final TimeUnit durationUnit,
+                          final TimeUnit rateUnit) {
+        return registry.newTimer(scoped(metricName), durationUnit, rateUnit);
+    }
+
+    @Override
+    public void removeMetric(final MetricName metricName) {
+        registry.removeMetric(scoped(metricName));
+    }
+
+    private MetricName scoped(final MetricName metricName) {
+        final String scope = metricName.getScope();
+        return new MetricName(
+                metricName.getGroup(),
+                metricName.getType(),
+                metricName.getName(),
+                scope == null ? name : name + "-" + scope);
+    }
+}
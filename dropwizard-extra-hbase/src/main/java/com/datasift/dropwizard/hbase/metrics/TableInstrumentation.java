@@ -0,0 +1,194 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.metrics.LatencyRecorderFactory;
+import com.datasift.dropwizard.metrics.LatencyRecorderType;
+import com.google.common.base.Charsets;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.Bytes;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A container for the {@link TableMetrics} of each table requested through an {@link
+ * HBaseClient}.
+ * <p/>
+ * {@link TableMetrics} are created the first time a table is requested, and are registered with a
+ * scope of "table-" followed by the name of the table. So that the cost of instrumentation does
+ * not grow with the number of tables, metrics are only created for a maximum number of tables,
+ * and, if given, only for a fixed set of tables; requests for any further tables share a single
+ * set of metrics, scoped by "table-other".
+ *
+ * @see com.datasift.dropwizard.hbase.InstrumentedHBaseClient
+ */
+public class TableInstrumentation {
+
+    /**
+     * A {@link TableInstrumentation} that creates no {@link TableMetrics}.
+     */
+    public static final TableInstrumentation DISABLED = new TableInstrumentation(
+            HBaseClient.class, new MetricsRegistry(), LatencyRecorderType.TIMER,
+            Collections.<String>emptySet(), 0, 0);
+
+    private final Class<? extends HBaseClient> clazz;
+    private final MetricsRegistry registry;
+    private final LatencyRecorderFactory recorders;
+    private final Set<byte[]> reported;
+    private final int maxTables;
+    private final int maxFamilies;
+
+    private final ConcurrentMap<byte[], TableMetrics> tables =
+            new ConcurrentSkipListMap<byte[], TableMetrics>(Bytes.MEMCMP);
+    private final AtomicInteger numTables = new AtomicInteger();
+    private volatile TableMetrics otherTables = null;
+
+    /**
+     * Creates a new {@link TableInstrumentation} for the given {@link HBaseClient}, registering
+     * {@link TableMetrics} with the given {@link MetricsRegistry}.
+     *
+     * @param client the client to create metrics for.
+     * @param registry the registry to register the metrics with.
+     * @param tables the tables to create metrics for; or empty to create metrics for any table.
+     * @param maxTables the maximum number of tables to create metrics for; or zero to not create
+     *                  metrics for any table.
+     * @param maxFamilies the maximum number of column families of each table to create metrics
+     *                    for; or zero to not create metrics for column families.
+     */
+    public TableInstrumentation(final HBaseClient client,
+                                final MetricsRegistry registry,
+                                final Collection<String> tables,
+                                final int maxTables,
+                                final int maxFamilies) {
+        this(client, registry, LatencyRecorderType.TIMER, tables, maxTables, maxFamilies);
+    }
+
+    /**
+     * Creates a new {@link TableInstrumentation} for the given {@link HBaseClient}, registering
+     * {@link TableMetrics} with the given {@link MetricsRegistry}, and recording the latency of
+     * requests with {@link com.datasift.dropwizard.metrics.LatencyRecorder}s created by the given
+     * {@link LatencyRecorderFactory}.
+     *
+     * @param client the client to create metrics for.
+     * @param registry the registry to register the metrics with.
+     * @param recorders the {@link LatencyRecorderFactory} to create latency recorders with.
+     * @param tables the tables to create metrics for; or empty to create metrics for any table.
+     * @param maxTables the maximum number of tables to create metrics for; or zero to not create
+     *                  metrics for any table.
+     * @param maxFamilies the maximum number of column families of each table to create metrics
+     *                    for; or zero to not create metrics for column families.
+     */
+    public TableInstrumentation(final HBaseClient client,
+                                final MetricsRegistry registry,
+                                final LatencyRecorderFactory recorders,
+                                final Collection<String> tables,
+                                final int maxTables,
+                                final int maxFamilies) {
+        this(client.getClass(), registry, recorders, tables, maxTables, maxFamilies);
+    }
+
+    /**
+     * Creates a new {@link TableInstrumentation}, registering {@link TableMetrics} named by the
+     * given class of {@link HBaseClient} with the given {@link MetricsRegistry}, and recording the
+     * latency of requests with {@link com.datasift.dropwizard.metrics.LatencyRecorder}s created
+     * by the given {@link LatencyRecorderFactory}.
+     *
+     * @param clazz the class of {@link HBaseClient} to name the metrics by.
+     * @param registry the registry to register the metrics with.
+     * @param recorders the {@link LatencyRecorderFactory} to create latency recorders with.
+     * @param tables the tables to create metrics for; or empty to create metrics for any table.
+     * @param maxTables the maximum number of tables to create metrics for; or zero to not create
+     *                  metrics for any table.
+     * @param maxFamilies the maximum number of column families of each table to create metrics
+     *                    for; or zero to not create metrics for column families.
+     */
+    public TableInstrumentation(final Class<? extends HBaseClient> clazz,
+                                final MetricsRegistry registry,
+                                final LatencyRecorderFactory recorders,
+                                final Collection<String> tables,
+                                final int maxTables,
+                                final int maxFamilies) {
+        this.clazz = clazz;
+        this.registry = registry;
+        this.recorders = recorders;
+        this.maxTables = maxTables;
+        this.maxFamilies = maxFamilies;
+        this.reported = new TreeSet<byte[]>(Bytes.MEMCMP);
+        for (final String table : tables) {
+            reported.add(table.getBytes(Charsets.UTF_8));
+        }
+    }
+
+    /**
+     * Gets the {@link TableMetrics} for the given table, creating them if necessary.
+     *
+     * @param table the table to get the {@link TableMetrics} for; may be null.
+     *
+     * @return the {@link TableMetrics} for the table, or the shared metrics of other tables; or
+     *         null if the table is null, or metrics are not created for any table.
+     */
+    public TableMetrics forTable(final byte[] table) {
+        if (table == null || maxTables <= 0) {
+            return null;
+        }
+
+        final TableMetrics metrics = tables.get(table);
+        if (metrics != null) {
+            return metrics;
+        }
+
+        if (!reported.isEmpty() && !reported.contains(table)) {
+            return otherTables();
+        }
+
+        if (numTables.incrementAndGet() > maxTables) {
+            numTables.decrementAndGet();
+            return otherTables();
+        }
+
+        final TableMetrics created = new TableMetrics(
+                clazz,
+                registry,
+                recorders,
+                "table-" + new String(table, Charsets.UTF_8),
+                maxFamilies);
+        final TableMetrics existing = tables.putIfAbsent(table, created);
+        if (existing != null) {
+            numTables.decrementAndGet();
+            return existing;
+        }
+        return created;
+    }
+
+    /**
+     * Gets the number of tables that have their own {@link TableMetrics}.
+     *
+     * @return the number of tables that have their own {@link TableMetrics}.
+     */
+    public int getTables() {
+        return tables.size();
+    }
+
+    /**
+     * Gets the shared metrics for tables that don't have their own, creating them if necessary.
+     */
+    private TableMetrics otherTables() {
+        TableMetrics other = otherTables;
+        if (other == null) {
+            synchronized (this) {
+                other = otherTables;
+                if (other == null) {
+                    other = new TableMetrics(clazz, registry, recorders,
+                            "table-" + TableMetrics.OTHER, maxFamilies);
+                    otherTables = other;
+                }
+            }
+        }
+        return other;
+    }
+}
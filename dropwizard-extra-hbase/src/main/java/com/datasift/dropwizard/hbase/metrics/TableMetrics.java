@@ -0,0 +1,177 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.hbase.Operation;
+import com.datasift.dropwizard.metrics.LatencyRecorder;
+import com.datasift.dropwizard.metrics.LatencyRecorderFactory;
+import com.google.common.base.Charsets;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.Bytes;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The {@link LatencyRecorder}s and {@link Histogram}s of requests for a single table, or a single
+ * column family of a table.
+ * <p/>
+ * A {@link LatencyRecorder} of successful requests is created for each {@link Operation} the first
+ * time it is requested, so only the operations actually made on the table are reported. The
+ * metrics of each column family are created the first time the family is requested, up to a
+ * maximum number of families; requests for any further families share a single set of metrics,
+ * scoped by "other".
+ *
+ * @see TableInstrumentation
+ */
+public class TableMetrics {
+
+    /**
+     * The name of the shared metrics for families beyond the maximum.
+     */
+    static final String OTHER = "other";
+
+    private final Class<? extends HBaseClient> clazz;
+    private final MetricsRegistry registry;
+    private final LatencyRecorderFactory recorders;
+    private final String scope;
+    private final int maxFamilies;
+
+    private final AtomicReferenceArray<LatencyRecorder> latencies =
+            new AtomicReferenceArray<LatencyRecorder>(Operation.values().length);
+    private final Histogram requestBytes;
+    private final Histogram responseBytes;
+
+    private final ConcurrentMap<byte[], TableMetrics> families =
+            new ConcurrentSkipListMap<byte[], TableMetrics>(Bytes.MEMCMP);
+    private final AtomicInteger numFamilies = new AtomicInteger();
+    private volatile TableMetrics otherFamilies = null;
+
+    /**
+     * Creates the metrics for a table, or column family, registered with the given scope.
+     *
+     * @param clazz the class to register the metrics for.
+     * @param registry the {@link MetricsRegistry} to register the metrics with.
+     * @param recorders the {@link LatencyRecorderFactory} to create {@link LatencyRecorder}s with.
+     * @param scope the scope to register the metrics with.
+     * @param maxFamilies the maximum number of column families to create metrics for; or zero to
+     *                    not create metrics for column families.
+     */
+    TableMetrics(final Class<? extends HBaseClient> clazz,
+                 final MetricsRegistry registry,
+                 final LatencyRecorderFactory recorders,
+                 final String scope,
+                 final int maxFamilies) {
+        this.clazz = clazz;
+        this.registry = registry;
+        this.recorders = recorders;
+        this.scope = scope;
+        this.maxFamilies = maxFamilies;
+        this.requestBytes = registry.newHistogram(clazz, "requestBytes", scope, true);
+        this.responseBytes = registry.newHistogram(clazz, "responseBytes", scope, true);
+    }
+
+    /**
+     * Gets the {@link LatencyRecorder} for the given {@link Operation}, creating it if necessary.
+     *
+     * @param operation the {@link Operation} to get the {@link LatencyRecorder} for.
+     *
+     * @return the {@link LatencyRecorder} for the {@link Operation}.
+     */
+    public LatencyRecorder getLatency(final Operation operation) {
+        final int i = operation.ordinal();
+        final LatencyRecorder latency = latencies.get(i);
+        if (latency != null) {
+            return latency;
+        }
+
+        // recorders register their metrics when created, so only one may be created
+        synchronized (latencies) {
+            if (latencies.get(i) == null) {
+                latencies.set(i, recorders.newRecorder(
+                        registry, new MetricName(clazz, operation.getName(), scope)));
+            }
+            return latencies.get(i);
+        }
+    }
+
+    /**
+     * Gets the {@link Histogram} of the size, in bytes, of the edits sent to the table.
+     *
+     * @return the {@link Histogram} of the size, in bytes, of each request.
+     */
+    public Histogram getRequestBytes() {
+        return requestBytes;
+    }
+
+    /**
+     * Gets the {@link Histogram} of the size, in bytes, of the cells read from the table.
+     *
+     * @return the {@link Histogram} of the size, in bytes, of each response.
+     */
+    public Histogram getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * Gets the metrics for the given column family of this table, creating them if necessary.
+     *
+     * @param family the column family to get the metrics for; may be null.
+     *
+     * @return the metrics for the column family; or null if the family is null, or metrics are not
+     *         created for column families.
+     */
+    public TableMetrics forFamily(final byte[] family) {
+        if (family == null || maxFamilies <= 0) {
+            return null;
+        }
+
+        final TableMetrics metrics = families.get(family);
+        if (metrics != null) {
+            return metrics;
+        }
+
+        if (numFamilies.incrementAndGet() > maxFamilies) {
+            numFamilies.decrementAndGet();
+            return otherFamilies();
+        }
+
+        final TableMetrics created = new TableMetrics(
+                clazz, registry, recorders, scope + "-" + new String(family, Charsets.UTF_8), 0);
+        final TableMetrics existing = families.putIfAbsent(family, created);
+        if (existing != null) {
+            numFamilies.decrementAndGet();
+            return existing;
+        }
+        return created;
+    }
+
+    /**
+     * Gets the number of column families that have their own metrics.
+     *
+     * @return the number of column families that have their own metrics.
+     */
+    public int getFamilies() {
+        return families.size();
+    }
+
+    /**
+     * Gets the shared metrics for families beyond the maximum, creating them if necessary.
+     */
+    private TableMetrics otherFamilies() {
+        TableMetrics other = otherFamilies;
+        if (other == null) {
+            synchronized (this) {
+                other = otherFamilies;
+                if (other == null) {
+                    other = new TableMetrics(clazz, registry, recorders, scope + "-" + OTHER, 0);
+                    otherFamilies = other;
+                }
+            }
+        }
+        return other;
+    }
+}
@@ -0,0 +1,554 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import com.datasift.dropwizard.hbase.util.KeyValues;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.core.Clock;
+import org.hbase.async.KeyValue;
+import org.hbase.async.ScanFilter;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link RowScanner} that adapts the number of rows fetched in each batch to the size of the
+ * rows being scanned.
+ * <p/>
+ * Each call to {@link #nextRows()} fetches a batch sized so that its response approaches the
+ * target size, based on the average size of the rows fetched so far. If a batch takes longer than
+ * the latency budget to fetch, the next batch is shrunk in proportion; otherwise it may grow to at
+ * most twice the size of the previous batch, so that a few unusually narrow rows can't cause a
+ * sudden spike in the size of a response.
+ * <p/>
+ * The size of each batch never exceeds the {@link #setMaxNumRows(int) maximum number of rows},
+ * which defaults to {@link #DEFAULT_MAX_ROWS}.
+ */
+public class AdaptiveRowScanner implements RowScanner {
+
+    /**
+     * The number of rows to fetch in the first batch, before the size of the rows is known.
+     */
+    public static final int INITIAL_ROWS = 128;
+
+    /**
+     * The default maximum number of rows to fetch in each batch.
+     */
+    public static final int DEFAULT_MAX_ROWS = 100000;
+
+    /**
+     * The weight given to each batch in the moving average of the size of rows.
+     */
+    private static final double ALPHA = 0.5;
+
+    private final RowScanner scanner;
+    private final long targetBytes;
+    private final long latencyBudget;
+    private final Clock clock;
+
+    private volatile int maxRows = DEFAULT_MAX_ROWS;
+    private volatile int batchRows = INITIAL_ROWS;
+    private volatile long batchBytes = 0;
+    private volatile double bytesPerRow = 0;
+
+    /**
+     * Creates a new {@link AdaptiveRowScanner} for the given underlying {@link RowScanner}.
+     *
+     * @param scanner       the underlying {@link RowScanner} implementation
+     * @param targetSize    the target size of the response for each batch
+     * @param latencyBudget the maximum time to fetch each batch; or zero for no limit
+     */
+    public AdaptiveRowScanner(final RowScanner scanner,
+                              final Size targetSize,
+                              final Duration latencyBudget) {
+        this(scanner, targetSize, latencyBudget, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a new {@link AdaptiveRowScanner} for the given underlying {@link RowScanner}, timing
+     * batches with the given {@link Clock}.
+     *
+     * @param scanner       the underlying {@link RowScanner} implementation
+     * @param targetSize    the target size of the response for each batch
+     * @param latencyBudget the maximum time to fetch each batch; or zero for no limit
+     * @param clock         the {@link Clock} to time batches with
+     */
+    public AdaptiveRowScanner(final RowScanner scanner,
+                              final Size targetSize,
+                              final Duration latencyBudget,
+                              final Clock clock) {
+        this.scanner = scanner;
+        this.targetBytes = targetSize.toBytes();
+        this.latencyBudget = latencyBudget.toNanoseconds();
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the number of rows that will be requested in the next batch.
+     *
+     * @return the number of rows that will be requested in the next batch
+     */
+    public int getBatchRows() {
+        return batchRows;
+    }
+
+    /**
+     * Gets the size of the last batch of rows fetched, in bytes.
+     *
+     * @return the size of the last batch of rows fetched, in bytes
+     */
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+
+    /**
+     * Set the first key in the range to scan.
+     *
+     * @param key the first key to scan from (inclusive)
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setStartKey(byte[])
+     */
+    public RowScanner setStartKey(final byte[] key) {
+        scanner.setStartKey(key);
+        return this;
+    }
+
+    /**
+     * Set the first key in the range to scan.
+     *
+     * @param key the first key to scan from (inclusive)
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setStartKey(String)
+     */
+    public RowScanner setStartKey(final String key) {
+        scanner.setStartKey(key);
+        return this;
+    }
+
+    /**
+     * Set the end key in the range to scan.
+     *
+     * @param key the end key to scan until (exclusive)
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setStopKey(byte[])
+     */
+    public RowScanner setStopKey(final byte[] key) {
+        scanner.setStopKey(key);
+        return this;
+    }
+
+    /**
+     * Set the end key in the range to scan.
+     *
+     * @param key the end key to scan until (exclusive)
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setStopKey(byte[])
+     */
+    public RowScanner setStopKey(final String key) {
+        scanner.setStopKey(key);
+        return this;
+    }
+
+    /**
+     * Set the family to scan.
+     *
+     * @param family the family to scan
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setFamily(byte[])
+     */
+    public RowScanner setFamily(final byte[] family) {
+        scanner.setFamily(family);
+        return this;
+    }
+
+    /**
+     * Set the family to scan.
+     *
+     * @param family the family to scan
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setFamily(String)
+     */
+    public RowScanner setFamily(final String family) {
+        scanner.setFamily(family);
+        return this;
+    }
+
+    /**
+     * Set the qualifier to select from cells
+     *
+     * @param qualifier the family to select from cells
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setQualifier(byte[])
+     */
+    public RowScanner setQualifier(final byte[] qualifier) {
+        scanner.setQualifier(qualifier);
+        return this;
+    }
+
+    /**
+     * Set the qualifier to select from cells
+     *
+     * @param qualifier the family to select from cells
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setQualifier(String)
+     */
+    public RowScanner setQualifier(final String qualifier) {
+        scanner.setQualifier(qualifier);
+        return this;
+    }
+
+    public RowScanner setFilters(final ScanFilter... scanFilters) {
+        scanner.setFilters(scanFilters);
+        return this;
+    }
+
+    public RowScanner setFilters(final List<ScanFilter> scanFilters) {
+        scanner.setFilters(scanFilters);
+        return this;
+    }
+
+    /**
+     * Set a regular expression to filter keys being scanned.
+     *
+     * @param regexp a regular expression to filter keys with
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setKeyRegexp(String)
+     */
+    public RowScanner setKeyRegexp(final String regexp) {
+        scanner.setKeyRegexp(regexp);
+        return this;
+    }
+
+    /**
+     * Set a regular expression to filter keys being scanned.
+     *
+     * @param regexp a regular expression to filter keys with
+     * @param charset the charset to decode the keys as
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setKeyRegexp(String)
+     */
+    public RowScanner setKeyRegexp(final String regexp, Charset charset) {
+        scanner.setKeyRegexp(regexp, charset);
+        return this;
+    }
+
+    /*public RowScanner setKeyRegexp(byte[] regexp, Charset charset) {
+        scanner.setKeyRegexp(regexp, charset);
+        return this;
+    }
+
+    public RowScanner setKeyRegexp(byte[] regexp) {
+        return setKeyRegexp(regexp, Charsets.ISO_8859_1);
+    }
+
+    public byte[] getKeyRegexp(byte[] regexp, Charset charset) {
+        return scanner.getKeyRegexp(regexp, charset);
+    }
+
+    public byte[] getKeyRegexp(byte[] regexp) {
+        return this.getKeyRegexp(regexp, Charsets.ISO_8859_1);
+    }
+
+    public byte[] getKeyRegexp(String regexp, Charset charset) {
+        return this.getKeyRegexp(Bytes.UTF8(regexp), Charsets.ISO_8859_1);
+    }
+
+    public RowScanner setColumnRange(byte[] minColumn, byte[] maxColumn) {
+        return this.setColumnRange(minColumn, true, maxColumn, true);
+    }
+
+    public RowScanner setColumnRange(byte[] minColumn, boolean minColumnInclusive, byte[] maxColumn, boolean maxColumnInclusive) {
+        scanner.setColumnRange(minColumn, minColumnInclusive, maxColumn, maxColumnInclusive);
+        return this;
+    }
+
+    public byte[] getColumnRange(byte[] minColumn, byte[] maxColumn) {
+        return this.getColumnRange(minColumn, true, maxColumn, true);
+    }
+
+    public byte[] getColumnRange(byte[] minColumn, boolean minColumnInclusive, byte[] maxColumn, boolean maxColumnInclusive) {
+        return scanner.getColumnRange(minColumn, minColumnInclusive, maxColumn, maxColumnInclusive);
+    }
+
+    public RowScanner setFilterList(byte[]... filters) {
+        scanner.setFilterList(filters);
+        return this;
+    }
+
+    public byte[] getPrefix(final byte[] prefix) {
+        return scanner.getPrefix(prefix);
+    }
+
+    public byte[] getPrefix(final String prefix) {
+        return getPrefix(prefix.getBytes());
+    }
+
+    public byte[] getColumnPrefix(String prefix) {
+        return getColumnPrefix(prefix.getBytes());
+    }
+
+    public byte[] getColumnPrefix(byte[] prefix) {
+        return scanner.getColumnPrefix(prefix);
+    }
+
+    public RowScanner setPrefix(final String prefix) {
+        return setPrefix(prefix.getBytes());
+    }
+
+    public RowScanner setPrefix(final byte[] prefix) {
+        scanner.setPrefix(prefix);
+        return this;
+    }
+
+    public RowScanner setColumnPrefix(final String prefix) {
+        return setColumnPrefix(prefix.getBytes());
+    }
+
+    public RowScanner setColumnPrefix(final byte[] prefix) {
+        scanner.setColumnPrefix(prefix);
+        return this;
+    }*/
+
+    /**
+     * Set whether to use the server-side block cache during the scan.
+     *
+     * @param populateBlockcache whether to use the server-side block cache
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setServerBlockCache(boolean)
+     */
+    public RowScanner setServerBlockCache(final boolean populateBlockcache) {
+        scanner.setServerBlockCache(populateBlockcache);
+        return this;
+    }
+
+    /**
+     * Set the maximum number of rows to fetch in each batch.
+     *
+     * @param maxRows the maximum number of rows to fetch in each batch
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setMaxNumRows(int)
+     */
+    public RowScanner setMaxNumRows(final int maxRows) {
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("maxRows must be at least 1: " + maxRows);
+        }
+        this.maxRows = maxRows;
+        this.batchRows = Math.min(batchRows, maxRows);
+        return this;
+    }
+
+    /**
+     * Set the maximum number of {@link KeyValue}s to fetch in each batch.
+     *
+     * @param maxKeyValues the maximum number of {@link KeyValue}s to fetch in each batch
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setMaxNumKeyValues(int)
+     */
+    public RowScanner setMaxNumKeyValues(final int maxKeyValues) {
+        scanner.setMaxNumKeyValues(maxKeyValues);
+        return this;
+    }
+
+    /**
+     * Sets the minimum timestamp of the cells to yield.
+     *
+     * @param timestamp the minimum timestamp of the cells to yield
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setMinTimestamp(long)
+     */
+    public RowScanner setMinTimestamp(final long timestamp) {
+        scanner.setMinTimestamp(timestamp);
+        return this;
+    }
+
+    /**
+     * Gets the minimum timestamp of the cells to yield.
+     *
+     * @return the minimum timestamp of the cells to yield
+     *
+     * @see RowScanner#getMinTimestamp()
+     */
+    public long getMinTimestamp() {
+        return scanner.getMinTimestamp();
+    }
+
+    /**
+     * Sets the maximum timestamp of the cells to yield.
+     *
+     * @param timestamp the maximum timestamp of the cells to yield
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setMaxTimestamp(long)
+     */
+    public RowScanner setMaxTimestamp(final long timestamp) {
+        scanner.setMaxTimestamp(timestamp);
+        return this;
+    }
+
+    /**
+     * Gets the maximum timestamp of the cells to yield.
+     *
+     * @return the maximum timestamp of the cells to yield
+     *
+     * @see RowScanner#getMaxTimestamp()
+     */
+    public long getMaxTimestamp() {
+        return scanner.getMaxTimestamp();
+    }
+
+    /**
+     * Sets the timerange of the cells to yield.
+     *
+     * @param minTimestamp the minimum timestamp of the cells to yield
+     * @param maxTimestamp the maximum timestamp of the cells to yield
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setMinTimestamp(long)
+     */
+    public RowScanner setTimeRange(final long minTimestamp, final long maxTimestamp) {
+        scanner.setTimeRange(minTimestamp, maxTimestamp);
+        return this;
+    }
+
+    /**
+     * Get the key of the current row being scanned.
+     *
+     * @return the key of the current row
+     *
+     * @see RowScanner#getCurrentKey()
+     */
+    public byte[] getCurrentKey() {
+        return scanner.getCurrentKey();
+    }
+
+    /**
+     *
+     * @param attributes
+     * @return
+     */
+    public RowScanner setAttributes(Map<String, String> attributes) {
+        scanner.setAttributes(attributes);
+        return this;
+    }
+
+    @Override
+    public RowScanner addAttribute(String key, String value) {
+        scanner.addAttribute(key, value);
+        return this;
+    }
+
+    @Override
+    public RowScanner addAttribute(String key, byte[] value) {
+        scanner.addAttribute(key, value);
+        return this;
+    }
+
+    /**
+     * Closes this Scanner
+     *
+     * @return a Deferred indicating when the close operation has completed
+     *
+     * @see RowScanner#close()
+     */
+    public Deferred<Object> close() {
+        return scanner.close();
+    }
+
+    /**
+     * Scans the next batch of rows, sized to approach the target size of response.
+     *
+     * @return next batch of rows that were scanned
+     *
+     * @see RowScanner#nextRows()
+     */
+    public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows() {
+        return fetch(batchRows, true);
+    }
+
+    /**
+     * Scans the next batch of rows, with an explicit number of rows.
+     * <p/>
+     * The batch is still observed to refine the estimated size of rows, but the size of subsequent
+     * batches is not otherwise affected.
+     *
+     * @param rows maximum number of rows to retrieve in the batch
+     *
+     * @return next batch of rows that were scanned
+     *
+     * @see RowScanner#nextRows(int)
+     */
+    public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows(final int rows) {
+        return fetch(rows, false);
+    }
+
+    private Deferred<ArrayList<ArrayList<KeyValue>>> fetch(final int rows, final boolean adapt) {
+        final long start = clock.tick();
+        return scanner.nextRows(rows).addCallback(
+                new Callback<ArrayList<ArrayList<KeyValue>>, ArrayList<ArrayList<KeyValue>>>() {
+                    public ArrayList<ArrayList<KeyValue>> call(
+                            final ArrayList<ArrayList<KeyValue>> batch) {
+                        if (batch != null && !batch.isEmpty()) {
+                            observe(rows, batch, clock.tick() - start, adapt);
+                        }
+                        return batch;
+                    }
+                });
+    }
+
+    /**
+     * Refines the estimated size of rows from the given batch and, if the batch was sized by this
+     * scanner, sizes the next batch.
+     */
+    private void observe(final int requested,
+                         final ArrayList<ArrayList<KeyValue>> batch,
+                         final long elapsed,
+                         final boolean adapt) {
+        final long bytes = KeyValues.sizeOfRows(batch);
+        final double observed = (double) bytes / batch.size();
+        bytesPerRow = bytesPerRow == 0 ? observed : ALPHA * observed + (1 - ALPHA) * bytesPerRow;
+        batchBytes = bytes;
+
+        if (!adapt) {
+            return;
+        }
+
+        double next = Math.min(targetBytes / bytesPerRow, requested * 2.0);
+        if (latencyBudget > 0 && elapsed > latencyBudget) {
+            next = Math.min(next, requested * ((double) latencyBudget / elapsed));
+        }
+        batchRows = (int) Math.max(1, Math.min(maxRows, next));
+    }
+}
@@ -1,7 +1,9 @@
 package com.datasift.dropwizard.hbase.scanner;
 
 import com.datasift.dropwizard.hbase.BoundedHBaseClient;
-import com.datasift.dropwizard.hbase.util.PermitReleasingCallback;
+import com.datasift.dropwizard.hbase.limiter.BlockingRequestLimiter;
+import com.datasift.dropwizard.hbase.limiter.RequestLimiter;
+import com.stumbleupon.async.Callback;
 import com.stumbleupon.async.Deferred;
 import org.hbase.async.KeyValue;
 import org.hbase.async.ScanFilter;
@@ -13,14 +15,14 @@ import java.util.Map;
 import java.util.concurrent.Semaphore;
 
 /**
- * A Scanner that constraints concurrent requests with a {@link Semaphore}.
+ * A Scanner that constraints concurrent requests with a {@link RequestLimiter}.
  * <p/>
  * To obtain an instance of a {@link RowScanner}, call {@link BoundedHBaseClient#scan(byte[])}.
  */
 public class BoundedRowScanner implements RowScanner {
 
     private final RowScanner scanner;
-    private final Semaphore semaphore;
+    private final RequestLimiter limiter;
 
     /**
      * Creates a new {@link BoundedRowScanner} for the given underlying {@link RowScanner},
@@ -30,8 +32,19 @@ public class BoundedRowScanner implements RowScanner {
      * @param semaphore a {@link Semaphore} to contrains the maximum number of concurrent requests
      */
     public BoundedRowScanner(final RowScanner scanner, final Semaphore semaphore) {
+        this(scanner, new BlockingRequestLimiter(semaphore));
+    }
+
+    /**
+     * Creates a new {@link BoundedRowScanner} for the given underlying {@link RowScanner},
+     * constrained by the given {@link RequestLimiter}.
+     *
+     * @param scanner the underlying {@link RowScanner} implementation
+     * @param limiter a {@link RequestLimiter} to admit concurrent requests with
+     */
+    public BoundedRowScanner(final RowScanner scanner, final RequestLimiter limiter) {
         this.scanner = scanner;
-        this.semaphore = semaphore;
+        this.limiter = limiter;
     }
 
     /**
@@ -404,15 +417,16 @@ public class BoundedRowScanner implements RowScanner {
 
     /**
      * Closes this Scanner
+     * <p/>
+     * Closing is not admitted by the {@link RequestLimiter}, so that a full queue can never
+     * reject it and leak the scanner on the server.
      *
      * @return a Deferred indicating when the close operation has completed
      *
      * @see RowScanner#close()
      */
     public Deferred<Object> close() {
-        semaphore.acquireUninterruptibly();
-        return scanner.close()
-                .addBoth(new PermitReleasingCallback<Object>(semaphore));
+        return scanner.close();
     }
 
     /**
@@ -423,9 +437,11 @@ public class BoundedRowScanner implements RowScanner {
      * @see RowScanner#nextRows()
      */
     public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows() {
-        semaphore.acquireUninterruptibly();
-        return scanner.nextRows()
-                .addBoth(new PermitReleasingCallback<ArrayList<ArrayList<KeyValue>>>(semaphore));
+        return limiter.submit(new Callback<Deferred<ArrayList<ArrayList<KeyValue>>>, Object>() {
+            public Deferred<ArrayList<ArrayList<KeyValue>>> call(final Object arg) {
+                return scanner.nextRows();
+            }
+        });
     }
 
     /**
@@ -438,8 +454,10 @@ public class BoundedRowScanner implements RowScanner {
      * @see RowScanner#nextRows(int)
      */
     public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows(final int rows) {
-        semaphore.acquireUninterruptibly();
-        return scanner.nextRows(rows)
-                .addBoth(new PermitReleasingCallback<ArrayList<ArrayList<KeyValue>>>(semaphore));
+        return limiter.submit(new Callback<Deferred<ArrayList<ArrayList<KeyValue>>>, Object>() {
+            public Deferred<ArrayList<ArrayList<KeyValue>>> call(final Object arg) {
+                return scanner.nextRows(rows);
+            }
+        });
     }
 }
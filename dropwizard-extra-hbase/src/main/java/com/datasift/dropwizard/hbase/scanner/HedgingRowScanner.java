@@ -0,0 +1,294 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import com.datasift.dropwizard.hbase.HedgingHBaseClient;
+import com.datasift.dropwizard.hbase.util.Hedge;
+import com.datasift.dropwizard.hbase.util.HedgeDelay;
+import com.google.common.base.Supplier;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import org.hbase.async.KeyValue;
+import org.hbase.async.ScanFilter;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link RowScanner} that hedges its first batch of rows against a replica cluster.
+ * <p/>
+ * The scan is configured on a scanner for each cluster. The first batch is requested from the
+ * primary and, if it is slow to respond, from the replica too; the remaining batches are then
+ * requested only from whichever cluster responded first, and the scanner of the other is closed.
+ *
+ * @see HedgingHBaseClient
+ */
+public class HedgingRowScanner implements RowScanner {
+
+    private final HedgingHBaseClient client;
+    private final HedgeDelay delay;
+    private final RowScanner primary;
+    private final RowScanner replica;
+
+    private volatile RowScanner scanner = null;
+    private volatile Deferred<ArrayList<ArrayList<KeyValue>>> dispatched = null;
+    private volatile Deferred<ArrayList<ArrayList<KeyValue>>> hedged = null;
+
+    /**
+     * Creates a new {@link HedgingRowScanner} over the given scanners of each cluster.
+     *
+     * @param client the {@link HedgingHBaseClient} to hedge the first batch with.
+     * @param delay the {@link HedgeDelay} for the table scanned.
+     * @param primary the {@link RowScanner} of the primary cluster.
+     * @param replica the {@link RowScanner} of the replica cluster.
+     */
+    public HedgingRowScanner(final HedgingHBaseClient client,
+                             final HedgeDelay delay,
+                             final RowScanner primary,
+                             final RowScanner replica) {
+        this.client = client;
+        this.delay = delay;
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    public RowScanner setStartKey(final byte[] key) {
+        primary.setStartKey(key);
+        replica.setStartKey(key);
+        return this;
+    }
+
+    public RowScanner setStartKey(final String key) {
+        primary.setStartKey(key);
+        replica.setStartKey(key);
+        return this;
+    }
+
+    public RowScanner setStopKey(final byte[] key) {
+        primary.setStopKey(key);
+        replica.setStopKey(key);
+        return this;
+    }
+
+    public RowScanner setStopKey(final String key) {
+        primary.setStopKey(key);
+        replica.setStopKey(key);
+        return this;
+    }
+
+    public RowScanner setFamily(final byte[] family) {
+        primary.setFamily(family);
+        replica.setFamily(family);
+        return this;
+    }
+
+    public RowScanner setFamily(final String family) {
+        primary.setFamily(family);
+        replica.setFamily(family);
+        return this;
+    }
+
+    public RowScanner setQualifier(final byte[] qualifier) {
+        primary.setQualifier(qualifier);
+        replica.setQualifier(qualifier);
+        return this;
+    }
+
+    public RowScanner setQualifier(final String qualifier) {
+        primary.setQualifier(qualifier);
+        replica.setQualifier(qualifier);
+        return this;
+    }
+
+    public RowScanner setFilters(final ScanFilter... scanFilters) {
+        primary.setFilters(scanFilters);
+        replica.setFilters(scanFilters);
+        return this;
+    }
+
+    public RowScanner setFilters(final List<ScanFilter> scanFilters) {
+        primary.setFilters(scanFilters);
+        replica.setFilters(scanFilters);
+        return this;
+    }
+
+    public RowScanner setKeyRegexp(final String regexp) {
+        primary.setKeyRegexp(regexp);
+        replica.setKeyRegexp(regexp);
+        return this;
+    }
+
+    public RowScanner setKeyRegexp(final String regexp, final Charset charset) {
+        primary.setKeyRegexp(regexp, charset);
+        replica.setKeyRegexp(regexp, charset);
+        return this;
+    }
+
+    public RowScanner setServerBlockCache(final boolean populateBlockcache) {
+        primary.setServerBlockCache(populateBlockcache);
+        replica.setServerBlockCache(populateBlockcache);
+        return this;
+    }
+
+    public RowScanner setMaxNumRows(final int maxRows) {
+        primary.setMaxNumRows(maxRows);
+        replica.setMaxNumRows(maxRows);
+        return this;
+    }
+
+    public RowScanner setMaxNumKeyValues(final int maxKeyValues) {
+        primary.setMaxNumKeyValues(maxKeyValues);
+        replica.setMaxNumKeyValues(maxKeyValues);
+        return this;
+    }
+
+    public RowScanner setMinTimestamp(final long timestamp) {
+        primary.setMinTimestamp(timestamp);
+        replica.setMinTimestamp(timestamp);
+        return this;
+    }
+
+    public long getMinTimestamp() {
+        return primary.getMinTimestamp();
+    }
+
+    public RowScanner setMaxTimestamp(final long timestamp) {
+        primary.setMaxTimestamp(timestamp);
+        replica.setMaxTimestamp(timestamp);
+        return this;
+    }
+
+    public long getMaxTimestamp() {
+        return primary.getMaxTimestamp();
+    }
+
+    public RowScanner setTimeRange(final long minTimestamp, final long maxTimestamp) {
+        primary.setTimeRange(minTimestamp, maxTimestamp);
+        replica.setTimeRange(minTimestamp, maxTimestamp);
+        return this;
+    }
+
+    /**
+     * Get the key of the current row being scanned, by whichever cluster is being scanned.
+     *
+     * @return the key of the current row.
+     */
+    public byte[] getCurrentKey() {
+        return scanner == null ? primary.getCurrentKey() : scanner.getCurrentKey();
+    }
+
+    public RowScanner setAttributes(final Map<String, String> attributes) {
+        primary.setAttributes(attributes);
+        replica.setAttributes(attributes);
+        return this;
+    }
+
+    public RowScanner addAttribute(final String key, final String value) {
+        primary.addAttribute(key, value);
+        replica.addAttribute(key, value);
+        return this;
+    }
+
+    public RowScanner addAttribute(final String key, final byte[] value) {
+        primary.addAttribute(key, value);
+        replica.addAttribute(key, value);
+        return this;
+    }
+
+    /**
+     * Closes this scanner, and the scanner of each cluster that is still open.
+     *
+     * @return a Deferred indicating when the close operation has completed.
+     */
+    public Deferred<Object> close() {
+        if (scanner != null) {
+            return scanner.close();
+        }
+        final List<Deferred<Object>> closes = new ArrayList<Deferred<Object>>(2);
+        closes.add(primary.close());
+        closes.add(replica.close());
+        return Deferred.group(closes)
+                .addCallback(new Callback<Object, ArrayList<Object>>() {
+                    public Object call(final ArrayList<Object> arg) {
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Fetches the next batch of rows; hedging the first batch against the replica.
+     *
+     * @return the next batch of rows; or null if there are no more rows to scan.
+     */
+    public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows() {
+        if (scanner != null) {
+            return scanner.nextRows();
+        }
+        return hedge(new Supplier<Deferred<ArrayList<ArrayList<KeyValue>>>>() {
+            public Deferred<ArrayList<ArrayList<KeyValue>>> get() {
+                return dispatched = primary.nextRows();
+            }
+        }, new Supplier<Deferred<ArrayList<ArrayList<KeyValue>>>>() {
+            public Deferred<ArrayList<ArrayList<KeyValue>>> get() {
+                return hedged = replica.nextRows();
+            }
+        });
+    }
+
+    /**
+     * Fetches the next batch of rows, of up to the given number of rows; hedging the first batch
+     * against the replica.
+     *
+     * @param rows the maximum number of rows to fetch.
+     *
+     * @return the next batch of rows; or null if there are no more rows to scan.
+     */
+    public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows(final int rows) {
+        if (scanner != null) {
+            return scanner.nextRows(rows);
+        }
+        return hedge(new Supplier<Deferred<ArrayList<ArrayList<KeyValue>>>>() {
+            public Deferred<ArrayList<ArrayList<KeyValue>>> get() {
+                return dispatched = primary.nextRows(rows);
+            }
+        }, new Supplier<Deferred<ArrayList<ArrayList<KeyValue>>>>() {
+            public Deferred<ArrayList<ArrayList<KeyValue>>> get() {
+                return hedged = replica.nextRows(rows);
+            }
+        });
+    }
+
+    private Deferred<ArrayList<ArrayList<KeyValue>>> hedge(
+            final Supplier<Deferred<ArrayList<ArrayList<KeyValue>>>> first,
+            final Supplier<Deferred<ArrayList<ArrayList<KeyValue>>>> second) {
+        final Hedge<ArrayList<ArrayList<KeyValue>>> hedge = client.hedge(delay, first, second);
+        return hedge.getResult().addCallback(
+                new Callback<ArrayList<ArrayList<KeyValue>>, ArrayList<ArrayList<KeyValue>>>() {
+                    public ArrayList<ArrayList<KeyValue>> call(
+                            final ArrayList<ArrayList<KeyValue>> rows) {
+                        choose(hedge.getWinner() == HedgingHBaseClient.Side.REPLICA);
+                        return rows;
+                    }
+                });
+    }
+
+    // scans the rest from the winning scanner, and closes the other once it has responded
+    @SuppressWarnings("unchecked")
+    private void choose(final boolean replicaWon) {
+        scanner = replicaWon ? replica : primary;
+        final RowScanner loser = replicaWon ? primary : replica;
+        // the response may be either the rows or an Exception
+        final Deferred<Object> pending =
+                (Deferred<Object>) (Deferred<?>) (replicaWon ? dispatched : hedged);
+        if (pending == null) {
+            loser.close();
+        } else {
+            pending.addBoth(new Callback<Object, Object>() {
+                public Object call(final Object arg) {
+                    loser.close();
+                    return arg;
+                }
+            });
+        }
+    }
+}
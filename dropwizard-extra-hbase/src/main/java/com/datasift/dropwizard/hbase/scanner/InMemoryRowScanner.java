@@ -0,0 +1,443 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.datasift.dropwizard.hbase.memory.InjectedLatency;
+import com.datasift.dropwizard.hbase.memory.MemTable;
+import com.datasift.dropwizard.hbase.util.StripedLong;
+import com.google.common.base.Charsets;
+import com.stumbleupon.async.Deferred;
+import org.hbase.async.KeyValue;
+import org.hbase.async.ScanFilter;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Client for scanning over a selection of rows of a {@link MemTable}.
+ * <p/>
+ * To obtain an instance of an {@link InMemoryRowScanner}, call {@link
+ * com.datasift.dropwizard.hbase.InMemoryHBaseClient#scan(byte[])}.
+ * <p/>
+ * The range of keys, family, qualifier, key regular expression, time range and batch sizes of
+ * the scan are honoured as they would be by HBase; {@link ScanFilter}s are not supported, and a
+ * scanner given any fails each batch with an {@link UnsupportedOperationException}. Each
+ * batch is read from the table as it is at the time of the request for it, and rows are never
+ * split between batches.
+ */
+public class InMemoryRowScanner implements RowScanner {
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final int DEFAULT_MAX_NUM_ROWS = 128;
+    private static final int DEFAULT_MAX_NUM_KEY_VALUES = 4096;
+
+    private final MemTable table;
+    private final InjectedLatency latency;
+    private final StripedLong scans;
+    private final Map<String, byte[]> attributes = new HashMap<String, byte[]>();
+
+    private byte[] startKey = EMPTY;
+    private byte[] stopKey = EMPTY;
+    private byte[] family = null;
+    private byte[][] qualifiers = null;
+    private Pattern keyRegexp = null;
+    private Charset keyCharset = Charsets.ISO_8859_1;
+    private long minTimestamp = 0;
+    private long maxTimestamp = Long.MAX_VALUE;
+    private int maxNumRows = DEFAULT_MAX_NUM_ROWS;
+    private int maxNumKeyValues = DEFAULT_MAX_NUM_KEY_VALUES;
+
+    private byte[] currentKey = null;
+    private boolean exhausted = false;
+    private Exception failure = null;
+
+    /**
+     * Creates a new {@link InMemoryRowScanner} for the given {@link MemTable}.
+     *
+     * @param table the {@link MemTable} to scan.
+     * @param latency the {@link InjectedLatency} to delay each batch of rows by.
+     * @param scans the count of batches requested by all scanners, to increment for each batch.
+     */
+    public InMemoryRowScanner(final MemTable table,
+                              final InjectedLatency latency,
+                              final StripedLong scans) {
+        this.table = table;
+        this.latency = latency;
+        this.scans = scans;
+    }
+
+    /**
+     * Creates a new {@link InMemoryRowScanner} that fails each batch with the given error, such
+     * as for a table that does not exist.
+     *
+     * @param failure the error to fail each batch with.
+     * @param latency the {@link InjectedLatency} to delay each batch of rows by.
+     * @param scans the count of batches requested by all scanners, to increment for each batch.
+     */
+    public InMemoryRowScanner(final Exception failure,
+                              final InjectedLatency latency,
+                              final StripedLong scans) {
+        this((MemTable) null, latency, scans);
+        this.failure = failure;
+    }
+
+    /**
+     * Set the first key in the range to scan.
+     *
+     * @param key the first key to scan from (inclusive).
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setStartKey(final byte[] key) {
+        startKey = key;
+        return this;
+    }
+
+    /**
+     * Set the first key in the range to scan.
+     *
+     * @param key the first key to scan from (inclusive).
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setStartKey(final String key) {
+        return setStartKey(key.getBytes(Charsets.ISO_8859_1));
+    }
+
+    /**
+     * Set the end key in the range to scan.
+     *
+     * @param key the end key to scan until (exclusive).
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setStopKey(final byte[] key) {
+        stopKey = key;
+        return this;
+    }
+
+    /**
+     * Set the end key in the range to scan.
+     *
+     * @param key the end key to scan until (exclusive).
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setStopKey(final String key) {
+        return setStopKey(key.getBytes(Charsets.ISO_8859_1));
+    }
+
+    /**
+     * Set the family to scan.
+     *
+     * @param family the family to scan.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setFamily(final byte[] family) {
+        this.family = family;
+        return this;
+    }
+
+    /**
+     * Set the family to scan.
+     *
+     * @param family the family to scan.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setFamily(final String family) {
+        return setFamily(family.getBytes(Charsets.ISO_8859_1));
+    }
+
+    /**
+     * Set the qualifier to select from cells in the scan.
+     *
+     * @param qualifier the qualifier of the cells to select in the scan.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setQualifier(final byte[] qualifier) {
+        this.qualifiers = new byte[][] { qualifier };
+        return this;
+    }
+
+    /**
+     * Set the qualifier to select from cells in the scan.
+     *
+     * @param qualifier the qualifier of the cells to select in the scan.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setQualifier(final String qualifier) {
+        return setQualifier(qualifier.getBytes(Charsets.ISO_8859_1));
+    }
+
+    /**
+     * {@link ScanFilter}s are not supported by in-memory tables, so each batch of the scan will
+     * fail with an {@link UnsupportedOperationException}.
+     *
+     * @param scanFilters ignored.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setFilters(final ScanFilter... scanFilters) {
+        if (failure == null) {
+            failure = new UnsupportedOperationException("scan filters");
+        }
+        return this;
+    }
+
+    /**
+     * {@link ScanFilter}s are not supported by in-memory tables, so each batch of the scan will
+     * fail with an {@link UnsupportedOperationException}.
+     *
+     * @param scanFilters ignored.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setFilters(final List<ScanFilter> scanFilters) {
+        return setFilters();
+    }
+
+    /**
+     * Set a regular expression to filter keys being scanned.
+     * <p/>
+     * Keys are decoded as ISO-8859-1, and are scanned if the expression is found anywhere in them.
+     *
+     * @param regexp a regular expression to filter keys with.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setKeyRegexp(final String regexp) {
+        return setKeyRegexp(regexp, Charsets.ISO_8859_1);
+    }
+
+    /**
+     * Set a regular expression to filter keys being scanned.
+     * <p/>
+     * Keys are scanned if the expression is found anywhere in them.
+     *
+     * @param regexp a regular expression to filter keys with.
+     * @param charset the charset to decode the keys as.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setKeyRegexp(final String regexp, final Charset charset) {
+        keyRegexp = Pattern.compile(regexp);
+        keyCharset = charset;
+        return this;
+    }
+
+    /**
+     * Has no effect, as in-memory tables have no block cache.
+     *
+     * @param populateBlockcache ignored.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setServerBlockCache(final boolean populateBlockcache) {
+        return this;
+    }
+
+    /**
+     * Set the maximum number of rows to fetch in each batch.
+     *
+     * @param maxRows the maximum number of rows to fetch in each batch.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setMaxNumRows(final int maxRows) {
+        maxNumRows = maxRows;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of {@link KeyValue}s to fetch in each batch.
+     * <p/>
+     * A batch ends with the row that reaches this limit; a row is never split between batches.
+     *
+     * @param maxKeyValues the maximum number of {@link KeyValue}s to fetch in each batch.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setMaxNumKeyValues(final int maxKeyValues) {
+        maxNumKeyValues = maxKeyValues;
+        return this;
+    }
+
+    /**
+     * Set the minimum timestamp of cells to scan.
+     *
+     * @param timestamp the minimum timestamp of cells to scan (inclusive).
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setMinTimestamp(final long timestamp) {
+        minTimestamp = timestamp;
+        return this;
+    }
+
+    /**
+     * Get the minimum timestamp of cells to scan.
+     *
+     * @return the minimum timestamp of cells to scan (inclusive).
+     */
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    /**
+     * Set the maximum timestamp of cells to scan.
+     *
+     * @param timestamp the maximum timestamp of cells to scan (exclusive).
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setMaxTimestamp(final long timestamp) {
+        maxTimestamp = timestamp;
+        return this;
+    }
+
+    /**
+     * Get the maximum timestamp of cells to scan.
+     *
+     * @return the maximum timestamp of cells to scan (exclusive).
+     */
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * Set the range of timestamps of cells to scan.
+     *
+     * @param minTimestamp the minimum timestamp of cells to scan (inclusive).
+     * @param maxTimestamp the maximum timestamp of cells to scan (exclusive).
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setTimeRange(final long minTimestamp, final long maxTimestamp) {
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        return this;
+    }
+
+    /**
+     * Get the key of the last row scanned.
+     *
+     * @return the key of the last row scanned; or null if no rows have been scanned.
+     */
+    public byte[] getCurrentKey() {
+        return currentKey;
+    }
+
+    /**
+     * Set the attributes of the scan.
+     * <p/>
+     * Attributes are kept, but have no effect on in-memory tables.
+     *
+     * @param attributes the attributes of the scan.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner setAttributes(final Map<String, String> attributes) {
+        this.attributes.clear();
+        for (final Map.Entry<String, String> attribute : attributes.entrySet()) {
+            addAttribute(attribute.getKey(), attribute.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Add an attribute to the scan.
+     *
+     * @param key the name of the attribute.
+     * @param value the value of the attribute.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner addAttribute(final String key, final String value) {
+        return addAttribute(key, value.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Add an attribute to the scan.
+     *
+     * @param key the name of the attribute.
+     * @param value the value of the attribute.
+     *
+     * @return this {@link RowScanner} to facilitate method chaining.
+     */
+    public RowScanner addAttribute(final String key, final byte[] value) {
+        attributes.put(key, value);
+        return this;
+    }
+
+    /**
+     * Closes this scanner.
+     *
+     * @return a Deferred indicating when the close operation has completed.
+     */
+    public Deferred<Object> close() {
+        exhausted = true;
+        return latency.respond(Operation.SCAN, null);
+    }
+
+    /**
+     * Scans the next batch of rows, of up to the {@link #setMaxNumRows(int) maximum number of
+     * rows}.
+     *
+     * @return the next batch of rows; or null if there are no more rows to scan.
+     */
+    public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows() {
+        return nextRows(maxNumRows);
+    }
+
+    /**
+     * Scans the next batch of rows, of up to the given number of rows.
+     *
+     * @param rows the maximum number of rows to scan in the batch.
+     *
+     * @return the next batch of rows; or null if there are no more rows to scan.
+     */
+    public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows(final int rows) {
+        scans.add(1);
+        if (failure != null) {
+            return latency.respond(Operation.SCAN, failure);
+        }
+        return latency.respond(Operation.SCAN, scan(rows));
+    }
+
+    private ArrayList<ArrayList<KeyValue>> scan(final int rows) {
+        if (exhausted) {
+            return null;
+        }
+
+        final ArrayList<ArrayList<KeyValue>> batch = new ArrayList<ArrayList<KeyValue>>();
+        final Iterable<byte[]> keys = currentKey == null
+                ? table.keys(startKey, true, stopKey)
+                : table.keys(currentKey, false, stopKey);
+        int keyValues = 0;
+        for (final byte[] key : keys) {
+            if (batch.size() >= rows || keyValues >= maxNumKeyValues) {
+                return batch;
+            }
+            currentKey = key;
+            if (keyRegexp != null && !keyRegexp.matcher(new String(key, keyCharset)).find()) {
+                continue;
+            }
+            final ArrayList<KeyValue> row =
+                    table.get(key, family, qualifiers, minTimestamp, maxTimestamp);
+            if (!row.isEmpty()) {
+                batch.add(row);
+                keyValues += row.size();
+            }
+        }
+
+        exhausted = true;
+        return batch.isEmpty() ? null : batch;
+    }
+}
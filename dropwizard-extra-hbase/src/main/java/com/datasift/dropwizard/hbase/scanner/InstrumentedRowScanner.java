@@ -1,11 +1,15 @@
 package com.datasift.dropwizard.hbase.scanner;
 
 import com.datasift.dropwizard.hbase.InstrumentedHBaseClient;
+import com.datasift.dropwizard.hbase.Operation;
 import com.datasift.dropwizard.hbase.metrics.HBaseInstrumentation;
-import com.datasift.dropwizard.hbase.util.TimerStoppingCallback;
+import com.datasift.dropwizard.hbase.metrics.TableMetrics;
+import com.datasift.dropwizard.hbase.util.KeyValues;
+import com.datasift.dropwizard.hbase.util.RequestTimingCallback;
+import com.google.common.base.Charsets;
+import com.stumbleupon.async.Callback;
 import com.stumbleupon.async.Deferred;
 import com.yammer.metrics.core.Metric;
-import com.yammer.metrics.core.TimerContext;
 import org.hbase.async.KeyValue;
 import org.hbase.async.ScanFilter;
 
@@ -23,6 +27,8 @@ public class InstrumentedRowScanner implements RowScanner {
 
     private final RowScanner scanner;
     private final HBaseInstrumentation metrics;
+    private final TableMetrics table;
+    private TableMetrics family = null;
 
     /**
      * Creates a new {@link InstrumentedRowScanner} for the given underlying {@link RowScanner},
@@ -32,8 +38,24 @@ public class InstrumentedRowScanner implements RowScanner {
      * @param metrics the {@link Metric}s to instrument this {@link InstrumentedRowScanner} with
      */
     public InstrumentedRowScanner(final RowScanner scanner, final HBaseInstrumentation metrics) {
+        this(scanner, metrics, null);
+    }
+
+    /**
+     * Creates a new {@link InstrumentedRowScanner} for the given {@link RowScanner}, also
+     * recording its scans with the given {@link TableMetrics}.
+     *
+     * @param scanner the underlying {@link RowScanner} implementation.
+     * @param metrics a {@link HBaseInstrumentation} containing the {@link Metric}s to use.
+     * @param table the {@link TableMetrics} of the scanned table; or null to only record scans
+     *              for the client as a whole.
+     */
+    public InstrumentedRowScanner(final RowScanner scanner,
+                                  final HBaseInstrumentation metrics,
+                                  final TableMetrics table) {
         this.scanner = scanner;
         this.metrics = metrics;
+        this.table = table;
     }
 
     /**
@@ -103,6 +125,7 @@ public class InstrumentedRowScanner implements RowScanner {
      */
     public RowScanner setFamily(final byte[] family) {
         scanner.setFamily(family);
+        this.family = table == null ? null : table.forFamily(family);
         return this;
     }
 
@@ -117,6 +140,7 @@ public class InstrumentedRowScanner implements RowScanner {
      */
     public RowScanner setFamily(final String family) {
         scanner.setFamily(family);
+        this.family = table == null ? null : table.forFamily(family.getBytes(Charsets.UTF_8));
         return this;
     }
 
@@ -349,8 +373,9 @@ public class InstrumentedRowScanner implements RowScanner {
      * @see RowScanner#close()
      */
     public Deferred<Object> close() {
-        final TimerContext ctx = metrics.getCloses().time();
-        return scanner.close().addBoth(new TimerStoppingCallback<Object>(ctx));
+        final RequestTimingCallback<Object> timing = new RequestTimingCallback<Object>(
+                metrics, metrics.getFailedCloses(), metrics.getCloses());
+        return scanner.close().addBoth(timing);
     }
 
     /**
@@ -361,9 +386,10 @@ public class InstrumentedRowScanner implements RowScanner {
      * @see RowScanner#nextRows()
      */
     public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows() {
-        final TimerContext ctx = metrics.getScans().time();
+        final RequestTimingCallback<ArrayList<ArrayList<KeyValue>>> timing = time();
         return scanner.nextRows()
-                .addBoth(new TimerStoppingCallback<ArrayList<ArrayList<KeyValue>>>(ctx));
+                .addBoth(timing)
+                .addCallback(new BatchRecordingCallback());
     }
 
     /**
@@ -376,8 +402,48 @@ public class InstrumentedRowScanner implements RowScanner {
      * @see RowScanner#nextRows(int)
      */
     public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows(final int rows) {
-        final TimerContext ctx = metrics.getScans().time();
+        final RequestTimingCallback<ArrayList<ArrayList<KeyValue>>> timing = time();
         return scanner.nextRows(rows)
-                .addBoth(new TimerStoppingCallback<ArrayList<ArrayList<KeyValue>>>(ctx));
+                .addBoth(timing)
+                .addCallback(new BatchRecordingCallback());
+    }
+
+    /**
+     * Starts timing a scan, for the client as a whole and for the scanned table and family.
+     */
+    private <T> RequestTimingCallback<T> time() {
+        if (table == null) {
+            return new RequestTimingCallback<T>(
+                    metrics, metrics.getFailedScans(), metrics.getScans());
+        }
+        return family == null
+                ? new RequestTimingCallback<T>(
+                        metrics, metrics.getFailedScans(), metrics.getScans(),
+                        table.getLatency(Operation.SCAN))
+                : new RequestTimingCallback<T>(
+                        metrics, metrics.getFailedScans(), metrics.getScans(),
+                        table.getLatency(Operation.SCAN), family.getLatency(Operation.SCAN));
+    }
+
+    /**
+     * Records the number of rows and size of each scanned batch.
+     */
+    private class BatchRecordingCallback
+            implements Callback<ArrayList<ArrayList<KeyValue>>, ArrayList<ArrayList<KeyValue>>> {
+
+        public ArrayList<ArrayList<KeyValue>> call(final ArrayList<ArrayList<KeyValue>> batch) {
+            if (batch != null) {
+                final long size = KeyValues.sizeOfRows(batch);
+                metrics.getScanBatchRows().update(batch.size());
+                metrics.getScanBatchBytes().update(size);
+                if (table != null) {
+                    table.getResponseBytes().update(size);
+                }
+                if (family != null) {
+                    family.getResponseBytes().update(size);
+                }
+            }
+            return batch;
+        }
     }
 }
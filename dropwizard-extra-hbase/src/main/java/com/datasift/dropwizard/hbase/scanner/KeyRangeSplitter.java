@@ -0,0 +1,25 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import java.util.List;
+
+/**
+ * Splits a range of row keys into contiguous sub-ranges that may be scanned independently.
+ *
+ * @see ParallelRowScanner
+ */
+public interface KeyRangeSplitter {
+
+    /**
+     * Splits the given range of keys.
+     * <p/>
+     * The range is split at each of the returned keys, so that {@code n} split keys yield {@code
+     * n + 1} sub-ranges. The split keys must be in ascending order and lie strictly within the
+     * range.
+     *
+     * @param startKey the first key of the range (inclusive); empty for the start of the table.
+     * @param stopKey the end of the range (exclusive); empty for the end of the table.
+     *
+     * @return the keys to split the range at, in ascending order; empty to not split the range.
+     */
+    public List<byte[]> split(byte[] startKey, byte[] stopKey);
+}
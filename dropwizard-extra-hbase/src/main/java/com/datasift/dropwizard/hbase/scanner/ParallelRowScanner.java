@@ -0,0 +1,756 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import org.hbase.async.KeyValue;
+import org.hbase.async.ScanFilter;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link RowScanner} that splits its key range into sub-ranges and scans them concurrently.
+ * <p/>
+ * The range between the start and stop keys is split by a {@link KeyRangeSplitter} and each
+ * sub-range is scanned by its own {@link RowScanner}, obtained from {@link HBaseClient#scan(byte[])}
+ * when first needed. At most {@code parallelism} sub-ranges are scanned at any one time, and each
+ * buffers at most {@link #MAX_BUFFERED_BATCHES} batches of rows ahead of the caller.
+ * <p/>
+ * In {@link Mode#UNORDERED} mode, batches are returned as soon as any sub-range yields them. In
+ * {@link Mode#KEY_ORDERED} mode, sub-ranges are scanned ahead of the caller but their batches are
+ * returned in key order, as they would be by a sequential {@link RowScanner}.
+ * <p/>
+ * As with {@link org.hbase.async.Scanner}, only one call to {@link #nextRows()} may be outstanding
+ * at a time, and it yields {@code null} once every sub-range has been exhausted. All settings must
+ * be made before the first call to {@link #nextRows()}; they are applied to each sub-range
+ * scanner when it is created.
+ * <p/>
+ * A {@link ParallelRowScanner} may itself be wrapped in an {@link InstrumentedRowScanner} or a
+ * {@link BoundedRowScanner}, in which case it is accounted for as a single scanner.
+ */
+public class ParallelRowScanner implements RowScanner {
+
+    /**
+     * The order in which a {@link ParallelRowScanner} yields the rows of its sub-ranges.
+     */
+    public enum Mode {
+
+        /**
+         * Yield batches of rows in the order they're received from the sub-ranges.
+         */
+        UNORDERED,
+
+        /**
+         * Yield batches of rows in key order.
+         */
+        KEY_ORDERED
+    }
+
+    /**
+     * The maximum number of batches of rows to buffer for each sub-range.
+     */
+    public static final int MAX_BUFFERED_BATCHES = 2;
+
+    private static final byte[] EMPTY_KEY = new byte[0];
+
+    /**
+     * A setting to apply to each sub-range {@link RowScanner}.
+     */
+    private interface Setting {
+        void apply(RowScanner scanner);
+    }
+
+    private final HBaseClient client;
+    private final byte[] table;
+    private final KeyRangeSplitter splitter;
+    private final int parallelism;
+    private final Mode mode;
+
+    private final List<Setting> settings = new ArrayList<Setting>();
+    private byte[] startKey = EMPTY_KEY;
+    private byte[] stopKey = EMPTY_KEY;
+    private long minTimestamp = 0;
+    private long maxTimestamp = Long.MAX_VALUE;
+    private volatile int batchRows = 0;
+
+    private List<Range> ranges = null;
+    private int current = 0;
+    private Deferred<ArrayList<ArrayList<KeyValue>>> pending = null;
+    private Exception error = null;
+    private boolean closed = false;
+    private byte[] currentKey = null;
+
+    /**
+     * Creates a new {@link ParallelRowScanner} for the given table.
+     *
+     * @param client      the {@link HBaseClient} to create the sub-range {@link RowScanner}s with
+     * @param table       the table to scan
+     * @param splitter    the {@link KeyRangeSplitter} to split the key range with
+     * @param parallelism the maximum number of sub-ranges to scan concurrently
+     * @param mode        the order to yield rows in
+     */
+    public ParallelRowScanner(final HBaseClient client,
+                              final byte[] table,
+                              final KeyRangeSplitter splitter,
+                              final int parallelism,
+                              final Mode mode) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.client = client;
+        this.table = table;
+        this.splitter = splitter;
+        this.parallelism = parallelism;
+        this.mode = mode;
+    }
+
+    /**
+     * Set the first key in the range to scan.
+     *
+     * @param key the first key to scan from (inclusive)
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setStartKey(byte[])
+     */
+    public synchronized RowScanner setStartKey(final byte[] key) {
+        checkNotStarted();
+        startKey = key;
+        return this;
+    }
+
+    /**
+     * Set the first key in the range to scan.
+     *
+     * @param key the first key to scan from (inclusive)
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setStartKey(String)
+     */
+    public RowScanner setStartKey(final String key) {
+        return setStartKey(key.getBytes());
+    }
+
+    /**
+     * Set the end key in the range to scan.
+     *
+     * @param key the end key to scan until (exclusive)
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setStopKey(byte[])
+     */
+    public synchronized RowScanner setStopKey(final byte[] key) {
+        checkNotStarted();
+        stopKey = key;
+        return this;
+    }
+
+    /**
+     * Set the end key in the range to scan.
+     *
+     * @param key the end key to scan until (exclusive)
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setStopKey(String)
+     */
+    public RowScanner setStopKey(final String key) {
+        return setStopKey(key.getBytes());
+    }
+
+    /**
+     * Set the family to scan.
+     *
+     * @param family the family to scan
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setFamily(byte[])
+     */
+    public RowScanner setFamily(final byte[] family) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setFamily(family);
+            }
+        });
+    }
+
+    /**
+     * Set the family to scan.
+     *
+     * @param family the family to scan
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setFamily(String)
+     */
+    public RowScanner setFamily(final String family) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setFamily(family);
+            }
+        });
+    }
+
+    /**
+     * Set the qualifier to select from cells
+     *
+     * @param qualifier the family to select from cells
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setQualifier(byte[])
+     */
+    public RowScanner setQualifier(final byte[] qualifier) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setQualifier(qualifier);
+            }
+        });
+    }
+
+    /**
+     * Set the qualifier to select from cells
+     *
+     * @param qualifier the family to select from cells
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setQualifier(String)
+     */
+    public RowScanner setQualifier(final String qualifier) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setQualifier(qualifier);
+            }
+        });
+    }
+
+    public RowScanner setFilters(final ScanFilter... scanFilters) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setFilters(scanFilters);
+            }
+        });
+    }
+
+    public RowScanner setFilters(final List<ScanFilter> scanFilters) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setFilters(scanFilters);
+            }
+        });
+    }
+
+    /**
+     * Set a regular expression to filter keys being scanned.
+     *
+     * @param regexp a regular expression to filter keys with
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setKeyRegexp(String)
+     */
+    public RowScanner setKeyRegexp(final String regexp) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setKeyRegexp(regexp);
+            }
+        });
+    }
+
+    /**
+     * Set a regular expression to filter keys being scanned.
+     *
+     * @param regexp a regular expression to filter keys with
+     * @param charset the charset to decode the keys as
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setKeyRegexp(String, Charset)
+     */
+    public RowScanner setKeyRegexp(final String regexp, final Charset charset) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setKeyRegexp(regexp, charset);
+            }
+        });
+    }
+
+    /**
+     * Set whether to use the server-side block cache during the scan.
+     *
+     * @param populateBlockcache whether to use the server-side block cache
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setServerBlockCache(boolean)
+     */
+    public RowScanner setServerBlockCache(final boolean populateBlockcache) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setServerBlockCache(populateBlockcache);
+            }
+        });
+    }
+
+    /**
+     * Set the maximum number of rows to fetch in each batch.
+     *
+     * @param maxRows the maximum number of rows to fetch in each batch
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setMaxNumRows(int)
+     */
+    public RowScanner setMaxNumRows(final int maxRows) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setMaxNumRows(maxRows);
+            }
+        });
+    }
+
+    /**
+     * Set the maximum number of {@link KeyValue}s to fetch in each batch.
+     *
+     * @param maxKeyValues the maximum number of {@link KeyValue}s to fetch in each batch
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setMaxNumKeyValues(int)
+     */
+    public RowScanner setMaxNumKeyValues(final int maxKeyValues) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setMaxNumKeyValues(maxKeyValues);
+            }
+        });
+    }
+
+    /**
+     * Sets the minimum timestamp of the cells to yield.
+     *
+     * @param timestamp the minimum timestamp of the cells to yield
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setMinTimestamp(long)
+     */
+    public synchronized RowScanner setMinTimestamp(final long timestamp) {
+        minTimestamp = timestamp;
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setMinTimestamp(timestamp);
+            }
+        });
+    }
+
+    /**
+     * Gets the minimum timestamp of the cells to yield.
+     *
+     * @return the minimum timestamp of the cells to yield
+     *
+     * @see RowScanner#getMinTimestamp()
+     */
+    public synchronized long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    /**
+     * Sets the maximum timestamp of the cells to yield.
+     *
+     * @param timestamp the maximum timestamp of the cells to yield
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setMaxTimestamp(long)
+     */
+    public synchronized RowScanner setMaxTimestamp(final long timestamp) {
+        maxTimestamp = timestamp;
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setMaxTimestamp(timestamp);
+            }
+        });
+    }
+
+    /**
+     * Gets the maximum timestamp of the cells to yield.
+     *
+     * @return the maximum timestamp of the cells to yield
+     *
+     * @see RowScanner#getMaxTimestamp()
+     */
+    public synchronized long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * Sets the timerange of the cells to yield.
+     *
+     * @param minTimestamp the minimum timestamp of the cells to yield
+     * @param maxTimestamp the maximum timestamp of the cells to yield
+     *
+     * @return this {@link RowScanner} to facilitate method chaining
+     *
+     * @see RowScanner#setTimeRange(long, long)
+     */
+    public synchronized RowScanner setTimeRange(final long minTimestamp, final long maxTimestamp) {
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setTimeRange(minTimestamp, maxTimestamp);
+            }
+        });
+    }
+
+    /**
+     * Get the key of the last row yielded by this scanner.
+     *
+     * @return the key of the last row yielded, or null if no rows have been yielded yet
+     *
+     * @see RowScanner#getCurrentKey()
+     */
+    public synchronized byte[] getCurrentKey() {
+        return currentKey;
+    }
+
+    public RowScanner setAttributes(final Map<String, String> attributes) {
+        final Map<String, String> copy = new HashMap<String, String>(attributes);
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.setAttributes(copy);
+            }
+        });
+    }
+
+    public RowScanner addAttribute(final String key, final String value) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.addAttribute(key, value);
+            }
+        });
+    }
+
+    public RowScanner addAttribute(final String key, final byte[] value) {
+        return addSetting(new Setting() {
+            public void apply(final RowScanner scanner) {
+                scanner.addAttribute(key, value);
+            }
+        });
+    }
+
+    /**
+     * Closes this scanner and each of its open sub-range scanners.
+     *
+     * @return a Deferred indicating when the close operation has completed
+     *
+     * @see RowScanner#close()
+     */
+    public Deferred<Object> close() {
+        final List<Deferred<Object>> closes = new ArrayList<Deferred<Object>>();
+        final Deferred<ArrayList<ArrayList<KeyValue>>> consumer;
+        synchronized (this) {
+            closed = true;
+            consumer = pending;
+            pending = null;
+            if (ranges != null) {
+                for (final Range range : ranges) {
+                    if (range.scanner != null && !range.done) {
+                        range.done = true;
+                        closes.add(range.scanner.close());
+                    }
+                    range.buffer.clear();
+                }
+            }
+        }
+
+        if (consumer != null) {
+            consumer.callback(null);
+        }
+        if (closes.isEmpty()) {
+            return Deferred.fromResult(null);
+        }
+        return Deferred.group(closes).addCallback(new Callback<Object, ArrayList<Object>>() {
+            public Object call(final ArrayList<Object> results) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Scans the next batch of rows from any of the sub-ranges, or in key order when this scanner
+     * is {@link Mode#KEY_ORDERED}.
+     *
+     * @return next batch of rows that were scanned, or null once all sub-ranges are exhausted
+     *
+     * @see RowScanner#nextRows()
+     */
+    public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows() {
+        final Deferred<ArrayList<ArrayList<KeyValue>>> result =
+                new Deferred<ArrayList<ArrayList<KeyValue>>>();
+        synchronized (this) {
+            if (closed) {
+                return Deferred.fromError(new IllegalStateException("Scanner is closed"));
+            }
+            if (pending != null) {
+                return Deferred.fromError(new IllegalStateException(
+                        "nextRows() called while a previous call is outstanding"));
+            }
+            if (ranges == null) {
+                ranges = split();
+            }
+            pending = result;
+        }
+        dispatch();
+        return result;
+    }
+
+    /**
+     * Scans the next batch of rows.
+     * <p/>
+     * The given number of rows is used for this and all subsequent batches fetched from the
+     * sub-ranges; batches already buffered are unaffected.
+     *
+     * @param rows maximum number of rows to retrieve in the batch
+     *
+     * @return next batch of rows that were scanned, or null once all sub-ranges are exhausted
+     *
+     * @see RowScanner#nextRows(int)
+     */
+    public Deferred<ArrayList<ArrayList<KeyValue>>> nextRows(final int rows) {
+        batchRows = rows;
+        return nextRows();
+    }
+
+    private synchronized RowScanner addSetting(final Setting setting) {
+        checkNotStarted();
+        settings.add(setting);
+        return this;
+    }
+
+    private void checkNotStarted() {
+        if (ranges != null) {
+            throw new IllegalStateException("Scanner settings can't be changed once started");
+        }
+    }
+
+    /**
+     * Splits the key range of this scanner in to its sub-ranges.
+     */
+    private List<Range> split() {
+        final List<byte[]> splits = splitter.split(startKey, stopKey);
+        final List<Range> ranges = new ArrayList<Range>(splits.size() + 1);
+        byte[] from = startKey;
+        for (final byte[] split : splits) {
+            ranges.add(new Range(from, split));
+            from = split;
+        }
+        ranges.add(new Range(from, stopKey));
+        return Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * Yields the next available batch to the outstanding caller, if any, and starts fetching
+     * from each sub-range that is eligible to fetch more rows.
+     * <p/>
+     * The sub-range scanners and the caller are only ever called outside of the lock.
+     */
+    private void dispatch() {
+        final List<Range> fetches = new ArrayList<Range>();
+        Deferred<ArrayList<ArrayList<KeyValue>>> consumer = null;
+        Object result = null;
+
+        synchronized (this) {
+            if (pending != null) {
+                if (error != null) {
+                    consumer = pending;
+                    result = error;
+                } else {
+                    final ArrayList<ArrayList<KeyValue>> batch = take();
+                    if (batch != null || isExhausted()) {
+                        consumer = pending;
+                        result = batch;
+                        if (batch != null && !batch.isEmpty()) {
+                            final ArrayList<KeyValue> last = batch.get(batch.size() - 1);
+                            if (!last.isEmpty()) {
+                                currentKey = last.get(0).key();
+                            }
+                        }
+                    }
+                }
+                if (consumer != null) {
+                    pending = null;
+                }
+            }
+
+            if (!closed && error == null) {
+                schedule(fetches);
+            }
+        }
+
+        for (final Range range : fetches) {
+            range.fetch();
+        }
+
+        if (consumer != null) {
+            consumer.callback(result);
+        }
+    }
+
+    /**
+     * Takes the next batch of rows to yield, or null if none is available yet.
+     */
+    private ArrayList<ArrayList<KeyValue>> take() {
+        if (mode == Mode.KEY_ORDERED) {
+            while (current < ranges.size()) {
+                final Range range = ranges.get(current);
+                if (!range.buffer.isEmpty()) {
+                    return range.buffer.removeFirst();
+                }
+                if (!range.done) {
+                    return null;
+                }
+                current++;
+            }
+            return null;
+        }
+
+        for (final Range range : ranges) {
+            if (!range.buffer.isEmpty()) {
+                return range.buffer.removeFirst();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines whether every sub-range has been exhausted and yielded to the caller.
+     */
+    private boolean isExhausted() {
+        for (final Range range : ranges) {
+            if (!range.done || !range.buffer.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Selects the sub-ranges to fetch more rows from.
+     * <p/>
+     * A sub-range holds one of the {@code parallelism} slots from the time it's started until
+     * it's exhausted and its buffered rows have been yielded. In {@link Mode#KEY_ORDERED} mode,
+     * the slots are further restricted to the sub-ranges immediately following the one
+     * currently being yielded, so that rows are never buffered far ahead of the caller.
+     */
+    private void schedule(final List<Range> fetches) {
+        int active = 0;
+        for (final Range range : ranges) {
+            if (range.isActive()) {
+                active++;
+            }
+        }
+
+        final int first = mode == Mode.KEY_ORDERED ? current : 0;
+        final int last = mode == Mode.KEY_ORDERED
+                ? Math.min(ranges.size(), current + parallelism)
+                : ranges.size();
+
+        for (int i = first; i < last; i++) {
+            final Range range = ranges.get(i);
+            if (range.done || range.fetching || range.buffer.size() >= MAX_BUFFERED_BATCHES) {
+                continue;
+            }
+            if (range.scanner == null) {
+                if (active >= parallelism) {
+                    continue;
+                }
+                range.start();
+                active++;
+            }
+            range.fetching = true;
+            fetches.add(range);
+        }
+    }
+
+    /**
+     * A contiguous sub-range of the keys to scan.
+     */
+    private class Range {
+
+        private final byte[] startKey;
+        private final byte[] stopKey;
+        private final LinkedList<ArrayList<ArrayList<KeyValue>>> buffer =
+                new LinkedList<ArrayList<ArrayList<KeyValue>>>();
+
+        private RowScanner scanner = null;
+        private boolean fetching = false;
+        private boolean done = false;
+
+        private Range(final byte[] startKey, final byte[] stopKey) {
+            this.startKey = startKey;
+            this.stopKey = stopKey;
+        }
+
+        private boolean isActive() {
+            return scanner != null && (!done || !buffer.isEmpty());
+        }
+
+        private void start() {
+            scanner = client.scan(table);
+            for (final Setting setting : settings) {
+                setting.apply(scanner);
+            }
+            scanner.setStartKey(startKey);
+            scanner.setStopKey(stopKey);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void fetch() {
+            final int rows = batchRows;
+            final Deferred<ArrayList<ArrayList<KeyValue>>> rowsFetched;
+            try {
+                rowsFetched = rows > 0 ? scanner.nextRows(rows) : scanner.nextRows();
+            } catch (final Exception e) {
+                fetched(e);
+                return;
+            }
+
+            ((Deferred<Object>) (Deferred<?>) rowsFetched).addBoth(new Callback<Object, Object>() {
+                public Object call(final Object arg) {
+                    fetched(arg);
+                    return null;
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private void fetched(final Object result) {
+            synchronized (ParallelRowScanner.this) {
+                fetching = false;
+                if (closed) {
+                    return;
+                }
+                if (result instanceof Exception) {
+                    error = (Exception) result;
+                } else if (result == null) {
+                    done = true;
+                } else {
+                    buffer.addLast((ArrayList<ArrayList<KeyValue>>) result);
+                }
+            }
+            dispatch();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import com.yammer.dropwizard.util.Size;
+import org.hbase.async.KeyValue;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * An {@link Iterable} view of the rows yielded by a {@link RowScanner}, for use in for-each
+ * loops.
+ * <p/>
+ * Since a {@link RowScanner} can only be consumed once, so can a {@link RowScannerIterable}.
+ * Callers that may abandon the loop early should {@link #close()} the {@link RowScannerIterable}
+ * in a {@code finally} block:
+ * <pre>
+ * final RowScannerIterable rows = new RowScannerIterable(client.scan("table"));
+ * try {
+ *     for (final ArrayList&lt;KeyValue&gt; row : rows) {
+ *         ...
+ *     }
+ * } finally {
+ *     rows.close();
+ * }
+ * </pre>
+ *
+ * @see RowScannerIterator
+ */
+public class RowScannerIterable implements Iterable<ArrayList<KeyValue>>, Closeable {
+
+    private final RowScannerIterator iterator;
+    private boolean iterated = false;
+
+    /**
+     * Creates a new {@link RowScannerIterable} over the given {@link RowScanner}, with the default
+     * buffer limits.
+     *
+     * @param scanner the {@link RowScanner} to iterate over
+     */
+    public RowScannerIterable(final RowScanner scanner) {
+        this(new RowScannerIterator(scanner));
+    }
+
+    /**
+     * Creates a new {@link RowScannerIterable} over the given {@link RowScanner}.
+     *
+     * @param scanner          the {@link RowScanner} to iterate over
+     * @param maxBufferedRows  the maximum number of rows to buffer ahead of the caller
+     * @param maxBufferedBytes the maximum number of bytes to buffer ahead of the caller
+     */
+    public RowScannerIterable(final RowScanner scanner,
+                              final int maxBufferedRows,
+                              final Size maxBufferedBytes) {
+        this(new RowScannerIterator(scanner, maxBufferedRows, maxBufferedBytes));
+    }
+
+    private RowScannerIterable(final RowScannerIterator iterator) {
+        this.iterator = iterator;
+    }
+
+    /**
+     * Gets the {@link Iterator} over the rows of the scan.
+     *
+     * @return the {@link Iterator} over the rows of the scan
+     *
+     * @throws IllegalStateException if the rows have already been iterated
+     */
+    public synchronized Iterator<ArrayList<KeyValue>> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("Scanner rows can only be iterated once");
+        }
+        iterated = true;
+        return iterator;
+    }
+
+    /**
+     * Closes the underlying {@link RowScanner}, if it hasn't yet been exhausted.
+     *
+     * @see RowScannerIterator#close()
+     */
+    public void close() {
+        iterator.close();
+    }
+}
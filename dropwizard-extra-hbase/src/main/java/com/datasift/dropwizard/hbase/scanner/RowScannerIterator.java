@@ -0,0 +1,260 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import com.datasift.dropwizard.hbase.util.KeyValues;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Size;
+import org.hbase.async.KeyValue;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+/**
+ * A blocking {@link Iterator} over the rows yielded by a {@link RowScanner}.
+ * <p/>
+ * Batches of rows are prefetched from the {@link RowScanner} while the caller processes the
+ * current batch, until the rows buffered ahead of the caller reach either the maximum number of
+ * rows or the maximum number of bytes. Since a batch is only requested while the buffer is below
+ * these limits, the buffer may exceed them by at most one batch.
+ * <p/>
+ * The underlying {@link RowScanner} is closed automatically once it has been exhausted or fails.
+ * Callers that abandon iteration early should {@link #close()} the iterator to release the
+ * scanner.
+ * <p/>
+ * {@link RowScannerIterator}s are not thread-safe and must only be used by one thread at a time.
+ *
+ * @see RowScannerIterable
+ */
+public class RowScannerIterator implements Iterator<ArrayList<KeyValue>>, Closeable {
+
+    /**
+     * The default maximum number of rows to buffer ahead of the caller.
+     */
+    public static final int DEFAULT_MAX_BUFFERED_ROWS = 10000;
+
+    /**
+     * The default maximum number of bytes to buffer ahead of the caller.
+     */
+    public static final Size DEFAULT_MAX_BUFFERED_BYTES = Size.megabytes(16);
+
+    private final RowScanner scanner;
+    private final int maxBufferedRows;
+    private final long maxBufferedBytes;
+
+    private final LinkedList<ArrayList<ArrayList<KeyValue>>> batches =
+            new LinkedList<ArrayList<ArrayList<KeyValue>>>();
+    private int bufferedRows = 0;
+    private long bufferedBytes = 0;
+    private boolean fetching = false;
+    private boolean exhausted = false;
+    private boolean closed = false;
+    private Exception error = null;
+
+    private ArrayList<ArrayList<KeyValue>> batch = null;
+    private int position = 0;
+
+    /**
+     * Creates a new {@link RowScannerIterator} over the given {@link RowScanner}, with the default
+     * buffer limits.
+     *
+     * @param scanner the {@link RowScanner} to iterate over
+     */
+    public RowScannerIterator(final RowScanner scanner) {
+        this(scanner, DEFAULT_MAX_BUFFERED_ROWS, DEFAULT_MAX_BUFFERED_BYTES);
+    }
+
+    /**
+     * Creates a new {@link RowScannerIterator} over the given {@link RowScanner}.
+     *
+     * @param scanner          the {@link RowScanner} to iterate over
+     * @param maxBufferedRows  the maximum number of rows to buffer ahead of the caller
+     * @param maxBufferedBytes the maximum number of bytes to buffer ahead of the caller
+     */
+    public RowScannerIterator(final RowScanner scanner,
+                              final int maxBufferedRows,
+                              final Size maxBufferedBytes) {
+        if (maxBufferedRows < 1) {
+            throw new IllegalArgumentException(
+                    "maxBufferedRows must be at least 1: " + maxBufferedRows);
+        }
+        this.scanner = scanner;
+        this.maxBufferedRows = maxBufferedRows;
+        this.maxBufferedBytes = maxBufferedBytes.toBytes();
+    }
+
+    /**
+     * Determines whether the scan has any more rows, waiting for the next batch if necessary.
+     *
+     * @return true if there is another row; false if the scan has been exhausted or closed
+     *
+     * @throws IllegalStateException if the scan failed, or the thread was interrupted while
+     *                               waiting for the next batch
+     */
+    public boolean hasNext() {
+        if (batch != null && position < batch.size()) {
+            return true;
+        }
+        batch = null;
+
+        fetch();
+        boolean interrupted = false;
+        synchronized (this) {
+            try {
+                while (error == null && batches.isEmpty() && !exhausted && !closed) {
+                    wait();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                interrupted = true;
+            }
+
+            if (!interrupted) {
+                if (error != null) {
+                    throw error instanceof RuntimeException
+                            ? (RuntimeException) error
+                            : new IllegalStateException("Scan failed", error);
+                }
+                if (batches.isEmpty()) {
+                    return false;
+                }
+
+                batch = batches.removeFirst();
+                position = 0;
+                bufferedRows -= batch.size();
+                bufferedBytes -= KeyValues.sizeOfRows(batch);
+            }
+        }
+
+        if (interrupted) {
+            close();
+            throw new IllegalStateException("Interrupted waiting for rows");
+        }
+
+        fetch();
+        return true;
+    }
+
+    /**
+     * Gets the next row of the scan, waiting for the next batch if necessary.
+     *
+     * @return the {@link KeyValue}s of the next row
+     *
+     * @throws NoSuchElementException if the scan has been exhausted or closed
+     */
+    public ArrayList<KeyValue> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        // release each row as it's yielded, so that only the remaining rows are retained
+        return batch.set(position++, null);
+    }
+
+    /**
+     * Not supported; scanned rows can't be removed.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    /**
+     * Closes this iterator, discarding any buffered rows and closing the underlying {@link
+     * RowScanner} if it hasn't yet been exhausted.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            batches.clear();
+            bufferedRows = 0;
+            bufferedBytes = 0;
+            notifyAll();
+            if (exhausted || error != null) {
+                return;
+            }
+        }
+        scanner.close();
+    }
+
+    /**
+     * Closes the underlying {@link RowScanner} if this iterator was abandoned without being
+     * closed.
+     */
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            close();
+        } finally {
+            super.finalize();
+        }
+    }
+
+    /**
+     * Requests the next batch of rows, unless a request is already outstanding or the buffer is
+     * full.
+     */
+    @SuppressWarnings("unchecked")
+    private void fetch() {
+        synchronized (this) {
+            if (fetching || exhausted || closed || error != null
+                    || bufferedRows >= maxBufferedRows || bufferedBytes >= maxBufferedBytes) {
+                return;
+            }
+            fetching = true;
+        }
+
+        final Deferred<ArrayList<ArrayList<KeyValue>>> rows;
+        try {
+            rows = scanner.nextRows();
+        } catch (final Exception e) {
+            fetched(e);
+            return;
+        }
+
+        ((Deferred<Object>) (Deferred<?>) rows).addBoth(new Callback<Object, Object>() {
+            public Object call(final Object arg) {
+                fetched(arg);
+                return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetched(final Object result) {
+        final boolean failed;
+        synchronized (this) {
+            fetching = false;
+            if (closed) {
+                return;
+            }
+            if (result instanceof Exception) {
+                error = (Exception) result;
+            } else if (result == null) {
+                exhausted = true;
+            } else {
+                final ArrayList<ArrayList<KeyValue>> rows =
+                        (ArrayList<ArrayList<KeyValue>>) result;
+                // an empty batch does not end the scan, so wait for the next batch instead
+                if (!rows.isEmpty()) {
+                    batches.addLast(rows);
+                }
+                bufferedRows += rows.size();
+                bufferedBytes += KeyValues.sizeOfRows(rows);
+            }
+            failed = error != null;
+            notifyAll();
+        }
+
+        if (failed) {
+            scanner.close();
+        } else {
+            fetch();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import org.hbase.async.Bytes;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link KeyRangeSplitter} that splits a range of keys into sub-ranges of equal size.
+ * <p/>
+ * Keys are treated as unsigned big-endian numbers, so this is best suited to tables with keys
+ * that are uniformly distributed over the byte space, such as hashed or salted keys. For tables
+ * with a skewed distribution of keys, use a {@link KeyRangeSplitter} that reflects it.
+ */
+public class UniformKeyRangeSplitter implements KeyRangeSplitter {
+
+    /**
+     * The minimum number of bytes of precision used to compute split keys.
+     */
+    private static final int MIN_WIDTH = 4;
+
+    private final int ranges;
+
+    /**
+     * Creates a new {@link UniformKeyRangeSplitter} that splits ranges into the given number of
+     * sub-ranges.
+     *
+     * @param ranges the number of sub-ranges to split each range into.
+     */
+    public UniformKeyRangeSplitter(final int ranges) {
+        if (ranges < 1) {
+            throw new IllegalArgumentException("ranges must be at least 1: " + ranges);
+        }
+        this.ranges = ranges;
+    }
+
+    public List<byte[]> split(final byte[] startKey, final byte[] stopKey) {
+        final int width = Math.max(MIN_WIDTH, Math.max(startKey.length, stopKey.length));
+        final BigInteger start = toNumber(startKey, width);
+        final BigInteger stop = stopKey.length == 0
+                ? BigInteger.ONE.shiftLeft(width * 8)
+                : toNumber(stopKey, width);
+
+        final List<byte[]> splits = new ArrayList<byte[]>(ranges - 1);
+        final BigInteger span = stop.subtract(start);
+        if (span.signum() <= 0) {
+            return splits;
+        }
+
+        byte[] previous = startKey;
+        for (int i = 1; i < ranges; i++) {
+            final BigInteger point = start.add(
+                    span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(ranges)));
+            final byte[] key = toKey(point, width);
+            if (Bytes.memcmp(key, previous) > 0
+                    && (stopKey.length == 0 || Bytes.memcmp(key, stopKey) < 0)) {
+                splits.add(key);
+                previous = key;
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * Converts a key to an unsigned number, right-padding it with zeros to the given width.
+     */
+    private static BigInteger toNumber(final byte[] key, final int width) {
+        final byte[] padded = new byte[width];
+        System.arraycopy(key, 0, padded, 0, Math.min(key.length, width));
+        return new BigInteger(1, padded);
+    }
+
+    /**
+     * Converts an unsigned number to a key of the given width.
+     */
+    private static byte[] toKey(final BigInteger number, final int width) {
+        final byte[] bytes = number.toByteArray();
+        final byte[] key = new byte[width];
+        final int length = Math.min(bytes.length, width);
+        System.arraycopy(bytes, bytes.length - length, key, width - length, length);
+        return key;
+    }
+}
@@ -0,0 +1,69 @@
+package com.datasift.dropwizard.hbase.util;
+
+import com.datasift.dropwizard.hbase.BulkResult;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Utilities for gathering the results of the requests of a bulk request.
+ */
+public class BulkResults {
+
+    private BulkResults() {
+        // utility class
+    }
+
+    /**
+     * Gathers the results of the given requests, in order, into a single {@link Deferred}.
+     * <p/>
+     * Unlike {@link Deferred#groupInOrder(java.util.Collection)}, the failure of one request does
+     * not fail the whole group; the {@link BulkResult} for each request reports whether that
+     * request succeeded.
+     *
+     * @param results the results of each of the requests.
+     * @param <T> the type of the result of each request.
+     *
+     * @return the results of all the requests, in the same order; fires once every request has
+     *         completed.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Deferred<List<BulkResult<T>>> collect(final List<Deferred<T>> results) {
+        final int size = results.size();
+        if (size == 0) {
+            return Deferred.fromResult(Collections.<BulkResult<T>>emptyList());
+        }
+
+        final Deferred<List<BulkResult<T>>> collected = new Deferred<List<BulkResult<T>>>();
+        final AtomicReferenceArray<BulkResult<T>> slots =
+                new AtomicReferenceArray<BulkResult<T>>(size);
+        final AtomicInteger remaining = new AtomicInteger(size);
+
+        for (int i = 0; i < size; i++) {
+            final int index = i;
+            // the result may be either the value or an Exception
+            final Deferred<Object> result = (Deferred<Object>) (Deferred<?>) results.get(i);
+            result.addBoth(new Callback<Object, Object>() {
+                public Object call(final Object arg) {
+                    slots.set(index, arg instanceof Exception
+                            ? BulkResult.<T>failure((Exception) arg)
+                            : BulkResult.success((T) arg));
+                    if (remaining.decrementAndGet() == 0) {
+                        final List<BulkResult<T>> list = new ArrayList<BulkResult<T>>(size);
+                        for (int j = 0; j < size; j++) {
+                            list.add(slots.get(j));
+                        }
+                        collected.callback(list);
+                    }
+                    return arg;
+                }
+            });
+        }
+        return collected;
+    }
+}
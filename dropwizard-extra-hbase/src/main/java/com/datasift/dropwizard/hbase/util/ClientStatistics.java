@@ -0,0 +1,132 @@
+package com.datasift.dropwizard.hbase.util;
+
+import com.google.common.cache.CacheStats;
+import org.hbase.async.ClientStats;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Utilities for creating {@link ClientStats} for clients that are not backed by a single
+ * asynchbase client.
+ */
+public class ClientStatistics {
+
+    private static volatile Constructor<ClientStats> constructor = null;
+
+    private ClientStatistics() {
+        // utility class
+    }
+
+    /**
+     * Creates a snapshot of client usage statistics with the given values.
+     *
+     * @param connections the number of connections created.
+     * @param rootLookups the number of lookups of the -ROOT- table.
+     * @param uncontendedMetaLookups the number of uncontended lookups of the .META. table.
+     * @param contendedMetaLookups the number of contended lookups of the .META. table.
+     * @param flushes the number of flushes.
+     * @param noSuchRegionExceptions the number of NoSuchRegionExceptions handled.
+     * @param delayedDueToNSRE the number of RPCs delayed by a NoSuchRegionException.
+     * @param batchedRpcsSent the number of batched RPCs sent.
+     * @param gets the number of gets.
+     * @param scannersOpened the number of scanners opened.
+     * @param scans the number of scans.
+     * @param puts the number of puts.
+     * @param rowLocks the number of row locks.
+     * @param deletes the number of deletes.
+     * @param atomicIncrements the number of atomic increments.
+     * @param incrementBufferStats the statistics of the increment buffer.
+     *
+     * @return an immutable snapshot of the given client usage statistics.
+     */
+    public static ClientStats create(final long connections,
+                                     final long rootLookups,
+                                     final long uncontendedMetaLookups,
+                                     final long contendedMetaLookups,
+                                     final long flushes,
+                                     final long noSuchRegionExceptions,
+                                     final long delayedDueToNSRE,
+                                     final long batchedRpcsSent,
+                                     final long gets,
+                                     final long scannersOpened,
+                                     final long scans,
+                                     final long puts,
+                                     final long rowLocks,
+                                     final long deletes,
+                                     final long atomicIncrements,
+                                     final CacheStats incrementBufferStats) {
+        try {
+            return constructor().newInstance(
+                    connections, rootLookups, uncontendedMetaLookups, contendedMetaLookups,
+                    flushes, noSuchRegionExceptions, delayedDueToNSRE, batchedRpcsSent,
+                    gets, scannersOpened, scans, puts, rowLocks, deletes, atomicIncrements,
+                    incrementBufferStats);
+        } catch (final Exception e) {
+            throw new IllegalStateException("Unable to create ClientStats", e);
+        }
+    }
+
+    /**
+     * Sums the client usage statistics of several clients.
+     *
+     * @param stats the statistics of each client.
+     *
+     * @return an immutable snapshot of the total client usage statistics of all the clients.
+     */
+    public static ClientStats sum(final Iterable<ClientStats> stats) {
+        long connections = 0;
+        long rootLookups = 0;
+        long uncontendedMetaLookups = 0;
+        long contendedMetaLookups = 0;
+        long flushes = 0;
+        long noSuchRegionExceptions = 0;
+        long delayedDueToNSRE = 0;
+        long batchedRpcsSent = 0;
+        long gets = 0;
+        long scannersOpened = 0;
+        long scans = 0;
+        long puts = 0;
+        long rowLocks = 0;
+        long deletes = 0;
+        long atomicIncrements = 0;
+        CacheStats incrementBufferStats = new CacheStats(0, 0, 0, 0, 0, 0);
+
+        for (final ClientStats s : stats) {
+            connections += s.connectionsCreated();
+            rootLookups += s.rootLookups();
+            uncontendedMetaLookups += s.uncontendedMetaLookups();
+            contendedMetaLookups += s.contendedMetaLookups();
+            flushes += s.flushes();
+            noSuchRegionExceptions += s.noSuchRegionExceptions();
+            delayedDueToNSRE += s.numRpcDelayedDueToNSRE();
+            batchedRpcsSent += s.numBatchedRpcSent();
+            gets += s.gets();
+            scannersOpened += s.scannersOpened();
+            scans += s.scans();
+            puts += s.puts();
+            rowLocks += s.rowLocks();
+            deletes += s.deletes();
+            atomicIncrements += s.atomicIncrements();
+            incrementBufferStats = incrementBufferStats.plus(s.incrementBufferStats());
+        }
+
+        return create(connections, rootLookups, uncontendedMetaLookups, contendedMetaLookups,
+                flushes, noSuchRegionExceptions, delayedDueToNSRE, batchedRpcsSent, gets,
+                scannersOpened, scans, puts, rowLocks, deletes, atomicIncrements,
+                incrementBufferStats);
+    }
+
+    // ClientStats may only be created by asynchbase, so its constructor must be made accessible
+    private static Constructor<ClientStats> constructor() throws NoSuchMethodException {
+        Constructor<ClientStats> c = constructor;
+        if (c == null) {
+            c = ClientStats.class.getDeclaredConstructor(
+                    long.class, long.class, long.class, long.class, long.class, long.class,
+                    long.class, long.class, long.class, long.class, long.class, long.class,
+                    long.class, long.class, long.class, CacheStats.class);
+            c.setAccessible(true);
+            constructor = c;
+        }
+        return c;
+    }
+}
@@ -0,0 +1,154 @@
+package com.datasift.dropwizard.hbase.util;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.datasift.dropwizard.hbase.RequestTimeoutException;
+import com.google.common.base.Charsets;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import org.hbase.async.Bytes;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imposes a deadline on each request, failing it with a {@link RequestTimeoutException} if it does
+ * not complete in time.
+ * <p/>
+ * Requests for a table with its own timeout are given that timeout; otherwise, requests for an
+ * {@link Operation} with its own timeout are given that timeout. All other requests are given the
+ * default timeout. A timeout of zero ("0") imposes no deadline.
+ * <p/>
+ * Deadlines are scheduled on a {@link Timer}, so they cost no threads while they are pending. A
+ * request that misses its deadline is not cancelled; its eventual result is discarded.
+ */
+public class Deadlines {
+
+    private final Timer timer;
+    private final Duration timeout;
+    private final Map<Operation, Duration> operations;
+    private final Map<byte[], Duration> tables;
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * Creates a new {@link Deadlines} with timeouts for some operations and tables.
+     *
+     * @param timer the {@link Timer} to schedule deadlines with.
+     * @param timeout the timeout for requests without a specific timeout.
+     * @param operations the timeout for each {@link Operation}.
+     * @param tables the timeout for each table, by table name.
+     */
+    public Deadlines(final Timer timer,
+                     final Duration timeout,
+                     final Map<Operation, Duration> operations,
+                     final Map<String, Duration> tables) {
+        this.timer = timer;
+        this.timeout = timeout;
+        this.operations = new EnumMap<Operation, Duration>(Operation.class);
+        this.operations.putAll(operations);
+        this.tables = new TreeMap<byte[], Duration>(Bytes.MEMCMP);
+        for (final Map.Entry<String, Duration> entry : tables.entrySet()) {
+            this.tables.put(entry.getKey().getBytes(Charsets.UTF_8), entry.getValue());
+        }
+    }
+
+    /**
+     * Gets the timeout for requests for the given {@link Operation} on the given table.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the table the request is for; or null if it is not for a specific table.
+     *
+     * @return the timeout for the request.
+     */
+    public Duration forRequest(final Operation operation, final byte[] table) {
+        if (table != null && !tables.isEmpty()) {
+            final Duration timeout = tables.get(table);
+            if (timeout != null) {
+                return timeout;
+            }
+        }
+        if (!operations.isEmpty()) {
+            final Duration timeout = operations.get(operation);
+            if (timeout != null) {
+                return timeout;
+            }
+        }
+        return timeout;
+    }
+
+    /**
+     * Gets the total number of requests that have missed their deadline.
+     *
+     * @return the number of requests that have timed out.
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Creates a new {@link RequestTimeoutException} for a request that missed its deadline.
+     *
+     * @param operation the {@link Operation} of the request.
+     * @param table the table the request is for; or null if it is not for a specific table.
+     * @param timeout the timeout the request was given.
+     *
+     * @return a {@link RequestTimeoutException} describing the request.
+     */
+    public static RequestTimeoutException newTimeoutException(final Operation operation,
+                                                              final byte[] table,
+                                                              final Duration timeout) {
+        return new RequestTimeoutException(operation.getName()
+                + (table == null ? "" : " on " + Bytes.pretty(table))
+                + " timed out after " + timeout);
+    }
+
+    /**
+     * Imposes a deadline on the given request.
+     *
+     * @param request the result of the request.
+     * @param operation the {@link Operation} of the request.
+     * @param table the table the request is for; or null if it is not for a specific table.
+     * @param <T> the type of the result of the request.
+     *
+     * @return the result of the request; or a {@link RequestTimeoutException} if it does not
+     *         complete within its timeout.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Deferred<T> within(final Deferred<T> request,
+                                  final Operation operation,
+                                  final byte[] table) {
+        final Duration timeout = forRequest(operation, table);
+        if (timeout.getQuantity() <= 0) {
+            return request;
+        }
+
+        final Deferred<T> result = new Deferred<T>();
+        final AtomicBoolean completed = new AtomicBoolean();
+        final Timeout deadline = timer.newTimeout(new TimerTask() {
+            public void run(final Timeout deadline) {
+                if (completed.compareAndSet(false, true)) {
+                    timeouts.incrementAndGet();
+                    result.callback(newTimeoutException(operation, table, timeout));
+                }
+            }
+        }, timeout.getQuantity(), timeout.getUnit());
+
+        // the result may be either the result of the request or an Exception
+        ((Deferred<Object>) (Deferred<?>) request).addBoth(new Callback<Object, Object>() {
+            public Object call(final Object arg) {
+                if (completed.compareAndSet(false, true)) {
+                    deadline.cancel();
+                    result.callback(arg);
+                }
+                return arg;
+            }
+        });
+        return result;
+    }
+}
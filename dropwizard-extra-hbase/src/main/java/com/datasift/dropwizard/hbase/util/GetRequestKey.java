@@ -0,0 +1,62 @@
+package com.datasift.dropwizard.hbase.util;
+
+import org.hbase.async.GetRequest;
+
+import java.util.Arrays;
+
+/**
+ * Identifies the cells requested by a {@link GetRequest}.
+ * <p/>
+ * Two {@link GetRequestKey}s are equal if their {@link GetRequest}s are for the same table, row,
+ * family, qualifiers and maximum number of versions, and so would retrieve the same cells.
+ */
+public final class GetRequestKey {
+
+    private final byte[] table;
+    private final byte[] key;
+    private final byte[] family;
+    private final byte[][] qualifiers;
+    private final int maxVersions;
+    private final int hash;
+
+    /**
+     * Creates a new {@link GetRequestKey} for the given {@link GetRequest}.
+     *
+     * @param request the {@link GetRequest} to identify.
+     */
+    public GetRequestKey(final GetRequest request) {
+        this.table = request.table();
+        this.key = request.key();
+        this.family = request.family();
+        this.qualifiers = request.qualifiers();
+        this.maxVersions = request.maxVersions();
+
+        int hash = Arrays.hashCode(table);
+        hash = 31 * hash + Arrays.hashCode(key);
+        hash = 31 * hash + Arrays.hashCode(family);
+        hash = 31 * hash + Arrays.deepHashCode(qualifiers);
+        this.hash = 31 * hash + maxVersions;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GetRequestKey)) {
+            return false;
+        }
+        final GetRequestKey other = (GetRequestKey) o;
+        return hash == other.hash
+                && maxVersions == other.maxVersions
+                && Arrays.equals(key, other.key)
+                && Arrays.equals(table, other.table)
+                && Arrays.equals(family, other.family)
+                && Arrays.deepEquals(qualifiers, other.qualifiers);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,75 @@
+package com.datasift.dropwizard.hbase.util;
+
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A race between the attempts of a hedged request, the first successful response to which is the
+ * result of the request.
+ * <p/>
+ * Each attempt must be {@link #attempt(Object) registered} before it is dispatched. A failed
+ * attempt only fails the request if no other attempt is outstanding; otherwise the request waits
+ * for the other attempts.
+ *
+ * @param <T> the type of the result of the request.
+ */
+public class Hedge<T> {
+
+    private final Deferred<T> result = new Deferred<T>();
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile Object winner = null;
+
+    /**
+     * Registers an attempt of the request, before it is dispatched.
+     *
+     * @param side identifies the attempt, e.g. the client it is dispatched to.
+     *
+     * @return a {@link Callback} to add to the response of the attempt.
+     */
+    public Callback<T, T> attempt(final Object side) {
+        outstanding.incrementAndGet();
+        // the argument may be either the result or an Exception
+        return new Callback<T, T>() {
+            public T call(final T arg) {
+                final boolean last = outstanding.decrementAndGet() == 0;
+                if ((last || !(arg instanceof Exception)) && done.compareAndSet(false, true)) {
+                    winner = side;
+                    result.callback(arg);
+                }
+                return arg;
+            }
+        };
+    }
+
+    /**
+     * Determines whether the request has completed.
+     *
+     * @return true if an attempt has won the race, or every attempt has failed.
+     */
+    public boolean isDone() {
+        return done.get();
+    }
+
+    /**
+     * Gets the attempt that completed the request.
+     *
+     * @return the side of the attempt that completed the request; or null if it has not completed.
+     */
+    public Object getWinner() {
+        return winner;
+    }
+
+    /**
+     * Gets the result of the request.
+     *
+     * @return a {@link Deferred} that fires with the first successful response; or with the error
+     *         of the last attempt to fail, if every attempt fails.
+     */
+    public Deferred<T> getResult() {
+        return result;
+    }
+}
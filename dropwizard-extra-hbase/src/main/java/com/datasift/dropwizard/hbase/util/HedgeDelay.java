@@ -0,0 +1,89 @@
+package com.datasift.dropwizard.hbase.util;
+
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.stats.ExponentiallyDecayingSample;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the latency of requests to a table, to decide how long to wait for a response before
+ * hedging a request.
+ * <p/>
+ * The delay is a percentile of the recent latencies of the table, so that only the slowest
+ * requests are hedged. Latencies are sampled with an {@link ExponentiallyDecayingSample}, biased
+ * towards the last five minutes. As computing a percentile sorts the sample, the delay is only
+ * recomputed when it is older than its maximum age.
+ * <p/>
+ * Until enough latencies have been sampled for the percentile to be meaningful, the delay is its
+ * minimum.
+ */
+public class HedgeDelay {
+
+    /**
+     * The default maximum age of a computed delay.
+     */
+    public static final long DEFAULT_MAX_AGE = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The minimum number of latencies to sample before computing the delay from them.
+     */
+    static final int MIN_SAMPLES = 20;
+
+    private final ExponentiallyDecayingSample sample;
+    private final double percentile;
+    private final long minDelay;
+    private final long maxAge;
+    private final Clock clock;
+
+    private volatile long delay;
+    private volatile long computed;
+
+    /**
+     * Creates a new {@link HedgeDelay}.
+     *
+     * @param percentile the percentile of latencies to delay by, e.g. 0.95.
+     * @param minDelay the minimum delay, in nanoseconds.
+     * @param maxAge the maximum age of a computed delay, in nanoseconds.
+     * @param clock the {@link Clock} to sample latencies and age delays by.
+     */
+    public HedgeDelay(final double percentile,
+                      final long minDelay,
+                      final long maxAge,
+                      final Clock clock) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("percentile must be within (0, 1): " + percentile);
+        }
+        this.sample = new ExponentiallyDecayingSample(1028, 0.015, clock);
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.maxAge = maxAge;
+        this.clock = clock;
+        this.delay = minDelay;
+        this.computed = clock.tick();
+    }
+
+    /**
+     * Records the latency of a request.
+     *
+     * @param latency the latency of the request, in nanoseconds.
+     */
+    public void update(final long latency) {
+        sample.update(latency);
+    }
+
+    /**
+     * Gets the time to wait for a response before hedging a request.
+     *
+     * @return the delay, in nanoseconds.
+     */
+    public long getDelay() {
+        final long now = clock.tick();
+        if (now - computed > maxAge) {
+            computed = now;
+            if (sample.size() >= MIN_SAMPLES) {
+                delay = Math.max(minDelay, Math.round(sample.getSnapshot().getValue(percentile)));
+            }
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,101 @@
+package com.datasift.dropwizard.hbase.util;
+
+import org.hbase.async.AtomicIncrementRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+
+import java.util.List;
+
+/**
+ * Utilities for estimating the memory used by {@link KeyValue}s and edits.
+ */
+public final class KeyValues {
+
+    /**
+     * The estimated overhead, in bytes, of each row and {@link KeyValue}.
+     */
+    public static final int OVERHEAD = 64;
+
+    private KeyValues() {
+        // utility class
+    }
+
+    /**
+     * Estimates the size, in bytes, of the given {@link KeyValue}.
+     *
+     * @param kv the {@link KeyValue} to estimate the size of.
+     *
+     * @return the estimated size of the {@link KeyValue}, in bytes.
+     */
+    public static int sizeOf(final KeyValue kv) {
+        return OVERHEAD
+                + kv.key().length
+                + kv.family().length
+                + kv.qualifier().length
+                + kv.value().length;
+    }
+
+    /**
+     * Estimates the size, in bytes, of the given row.
+     *
+     * @param row the {@link KeyValue}s of the row to estimate the size of.
+     *
+     * @return the estimated size of the row, in bytes.
+     */
+    public static int sizeOf(final List<KeyValue> row) {
+        int size = OVERHEAD;
+        for (final KeyValue kv : row) {
+            size += sizeOf(kv);
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the size, in bytes, of the given batch of rows.
+     *
+     * @param rows the rows to estimate the size of.
+     *
+     * @return the estimated size of the rows, in bytes.
+     */
+    public static long sizeOfRows(final List<? extends List<KeyValue>> rows) {
+        long size = 0;
+        for (final List<KeyValue> row : rows) {
+            size += sizeOf(row);
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the size, in bytes, of the cells written by the given {@link PutRequest}.
+     *
+     * @param request the {@link PutRequest} to estimate the size of.
+     *
+     * @return the estimated size of the cells written by the request, in bytes.
+     */
+    public static long sizeOf(final PutRequest request) {
+        final byte[][] qualifiers = request.qualifiers();
+        final byte[][] values = request.values();
+        final int prefix = OVERHEAD + request.key().length + request.family().length;
+        long size = OVERHEAD;
+        for (int i = 0; i < qualifiers.length; i++) {
+            size += prefix + qualifiers[i].length + values[i].length;
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the size, in bytes, of the cell written by the given {@link
+     * AtomicIncrementRequest}.
+     *
+     * @param request the {@link AtomicIncrementRequest} to estimate the size of.
+     *
+     * @return the estimated size of the cell written by the request, in bytes.
+     */
+    public static long sizeOf(final AtomicIncrementRequest request) {
+        return OVERHEAD
+                + request.key().length
+                + request.family().length
+                + request.qualifier().length
+                + 8;
+    }
+}
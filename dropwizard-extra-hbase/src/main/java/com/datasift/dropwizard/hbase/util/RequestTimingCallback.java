@@ -0,0 +1,68 @@
+package com.datasift.dropwizard.hbase.util;
+
+import com.datasift.dropwizard.hbase.metrics.HBaseInstrumentation;
+import com.datasift.dropwizard.metrics.LatencyRecorder;
+import com.stumbleupon.async.Callback;
+import com.yammer.metrics.core.Clock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Callback} for timing the success and failure of a request separately.
+ * <p/>
+ * On success, the time taken is recorded by each of the given success {@link LatencyRecorder}s. On
+ * failure, it is recorded by the failure {@link LatencyRecorder} instead, and the failure is
+ * counted by its {@link com.datasift.dropwizard.hbase.metrics.ErrorType}.
+ * <p/>
+ * The request is timed from the creation of the callback, so it should be created before the
+ * request is sent.
+ */
+public class RequestTimingCallback<T> implements Callback<T, T> {
+
+    private final HBaseInstrumentation metrics;
+    private final Clock clock;
+    private final LatencyRecorder failures;
+    private final LatencyRecorder[] successes;
+    private final long start;
+
+    /**
+     * Creates a new {@link Callback} that times the success or failure of a request.
+     *
+     * @param metrics the {@link HBaseInstrumentation} to count failures with.
+     * @param failures the {@link LatencyRecorder} to record the time taken by a failed request
+     *                 with.
+     * @param successes the {@link LatencyRecorder}s to record the time taken by a successful
+     *                  request with.
+     */
+    public RequestTimingCallback(final HBaseInstrumentation metrics,
+                                 final LatencyRecorder failures,
+                                 final LatencyRecorder... successes) {
+        this.metrics = metrics;
+        this.clock = metrics.getClock();
+        this.failures = failures;
+        this.successes = successes;
+        this.start = clock.tick();
+    }
+
+    /**
+     * Records the success or failure of the request and proxies any argument through verbatim.
+     *
+     * @param arg the result of the request (if any) to pass-through.
+     *
+     * @return the argument (if any), proxied verbatim.
+     *
+     * @throws Exception if an error occurs recording the request.
+     */
+    public T call(final T arg) throws Exception {
+        final long elapsed = clock.tick() - start;
+        if (arg instanceof Exception) {
+            failures.record(elapsed, TimeUnit.NANOSECONDS);
+            metrics.markError((Exception) arg);
+        } else {
+            for (final LatencyRecorder success : successes) {
+                success.record(elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
+        return arg;
+    }
+}
@@ -0,0 +1,81 @@
+package com.datasift.dropwizard.hbase.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits retries to a fraction of the requests made, so that retries can not multiply the load
+ * on a struggling cluster.
+ * <p/>
+ * Each request {@link #deposit() deposits} a fraction of a retry into the budget, and each retry
+ * must {@link #tryWithdraw() withdraw} a whole retry from it. The budget is capped, so that
+ * retries saved up while the cluster is healthy can not all be spent at once when it is not. The
+ * budget starts full, so that clients making few requests may still retry occasional failures.
+ */
+public class RetryBudget {
+
+    /**
+     * The number of units in a single retry, so that fractions of a retry can be counted.
+     */
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long maxBalance;
+    private final AtomicLong balance;
+
+    /**
+     * Creates a new {@link RetryBudget}.
+     *
+     * @param ratio the maximum number of retries per request, e.g. 0.1 for 10% extra load.
+     * @param maxRetries the maximum number of retries that may be saved up.
+     */
+    public RetryBudget(final double ratio, final int maxRetries) {
+        if (ratio < 0) {
+            throw new IllegalArgumentException("ratio must not be negative: " + ratio);
+        }
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative: " + maxRetries);
+        }
+        this.deposit = Math.round(ratio * SCALE);
+        this.maxBalance = maxRetries * SCALE;
+        this.balance = new AtomicLong(maxBalance);
+    }
+
+    /**
+     * Deposits the share of a retry earned by a request.
+     */
+    public void deposit() {
+        while (true) {
+            final long current = balance.get();
+            final long next = Math.min(maxBalance, current + deposit);
+            if (next == current || balance.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Withdraws a retry from the budget, if there is one available.
+     *
+     * @return true if a retry was withdrawn; false if the budget is exhausted.
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            final long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of retries currently available.
+     *
+     * @return the number of retries available, including fractions of a retry.
+     */
+    public double getAvailable() {
+        return (double) balance.get() / SCALE;
+    }
+}
@@ -0,0 +1,106 @@
+package com.datasift.dropwizard.hbase.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A sum of {@code long} values that may be updated by many threads with little contention.
+ * <p/>
+ * Updates are made to a single base value until two threads contend for it, at which point a set
+ * of stripes is allocated and each thread updates the stripe selected by its identity. Each
+ * stripe is padded to occupy its own cache line, so that threads updating different stripes do
+ * not contend with each other.
+ * <p/>
+ * {@link #sumThenReset()} atomically claims each part of the sum, so every update is reflected
+ * in exactly one result of {@link #sumThenReset()}, even when made concurrently with it.
+ */
+public class StripedLong {
+
+    /**
+     * The number of {@code long}s occupied by each stripe, so that each is on its own cache line.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * The number of stripes, as a power of two no smaller than the number of processors.
+     */
+    private static final int STRIPES = Math.min(64, Integer.highestOneBit(
+            Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private static final AtomicReferenceFieldUpdater<StripedLong, AtomicLongArray> STRIPES_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(
+                    StripedLong.class, AtomicLongArray.class, "stripes");
+
+    private final AtomicLong base = new AtomicLong();
+    private volatile AtomicLongArray stripes = null;
+
+    /**
+     * Adds the given value to the sum.
+     *
+     * @param x the value to add.
+     */
+    public void add(final long x) {
+        AtomicLongArray stripes = this.stripes;
+        if (stripes == null) {
+            final long b = base.get();
+            if (base.compareAndSet(b, b + x)) {
+                return;
+            }
+            stripes = stripes();
+        }
+        stripes.addAndGet(index(), x);
+    }
+
+    /**
+     * Gets the current sum.
+     * <p/>
+     * The result is not an atomic snapshot; concurrent updates may or may not be reflected.
+     *
+     * @return the current sum.
+     */
+    public long sum() {
+        long sum = base.get();
+        final AtomicLongArray stripes = this.stripes;
+        if (stripes != null) {
+            for (int i = 0; i < STRIPES; i++) {
+                sum += stripes.get(i * PADDING);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the current sum and resets it to zero.
+     *
+     * @return the sum of all updates since the last reset.
+     */
+    public long sumThenReset() {
+        long sum = base.getAndSet(0);
+        final AtomicLongArray stripes = this.stripes;
+        if (stripes != null) {
+            for (int i = 0; i < STRIPES; i++) {
+                sum += stripes.getAndSet(i * PADDING, 0);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the stripes, allocating them if another thread hasn't already.
+     */
+    private AtomicLongArray stripes() {
+        STRIPES_UPDATER.compareAndSet(this, null, new AtomicLongArray(STRIPES * PADDING));
+        return stripes;
+    }
+
+    /**
+     * Selects the stripe for the current thread.
+     */
+    private static int index() {
+        long h = Thread.currentThread().getId();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return ((int) h & (STRIPES - 1)) * PADDING;
+    }
+}
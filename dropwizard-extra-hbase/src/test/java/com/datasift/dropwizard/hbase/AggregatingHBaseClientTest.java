@@ -0,0 +1,158 @@
+package com.datasift.dropwizard.hbase;
+
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.AtomicIncrementRequest;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link AggregatingHBaseClient}.
+ */
+public class AggregatingHBaseClientTest {
+
+    private HBaseClient underlying;
+    private Timer timer;
+    private List<Runnable> tasks;
+    private AggregatingHBaseClient client;
+
+    @Before
+    public void setup() {
+        underlying = mock(HBaseClient.class);
+        timer = mock(Timer.class);
+        when(underlying.getTimer()).thenReturn(timer);
+        when(underlying.flush()).thenReturn(Deferred.fromResult((Object) null));
+        when(underlying.increment(any(AtomicIncrementRequest.class)))
+                .thenReturn(Deferred.fromResult(10L));
+        tasks = new ArrayList<Runnable>();
+        client = new AggregatingHBaseClient(
+                underlying, Duration.seconds(1), 2, 3, new Executor() {
+                    public void execute(final Runnable task) {
+                        tasks.add(task);
+                    }
+                }, new MetricsRegistry());
+    }
+
+    @Test
+    public void aggregatesIncrementsToTheSameCell() throws Exception {
+        final Deferred<Long> first = client.bufferIncrement(increment("row", 1));
+        final Deferred<Long> second = client.bufferIncrement(increment("row", 2));
+        client.bufferIncrement(increment("row", 3));
+
+        assertThat("delta is pending", client.getPendingDelta(), is(6L));
+
+        client.flush().join();
+
+        final ArgumentCaptor<AtomicIncrementRequest> flushed =
+                ArgumentCaptor.forClass(AtomicIncrementRequest.class);
+        verify(underlying, times(1)).increment(flushed.capture());
+        assertThat("flushes the total", flushed.getValue().getAmount(), is(6L));
+        assertThat("first increment gets the new value", first.join(), is(10L));
+        assertThat("second increment gets the new value", second.join(), is(10L));
+        assertThat("aggregated three increments", client.getAggregatedIncrements(), is(3L));
+        assertThat("flushed one increment", client.getFlushedIncrements(), is(1L));
+    }
+
+    @Test
+    public void flushesDifferentCellsSeparately() throws Exception {
+        client.bufferIncrement(increment("a", 1));
+        client.bufferIncrement(increment("b", 1));
+        client.flush().join();
+
+        verify(underlying, times(2)).increment(any(AtomicIncrementRequest.class));
+    }
+
+    @Test
+    public void flushesPeriodically() throws Exception {
+        client.bufferIncrement(increment("row", 1));
+
+        final ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer).newTimeout(task.capture(), eq(1L), eq(TimeUnit.SECONDS));
+        task.getValue().run(mock(Timeout.class));
+
+        verify(underlying, never()).increment(any(AtomicIncrementRequest.class));
+        assertThat("flush is handed to the executor", tasks.size(), is(1));
+        tasks.get(0).run();
+
+        verify(underlying).increment(any(AtomicIncrementRequest.class));
+    }
+
+    @Test
+    public void flushesWhenTheMaximumCellsAreAggregated() {
+        client.bufferIncrement(increment("a", 1));
+        client.bufferIncrement(increment("b", 1));
+
+        assertThat("flush is requested", tasks.size(), is(1));
+        tasks.get(0).run();
+
+        verify(underlying, times(2)).increment(any(AtomicIncrementRequest.class));
+    }
+
+    @Test
+    public void rejectsIncrementsWhenTooManyArePending() throws Exception {
+        final Deferred<Long> response = new Deferred<Long>();
+        when(underlying.increment(any(AtomicIncrementRequest.class))).thenReturn(response);
+        client.bufferIncrement(increment("row", 1));
+        client.bufferIncrement(increment("row", 1));
+        client.bufferIncrement(increment("row", 1));
+
+        assertThat("flush is requested", tasks.size(), is(1));
+        tasks.get(0).run();
+
+        final Deferred<Long> rejected = client.bufferIncrement(increment("row", 1));
+        assertThat("flushed increments are still pending", client.getPendingIncrements(), is(3));
+        assertThat("increment is rejected", client.getRejectedIncrements(), is(1L));
+        try {
+            rejected.join();
+            fail("increment should have been rejected");
+        } catch (final RequestRejectedException e) {
+            // expected
+        }
+
+        response.callback(10L);
+
+        assertThat("no increments are pending", client.getPendingIncrements(), is(0));
+    }
+
+    @Test
+    public void discardsIdleCells() throws Exception {
+        client.bufferIncrement(increment("row", 1));
+        client.flush().join();
+
+        assertThat("flushed cell is retained", client.getPendingCells(), is(1));
+
+        client.flush().join();
+
+        assertThat("idle cell is discarded", client.getPendingCells(), is(0));
+        verify(underlying, times(1)).increment(any(AtomicIncrementRequest.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void propagatesErrorsToWaitingIncrements() throws Exception {
+        when(underlying.increment(any(AtomicIncrementRequest.class))).thenReturn(
+                Deferred.<Long>fromError(new IllegalStateException("failed")));
+        final Deferred<Long> result = client.bufferIncrement(increment("row", 1));
+        client.flush();
+
+        result.join();
+    }
+
+    private AtomicIncrementRequest increment(final String row, final long amount) {
+        return new AtomicIncrementRequest("table", row, "family", "qualifier", amount);
+    }
+}
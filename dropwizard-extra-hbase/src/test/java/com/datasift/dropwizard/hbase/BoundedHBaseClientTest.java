@@ -1,5 +1,6 @@
 package com.datasift.dropwizard.hbase;
 
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
 import com.stumbleupon.async.Deferred;
 import org.hbase.async.*;
 import org.junit.Test;
@@ -9,6 +10,8 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 
 import static org.mockito.Mockito.*;
@@ -277,6 +280,27 @@ public class BoundedHBaseClientTest {
         checkBlocksWithNoPermitOn().get(mock(GetRequest.class));
     }
 
+    @Test
+    public void bulkGetsWithASinglePermit() {
+        final List<GetRequest> reqs = new ArrayList<GetRequest>();
+        reqs.add(mock(GetRequest.class));
+        reqs.add(mock(GetRequest.class));
+        final Deferred<List<BulkResult<ArrayList<KeyValue>>>> resp =
+                new Deferred<List<BulkResult<ArrayList<KeyValue>>>>();
+
+        when(underlying.getAll(reqs)).thenReturn(resp);
+
+        checkForPermit();
+        assertThat("bulk gets without blocking", client.getAll(reqs), is(resp));
+        checkCallbackReleasesPermit(resp);
+    }
+
+    @Test(expected = BlockedException.class)
+    public void bulkGetBlocksWithNoPermit() {
+        checkBlocksWithNoPermitOn()
+                .getAll(Collections.singletonList(mock(GetRequest.class)));
+    }
+
     @Test
     public void locksWithPermit() {
         final RowLockRequest req = mock(RowLockRequest.class);
@@ -329,6 +353,19 @@ public class BoundedHBaseClientTest {
         checkBlocksWithNoPermitOn().unlockRow(mock(RowLock.class));
     }
 
+    @Test
+    public void closesScannerWithNoPermit() {
+        final byte[] table = new byte[0];
+        final RowScanner scanner = mock(RowScanner.class);
+        final Deferred<Object> resp = new Deferred<Object>();
+
+        when(underlying.scan(table)).thenReturn(scanner);
+        when(scanner.close()).thenReturn(resp);
+
+        assertThat("closes scanner without blocking",
+                checkBlocksWithNoPermitOn().scan(table).close(), is(resp));
+    }
+
     private HBaseClient checkBlocksWithNoPermitOn() {
         final Semaphore semaphore = mock(Semaphore.class);
         doThrow(new BlockedException()).when(semaphore).acquireUninterruptibly();
@@ -0,0 +1,170 @@
+package com.datasift.dropwizard.hbase;
+
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.core.Clock;
+import org.hbase.async.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link CachingHBaseClient}.
+ */
+public class CachingHBaseClientTest {
+
+    private long time = 0;
+    private HBaseClient underlying;
+    private CachingHBaseClient client;
+
+    @Before
+    public void setup() {
+        underlying = mock(HBaseClient.class);
+        client = new CachingHBaseClient(
+                underlying,
+                Size.megabytes(1),
+                Duration.seconds(10),
+                Collections.singletonMap("uncached", Duration.seconds(0)),
+                new Clock() {
+                    @Override
+                    public long tick() {
+                        return time;
+                    }
+                });
+    }
+
+    @Test
+    public void cachesGets() throws Exception {
+        final GetRequest req = new GetRequest("table", "row", "family", "qualifier");
+        when(underlying.get(any(GetRequest.class))).thenReturn(result("value"));
+
+        assertThat("first get is fetched",
+                client.get(req).join().size(), is(1));
+        assertThat("second get is cached",
+                client.get(req).join().size(), is(1));
+
+        verify(underlying, times(1)).get(any(GetRequest.class));
+        assertThat("cache was hit once", client.getHits(), is(1L));
+        assertThat("cache was missed once", client.getMisses(), is(1L));
+        assertThat("cache size is tracked", client.getSize(), is(greaterThan(0L)));
+    }
+
+    @Test
+    public void cachesColumnsSeparately() throws Exception {
+        when(underlying.get(any(GetRequest.class))).thenReturn(result("value"));
+
+        client.get(new GetRequest("table", "row", "family", "a")).join();
+        client.get(new GetRequest("table", "row", "family", "b")).join();
+
+        verify(underlying, times(2)).get(any(GetRequest.class));
+    }
+
+    @Test
+    public void expiresCachedGets() throws Exception {
+        final GetRequest req = new GetRequest("table", "row", "family", "qualifier");
+        when(underlying.get(any(GetRequest.class))).thenReturn(result("value"));
+
+        client.get(req).join();
+        time += TimeUnit.SECONDS.toNanos(11);
+        client.get(req).join();
+
+        verify(underlying, times(2)).get(any(GetRequest.class));
+    }
+
+    @Test
+    public void doesNotCacheTablesWithNoTtl() throws Exception {
+        final GetRequest req = new GetRequest("uncached", "row", "family", "qualifier");
+        when(underlying.get(any(GetRequest.class))).thenReturn(result("value"));
+
+        client.get(req).join();
+        client.get(req).join();
+
+        verify(underlying, times(2)).get(any(GetRequest.class));
+    }
+
+    @Test
+    public void invalidatesOnPut() throws Exception {
+        final GetRequest req = new GetRequest("table", "row", "family", "qualifier");
+        final PutRequest put = new PutRequest(
+                "table".getBytes(), "row".getBytes(), "family".getBytes(),
+                "qualifier".getBytes(), "new".getBytes());
+        when(underlying.get(any(GetRequest.class))).thenReturn(result("value"));
+        when(underlying.put(put)).thenReturn(Deferred.fromResult((Object) null));
+
+        client.get(req).join();
+        client.put(put).join();
+        client.get(req).join();
+
+        verify(underlying, times(2)).get(any(GetRequest.class));
+    }
+
+    @Test
+    public void doesNotCacheGetsInvalidatedWhileInFlight() throws Exception {
+        final GetRequest req = new GetRequest("table", "row", "family", "qualifier");
+        final Deferred<ArrayList<KeyValue>> pending = new Deferred<ArrayList<KeyValue>>();
+        when(underlying.get(any(GetRequest.class)))
+                .thenReturn(pending)
+                .thenReturn(result("new"));
+        when(underlying.delete(any(DeleteRequest.class)))
+                .thenReturn(Deferred.fromResult((Object) null));
+
+        final Deferred<ArrayList<KeyValue>> stale = client.get(req);
+        client.delete(new DeleteRequest("table", "row")).join();
+        pending.callback(result("old").join());
+        stale.join();
+
+        assertThat("fetches the row again",
+                new String(client.get(req).join().get(0).value()), is("new"));
+    }
+
+    @Test
+    public void returnsCopiesOfCachedResults() throws Exception {
+        final GetRequest req = new GetRequest("table", "row", "family", "qualifier");
+        when(underlying.get(any(GetRequest.class))).thenReturn(result("value"));
+
+        client.get(req).join().clear();
+
+        assertThat("cached result is not modified by the caller",
+                client.get(req).join().size(), is(1));
+    }
+
+    @Test
+    public void bulkGetsOnlyUncachedRequests() throws Exception {
+        final GetRequest cached = new GetRequest("table", "cached", "family", "qualifier");
+        final GetRequest uncached = new GetRequest("table", "uncached", "family", "qualifier");
+        when(underlying.get(any(GetRequest.class))).thenReturn(result("value"));
+        client.get(cached).join();
+
+        final List<BulkResult<ArrayList<KeyValue>>> fetched =
+                new ArrayList<BulkResult<ArrayList<KeyValue>>>();
+        fetched.add(BulkResult.success(result("value").join()));
+        when(underlying.getAll(Collections.singletonList(uncached)))
+                .thenReturn(Deferred.fromResult(fetched));
+
+        final List<BulkResult<ArrayList<KeyValue>>> results =
+                client.getAll(Arrays.asList(cached, uncached)).join();
+
+        assertThat("returns a result for each request", results.size(), is(2));
+        assertThat("cached request succeeded", results.get(0).isSuccess(), is(true));
+        assertThat("uncached request succeeded", results.get(1).isSuccess(), is(true));
+        verify(underlying).getAll(Collections.singletonList(uncached));
+    }
+
+    private Deferred<ArrayList<KeyValue>> result(final String value) {
+        final ArrayList<KeyValue> values = new ArrayList<KeyValue>();
+        values.add(new KeyValue(
+                "row".getBytes(), "family".getBytes(), "qualifier".getBytes(), value.getBytes()));
+        return Deferred.fromResult(values);
+    }
+}
@@ -0,0 +1,109 @@
+package com.datasift.dropwizard.hbase;
+
+import com.stumbleupon.async.Deferred;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.GetRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link CoalescingHBaseClient}.
+ */
+public class CoalescingHBaseClientTest {
+
+    private HBaseClient underlying;
+    private CoalescingHBaseClient client;
+    private Deferred<ArrayList<KeyValue>> response;
+
+    @Before
+    public void setup() {
+        underlying = mock(HBaseClient.class);
+        client = new CoalescingHBaseClient(underlying, new MetricsRegistry());
+        response = new Deferred<ArrayList<KeyValue>>();
+        when(underlying.get(any(GetRequest.class))).thenReturn(response);
+    }
+
+    @Test
+    public void coalescesIdenticalGets() throws Exception {
+        final Deferred<ArrayList<KeyValue>> first =
+                client.get(new GetRequest("table", "row", "family", "qualifier"));
+        final Deferred<ArrayList<KeyValue>> second =
+                client.get(new GetRequest("table", "row", "family", "qualifier"));
+
+        verify(underlying, times(1)).get(any(GetRequest.class));
+        assertThat("second get was coalesced", client.getCoalescedGets(), is(1L));
+        assertThat("one get is in-flight", client.getInFlightGets(), is(1));
+
+        response.callback(result());
+
+        final ArrayList<KeyValue> a = first.join();
+        final ArrayList<KeyValue> b = second.join();
+        assertThat("both callers receive the result", b.size(), is(1));
+        assertThat("each caller receives its own copy", a, is(not(sameInstance(b))));
+        assertThat("no gets are in-flight", client.getInFlightGets(), is(0));
+    }
+
+    @Test
+    public void doesNotCoalesceDifferentGets() {
+        client.get(new GetRequest("table", "row", "family", "a"));
+        client.get(new GetRequest("table", "row", "family", "b"));
+
+        verify(underlying, times(2)).get(any(GetRequest.class));
+        assertThat("no gets were coalesced", client.getCoalescedGets(), is(0L));
+    }
+
+    @Test
+    public void doesNotCoalesceCompletedGets() {
+        client.get(new GetRequest("table", "row", "family", "qualifier"));
+        response.callback(result());
+        client.get(new GetRequest("table", "row", "family", "qualifier"));
+
+        verify(underlying, times(2)).get(any(GetRequest.class));
+    }
+
+    @Test
+    public void doesNotCoalesceGetsDispatchedBeforeAPut() throws Exception {
+        final PutRequest put = new PutRequest("table", "row", "family", "qualifier", "value");
+        when(underlying.put(put)).thenReturn(Deferred.fromResult(null));
+
+        final Deferred<ArrayList<KeyValue>> first =
+                client.get(new GetRequest("table", "row", "family", "qualifier"));
+        client.put(put).join();
+        client.get(new GetRequest("table", "row", "family", "qualifier"));
+
+        verify(underlying, times(2)).get(any(GetRequest.class));
+        assertThat("no gets were coalesced", client.getCoalescedGets(), is(0L));
+
+        response.callback(result());
+
+        assertThat("the retired get still completes", first.join().size(), is(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void propagatesErrorsToAllCallers() throws Exception {
+        client.get(new GetRequest("table", "row", "family", "qualifier"));
+        final Deferred<ArrayList<KeyValue>> second =
+                client.get(new GetRequest("table", "row", "family", "qualifier"));
+
+        response.callback(new IllegalStateException("failed"));
+
+        second.join();
+    }
+
+    private ArrayList<KeyValue> result() {
+        final ArrayList<KeyValue> values = new ArrayList<KeyValue>();
+        values.add(new KeyValue(
+                "row".getBytes(), "family".getBytes(), "qualifier".getBytes(), "value".getBytes()));
+        return values;
+    }
+}
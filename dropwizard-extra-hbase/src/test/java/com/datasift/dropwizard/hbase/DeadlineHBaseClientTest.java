@@ -0,0 +1,133 @@
+package com.datasift.dropwizard.hbase;
+
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.GetRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.hbase.async.RowLock;
+import org.hbase.async.RowLockRequest;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link DeadlineHBaseClient}.
+ */
+public class DeadlineHBaseClientTest {
+
+    private HBaseClient underlying;
+    private Timer timer;
+    private Timeout timeout;
+    private DeadlineHBaseClient client;
+
+    @Before
+    public void setup() {
+        underlying = mock(HBaseClient.class);
+        timer = mock(Timer.class);
+        timeout = mock(Timeout.class);
+        when(underlying.getTimer()).thenReturn(timer);
+        when(timer.newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class)))
+                .thenReturn(timeout);
+        client = new DeadlineHBaseClient(
+                underlying,
+                Duration.seconds(1),
+                Collections.singletonMap(Operation.PUT, Duration.seconds(0)),
+                Collections.singletonMap("slow", Duration.seconds(10)),
+                new MetricsRegistry());
+    }
+
+    @Test
+    public void passesThroughRequestsThatCompleteInTime() throws Exception {
+        final ArrayList<KeyValue> row = new ArrayList<KeyValue>();
+        when(underlying.get(any(GetRequest.class))).thenReturn(Deferred.fromResult(row));
+
+        assertThat("returns the result",
+                client.get(new GetRequest("table", "row")).join(), is(row));
+        verify(timeout).cancel();
+        assertThat("no requests timed out", client.getTimeouts(), is(0L));
+    }
+
+    @Test
+    public void failsRequestsThatMissTheirDeadline() throws Exception {
+        when(underlying.get(any(GetRequest.class)))
+                .thenReturn(new Deferred<ArrayList<KeyValue>>());
+
+        final Deferred<ArrayList<KeyValue>> result = client.get(new GetRequest("table", "row"));
+        expire(1L, TimeUnit.SECONDS);
+
+        try {
+            result.join();
+            fail("request did not time out");
+        } catch (final Exception e) {
+            assertThat("request timed out", e, is(instanceOf(RequestTimeoutException.class)));
+        }
+        assertThat("one request timed out", client.getTimeouts(), is(1L));
+    }
+
+    @Test
+    public void usesTheTimeoutForTheTable() throws Exception {
+        when(underlying.get(any(GetRequest.class)))
+                .thenReturn(new Deferred<ArrayList<KeyValue>>());
+
+        client.get(new GetRequest("slow", "row"));
+
+        verify(timer).newTimeout(any(TimerTask.class), eq(10L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void imposesNoDeadlineForOperationsWithoutATimeout() throws Exception {
+        final Deferred<Object> pending = new Deferred<Object>();
+        when(underlying.put(any(PutRequest.class))).thenReturn(pending);
+
+        final PutRequest put = new PutRequest(
+                "table".getBytes(), "row".getBytes(), "family".getBytes(),
+                "qualifier".getBytes(), "value".getBytes());
+
+        assertThat("returns the underlying result", client.put(put), is(pending));
+        verifyZeroInteractions(timer);
+    }
+
+    @Test
+    public void releasesRowLocksAcquiredAfterTheDeadline() throws Exception {
+        final Deferred<RowLock> lock = new Deferred<RowLock>();
+        final RowLock acquired = rowLock();
+        when(underlying.lockRow(any(RowLockRequest.class))).thenReturn(lock);
+        when(underlying.unlockRow(acquired)).thenReturn(Deferred.fromResult((Object) null));
+
+        client.lockRow(new RowLockRequest("table", "row"));
+        expire(1L, TimeUnit.SECONDS);
+        lock.callback(acquired);
+
+        verify(underlying).unlockRow(acquired);
+    }
+
+    private RowLock rowLock() throws Exception {
+        // RowLocks are only created by asynchbase itself
+        final Constructor<RowLock> constructor =
+                RowLock.class.getDeclaredConstructor(byte[].class, long.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance("region".getBytes(), 1L);
+    }
+
+    private void expire(final long delay, final TimeUnit unit) throws Exception {
+        final ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer).newTimeout(task.capture(), eq(delay), eq(unit));
+        task.getValue().run(timeout);
+    }
+}
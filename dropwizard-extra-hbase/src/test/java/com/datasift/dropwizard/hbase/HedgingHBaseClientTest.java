@@ -0,0 +1,227 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.RetryBudget;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.GetRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link HedgingHBaseClient}.
+ */
+public class HedgingHBaseClientTest {
+
+    private final ArrayList<KeyValue> primaryRow = new ArrayList<KeyValue>();
+    private final ArrayList<KeyValue> replicaRow = new ArrayList<KeyValue>();
+
+    private HBaseClient primary;
+    private HBaseClient replica;
+    private Timer timer;
+    private Executor executor;
+    private Deferred<ArrayList<KeyValue>> primaryResponse;
+    private Deferred<ArrayList<KeyValue>> replicaResponse;
+    private HedgingHBaseClient client;
+
+    @Before
+    public void setup() {
+        primary = mock(HBaseClient.class);
+        replica = mock(HBaseClient.class);
+        timer = mock(Timer.class);
+        when(primary.getTimer()).thenReturn(timer);
+        executor = mock(Executor.class);
+        doAnswer(new Answer<Void>() {
+            public Void answer(final InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(executor).execute(any(Runnable.class));
+
+        primaryResponse = new Deferred<ArrayList<KeyValue>>();
+        replicaResponse = new Deferred<ArrayList<KeyValue>>();
+        when(primary.get(any(GetRequest.class))).thenReturn(primaryResponse);
+        when(replica.get(any(GetRequest.class))).thenReturn(replicaResponse);
+
+        client = client(new RetryBudget(0.1, 10));
+    }
+
+    @Test
+    public void doesNotHedgeFastReads() throws Exception {
+        final Deferred<ArrayList<KeyValue>> result = client.get(new GetRequest("table", "row"));
+        primaryResponse.callback(primaryRow);
+        hedge();
+
+        assertThat("returns the result of the primary", result.join(), is(primaryRow));
+        verify(replica, never()).get(any(GetRequest.class));
+        assertThat("primary won", client.getWins(HedgingHBaseClient.Side.PRIMARY).count(), is(1L));
+        assertThat("nothing was hedged", client.getHedgeRatio(), is(0.0));
+    }
+
+    @Test
+    public void hedgesSlowReadsAfterTheDelay() throws Exception {
+        final Deferred<ArrayList<KeyValue>> result = client.get(new GetRequest("table", "row"));
+
+        final ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(timer).newTimeout(any(TimerTask.class), delay.capture(), eq(TimeUnit.NANOSECONDS));
+        assertThat("waits for the minimum delay",
+                delay.getValue(), is(TimeUnit.MILLISECONDS.toNanos(5)));
+
+        hedge();
+        replicaResponse.callback(replicaRow);
+
+        assertThat("returns the result of the replica", result.join(), is(replicaRow));
+        assertThat("replica won", client.getWins(HedgingHBaseClient.Side.REPLICA).count(), is(1L));
+        assertThat("every read was hedged", client.getHedgeRatio(), is(1.0));
+
+        primaryResponse.callback(primaryRow);
+        assertThat("late primary does not change the result", result.join(), is(replicaRow));
+    }
+
+    @Test
+    public void sendsTheReplicaACopyOfTheRequest() throws Exception {
+        final GetRequest request = new GetRequest("table", "row", "family", "qualifier");
+        client.get(request);
+        hedge();
+
+        final ArgumentCaptor<GetRequest> hedged = ArgumentCaptor.forClass(GetRequest.class);
+        verify(replica).get(hedged.capture());
+        assertThat("request is copied", hedged.getValue(), is(not(sameInstance(request))));
+        assertThat("copy is of the same cells",
+                new String(hedged.getValue().qualifiers()[0]), is("qualifier"));
+    }
+
+    @Test
+    public void waitsForTheHedgeWhenThePrimaryFails() throws Exception {
+        final Deferred<ArrayList<KeyValue>> result = client.get(new GetRequest("table", "row"));
+        hedge();
+        primaryResponse.callback(new RequestTimeoutException("timed out"));
+        replicaResponse.callback(replicaRow);
+
+        assertThat("returns the result of the replica", result.join(), is(replicaRow));
+    }
+
+    @Test(expected = RequestTimeoutException.class)
+    public void failsWhenThePrimaryFailsWithoutAHedge() throws Exception {
+        final Deferred<ArrayList<KeyValue>> result = client.get(new GetRequest("table", "row"));
+        primaryResponse.callback(new RequestTimeoutException("timed out"));
+        result.join();
+    }
+
+    @Test
+    public void doesNotHedgeBeyondTheBudget() throws Exception {
+        client = client(new RetryBudget(0, 0));
+
+        final Deferred<ArrayList<KeyValue>> result = client.get(new GetRequest("table", "row"));
+        hedge();
+
+        verify(replica, never()).get(any(GetRequest.class));
+        assertThat("hedge was denied", client.getBudgetExhausted(), is(1L));
+
+        primaryResponse.callback(primaryRow);
+        assertThat("returns the result of the primary", result.join(), is(primaryRow));
+    }
+
+    @Test
+    public void dispatchesHedgesWithTheExecutor() throws Exception {
+        final Executor deferred = mock(Executor.class);
+        client = client(new RetryBudget(0.1, 10), deferred);
+
+        client.get(new GetRequest("table", "row"));
+        hedge();
+
+        verify(replica, never()).get(any(GetRequest.class));
+        final ArgumentCaptor<Runnable> dispatch = ArgumentCaptor.forClass(Runnable.class);
+        verify(deferred).execute(dispatch.capture());
+
+        dispatch.getValue().run();
+        verify(replica).get(any(GetRequest.class));
+    }
+
+    @Test
+    public void doesNotHedgeOnceTheExecutorIsShutDown() throws Exception {
+        final Executor shutdown = mock(Executor.class);
+        doThrow(new RejectedExecutionException()).when(shutdown).execute(any(Runnable.class));
+        client = client(new RetryBudget(0.1, 10), shutdown);
+
+        final Deferred<ArrayList<KeyValue>> result = client.get(new GetRequest("table", "row"));
+        hedge();
+        primaryResponse.callback(primaryRow);
+
+        verify(replica, never()).get(any(GetRequest.class));
+        assertThat("returns the result of the primary", result.join(), is(primaryRow));
+    }
+
+    @Test
+    public void dispatchesWritesToThePrimaryOnly() throws Exception {
+        final PutRequest put = new PutRequest("table", "row", "family", "qualifier", "value");
+        client.put(put);
+
+        verify(primary).put(put);
+        verify(replica, never()).put(any(PutRequest.class));
+    }
+
+    @Test
+    public void scansFromTheWinnerAfterTheFirstBatch() throws Exception {
+        final RowScanner primaryScanner = mock(RowScanner.class);
+        final RowScanner replicaScanner = mock(RowScanner.class);
+        final Deferred<ArrayList<ArrayList<KeyValue>>> first =
+                new Deferred<ArrayList<ArrayList<KeyValue>>>();
+        final ArrayList<ArrayList<KeyValue>> batch = new ArrayList<ArrayList<KeyValue>>();
+        when(primary.scan(any(byte[].class))).thenReturn(primaryScanner);
+        when(replica.scan(any(byte[].class))).thenReturn(replicaScanner);
+        when(primaryScanner.nextRows()).thenReturn(first);
+        when(replicaScanner.nextRows()).thenReturn(Deferred.fromResult(batch));
+
+        final RowScanner scanner = client.scan("table".getBytes()).setFamily("family");
+        verify(primaryScanner).setFamily("family");
+        verify(replicaScanner).setFamily("family");
+
+        final Deferred<ArrayList<ArrayList<KeyValue>>> result = scanner.nextRows();
+        hedge();
+        assertThat("returns the first batch of the replica", result.join(), is(batch));
+
+        first.callback(batch);
+        verify(primaryScanner).close();
+
+        scanner.nextRows();
+        verify(replicaScanner, times(2)).nextRows();
+        verify(primaryScanner, times(1)).nextRows();
+    }
+
+    private HedgingHBaseClient client(final RetryBudget budget) {
+        return client(budget, executor);
+    }
+
+    private HedgingHBaseClient client(final RetryBudget budget, final Executor executor) {
+        return new HedgingHBaseClient(primary, replica, 0.95, Duration.milliseconds(5),
+                budget, executor, new MetricsRegistry(), Clock.defaultClock());
+    }
+
+    private void hedge() throws Exception {
+        final ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer, atLeastOnce()).newTimeout(task.capture(), anyLong(), any(TimeUnit.class));
+        task.getValue().run(mock(Timeout.class));
+    }
+}
@@ -0,0 +1,282 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.memory.InjectedLatency;
+import com.datasift.dropwizard.hbase.memory.LatencyDistribution;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import org.hbase.async.*;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link InMemoryHBaseClient}.
+ */
+public class InMemoryHBaseClientTest {
+
+    private InMemoryHBaseClient client;
+
+    @Before
+    public void setup() {
+        client = new InMemoryHBaseClient();
+        client.createTable("table");
+        client.createTable("a");
+        client.createTable("b");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.shutdown().join();
+    }
+
+    @Test
+    public void getsWhatWasPut() throws Exception {
+        client.put(new PutRequest("table", "row", "family", "qualifier", "value")).join();
+
+        final ArrayList<KeyValue> row = client.get(new GetRequest("table", "row")).join();
+        assertThat("row has one cell", row.size(), is(1));
+        assertThat("cell has the value put", new String(row.get(0).value()), is("value"));
+    }
+
+    @Test
+    public void getsNothingForMissingRows() throws Exception {
+        assertThat("missing row has no cells",
+                client.get(new GetRequest("table", "row")).join().isEmpty(), is(true));
+    }
+
+    @Test
+    public void getsOnlyTheRequestedCellsInOrder() throws Exception {
+        client.put(new PutRequest(bytes("table"), bytes("row"), bytes("a"),
+                new byte[][] { bytes("z"), bytes("y"), bytes("x") },
+                new byte[][] { bytes("1"), bytes("2"), bytes("3") })).join();
+        client.put(new PutRequest("table", "row", "b", "x", "4")).join();
+
+        assertThat("whole row is sorted by family and qualifier",
+                values(client.get(new GetRequest("table", "row")).join()),
+                is(Arrays.asList("3", "2", "1", "4")));
+        assertThat("family is selected",
+                values(client.get(new GetRequest("table", "row", "b")).join()),
+                is(Collections.singletonList("4")));
+        assertThat("qualifiers are selected",
+                values(client.get(new GetRequest(bytes("table"), bytes("row"), bytes("a"))
+                        .qualifiers(new byte[][] { bytes("z"), bytes("x") })).join()),
+                is(Arrays.asList("3", "1")));
+    }
+
+    @Test
+    public void keepsTheLatestVersionOfEachCell() throws Exception {
+        client.put(new PutRequest(
+                bytes("table"), bytes("row"), bytes("f"), bytes("q"), bytes("new"), 20)).join();
+        client.put(new PutRequest(
+                bytes("table"), bytes("row"), bytes("f"), bytes("q"), bytes("old"), 10)).join();
+
+        final ArrayList<KeyValue> row = client.get(new GetRequest("table", "row")).join();
+        assertThat("older put is discarded", new String(row.get(0).value()), is("new"));
+        assertThat("cell keeps its timestamp", row.get(0).timestamp(), is(20L));
+    }
+
+    @Test
+    public void deletesRowsFamiliesAndCells() throws Exception {
+        client.put(new PutRequest(bytes("table"), bytes("row"), bytes("a"),
+                new byte[][] { bytes("x"), bytes("y") },
+                new byte[][] { bytes("1"), bytes("2") })).join();
+        client.put(new PutRequest("table", "row", "b", "x", "3")).join();
+
+        client.delete(new DeleteRequest("table", "row", "a", "x")).join();
+        assertThat("cell is deleted",
+                values(client.get(new GetRequest("table", "row")).join()),
+                is(Arrays.asList("2", "3")));
+
+        client.delete(new DeleteRequest("table", "row", "b")).join();
+        assertThat("family is deleted",
+                values(client.get(new GetRequest("table", "row")).join()),
+                is(Collections.singletonList("2")));
+
+        client.put(new PutRequest("table", "row", "b", "x", "3")).join();
+        client.delete(new DeleteRequest("table", "row")).join();
+        assertThat("row is deleted",
+                client.get(new GetRequest("table", "row")).join().isEmpty(), is(true));
+    }
+
+    @Test
+    public void deletesOnlyCellsNoLaterThanTheDelete() throws Exception {
+        client.put(new PutRequest(
+                bytes("table"), bytes("row"), bytes("f"), bytes("q"), bytes("v"), 20)).join();
+
+        client.delete(new DeleteRequest(bytes("table"), bytes("row"), bytes("f"), bytes("q"), 10))
+                .join();
+        assertThat("later cell survives",
+                client.get(new GetRequest("table", "row")).join().size(), is(1));
+
+        client.delete(new DeleteRequest(bytes("table"), bytes("row"), bytes("f"), bytes("q"), 20))
+                .join();
+        assertThat("cell is deleted",
+                client.get(new GetRequest("table", "row")).join().isEmpty(), is(true));
+    }
+
+    @Test
+    public void incrementsCells() throws Exception {
+        final AtomicIncrementRequest request =
+                new AtomicIncrementRequest("table", "row", "f", "q", 5);
+        assertThat("missing cell is incremented from zero",
+                client.increment(request).join(), is(5L));
+        assertThat("buffered increment is applied",
+                client.bufferIncrement(request).join(), is(10L));
+
+        final ArrayList<KeyValue> row = client.get(new GetRequest("table", "row")).join();
+        assertThat("cell holds the sum", Bytes.getLong(row.get(0).value()), is(10L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsToIncrementCellsThatAreNotLongs() throws Exception {
+        client.put(new PutRequest("table", "row", "f", "q", "value")).join();
+        client.increment(new AtomicIncrementRequest("table", "row", "f", "q")).join();
+    }
+
+    @Test
+    public void comparesAndSets() throws Exception {
+        final PutRequest first = new PutRequest("table", "row", "f", "q", "first");
+        final PutRequest second = new PutRequest("table", "row", "f", "q", "second");
+
+        assertThat("cell is created", client.create(first).join(), is(true));
+        assertThat("existing cell is not created", client.create(second).join(), is(false));
+        assertThat("mismatched cell is not set",
+                client.compareAndSet(second, "other").join(), is(false));
+        assertThat("matching cell is set",
+                client.compareAndSet(second, "first").join(), is(true));
+        assertThat("cell holds the new value",
+                values(client.get(new GetRequest("table", "row")).join()),
+                is(Collections.singletonList("second")));
+    }
+
+    @Test
+    public void reportsBulkResultsInOrder() throws Exception {
+        client.putAll(Arrays.asList(
+                new PutRequest("table", "a", "f", "q", "1"),
+                new PutRequest("table", "b", "f", "q", "2"))).join();
+
+        final List<BulkResult<ArrayList<KeyValue>>> results = client.getAll(Arrays.asList(
+                new GetRequest("table", "b"), new GetRequest("table", "a"))).join();
+        assertThat("results are in order of the requests",
+                values(results.get(0).getValue()), is(Collections.singletonList("2")));
+        assertThat("results are in order of the requests",
+                values(results.get(1).getValue()), is(Collections.singletonList("1")));
+    }
+
+    @Test
+    public void keepsTablesApart() throws Exception {
+        client.put(new PutRequest("a", "row", "f", "q", "value")).join();
+
+        assertThat("other table has no cells",
+                client.get(new GetRequest("b", "row")).join().isEmpty(), is(true));
+    }
+
+    @Test
+    public void failsRequestsToTablesThatWereNotCreated() throws Exception {
+        assertFails(client.ensureTableExists("missing"), TableNotFoundException.class);
+        assertFails(client.put(new PutRequest("missing", "row", "f", "q", "value")),
+                TableNotFoundException.class);
+        assertFails(client.scan("missing").nextRows(), TableNotFoundException.class);
+
+        client.createTable("missing");
+
+        assertThat("created table exists",
+                client.ensureTableExists("missing").join(), is(nullValue()));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void doesNotSupportRowLocks() throws Exception {
+        client.lockRow(new RowLockRequest("table", "row")).join();
+    }
+
+    @Test
+    public void countsRequestsInItsStats() throws Exception {
+        client.put(new PutRequest("table", "row", "f", "q", "value")).join();
+        client.get(new GetRequest("table", "row")).join();
+        client.get(new GetRequest("table", "row")).join();
+        client.delete(new DeleteRequest("table", "row")).join();
+        client.scan("table").nextRows().join();
+
+        final ClientStats stats = client.stats();
+        assertThat("puts are counted", stats.puts(), is(1L));
+        assertThat("gets are counted", stats.gets(), is(2L));
+        assertThat("deletes are counted", stats.deletes(), is(1L));
+        assertThat("scanners are counted", stats.scannersOpened(), is(1L));
+        assertThat("scans are counted", stats.scans(), is(1L));
+    }
+
+    @Test
+    public void delaysResponsesByTheInjectedLatency() throws Exception {
+        final HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS);
+        final InMemoryHBaseClient delayed = new InMemoryHBaseClient(timer, new InjectedLatency(
+                timer,
+                LatencyDistribution.CONSTANT,
+                Duration.milliseconds(0),
+                Collections.singletonMap(Operation.GET, Duration.milliseconds(50))));
+        delayed.createTable("table");
+        try {
+            assertThat("puts are not delayed",
+                    delayed.put(new PutRequest("table", "row", "f", "q", "v")).join(100),
+                    is(nullValue()));
+
+            final long start = System.nanoTime();
+            final Deferred<ArrayList<KeyValue>> get = delayed.get(new GetRequest("table", "row"));
+            assertThat("get completes", get.join(1000).size(), is(1));
+            assertThat("get is delayed",
+                    System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50), is(true));
+        } finally {
+            delayed.shutdown().join();
+        }
+    }
+
+    @Test
+    public void failsDelayedResponsesOnShutdown() throws Exception {
+        final HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS);
+        final InMemoryHBaseClient delayed = new InMemoryHBaseClient(timer, new InjectedLatency(
+                timer,
+                LatencyDistribution.CONSTANT,
+                Duration.seconds(10),
+                Collections.<Operation, Duration>emptyMap()));
+        delayed.createTable("table");
+
+        final Deferred<ArrayList<KeyValue>> pending = delayed.get(new GetRequest("table", "row"));
+        delayed.shutdown().join();
+
+        assertFails(pending, IllegalStateException.class);
+        assertFails(delayed.get(new GetRequest("table", "row")), IllegalStateException.class);
+    }
+
+    private static void assertFails(final Deferred<?> result, final Class<?> error) {
+        try {
+            result.join(1000);
+            fail("request did not fail");
+        } catch (final Exception e) {
+            assertThat("request fails", e, is(instanceOf(error)));
+        }
+    }
+
+    private static byte[] bytes(final String s) {
+        return s.getBytes();
+    }
+
+    private static List<String> values(final List<KeyValue> row) {
+        final List<String> values = new ArrayList<String>(row.size());
+        for (final KeyValue kv : row) {
+            values.add(new String(kv.value()));
+        }
+        return values;
+    }
+}
@@ -1,6 +1,7 @@
 package com.datasift.dropwizard.hbase;
 
 import com.datasift.dropwizard.hbase.metrics.HBaseInstrumentation;
+import com.datasift.dropwizard.metrics.TimerLatencyRecorder;
 import com.stumbleupon.async.Deferred;
 import com.yammer.dropwizard.util.Duration;
 import com.yammer.dropwizard.util.Size;
@@ -17,6 +18,8 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static org.hamcrest.Matchers.closeTo;
 import static org.mockito.Mockito.*;
@@ -51,7 +54,7 @@ public class InstrumentedHBaseClientTest {
 
     private HBaseClient underlying;
     private HBaseInstrumentation metrics;
-    private final MetricsRegistry registry = new MetricsRegistry(new Clock() {
+    private final Clock clock = new Clock() {
 
         private long val = 0;
 
@@ -59,12 +62,14 @@ public class InstrumentedHBaseClientTest {
         public long tick() {
             return val += 50000000;
         }
-    });
+    };
+    private final MetricsRegistry registry = new MetricsRegistry(clock);
 
     @Before
     public void setup() {
         underlying = mock(HBaseClient.class);
         metrics = mock(HBaseInstrumentation.class);
+        when(metrics.getClock()).thenReturn(clock);
 
         // undo damage done by JmxReporter (part 2, see above)+
         registry.removeListener(JmxReporter.getDefault());
@@ -128,7 +133,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "create", "requests");
 
         when(underlying.create(req)).thenReturn(resp);
-        when(metrics.getCreates()).thenReturn(timer);
+        when(metrics.getCreates()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .create(req).callback(new Object());
@@ -156,7 +161,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "increment", "requests");
 
         when(underlying.bufferIncrement(req)).thenReturn(resp);
-        when(metrics.getIncrements()).thenReturn(timer);
+        when(metrics.getIncrements()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .bufferIncrement(req).callback(new Object());
@@ -184,7 +189,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "increment", "requests");
 
         when(underlying.increment(req)).thenReturn(resp);
-        when(metrics.getIncrements()).thenReturn(timer);
+        when(metrics.getIncrements()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .increment(req).callback(new Object());
@@ -213,7 +218,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "increment", "requests");
 
         when(underlying.increment(req, true)).thenReturn(resp);
-        when(metrics.getIncrements()).thenReturn(timer);
+        when(metrics.getIncrements()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .increment(req, true).callback(new Object());
@@ -242,7 +247,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "compareAndSet", "requests");
 
         when(underlying.compareAndSet(req, new byte[0])).thenReturn(resp);
-        when(metrics.getCompareAndSets()).thenReturn(timer);
+        when(metrics.getCompareAndSets()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .compareAndSet(req, new byte[0]).callback(new Object());
@@ -270,7 +275,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "compareAndSet", "requests");
 
         when(underlying.compareAndSet(req, "")).thenReturn(resp);
-        when(metrics.getCompareAndSets()).thenReturn(timer);
+        when(metrics.getCompareAndSets()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .compareAndSet(req, "").callback(new Object());
@@ -297,7 +302,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "delete", "requests");
 
         when(underlying.delete(req)).thenReturn(resp);
-        when(metrics.getDeletes()).thenReturn(timer);
+        when(metrics.getDeletes()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .delete(req).callback(new Object());
@@ -324,7 +329,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "assertion", "requests");
 
         when(underlying.ensureTableExists(new byte[0])).thenReturn(resp);
-        when(metrics.getAssertions()).thenReturn(timer);
+        when(metrics.getAssertions()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .ensureTableExists(new byte[0]).callback(new Object());
@@ -350,7 +355,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "assertion", "requests");
 
         when(underlying.ensureTableExists("")).thenReturn(resp);
-        when(metrics.getAssertions()).thenReturn(timer);
+        when(metrics.getAssertions()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .ensureTableExists("").callback(new Object());
@@ -375,7 +380,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "flush", "requests");
 
         when(underlying.flush()).thenReturn(resp);
-        when(metrics.getFlushes()).thenReturn(timer);
+        when(metrics.getFlushes()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .flush().callback(new Object());
@@ -404,7 +409,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "get", "requests");
 
         when(underlying.get(req)).thenReturn(resp);
-        when(metrics.getGets()).thenReturn(timer);
+        when(metrics.getGets()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .get(req).callback(new Object());
@@ -413,6 +418,35 @@ public class InstrumentedHBaseClientTest {
                 timer.max(), is(closeTo(50.0, 0.001)));
     }
 
+    @Test
+    public void proxiesBulkGets() {
+        final List<GetRequest> reqs = Collections.singletonList(mock(GetRequest.class));
+        final Deferred<List<BulkResult<ArrayList<KeyValue>>>> resp =
+                new Deferred<List<BulkResult<ArrayList<KeyValue>>>>();
+        when(underlying.getAll(reqs)).thenReturn(resp);
+
+        assertThat("bulk gets via proxy",
+                new InstrumentedHBaseClient(underlying).getAll(reqs), is(resp));
+    }
+
+    @Test
+    public void timesBulkGets() {
+        final List<GetRequest> reqs = Collections.singletonList(mock(GetRequest.class));
+        final Deferred<List<BulkResult<ArrayList<KeyValue>>>> resp =
+                new Deferred<List<BulkResult<ArrayList<KeyValue>>>>();
+        final Timer timer = registry.newTimer(
+                underlying.getClass(), "getAll", "requests");
+
+        when(underlying.getAll(reqs)).thenReturn(resp);
+        when(metrics.getBulkGets()).thenReturn(new TimerLatencyRecorder(timer));
+
+        new InstrumentedHBaseClient(underlying, metrics)
+                .getAll(reqs).callback(new Object());
+
+        assertThat("times bulk get(s) once per batch",
+                timer.count(), is(1L));
+    }
+
     @Test
     public void proxiesLockRows() {
         final RowLockRequest req = mock(RowLockRequest.class);
@@ -431,7 +465,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "lock", "requests");
 
         when(underlying.lockRow(req)).thenReturn(resp);
-        when(metrics.getLocks()).thenReturn(timer);
+        when(metrics.getLocks()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .lockRow(req).callback(new Object());
@@ -458,7 +492,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "get", "requests");
 
         when(underlying.put(req)).thenReturn(resp);
-        when(metrics.getPuts()).thenReturn(timer);
+        when(metrics.getPuts()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .put(req).callback(new Object());
@@ -494,7 +528,7 @@ public class InstrumentedHBaseClientTest {
                 underlying.getClass(), "lock", "requests");
 
         when(underlying.lockRow(req)).thenReturn(resp);
-        when(metrics.getLocks()).thenReturn(timer);
+        when(metrics.getLocks()).thenReturn(new TimerLatencyRecorder(timer));
 
         new InstrumentedHBaseClient(underlying, metrics)
                 .lockRow(req).callback(new Object());
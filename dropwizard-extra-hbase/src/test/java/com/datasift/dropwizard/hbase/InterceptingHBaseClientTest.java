@@ -0,0 +1,185 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.interceptor.DeadlineInterceptor;
+import com.datasift.dropwizard.hbase.interceptor.Interceptor;
+import com.datasift.dropwizard.hbase.interceptor.InterceptorChain;
+import com.datasift.dropwizard.hbase.limiter.Bulkheads;
+import com.datasift.dropwizard.hbase.limiter.QueuingRequestLimiter;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.AtomicIncrementRequest;
+import org.hbase.async.GetRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.RowLock;
+import org.hbase.async.RowLockRequest;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link InterceptingHBaseClient}.
+ */
+public class InterceptingHBaseClientTest {
+
+    private HBaseClient underlying;
+    private Timer timer;
+    private Timeout timeout;
+    private QueuingRequestLimiter bounding;
+    private DeadlineInterceptor deadlines;
+    private InterceptingHBaseClient client;
+
+    @Before
+    public void setup() {
+        underlying = mock(HBaseClient.class);
+        timer = mock(Timer.class);
+        timeout = mock(Timeout.class);
+        when(timer.newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class)))
+                .thenReturn(timeout);
+
+        bounding = new QueuingRequestLimiter(1, 0, Duration.seconds(0), null);
+        deadlines = new DeadlineInterceptor(
+                timer,
+                Duration.seconds(1),
+                Collections.<Operation, Duration>emptyMap(),
+                Collections.<String, Duration>emptyMap(),
+                new MetricsRegistry());
+        client = new InterceptingHBaseClient(underlying, new InterceptorChain(
+                Collections.<Interceptor>singletonList(deadlines),
+                new Bulkheads(bounding),
+                Clock.defaultClock()));
+    }
+
+    @Test
+    public void holdsAPermitUntilTheRequestCompletes() throws Exception {
+        final Deferred<ArrayList<KeyValue>> result = new Deferred<ArrayList<KeyValue>>();
+        final ArrayList<KeyValue> row = new ArrayList<KeyValue>();
+        when(underlying.get(any(GetRequest.class))).thenReturn(result);
+
+        final Deferred<ArrayList<KeyValue>> response = client.get(new GetRequest("table", "row"));
+        assertThat("permit is held by the request", bounding.getAvailablePermits(), is(0));
+
+        result.callback(row);
+        assertThat("permit is released on completion", bounding.getAvailablePermits(), is(1));
+        assertThat("returns the result", response.join(), is(row));
+        verify(timeout).cancel();
+    }
+
+    @Test
+    public void failsAndReleasesRequestsThatMissTheirDeadline() throws Exception {
+        when(underlying.get(any(GetRequest.class)))
+                .thenReturn(new Deferred<ArrayList<KeyValue>>());
+
+        final Deferred<ArrayList<KeyValue>> response = client.get(new GetRequest("table", "row"));
+        expire();
+
+        assertThat("permit is released on expiry", bounding.getAvailablePermits(), is(1));
+        assertThat("one request timed out", deadlines.getTimeouts(), is(1L));
+        try {
+            response.join();
+            fail("request did not time out");
+        } catch (final Exception e) {
+            assertThat("request timed out", e, is(instanceOf(RequestTimeoutException.class)));
+        }
+    }
+
+    @Test
+    public void interceptsBulkRequestsOnce() {
+        final List<GetRequest> requests = Arrays.asList(
+                new GetRequest("table", "a"), new GetRequest("table", "b"));
+        final Deferred<List<BulkResult<ArrayList<KeyValue>>>> result =
+                new Deferred<List<BulkResult<ArrayList<KeyValue>>>>();
+        when(underlying.getAll(requests)).thenReturn(result);
+
+        client.getAll(requests);
+
+        assertThat("bulk request holds a single permit", bounding.getAvailablePermits(), is(0));
+        verify(timer, times(1)).newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void releasesLocksAcquiredAfterTheirDeadline() throws Exception {
+        final Deferred<RowLock> lock = new Deferred<RowLock>();
+        final RowLock rowLock = newRowLock();
+        when(underlying.lockRow(any(RowLockRequest.class))).thenReturn(lock);
+        when(underlying.unlockRow(rowLock)).thenReturn(Deferred.fromResult(null));
+
+        client.lockRow(new RowLockRequest("table", "row"));
+        expire();
+        lock.callback(rowLock);
+
+        verify(underlying).unlockRow(rowLock);
+    }
+
+    @Test
+    public void interceptsEachScannedBatch() {
+        final RowScanner scanner = mock(RowScanner.class);
+        when(underlying.scan("table".getBytes())).thenReturn(scanner);
+        when(scanner.nextRows()).thenReturn(new Deferred<ArrayList<ArrayList<KeyValue>>>());
+
+        client.scan("table".getBytes()).nextRows();
+
+        verify(scanner).nextRows();
+        assertThat("batch holds a permit", bounding.getAvailablePermits(), is(0));
+    }
+
+    @Test
+    public void closesScannersWithoutAPermit() {
+        final RowScanner scanner = mock(RowScanner.class);
+        when(underlying.scan("table".getBytes())).thenReturn(scanner);
+        when(underlying.get(any(GetRequest.class)))
+                .thenReturn(new Deferred<ArrayList<KeyValue>>());
+        when(scanner.close()).thenReturn(Deferred.fromResult(null));
+
+        final RowScanner intercepted = client.scan("table".getBytes());
+        client.get(new GetRequest("table", "row"));
+        intercepted.close();
+
+        verify(scanner).close();
+    }
+
+    @Test
+    public void doesNotTimeBufferedIncrements() {
+        when(underlying.bufferIncrement(any(AtomicIncrementRequest.class)))
+                .thenReturn(new Deferred<Long>());
+
+        client.bufferIncrement(new AtomicIncrementRequest("table", "row", "family", "qualifier"));
+
+        verifyZeroInteractions(timer);
+    }
+
+    private void expire() {
+        final ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer).newTimeout(task.capture(), eq(1L), eq(TimeUnit.SECONDS));
+        try {
+            task.getValue().run(timeout);
+        } catch (final Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static RowLock newRowLock() throws Exception {
+        final Constructor<RowLock> constructor =
+                RowLock.class.getDeclaredConstructor(byte[].class, long.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance("region".getBytes(), 1L);
+    }
+}
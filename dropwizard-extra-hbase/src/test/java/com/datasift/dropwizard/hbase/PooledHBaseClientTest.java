@@ -0,0 +1,157 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.util.ClientStatistics;
+import com.google.common.cache.CacheStats;
+import com.stumbleupon.async.Deferred;
+import org.hbase.async.GetRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link PooledHBaseClient}.
+ */
+public class PooledHBaseClientTest {
+
+    private HBaseClient first;
+    private HBaseClient second;
+    private PooledHBaseClient client;
+
+    @Before
+    public void setup() {
+        first = mock(HBaseClient.class);
+        second = mock(HBaseClient.class);
+        when(first.flush()).thenReturn(Deferred.fromResult(null));
+        when(second.flush()).thenReturn(Deferred.fromResult(null));
+        when(first.getAll(anyListOf(GetRequest.class))).thenAnswer(new KeysOf());
+        when(second.getAll(anyListOf(GetRequest.class))).thenAnswer(new KeysOf());
+
+        client = new PooledHBaseClient(Arrays.asList(first, second));
+    }
+
+    @Test
+    public void routesEveryRequestForARowToTheSameClient() throws Exception {
+        final PutRequest put = new PutRequest("table", "row", "family", "qualifier", "value");
+        final GetRequest get = new GetRequest("table", "row");
+        final HBaseClient owner = client.client("row".getBytes());
+
+        client.put(put);
+        client.get(get);
+
+        verify(owner).put(put);
+        verify(owner).get(get);
+        final HBaseClient other = owner == first ? second : first;
+        verify(other, never()).put(any(PutRequest.class));
+        verify(other, never()).get(any(GetRequest.class));
+    }
+
+    @Test
+    public void spreadsRowsOverThePool() {
+        final String onFirst = keyFor(first);
+        final String onSecond = keyFor(second);
+        assertThat("rows are routed to different clients", onFirst, is(not(onSecond)));
+    }
+
+    @Test
+    public void splitsBulkRequestsAndReassemblesTheirResultsInOrder() throws Exception {
+        final List<GetRequest> requests = Arrays.asList(
+                new GetRequest("table", keyFor(second)),
+                new GetRequest("table", keyFor(first)),
+                new GetRequest("table", keyFor(second)));
+
+        final List<BulkResult<ArrayList<KeyValue>>> results = client.getAll(requests).join();
+
+        assertThat("every request has a result", results.size(), is(3));
+        for (int i = 0; i < requests.size(); i++) {
+            assertThat("result is of the request in the same position",
+                    results.get(i).getValue().get(0).key(), is(requests.get(i).key()));
+        }
+        verify(first, times(1)).getAll(anyListOf(GetRequest.class));
+        verify(second, times(1)).getAll(anyListOf(GetRequest.class));
+    }
+
+    @Test
+    public void failsOnlyTheRequestsOfAClientWhoseBulkRequestFails() throws Exception {
+        final IllegalStateException error = new IllegalStateException("failed");
+        when(second.getAll(anyListOf(GetRequest.class))).thenReturn(
+                Deferred.<List<BulkResult<ArrayList<KeyValue>>>>fromError(error));
+        final List<GetRequest> requests = Arrays.asList(
+                new GetRequest("table", keyFor(second)),
+                new GetRequest("table", keyFor(first)));
+
+        final List<BulkResult<ArrayList<KeyValue>>> results = client.getAll(requests).join();
+
+        assertThat("request of the failed client failed", results.get(0).isSuccess(), is(false));
+        assertThat("request fails with the error of its client",
+                results.get(0).getError(), is(sameInstance((Exception) error)));
+        assertThat("request of the other client succeeded", results.get(1).isSuccess(), is(true));
+    }
+
+    @Test
+    public void flushesEveryClient() throws Exception {
+        client.flush().join();
+
+        verify(first).flush();
+        verify(second).flush();
+    }
+
+    @Test
+    public void sumsTheStatisticsOfEveryClient() {
+        when(first.stats()).thenReturn(stats(5, 2));
+        when(second.stats()).thenReturn(stats(3, 1));
+
+        assertThat("gets are summed", client.stats().gets(), is(8L));
+        assertThat("puts are summed", client.stats().puts(), is(3L));
+        assertThat("increment buffer hits are summed",
+                client.stats().incrementBufferStats().hitCount(), is(3L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresAtLeastOneClient() {
+        new PooledHBaseClient(new ArrayList<HBaseClient>());
+    }
+
+    private String keyFor(final HBaseClient owner) {
+        for (int i = 0; ; i++) {
+            final String key = "row" + i;
+            if (client.client(key.getBytes()) == owner) {
+                return key;
+            }
+        }
+    }
+
+    private static org.hbase.async.ClientStats stats(final long gets, final long puts) {
+        return ClientStatistics.create(0, 0, 0, 0, 0, 0, 0, 0, gets, 0, 0, puts, 0, 0, 0,
+                new CacheStats(puts, 0, 0, 0, 0, 0));
+    }
+
+    // responds to each get with a single cell from the row requested
+    private static class KeysOf implements Answer<Deferred<List<BulkResult<ArrayList<KeyValue>>>>> {
+        @SuppressWarnings("unchecked")
+        public Deferred<List<BulkResult<ArrayList<KeyValue>>>> answer(
+                final InvocationOnMock invocation) {
+            final List<GetRequest> requests = (List<GetRequest>) invocation.getArguments()[0];
+            final List<BulkResult<ArrayList<KeyValue>>> results =
+                    new ArrayList<BulkResult<ArrayList<KeyValue>>>();
+            for (final GetRequest request : requests) {
+                final ArrayList<KeyValue> row = new ArrayList<KeyValue>();
+                row.add(new KeyValue(request.key(), "f".getBytes(), "q".getBytes(), new byte[0]));
+                results.add(BulkResult.success(row));
+            }
+            return Deferred.fromResult(results);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.limiter.RateLimits;
+import com.datasift.dropwizard.hbase.scanner.RowScanner;
+import com.datasift.dropwizard.hbase.util.KeyValues;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.GetRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.AdditionalMatchers.gt;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link RateLimitedHBaseClient}.
+ */
+public class RateLimitedHBaseClientTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final PutRequest PUT = new PutRequest(
+            "bytes".getBytes(), "row".getBytes(), "f".getBytes(), "q".getBytes(),
+            "value".getBytes());
+
+    private static final Executor DIRECT = new Executor() {
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    private HBaseClient underlying;
+    private Timer timer;
+    private Clock clock;
+    private RateLimitedHBaseClient client;
+
+    @Before
+    public void setup() {
+        underlying = mock(HBaseClient.class);
+        timer = mock(Timer.class);
+        clock = mock(Clock.class);
+        when(clock.tick()).thenReturn(0L);
+        when(timer.newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class)))
+                .thenReturn(mock(Timeout.class));
+        when(underlying.get(any(GetRequest.class)))
+                .thenReturn(Deferred.fromResult(new ArrayList<KeyValue>()));
+        when(underlying.put(any(PutRequest.class))).thenReturn(Deferred.fromResult(null));
+
+        final RateLimits limits = new RateLimits(
+                Duration.seconds(1), Duration.seconds(5), false, timer, DIRECT,
+                new MetricsRegistry(), clock);
+        limits.setRequestRate("limited", 1);
+        limits.setPutRate("bytes", Size.bytes(KeyValues.sizeOf(PUT)));
+        client = new RateLimitedHBaseClient(underlying, limits);
+    }
+
+    @Test
+    public void dispatchesRequestsWithinTheLimit() {
+        client.get(new GetRequest("limited", "row"));
+        client.get(new GetRequest("unlimited", "row"));
+        client.get(new GetRequest("unlimited", "row"));
+
+        verify(underlying, times(3)).get(any(GetRequest.class));
+        verifyZeroInteractions(timer);
+        assertThat("no requests were throttled",
+                client.getRateLimits().getThrottled().count(), is(0L));
+    }
+
+    @Test
+    public void delaysRequestsInExcessOfTheLimit() throws Exception {
+        client.get(new GetRequest("limited", "row"));
+        final Deferred<ArrayList<KeyValue>> delayed =
+                client.get(new GetRequest("limited", "row"));
+
+        verify(underlying, times(1)).get(any(GetRequest.class));
+        assertThat("request was throttled",
+                client.getRateLimits().getThrottled().count(), is(1L));
+
+        expire(SECOND);
+        verify(underlying, times(2)).get(any(GetRequest.class));
+        assertThat("delayed request completes", delayed.join(), is(new ArrayList<KeyValue>()));
+    }
+
+    @Test
+    public void dispatchesDelayedRequestsWithTheExecutor() {
+        final List<Runnable> dispatches = new ArrayList<Runnable>();
+        final RateLimits limits = new RateLimits(
+                Duration.seconds(1), Duration.seconds(5), false, timer, new Executor() {
+                    public void execute(final Runnable command) {
+                        dispatches.add(command);
+                    }
+                }, new MetricsRegistry(), clock);
+        limits.setRequestRate("limited", 1);
+        client = new RateLimitedHBaseClient(underlying, limits);
+
+        client.get(new GetRequest("limited", "row"));
+        client.get(new GetRequest("limited", "row"));
+        expire(SECOND);
+
+        verify(underlying, times(1)).get(any(GetRequest.class));
+        assertThat("delayed request was handed to the executor", dispatches.size(), is(1));
+        dispatches.get(0).run();
+        verify(underlying, times(2)).get(any(GetRequest.class));
+    }
+
+    @Test
+    public void rejectsRequestsBeyondTheMaximumDelay() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            client.get(new GetRequest("limited", "row"));
+        }
+
+        try {
+            client.get(new GetRequest("limited", "row")).join();
+            fail("request delayed beyond the maximum delay was not rejected");
+        } catch (final RequestRejectedException e) {
+            assertThat("request was rejected",
+                    client.getRateLimits().getRejected().count(), is(1L));
+        }
+    }
+
+    @Test
+    public void refundsABulkRequestThatIsRejected() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            client.get(new GetRequest("limited", "row"));
+        }
+
+        try {
+            client.getAll(Arrays.asList(
+                    new GetRequest("limited", "a"), new GetRequest("limited", "b"))).join();
+            fail("bulk request delayed beyond the maximum delay was not rejected");
+        } catch (final RequestRejectedException e) {
+            // expected
+        }
+
+        client.get(new GetRequest("limited", "row"));
+        verify(underlying, never()).getAll(anyListOf(GetRequest.class));
+        verify(timer).newTimeout(any(TimerTask.class), eq(5 * SECOND), eq(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void limitsTheBytesPutToATable() {
+        client.put(PUT);
+        client.put(PUT);
+
+        verify(underlying, times(1)).put(PUT);
+        expire(SECOND);
+        verify(underlying, times(2)).put(PUT);
+    }
+
+    @Test
+    public void delaysABulkRequestUntilAllOfItsRequestsAreAllowed() {
+        final List<GetRequest> requests = Arrays.asList(
+                new GetRequest("limited", "a"), new GetRequest("limited", "b"),
+                new GetRequest("limited", "c"));
+        final List<BulkResult<ArrayList<KeyValue>>> results =
+                new ArrayList<BulkResult<ArrayList<KeyValue>>>();
+        when(underlying.getAll(requests)).thenReturn(Deferred.fromResult(results));
+
+        client.getAll(requests);
+
+        verify(underlying, never()).getAll(requests);
+        expire(2 * SECOND);
+        verify(underlying).getAll(requests);
+    }
+
+    @Test
+    public void limitsEachBatchOfAScan() {
+        final RowScanner scanner = mock(RowScanner.class);
+        when(underlying.scan("limited".getBytes())).thenReturn(scanner);
+        when(scanner.nextRows()).thenReturn(
+                Deferred.fromResult(new ArrayList<ArrayList<KeyValue>>()));
+
+        final RowScanner limited = client.scan("limited".getBytes());
+        limited.nextRows();
+        limited.nextRows();
+
+        verify(scanner, times(1)).nextRows();
+        expire(SECOND);
+        verify(scanner, times(2)).nextRows();
+    }
+
+    @Test
+    public void changesLimitsAtRuntime() {
+        client.getRateLimits().setRequestRate(Operation.GET, 1);
+        client.get(new GetRequest("other", "row"));
+        client.getRateLimits().setRequestRate(Operation.GET, 0);
+        client.get(new GetRequest("other", "row"));
+
+        verify(underlying, times(2)).get(any(GetRequest.class));
+        assertThat("operation is no longer limited",
+                client.getRateLimits().getRequestRate(Operation.GET), is(0.0));
+    }
+
+    @Test
+    public void blocksTheCallerInBlockingMode() {
+        final RateLimits limits = new RateLimits(
+                Duration.milliseconds(50), Duration.seconds(1), true, timer, DIRECT,
+                new MetricsRegistry(), Clock.defaultClock());
+        limits.setRequestRate("limited", 20);
+        client = new RateLimitedHBaseClient(underlying, limits);
+
+        client.get(new GetRequest("limited", "row"));
+        client.get(new GetRequest("limited", "row"));
+
+        verify(underlying, times(2)).get(any(GetRequest.class));
+        verify(timer, never()).newTimeout(any(TimerTask.class), gt(0L), eq(TimeUnit.NANOSECONDS));
+        assertThat("request was throttled", limits.getThrottled().count(), is(1L));
+    }
+
+    @Test
+    public void doesNotBlockTheTimerThreadInBlockingMode() {
+        final RateLimits limits = new RateLimits(
+                Duration.seconds(1), Duration.seconds(5), true, timer, DIRECT,
+                new MetricsRegistry(), clock);
+        limits.setRequestRate("limited", 1);
+        client = new RateLimitedHBaseClient(underlying, limits);
+
+        // run the probe for the thread of the timer on this thread
+        expire(0);
+        client.get(new GetRequest("limited", "row"));
+        client.get(new GetRequest("limited", "row"));
+
+        verify(underlying, times(1)).get(any(GetRequest.class));
+        expire(SECOND);
+        verify(underlying, times(2)).get(any(GetRequest.class));
+    }
+
+    private void expire(final long nanos) {
+        final ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer).newTimeout(task.capture(), eq(nanos), eq(TimeUnit.NANOSECONDS));
+        try {
+            task.getValue().run(mock(Timeout.class));
+        } catch (final Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
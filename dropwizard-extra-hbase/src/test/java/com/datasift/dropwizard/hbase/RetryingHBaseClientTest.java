@@ -0,0 +1,249 @@
+package com.datasift.dropwizard.hbase;
+
+import com.datasift.dropwizard.hbase.limiter.Priority;
+import com.datasift.dropwizard.hbase.limiter.RequestClass;
+import com.datasift.dropwizard.hbase.limiter.RequestContext;
+import com.datasift.dropwizard.hbase.util.RetryBudget;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.AtomicIncrementRequest;
+import org.hbase.async.GetRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link RetryingHBaseClient}.
+ */
+public class RetryingHBaseClientTest {
+
+    private final ArrayList<KeyValue> row = new ArrayList<KeyValue>();
+
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    private HBaseClient underlying;
+    private Timer timer;
+    private RetryingHBaseClient client;
+
+    @Before
+    public void setup() {
+        underlying = mock(HBaseClient.class);
+        timer = mock(Timer.class);
+        when(underlying.getTimer()).thenReturn(timer);
+        client = client(new RetryBudget(0.1, 10));
+    }
+
+    @Test
+    public void retriesTransientFailures() throws Exception {
+        when(underlying.get(any(GetRequest.class)))
+                .thenReturn(Deferred.<ArrayList<KeyValue>>fromError(timeout()))
+                .thenReturn(Deferred.fromResult(row));
+
+        final Deferred<ArrayList<KeyValue>> result = client.get(new GetRequest("table", "row"));
+        retry();
+
+        assertThat("returns the result of the retry", result.join(), is(row));
+        verify(underlying, times(2)).get(any(GetRequest.class));
+        assertThat("retried once", client.getRetries(), is(1L));
+        assertThat("records the attempts", client.getAttempts().max(), is(2.0));
+    }
+
+    @Test
+    public void backsOffWithinTheMaximumBackoff() throws Exception {
+        when(underlying.get(any(GetRequest.class)))
+                .thenReturn(Deferred.<ArrayList<KeyValue>>fromError(timeout()));
+
+        client.get(new GetRequest("table", "row"));
+
+        final ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(timer).newTimeout(any(TimerTask.class), delay.capture(), eq(TimeUnit.NANOSECONDS));
+        assertThat("delay is within the backoff",
+                delay.getValue(), is(lessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10))));
+    }
+
+    @Test
+    public void givesUpAfterTheMaximumRetries() throws Exception {
+        when(underlying.get(any(GetRequest.class)))
+                .thenReturn(Deferred.<ArrayList<KeyValue>>fromError(timeout()));
+
+        final Deferred<ArrayList<KeyValue>> result = client.get(new GetRequest("table", "row"));
+        retry();
+        retry();
+
+        assertFails(result, RequestTimeoutException.class);
+        verify(underlying, times(3)).get(any(GetRequest.class));
+    }
+
+    @Test
+    public void doesNotRetryNonIdempotentRequestsThatMayHaveBeenApplied() throws Exception {
+        when(underlying.increment(any(AtomicIncrementRequest.class)))
+                .thenReturn(Deferred.<Long>fromError(timeout()));
+
+        assertFails(client.increment(increment()), RequestTimeoutException.class);
+        verify(underlying, times(1)).increment(any(AtomicIncrementRequest.class));
+    }
+
+    @Test
+    public void retriesNonIdempotentRequestsThatWereNotApplied() throws Exception {
+        when(underlying.increment(any(AtomicIncrementRequest.class)))
+                .thenReturn(Deferred.<Long>fromError(new RequestRejectedException("full")))
+                .thenReturn(Deferred.fromResult(1L));
+
+        final Deferred<Long> result = client.increment(increment());
+        retry();
+
+        assertThat("returns the result of the retry", result.join(), is(1L));
+    }
+
+    @Test
+    public void dispatchesRetriesOffTheTimer() throws Exception {
+        when(underlying.get(any(GetRequest.class)))
+                .thenReturn(Deferred.<ArrayList<KeyValue>>fromError(timeout()))
+                .thenReturn(Deferred.fromResult(row));
+
+        client.get(new GetRequest("table", "row"));
+
+        final ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer).newTimeout(task.capture(), anyLong(), any(TimeUnit.class));
+        task.getValue().run(mock(Timeout.class));
+
+        verify(underlying, times(1)).get(any(GetRequest.class));
+        assertThat("the retry is handed to the executor", tasks.size(), is(1));
+    }
+
+    @Test
+    public void dispatchesRetriesInTheClassOfTheOriginalRequest() throws Exception {
+        final RequestClass batch = new RequestClass(Priority.BATCH, "backfill");
+        final List<RequestClass> classes = new ArrayList<RequestClass>();
+        when(underlying.get(any(GetRequest.class))).thenAnswer(new Answer<Object>() {
+            public Object answer(final InvocationOnMock invocation) {
+                classes.add(RequestContext.current());
+                return Deferred.fromError(timeout());
+            }
+        });
+
+        final RequestClass previous = RequestContext.enter(batch);
+        try {
+            client.get(new GetRequest("table", "row"));
+        } finally {
+            RequestContext.restore(previous);
+        }
+        retry();
+
+        assertThat("the retry is of the class of the original request",
+                classes, is(Arrays.asList(batch, batch)));
+        assertThat("the class is not left on the retrying thread",
+                RequestContext.current(), is(RequestClass.DEFAULT));
+    }
+
+    @Test
+    public void retriesOnlyTheFailedRequestsOfABatch() throws Exception {
+        final PutRequest first = new PutRequest("table", "a", "family", "qualifier", "value");
+        final PutRequest second = new PutRequest("table", "b", "family", "qualifier", "value");
+        final Object applied = new Object();
+        when(underlying.putAll(Arrays.asList(first, second))).thenReturn(
+                Deferred.fromResult(Arrays.asList(
+                        BulkResult.success(applied),
+                        BulkResult.<Object>failure(new RequestRejectedException("full")))));
+        when(underlying.putAll(Arrays.asList(second))).thenReturn(
+                Deferred.fromResult(Arrays.asList(BulkResult.success(applied))));
+
+        final Deferred<List<BulkResult<Object>>> result =
+                client.putAll(Arrays.asList(first, second));
+        retry();
+
+        final List<BulkResult<Object>> results = result.join();
+        verify(underlying).putAll(Arrays.asList(second));
+        assertThat("the first put succeeded", results.get(0).isSuccess(), is(true));
+        assertThat("the retried put succeeded", results.get(1).isSuccess(), is(true));
+        assertThat("retried once", client.getRetries(), is(1L));
+    }
+
+    @Test
+    public void reportsTheFailureOfAWholeBatchForEachRequest() throws Exception {
+        final PutRequest first = new PutRequest("table", "a", "family", "qualifier", "value");
+        final PutRequest second = new PutRequest("table", "b", "family", "qualifier", "value");
+        when(underlying.putAll(Arrays.asList(first, second))).thenReturn(
+                Deferred.<List<BulkResult<Object>>>fromError(new IllegalStateException("failed")));
+
+        final List<BulkResult<Object>> results =
+                client.putAll(Arrays.asList(first, second)).join();
+
+        assertThat("each request has a result", results.size(), is(2));
+        assertThat("the first put failed with the batch",
+                results.get(0).getError(), is(instanceOf(IllegalStateException.class)));
+        assertThat("the second put failed with the batch",
+                results.get(1).getError(), is(instanceOf(IllegalStateException.class)));
+    }
+
+    @Test
+    public void doesNotRetryBeyondTheBudget() throws Exception {
+        client = client(new RetryBudget(0, 0));
+        when(underlying.get(any(GetRequest.class)))
+                .thenReturn(Deferred.<ArrayList<KeyValue>>fromError(timeout()));
+
+        assertFails(client.get(new GetRequest("table", "row")), RequestTimeoutException.class);
+        verify(underlying, times(1)).get(any(GetRequest.class));
+        assertThat("retry was denied by the budget", client.getBudgetExhausted(), is(1L));
+    }
+
+    private RetryingHBaseClient client(final RetryBudget budget) {
+        return new RetryingHBaseClient(
+                underlying,
+                2,
+                Duration.milliseconds(10),
+                Duration.milliseconds(100),
+                budget,
+                new Executor() {
+                    public void execute(final Runnable command) {
+                        tasks.add(command);
+                    }
+                },
+                new MetricsRegistry());
+    }
+
+    private void retry() throws Exception {
+        final ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer, atLeastOnce()).newTimeout(task.capture(), anyLong(), any(TimeUnit.class));
+        task.getValue().run(mock(Timeout.class));
+        tasks.remove(tasks.size() - 1).run();
+    }
+
+    private RequestTimeoutException timeout() {
+        return new RequestTimeoutException("timed out");
+    }
+
+    private AtomicIncrementRequest increment() {
+        return new AtomicIncrementRequest("table", "row", "family", "qualifier");
+    }
+
+    private void assertFails(final Deferred<?> result, final Class<?> error) {
+        try {
+            result.join();
+            fail("request did not fail");
+        } catch (final Exception e) {
+            assertThat("fails with the last error", e, is(instanceOf(error)));
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.datasift.dropwizard.hbase;
+
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.hbase.async.AtomicIncrementRequest;
+import org.hbase.async.DeleteRequest;
+import org.hbase.async.PutRequest;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link WriteBehindHBaseClient}.
+ */
+public class WriteBehindHBaseClientTest {
+
+    private HBaseClient underlying;
+    private Timer timer;
+    private WriteBehindHBaseClient client;
+
+    @Before
+    public void setup() {
+        underlying = mock(HBaseClient.class);
+        timer = mock(Timer.class);
+        when(underlying.getTimer()).thenReturn(timer);
+        when(underlying.flush()).thenReturn(Deferred.fromResult((Object) null));
+        when(underlying.put(any(PutRequest.class))).thenReturn(Deferred.fromResult((Object) null));
+        client = new WriteBehindHBaseClient(
+                underlying,
+                Collections.singleton("table"),
+                Duration.seconds(1),
+                Size.megabytes(1),
+                Size.kilobytes(1),
+                new Executor() {
+                    public void execute(final Runnable command) {
+                        command.run();
+                    }
+                },
+                new MetricsRegistry());
+    }
+
+    @Test
+    public void mergesPutsToTheSameCell() throws Exception {
+        final Deferred<Object> first = client.put(put("table", "row", "a", "old"));
+        final Deferred<Object> second = client.put(put("table", "row", "a", "new"));
+        client.put(put("table", "row", "b", "other"));
+
+        verify(underlying, never()).put(any(PutRequest.class));
+        assertThat("one row is buffered", client.getBufferedRows(), is(1));
+
+        client.flush().join();
+
+        final ArgumentCaptor<PutRequest> flushed = ArgumentCaptor.forClass(PutRequest.class);
+        verify(underlying, times(1)).put(flushed.capture());
+        assertThat("flushes both cells", flushed.getValue().qualifiers().length, is(2));
+        assertThat("flushes the last value written",
+                new String(flushed.getValue().values()[0]), is("new"));
+        first.join();
+        second.join();
+        assertThat("wrote three cells", client.getWrittenCells(), is(3L));
+        assertThat("coalesced one cell", client.getCoalescedCells(), is(1L));
+        assertThat("buffer is empty", client.getBufferedBytes(), is(0L));
+    }
+
+    @Test
+    public void flushesThroughTheUnderlyingClient() throws Exception {
+        client.put(put("table", "row", "a", "value"));
+        client.flush().join();
+
+        verify(underlying).flush();
+    }
+
+    @Test
+    public void flushesPeriodically() throws Exception {
+        client.put(put("table", "row", "a", "value"));
+
+        final ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer).newTimeout(task.capture(), eq(1L), eq(TimeUnit.SECONDS));
+        task.getValue().run(mock(Timeout.class));
+
+        verify(underlying).put(any(PutRequest.class));
+    }
+
+    @Test
+    public void putsToOtherTablesAreNotBuffered() throws Exception {
+        final PutRequest put = put("other", "row", "a", "value");
+        client.put(put);
+
+        verify(underlying).put(put);
+        assertThat("nothing is buffered", client.getBufferedRows(), is(0));
+    }
+
+    @Test
+    public void sendsBufferedPutsBeforeDeletingTheRow() throws Exception {
+        final DeleteRequest delete = new DeleteRequest("table", "row");
+        when(underlying.delete(delete)).thenReturn(Deferred.fromResult((Object) null));
+
+        client.put(put("table", "row", "a", "value"));
+        client.delete(delete);
+
+        final InOrder order = inOrder(underlying);
+        order.verify(underlying).put(any(PutRequest.class));
+        order.verify(underlying).delete(delete);
+    }
+
+    @Test
+    public void waitsForInFlightPutsBeforeDeletingTheRow() throws Exception {
+        final Deferred<Object> pending = new Deferred<Object>();
+        when(underlying.put(any(PutRequest.class))).thenReturn(pending);
+        final DeleteRequest delete = new DeleteRequest("table", "row");
+        when(underlying.delete(delete)).thenReturn(Deferred.fromResult((Object) null));
+
+        client.put(put("table", "row", "a", "value"));
+        final Deferred<Object> deleted = client.delete(delete);
+
+        verify(underlying, never()).delete(delete);
+
+        pending.callback(null);
+        deleted.join();
+
+        verify(underlying).delete(delete);
+    }
+
+    @Test
+    public void waitsForInFlightPutsBeforeIncrementingTheRow() throws Exception {
+        final Deferred<Object> pending = new Deferred<Object>();
+        when(underlying.put(any(PutRequest.class))).thenReturn(pending);
+        final AtomicIncrementRequest increment = new AtomicIncrementRequest(
+                "table".getBytes(), "row".getBytes(), "family".getBytes(), "b".getBytes());
+        when(underlying.increment(increment)).thenReturn(Deferred.fromResult(1L));
+
+        client.put(put("table", "row", "a", "value"));
+        client.flush();
+        final Deferred<Long> incremented = client.increment(increment);
+
+        verify(underlying, never()).increment(increment);
+
+        pending.callback(null);
+
+        assertThat("increment is sent once the put completes", incremented.join(), is(1L));
+    }
+
+    @Test
+    public void waitsForInFlightPutsBeforeSendingTheNextPutToTheRow() throws Exception {
+        final Deferred<Object> pending = new Deferred<Object>();
+        when(underlying.put(any(PutRequest.class))).thenReturn(pending);
+
+        client.put(put("table", "row", "a", "old"));
+        client.flush();
+        final Deferred<Object> written = client.put(put("table", "row", "a", "new"));
+        client.flush();
+
+        verify(underlying, times(1)).put(any(PutRequest.class));
+
+        when(underlying.put(any(PutRequest.class))).thenReturn(Deferred.fromResult((Object) null));
+        pending.callback(null);
+        written.join();
+
+        final ArgumentCaptor<PutRequest> sent = ArgumentCaptor.forClass(PutRequest.class);
+        verify(underlying, times(2)).put(sent.capture());
+        assertThat("sends the newer value last",
+                new String(sent.getAllValues().get(1).values()[0]), is("new"));
+    }
+
+    @Test
+    public void sendsPutsMadeAfterADeleteOnceTheDeleteCompletes() throws Exception {
+        final Deferred<Object> pending = new Deferred<Object>();
+        when(underlying.put(any(PutRequest.class))).thenReturn(pending);
+        final DeleteRequest delete = new DeleteRequest("table", "row");
+        final Deferred<Object> deleting = new Deferred<Object>();
+        when(underlying.delete(delete)).thenReturn(deleting);
+
+        client.put(put("table", "row", "a", "old"));
+        client.delete(delete);
+        pending.callback(null);
+        client.put(put("table", "row", "a", "new"));
+        client.flush();
+
+        verify(underlying, times(1)).put(any(PutRequest.class));
+
+        deleting.callback(null);
+
+        verify(underlying, times(2)).put(any(PutRequest.class));
+    }
+
+    @Test
+    public void rejectsPutsWhenTheBufferIsFull() throws Exception {
+        final Deferred<Object> pending = new Deferred<Object>();
+        when(underlying.put(any(PutRequest.class))).thenReturn(pending);
+
+        client.put(put("table", "row", "a", new String(new byte[1024])));
+        client.flush();
+        assertThat("put is in-flight", client.getInFlightBytes(), is(greaterThan(0L)));
+
+        try {
+            client.put(put("table", "row", "b", "value")).join();
+            fail("put was not rejected");
+        } catch (final RequestRejectedException e) {
+            assertThat("put is rejected", e, is(instanceOf(RequestRejectedException.class)));
+        }
+        assertThat("counts the rejected put", client.getRejectedPuts(), is(1L));
+
+        pending.callback(null);
+
+        assertThat("nothing is in-flight", client.getInFlightBytes(), is(0L));
+        client.put(put("table", "row", "b", "value"));
+        assertThat("accepts puts once the put completes", client.getBufferedRows(), is(1));
+    }
+
+    private PutRequest put(final String table,
+                           final String row,
+                           final String qualifier,
+                           final String value) {
+        return new PutRequest(table.getBytes(), row.getBytes(), "family".getBytes(),
+                qualifier.getBytes(), value.getBytes());
+    }
+}
@@ -1,5 +1,8 @@
 package com.datasift.dropwizard.hbase.config;
 
+import com.datasift.dropwizard.hbase.memory.LatencyDistribution;
+import com.datasift.dropwizard.metrics.LatencyRecorderType;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Resources;
 import com.yammer.dropwizard.config.ConfigurationFactory;
 import com.yammer.dropwizard.util.Duration;
@@ -9,6 +12,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.Set;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
@@ -45,15 +50,385 @@ public class HBaseClientConfigurationTest {
                 conf.getMaxConcurrentRequests(), is(1000));
     }
 
+    @Test
+    public void hasAdaptiveConcurrency() {
+        assertThat("concurrent requests limit is not adaptive",
+                conf.isAdaptiveConcurrency(), is(false));
+    }
+
+    @Test
+    public void rejectsAdaptiveConcurrencyWithQueuedRequests() {
+        conf.adaptiveConcurrency = true;
+
+        assertThat("adaptive concurrency is invalid with queued requests",
+                conf.isAdaptiveConcurrencyValid(), is(false));
+
+        conf.nonBlocking = false;
+        conf.scheduled = false;
+
+        assertThat("adaptive concurrency is valid with blocking requests",
+                conf.isAdaptiveConcurrencyValid(), is(true));
+    }
+
+    @Test
+    public void rejectsARetryBudgetOutOfRange() {
+        conf.retryBudget = 1.5;
+
+        assertThat("a retry budget over 1 is invalid", conf.isRetryBudgetValid(), is(false));
+
+        conf.retryBudget = -0.1;
+
+        assertThat("a negative retry budget is invalid", conf.isRetryBudgetValid(), is(false));
+
+        conf.retryBudget = 0.2;
+
+        assertThat("a retry budget between 0 and 1 is valid", conf.isRetryBudgetValid(), is(true));
+    }
+
+    @Test
+    public void rejectsCircuitRatesOutOfRange() {
+        final Validator validator = new Validator();
+        conf.circuitErrorRate = 1.5;
+
+        assertThat("an error rate over 1 is invalid",
+                validator.validate(conf), hasItem(startsWith("circuitErrorRate")));
+
+        conf.circuitErrorRate = 0.5;
+        conf.circuitSlowRate = -0.5;
+
+        assertThat("a negative slow rate is invalid",
+                validator.validate(conf), hasItem(startsWith("circuitSlowRate")));
+
+        conf.circuitSlowRate = 0;
+
+        assertThat("rates between 0 and 1 are valid", validator.validate(conf).isEmpty(), is(true));
+    }
+
+    @Test
+    public void hasAMinimumConcurrentRequests() {
+        assertThat("minimum concurrent requests is 50",
+                conf.getMinConcurrentRequests(), is(50));
+    }
+
+    @Test
+    public void hasMaximumConcurrentRequestsByOperation() {
+        assertThat("maximum concurrent scan requests is 100",
+                conf.getMaxConcurrentRequestsByOperation().get("scan"), is(100));
+    }
+
+    @Test
+    public void hasMaximumConcurrentRequestsByTable() {
+        assertThat("maximum concurrent requests for the events table is 200",
+                conf.getMaxConcurrentRequestsByTable().get("events"), is(200));
+    }
+
+    @Test
+    public void hasBulkheadBorrowing() {
+        assertThat("bulkheads may borrow permits",
+                conf.isBulkheadBorrowing(), is(true));
+    }
+
+    @Test
+    public void hasACacheSize() {
+        assertThat("cache size is 64 megabytes",
+                conf.getCacheSize(), is(Size.megabytes(64)));
+    }
+
+    @Test
+    public void hasACacheTtl() {
+        assertThat("cache time-to-live is 30 seconds",
+                conf.getCacheTtl(), is(Duration.seconds(30)));
+    }
+
+    @Test
+    public void hasCacheTtlByTable() {
+        assertThat("cache time-to-live for the events table is 5 seconds",
+                conf.getCacheTtlByTable().get("events"), is(Duration.seconds(5)));
+    }
+
+    @Test
+    public void coalescesGets() {
+        assertThat("identical concurrent gets are coalesced",
+                conf.isCoalesceGets(), is(true));
+    }
+
+    @Test
+    public void isNonBlocking() {
+        assertThat("requests are queued without blocking",
+                conf.isNonBlocking(), is(true));
+    }
+
+    @Test
+    public void hasAMaximumQueuedRequests() {
+        assertThat("maximum queued requests is 500",
+                conf.getMaxQueuedRequests(), is(500));
+    }
+
+    @Test
+    public void hasAMaximumQueueTime() {
+        assertThat("maximum queue time is 2 seconds",
+                conf.getMaxQueueTime(), is(Duration.seconds(2)));
+    }
+
+    @Test
+    public void isScheduled() {
+        assertThat("requests are scheduled by priority and tenant",
+                conf.isScheduled(), is(true));
+    }
+
+    @Test
+    public void hasTenantWeights() {
+        assertThat("api tenant has a weight of 4",
+                conf.getTenantWeights().get("api"), is(4));
+    }
+
+    @Test
+    public void hasRateLimits() {
+        assertThat("backfill table is limited to 500 requests per second",
+                conf.getMaxRequestRateByTable().get("backfill"), is(500.0));
+        assertThat("scans are limited to 50 batches per second",
+                conf.getMaxRequestRateByOperation().get("scan"), is(50.0));
+        assertThat("backfill table is limited to 2MB of puts per second",
+                conf.getMaxPutRateByTable().get("backfill"), is(Size.megabytes(2)));
+    }
+
+    @Test
+    public void hasMaxRateLimitDelay() {
+        assertThat("rate limits delay requests for at most 5 seconds",
+                conf.getMaxRateLimitDelay(), is(Duration.seconds(5)));
+    }
+
+    @Test
+    public void blocksOnRateLimit() {
+        assertThat("rate limited requests block the caller",
+                conf.isBlockOnRateLimit(), is(true));
+    }
+
+    @Test
+    public void aggregatesIncrements() {
+        assertThat("increments are aggregated",
+                conf.isAggregateIncrements(), is(true));
+    }
+
+    @Test
+    public void hasAnIncrementFlushInterval() {
+        assertThat("increment flush interval is 500 milliseconds",
+                conf.getIncrementFlushInterval(), is(Duration.milliseconds(500)));
+    }
+
+    @Test
+    public void hasAMaximumAggregatedIncrements() {
+        assertThat("maximum aggregated increments is 5000",
+                conf.getMaxAggregatedIncrements(), is(5000));
+    }
+
+    @Test
+    public void hasAMaximumPendingIncrements() {
+        assertThat("maximum pending increments is 20000",
+                conf.getMaxPendingIncrements(), is(20000));
+    }
+
+    @Test
+    public void hasARequestTimeout() {
+        assertThat("request timeout is 5 seconds",
+                conf.getRequestTimeout(), is(Duration.seconds(5)));
+    }
+
+    @Test
+    public void hasARequestTimeoutByOperation() {
+        assertThat("scans time out after 30 seconds",
+                conf.getRequestTimeoutByOperation().get("scan"), is(Duration.seconds(30)));
+    }
+
+    @Test
+    public void hasARequestTimeoutByTable() {
+        assertThat("requests for events time out after 1 second",
+                conf.getRequestTimeoutByTable().get("events"), is(Duration.seconds(1)));
+    }
+
+    @Test
+    public void hasAMaximumNumberOfRetries() {
+        assertThat("requests are retried up to 3 times",
+                conf.getMaxRetries(), is(3));
+    }
+
+    @Test
+    public void hasARetryBackoff() {
+        assertThat("retry backoff is 20 milliseconds",
+                conf.getRetryBackoff(), is(Duration.milliseconds(20)));
+    }
+
+    @Test
+    public void hasAMaximumRetryBackoff() {
+        assertThat("maximum retry backoff is 500 milliseconds",
+                conf.getMaxRetryBackoff(), is(Duration.milliseconds(500)));
+    }
+
+    @Test
+    public void hasARetryBudget() {
+        assertThat("retries are limited to 20% of requests",
+                conf.getRetryBudget(), is(0.2));
+    }
+
+    @Test
+    public void breaksCircuits() {
+        assertThat("circuits are broken",
+                conf.isCircuitBreaking(), is(true));
+    }
+
+    @Test
+    public void breaksCircuitsByOperation() {
+        assertThat("circuits are broken by operation",
+                conf.isCircuitBreakingByOperation(), is(true));
+    }
+
+    @Test
+    public void hasACircuitErrorRate() {
+        assertThat("circuits open at a 25% error rate",
+                conf.getCircuitErrorRate(), is(0.25));
+    }
+
+    @Test
+    public void hasACircuitSlowRate() {
+        assertThat("circuits open when 75% of requests are slow",
+                conf.getCircuitSlowRate(), is(0.75));
+    }
+
+    @Test
+    public void hasACircuitSlowTime() {
+        assertThat("requests are slow after 2 seconds",
+                conf.getCircuitSlowTime(), is(Duration.seconds(2)));
+    }
+
+    @Test
+    public void hasACircuitMinimumRequests() {
+        assertThat("circuits open after at least 50 requests",
+                conf.getCircuitMinRequests(), is(50));
+    }
+
+    @Test
+    public void hasACircuitWindow() {
+        assertThat("circuit window is 30 seconds",
+                conf.getCircuitWindow(), is(Duration.seconds(30)));
+    }
+
+    @Test
+    public void hasACircuitOpenTime() {
+        assertThat("circuits stay open for 15 seconds",
+                conf.getCircuitOpenTime(), is(Duration.seconds(15)));
+    }
+
+    @Test
+    public void hasCircuitProbes() {
+        assertThat("circuits close after 5 probes",
+                conf.getCircuitProbes(), is(5));
+    }
+
+    @Test
+    public void hasWriteBehindTables() {
+        assertThat("puts to counters are written behind",
+                conf.getWriteBehindTables(), is(Collections.singleton("counters")));
+    }
+
+    @Test
+    public void hasAWriteBehindFlushInterval() {
+        assertThat("write-behind flush interval is 250 milliseconds",
+                conf.getWriteBehindFlushInterval(), is(Duration.milliseconds(250)));
+    }
+
+    @Test
+    public void hasAWriteBehindFlushSize() {
+        assertThat("write-behind flush size is 1MB",
+                conf.getWriteBehindFlushSize(), is(Size.megabytes(1)));
+    }
+
+    @Test
+    public void hasAWriteBehindBufferSize() {
+        assertThat("write-behind buffer size is 8MB",
+                conf.getWriteBehindBufferSize(), is(Size.megabytes(8)));
+    }
+
+    @Test
+    public void hasAScanBatchSize() {
+        assertThat("scan batch size is 2MB",
+                conf.getScanBatchSize(), is(Size.megabytes(2)));
+    }
+
+    @Test
+    public void hasAScanLatencyBudget() {
+        assertThat("scan latency budget is 250 milliseconds",
+                conf.getScanLatencyBudget(), is(Duration.milliseconds(250)));
+    }
+
     @Test
     public void hasAConnectionTimeout() {
         assertThat("connection timeout is 10 seconds",
                 conf.getConnectionTimeout(), is(Duration.seconds(10)));
     }
 
+    @Test
+    public void hasAPoolSize() {
+        assertThat("pool size is 4", conf.getPoolSize(), is(4));
+    }
+
     @Test
     public void notInstrumentedWithMetrics() {
         assertThat("client is not instrumented with metrics",
                 conf.isInstrumented(), is(false));
     }
+
+    @Test
+    public void hasAMaximumNumberOfInstrumentedTables() {
+        assertThat("metrics are recorded for up to 10 tables",
+                conf.getMaxInstrumentedTables(), is(10));
+    }
+
+    @Test
+    public void hasInstrumentedTables() {
+        assertThat("metrics are recorded for events",
+                conf.getInstrumentedTables(), is(Collections.singleton("events")));
+    }
+
+    @Test
+    public void hasAMaximumNumberOfInstrumentedFamilies() {
+        assertThat("metrics are recorded for up to 4 families of each table",
+                conf.getMaxInstrumentedFamilies(), is(4));
+    }
+
+    @Test
+    public void hasALatencyRecorder() {
+        assertThat("latencies are recorded by histograms",
+                conf.getLatencyRecorder(), is(LatencyRecorderType.HISTOGRAM));
+    }
+
+    @Test
+    public void isInMemory() {
+        assertThat("client holds tables in memory",
+                conf.isInMemory(), is(true));
+    }
+
+    @Test
+    public void hasInMemoryTables() {
+        assertThat("in-memory tables are events and counters",
+                conf.getInMemoryTables(), is((Set<String>) ImmutableSet.of("events", "counters")));
+    }
+
+    @Test
+    public void hasAnInMemoryLatency() {
+        assertThat("in-memory requests take 2 milliseconds",
+                conf.getInMemoryLatency(), is(Duration.milliseconds(2)));
+    }
+
+    @Test
+    public void hasInMemoryLatencyByOperation() {
+        assertThat("in-memory scans take 10 milliseconds",
+                conf.getInMemoryLatencyByOperation(),
+                is(Collections.singletonMap("scan", Duration.milliseconds(10))));
+    }
+
+    @Test
+    public void hasAnInMemoryLatencyDistribution() {
+        assertThat("in-memory latencies are log-normally distributed",
+                conf.getInMemoryLatencyDistribution(), is(LatencyDistribution.LOG_NORMAL));
+    }
 }
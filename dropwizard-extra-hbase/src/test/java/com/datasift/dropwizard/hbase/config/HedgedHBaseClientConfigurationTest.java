@@ -0,0 +1,60 @@
+package com.datasift.dropwizard.hbase.config;
+
+import com.google.common.io.Resources;
+import com.yammer.dropwizard.config.ConfigurationFactory;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.validation.Validator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link HedgedHBaseClientConfiguration}.
+ */
+public class HedgedHBaseClientConfigurationTest {
+
+    private HedgedHBaseClientConfiguration conf;
+
+    @Before
+    public void setUp() throws Exception {
+        conf = ConfigurationFactory
+                .forClass(HedgedHBaseClientConfiguration.class, new Validator())
+                .build(new File(Resources.getResource("yaml/hedged.yml").getFile()));
+    }
+
+    @Test
+    public void hasAPrimaryCluster() {
+        assertThat("primary cluster is primary.zk",
+                conf.getPrimary().getZookeeper().getHosts(), is(new String[] { "primary.zk" }));
+    }
+
+    @Test
+    public void hasAReplicaCluster() {
+        assertThat("replica cluster is replica.zk",
+                conf.getReplica().getZookeeper().getHosts(), is(new String[] { "replica.zk" }));
+        assertThat("replica is configured independently",
+                conf.getReplica().getMaxRetries(), is(0));
+    }
+
+    @Test
+    public void hasAHedgePercentile() {
+        assertThat("slowest 1% of reads are hedged",
+                conf.getHedgePercentile(), is(0.99));
+    }
+
+    @Test
+    public void hasAMinimumHedgeDelay() {
+        assertThat("reads are hedged after at least 10 milliseconds",
+                conf.getMinHedgeDelay(), is(Duration.milliseconds(10)));
+    }
+
+    @Test
+    public void hasAHedgeBudget() {
+        assertThat("hedges are at most 2% extra load",
+                conf.getHedgeBudget(), is(0.02));
+    }
+}
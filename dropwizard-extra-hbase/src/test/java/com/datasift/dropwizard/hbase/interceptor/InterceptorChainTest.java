@@ -0,0 +1,336 @@
+package com.datasift.dropwizard.hbase.interceptor;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.datasift.dropwizard.hbase.limiter.Bulkheads;
+import com.datasift.dropwizard.hbase.limiter.QueuingRequestLimiter;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Clock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link InterceptorChain}.
+ */
+public class InterceptorChainTest {
+
+    private static final byte[] TABLE = "table".getBytes();
+
+    private final List<String> events = new ArrayList<String>();
+
+    private Clock clock;
+    private Invocation<?> invocation;
+
+    @Before
+    public void setup() {
+        clock = mock(Clock.class);
+        when(clock.tick()).thenReturn(0L);
+    }
+
+    @Test
+    public void interceptsInOrderAndCompletesInReverse() {
+        final InterceptorChain chain = chain(new Recording("a"), new Recording("b"));
+        final Deferred<Object> result = new Deferred<Object>();
+
+        chain.submit(Operation.PUT, TABLE, null, request(result));
+        result.callback("done");
+
+        assertThat("interceptors are called around the request", events, is(Arrays.asList(
+                "before a", "before b", "dispatch", "after b: done", "after a: done")));
+    }
+
+    @Test
+    public void returnsTheDispatchedResultWithoutWrappingIt() {
+        final InterceptorChain chain = chain(new Recording("a"), new Recording("b"));
+        final Deferred<Object> result = new Deferred<Object>();
+
+        assertThat("result is the dispatched result",
+                chain.submit(Operation.PUT, TABLE, null, request(result)),
+                is(sameInstance(result)));
+    }
+
+    @Test
+    public void describesTheRequestToEachInterceptor() {
+        when(clock.tick()).thenReturn(0L, TimeUnit.MILLISECONDS.toNanos(5));
+        final InterceptorChain chain = chain(new Recording("a"));
+
+        chain.submitAll(Operation.GET, TABLE, request(Deferred.fromResult(null)));
+
+        assertThat("operation is given", invocation.getOperation(), is(Operation.GET));
+        assertThat("table is given", invocation.getTable(), is(TABLE));
+        assertThat("request is bulk", invocation.isBulk(), is(true));
+        assertThat("request is not buffered", invocation.isBuffered(), is(false));
+        assertThat("request is timed from entry to completion",
+                invocation.getElapsed(), is(TimeUnit.MILLISECONDS.toNanos(5)));
+    }
+
+    @Test
+    public void describesTheEditSentByTheRequest() {
+        final InterceptorChain chain = chain(new Recording("a"));
+
+        chain.submit(Operation.PUT, TABLE, "family".getBytes(), 42,
+                request(Deferred.fromResult(null)));
+
+        assertThat("family is given", invocation.getFamily(), is("family".getBytes()));
+        assertThat("size is given", invocation.getSize(), is(42L));
+        assertThat("request is not bulk", invocation.isBulk(), is(false));
+    }
+
+    @Test
+    public void completesEveryInterceptorWhenOneRejects() throws Exception {
+        final Exception rejection = new IllegalStateException("rejected");
+        final InterceptorChain chain =
+                chain(new Recording("a"), new Rejecting(rejection), new Recording("b"));
+
+        final Deferred<Object> result =
+                chain.submit(Operation.PUT, TABLE, null, request(new Deferred<Object>()));
+
+        assertThat("request is not dispatched, and every interceptor completes", events,
+                is(Arrays.asList("before a",
+                        "after null: " + rejection,
+                        "after null: " + rejection,
+                        "after a: " + rejection)));
+        assertFails(result, rejection);
+    }
+
+    @Test
+    public void completesInterceptorsWhenDispatchFails() throws Exception {
+        final RuntimeException failure = new RuntimeException("failed");
+        final InterceptorChain chain = chain(new Recording("a"));
+
+        final Deferred<Object> result = chain.submit(Operation.PUT, TABLE, null,
+                new Callback<Deferred<Object>, Object>() {
+                    public Deferred<Object> call(final Object arg) {
+                        throw failure;
+                    }
+                });
+
+        assertThat("interceptor is completed with the failure", events,
+                is(Arrays.asList("before a", "after a: " + failure)));
+        assertFails(result, failure);
+    }
+
+    @Test
+    public void completesDetachedRequestsOnceWhenExpired() throws Exception {
+        final Exception expiry = new IllegalStateException("expired");
+        final InterceptorChain chain = chain(new Recording("a"), new Detaching());
+        final Deferred<Object> result = new Deferred<Object>();
+
+        final Deferred<Object> response =
+                chain.submit(Operation.GET, TABLE, null, request(result));
+        assertThat("request expires", invocation.expire(expiry), is(true));
+        result.callback("late");
+
+        assertThat("interceptors are completed once, by the expiry", events,
+                is(Arrays.asList("before a", "dispatch", "after a: " + expiry)));
+        assertThat("request is expired", invocation.isExpired(), is(true));
+        assertThat("request can not expire twice", invocation.expire(expiry), is(false));
+        assertFails(response, expiry);
+    }
+
+    @Test
+    public void doesNotDispatchRequestsThatExpireWhileBeingAdmitted() throws Exception {
+        final Exception expiry = new IllegalStateException("expired");
+        final InterceptorChain chain =
+                chain(new Recording("a"), new Detaching(), new Expiring(expiry));
+
+        final Deferred<Object> response =
+                chain.submit(Operation.GET, TABLE, null, request(new Deferred<Object>()));
+
+        assertThat("request is completed by the expiry, without being dispatched", events,
+                is(Arrays.asList("before a", "after a: " + expiry)));
+        assertThat("request is expired", invocation.isExpired(), is(true));
+        assertFails(response, expiry);
+    }
+
+    @Test
+    public void respondsToDetachedRequestsWithTheirResult() throws Exception {
+        final InterceptorChain chain = chain(new Recording("a"), new Detaching());
+        final Deferred<Object> result = new Deferred<Object>();
+
+        final Deferred<Object> response =
+                chain.submit(Operation.GET, TABLE, null, request(result));
+        result.callback("done");
+
+        assertThat("response is detached from the result", response, is(not(result)));
+        assertThat("response has the result", response.join(), is((Object) "done"));
+        assertThat("request completed in time", invocation.expire(new Exception()), is(false));
+    }
+
+    @Test
+    public void holdsAPermitUntilTheRequestCompletes() {
+        final QueuingRequestLimiter limiter = limiter();
+        final InterceptorChain chain = bounded(limiter, new Recording("a"));
+        final Deferred<Object> result = new Deferred<Object>();
+
+        chain.submit(Operation.GET, TABLE, null, request(result));
+        assertThat("permit is held by the request", limiter.getAvailablePermits(), is(0));
+
+        result.callback("done");
+        assertThat("permit is released on completion", limiter.getAvailablePermits(), is(1));
+        assertThat("interceptors are called once admitted", events,
+                is(Arrays.asList("before a", "dispatch", "after a: done")));
+    }
+
+    @Test
+    public void releasesThePermitOfDetachedRequestsWhenExpired() {
+        final QueuingRequestLimiter limiter = limiter();
+        final InterceptorChain chain = bounded(limiter, new Recording("a"), new Detaching());
+
+        chain.submit(Operation.GET, TABLE, null, request(new Deferred<Object>()));
+        invocation.expire(new IllegalStateException("expired"));
+
+        assertThat("permit is released on expiry", limiter.getAvailablePermits(), is(1));
+    }
+
+    @Test
+    public void completesRequestsRejectedByTheLimiterOnce() throws Exception {
+        final InterceptorChain chain = bounded(limiter(), new Recording("a"));
+        chain.submit(Operation.GET, TABLE, null, request(new Deferred<Object>()));
+        events.clear();
+
+        final Deferred<Object> rejected =
+                chain.submit(Operation.GET, TABLE, null, request(new Deferred<Object>()));
+
+        assertThat("rejected request is not dispatched, but completes", events.size(), is(1));
+        assertThat("rejected request completes without state",
+                events.get(0).startsWith("after null: "), is(true));
+        try {
+            rejected.join();
+            fail("request was not rejected");
+        } catch (final Exception e) {
+            assertThat("request was rejected", e, is(instanceOf(RequestRejectedException.class)));
+        }
+    }
+
+    @Test
+    public void neverBoundsClosingAScanner() {
+        final QueuingRequestLimiter limiter = limiter();
+        final InterceptorChain chain = bounded(limiter, new Recording("a"));
+        chain.submit(Operation.SCAN, TABLE, null, request(new Deferred<Object>()));
+
+        chain.submitClose(TABLE, request(Deferred.fromResult(null)));
+
+        assertThat("close is dispatched without a permit", events.contains("dispatch"), is(true));
+        assertThat("close is a close", invocation.isClose(), is(true));
+        assertThat("close holds no permit", limiter.getAvailablePermits(), is(0));
+    }
+
+    private InterceptorChain chain(final Interceptor... interceptors) {
+        return new InterceptorChain(Arrays.asList(interceptors), null, clock);
+    }
+
+    private InterceptorChain bounded(final QueuingRequestLimiter limiter,
+                                     final Interceptor... interceptors) {
+        return new InterceptorChain(Arrays.asList(interceptors), new Bulkheads(limiter), clock);
+    }
+
+    private static QueuingRequestLimiter limiter() {
+        return new QueuingRequestLimiter(1, 0, Duration.seconds(0), null);
+    }
+
+    private Callback<Deferred<Object>, Object> request(final Deferred<Object> result) {
+        return new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                events.add("dispatch");
+                return result;
+            }
+        };
+    }
+
+    private static void assertFails(final Deferred<Object> result, final Exception expected) {
+        try {
+            result.join();
+            fail("request did not fail");
+        } catch (final Exception e) {
+            assertThat("request failed with the error", e, is(sameInstance(expected)));
+        }
+    }
+
+    private class Recording implements Interceptor {
+
+        private final String name;
+
+        Recording(final String name) {
+            this.name = name;
+        }
+
+        public Object before(final Invocation<?> invocation) {
+            InterceptorChainTest.this.invocation = invocation;
+            events.add("before " + name);
+            return name;
+        }
+
+        public void after(final Invocation<?> invocation,
+                          final Object state,
+                          final Object result) {
+            events.add("after " + state + ": " + result);
+        }
+    }
+
+    private class Rejecting implements Interceptor {
+
+        private final Exception rejection;
+
+        Rejecting(final Exception rejection) {
+            this.rejection = rejection;
+        }
+
+        public Object before(final Invocation<?> invocation) throws Exception {
+            throw rejection;
+        }
+
+        public void after(final Invocation<?> invocation,
+                          final Object state,
+                          final Object result) {
+            events.add("after " + state + ": " + result);
+        }
+    }
+
+    private static class Detaching implements Interceptor {
+
+        public Object before(final Invocation<?> invocation) {
+            invocation.detach();
+            return null;
+        }
+
+        public void after(final Invocation<?> invocation,
+                          final Object state,
+                          final Object result) {
+        }
+    }
+
+    private static class Expiring implements Interceptor {
+
+        private final Exception expiry;
+
+        Expiring(final Exception expiry) {
+            this.expiry = expiry;
+        }
+
+        public Object before(final Invocation<?> invocation) {
+            invocation.expire(expiry);
+            return null;
+        }
+
+        public void after(final Invocation<?> invocation,
+                          final Object state,
+                          final Object result) {
+        }
+    }
+}
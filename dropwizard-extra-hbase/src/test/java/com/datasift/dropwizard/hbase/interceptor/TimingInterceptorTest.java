@@ -0,0 +1,174 @@
+package com.datasift.dropwizard.hbase.interceptor;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.datasift.dropwizard.hbase.metrics.HBaseInstrumentation;
+import com.datasift.dropwizard.hbase.metrics.TableInstrumentation;
+import com.datasift.dropwizard.hbase.metrics.TableMetrics;
+import com.datasift.dropwizard.metrics.LatencyRecorder;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.Histogram;
+import org.hbase.async.KeyValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link TimingInterceptor}.
+ */
+public class TimingInterceptorTest {
+
+    private static final long ELAPSED = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final byte[] TABLE = "table".getBytes();
+    private static final byte[] FAMILY = "family".getBytes();
+
+    private HBaseInstrumentation metrics;
+    private LatencyRecorder gets;
+    private LatencyRecorder failedGets;
+    private LatencyRecorder bulkGets;
+    private LatencyRecorder scans;
+    private LatencyRecorder closes;
+    private Histogram batchRows;
+    private TableMetrics table;
+    private TableMetrics family;
+    private Clock clock;
+    private InterceptorChain chain;
+
+    @Before
+    public void setup() {
+        metrics = mock(HBaseInstrumentation.class, RETURNS_MOCKS);
+        gets = mock(LatencyRecorder.class);
+        failedGets = mock(LatencyRecorder.class);
+        bulkGets = mock(LatencyRecorder.class);
+        scans = mock(LatencyRecorder.class);
+        closes = mock(LatencyRecorder.class);
+        batchRows = mock(Histogram.class);
+        when(metrics.getGets()).thenReturn(gets);
+        when(metrics.getFailedGets()).thenReturn(failedGets);
+        when(metrics.getBulkGets()).thenReturn(bulkGets);
+        when(metrics.getScans()).thenReturn(scans);
+        when(metrics.getCloses()).thenReturn(closes);
+        when(metrics.getScanBatchRows()).thenReturn(batchRows);
+
+        table = mockTable();
+        family = mockTable();
+        when(table.forFamily(FAMILY)).thenReturn(family);
+        final TableInstrumentation tables = mock(TableInstrumentation.class);
+        when(tables.forTable(TABLE)).thenReturn(table);
+
+        clock = mock(Clock.class);
+        when(clock.tick()).thenReturn(0L, ELAPSED);
+        chain = new InterceptorChain(
+                Collections.singletonList(new TimingInterceptor(metrics, tables)), null, clock);
+    }
+
+    @Test
+    public void timesSuccessfulRequests() {
+        chain.submit(Operation.GET, null, null, request(Deferred.fromResult(null)));
+
+        verify(gets).record(ELAPSED, TimeUnit.NANOSECONDS);
+        verifyZeroInteractions(failedGets);
+    }
+
+    @Test
+    public void timesAndCountsFailedRequests() {
+        final Exception error = new RuntimeException("failed");
+
+        chain.submit(Operation.GET, null, null, request(Deferred.fromError(error)));
+
+        verify(failedGets).record(ELAPSED, TimeUnit.NANOSECONDS);
+        verify(metrics).markError(error);
+        verifyZeroInteractions(gets);
+    }
+
+    @Test
+    public void timesBulkRequestsSeparately() {
+        chain.submitAll(Operation.GET, null, request(Deferred.fromResult(null)));
+
+        verify(bulkGets).record(ELAPSED, TimeUnit.NANOSECONDS);
+        verifyZeroInteractions(gets);
+    }
+
+    @Test
+    public void timesClosesSeparately() {
+        chain.submitClose(TABLE, request(Deferred.fromResult(null)));
+
+        verify(closes).record(ELAPSED, TimeUnit.NANOSECONDS);
+        verifyZeroInteractions(scans, table);
+    }
+
+    @Test
+    public void recordsTheRowsOfEachScannedBatch() {
+        final ArrayList<ArrayList<KeyValue>> batch = new ArrayList<ArrayList<KeyValue>>();
+        batch.add(new ArrayList<KeyValue>());
+        batch.add(new ArrayList<KeyValue>());
+
+        chain.submit(Operation.SCAN, null, null, request(Deferred.fromResult((Object) batch)));
+
+        verify(scans).record(ELAPSED, TimeUnit.NANOSECONDS);
+        verify(batchRows).update(2);
+    }
+
+    @Test
+    public void timesRequestsForTheirTableAndFamily() {
+        chain.submit(Operation.GET, TABLE, FAMILY, request(Deferred.fromResult(null)));
+
+        verify(table.getLatency(Operation.GET)).record(ELAPSED, TimeUnit.NANOSECONDS);
+        verify(family.getLatency(Operation.GET)).record(ELAPSED, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void recordsTheSizeOfEditsForTheirTableAndFamily() {
+        chain.submit(Operation.PUT, TABLE, FAMILY, 42, request(Deferred.fromResult(null)));
+
+        verify(table.getRequestBytes()).update(42L);
+        verify(family.getRequestBytes()).update(42L);
+    }
+
+    @Test
+    public void timesRejectedRequestsAsFailures() {
+        final Exception error = new RuntimeException("rejected");
+        final Interceptor rejecting = new Interceptor() {
+            public Object before(final Invocation<?> invocation) throws Exception {
+                throw error;
+            }
+
+            public void after(final Invocation<?> invocation,
+                              final Object state,
+                              final Object result) {
+            }
+        };
+        chain = new InterceptorChain(Arrays.asList(
+                new TimingInterceptor(metrics), rejecting), null, clock);
+
+        chain.submit(Operation.GET, TABLE, null, request(Deferred.fromResult(null)));
+
+        verify(failedGets).record(ELAPSED, TimeUnit.NANOSECONDS);
+        verify(metrics).markError(error);
+    }
+
+    private static TableMetrics mockTable() {
+        final TableMetrics metrics = mock(TableMetrics.class);
+        final LatencyRecorder latency = mock(LatencyRecorder.class);
+        final Histogram requestBytes = mock(Histogram.class);
+        when(metrics.getLatency(any(Operation.class))).thenReturn(latency);
+        when(metrics.getRequestBytes()).thenReturn(requestBytes);
+        when(metrics.getResponseBytes()).thenReturn(mock(Histogram.class));
+        return metrics;
+    }
+
+    private static Callback<Deferred<Object>, Object> request(final Deferred<Object> result) {
+        return new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return result;
+            }
+        };
+    }
+}
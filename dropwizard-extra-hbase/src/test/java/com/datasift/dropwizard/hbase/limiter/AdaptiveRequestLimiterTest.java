@@ -0,0 +1,136 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.metrics.core.Clock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link AdaptiveRequestLimiter}.
+ */
+public class AdaptiveRequestLimiterTest {
+
+    private long time = 0;
+    private AdaptiveRequestLimiter limiter;
+
+    @Before
+    public void setup() {
+        limiter = new AdaptiveRequestLimiter(2, 100, new Clock() {
+            @Override
+            public long tick() {
+                return time;
+            }
+        });
+    }
+
+    @Test
+    public void beginsAtTheMaximumLimit() {
+        assertThat("limit begins at the maximum",
+                limiter.getLimit(), is(100));
+    }
+
+    @Test
+    public void tracksInFlightRequests() {
+        final Deferred<Object> resp = new Deferred<Object>();
+
+        assertThat("dispatches request", limiter.submit(request(resp)), is(resp));
+        assertThat("request is in-flight", limiter.getInFlight(), is(1));
+
+        resp.callback("done");
+
+        assertThat("request is no longer in-flight", limiter.getInFlight(), is(0));
+    }
+
+    @Test(expected = RequestRejectedException.class)
+    public void rejectsWhenLimitIsReached() throws Exception {
+        final AdaptiveRequestLimiter limiter = new AdaptiveRequestLimiter(1, 1);
+        limiter.submit(request(new Deferred<Object>()));
+
+        final Deferred<Object> rejected = limiter.submit(request(new Deferred<Object>()));
+
+        assertThat("rejected request is counted", limiter.getRejected(), is(1L));
+        rejected.join();
+    }
+
+    @Test
+    public void decreasesLimitWhenOverloaded() {
+        final List<Deferred<Object>> requests = submit(100);
+        for (final Deferred<Object> request : requests) {
+            request.callback(new RequestRejectedException("overloaded"));
+        }
+
+        assertThat("limit is decreased",
+                limiter.getLimit(), is(lessThan(100)));
+    }
+
+    @Test
+    public void decreasesLimitWhenLatencyIncreases() {
+        completeWindow(1000);
+        final int limit = limiter.getLimit();
+        completeWindow(10000);
+
+        assertThat("limit is decreased",
+                limiter.getLimit(), is(lessThan(limit)));
+    }
+
+    @Test
+    public void increasesLimitWhenLatencyIsStable() {
+        final List<Deferred<Object>> requests = submit(100);
+        for (final Deferred<Object> request : requests) {
+            request.callback(new RequestRejectedException("overloaded"));
+        }
+        final int limit = limiter.getLimit();
+
+        completeWindow(1000);
+
+        assertThat("limit is increased",
+                limiter.getLimit(), is(greaterThan(limit)));
+    }
+
+    @Test
+    public void neverDecreasesBelowTheMinimumLimit() {
+        for (int i = 0; i < 100; i++) {
+            final List<Deferred<Object>> requests = submit(limiter.getLimit());
+            for (final Deferred<Object> request : requests) {
+                request.callback(new RequestRejectedException("overloaded"));
+            }
+        }
+
+        assertThat("limit is bounded by the minimum",
+                limiter.getLimit(), is(2));
+    }
+
+    private void completeWindow(final long latency) {
+        final List<Deferred<Object>> requests = submit(limiter.getLimit());
+        time += latency;
+        for (final Deferred<Object> request : requests) {
+            request.callback("done");
+        }
+    }
+
+    private List<Deferred<Object>> submit(final int count) {
+        final List<Deferred<Object>> requests = new ArrayList<Deferred<Object>>(count);
+        for (int i = 0; i < count; i++) {
+            final Deferred<Object> resp = new Deferred<Object>();
+            limiter.submit(request(resp));
+            requests.add(resp);
+        }
+        return requests;
+    }
+
+    private Callback<Deferred<Object>, Object> request(final Deferred<Object> response) {
+        return new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return response;
+            }
+        };
+    }
+}
@@ -0,0 +1,138 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link Bulkheads} and {@link BulkheadRequestLimiter}.
+ */
+public class BulkheadsTest {
+
+    private RequestLimiter shared;
+    private BulkheadRequestLimiter scans;
+    private BulkheadRequestLimiter events;
+    private Bulkheads bulkheads;
+
+    @Before
+    public void setup() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        shared = new BlockingRequestLimiter(1);
+        scans = new BulkheadRequestLimiter(
+                "operation-scan", new BlockingRequestLimiter(1), 1, null, registry);
+        events = new BulkheadRequestLimiter(
+                "table-events", new BlockingRequestLimiter(1), 1, shared, registry);
+
+        final Map<Operation, RequestLimiter> operations =
+                new EnumMap<Operation, RequestLimiter>(Operation.class);
+        operations.put(Operation.SCAN, scans);
+        bulkheads = new Bulkheads(
+                shared, operations, Collections.singletonMap("events", events));
+    }
+
+    @Test
+    public void selectsPoolForTable() {
+        assertThat("requests for a table with a pool use the pool for the table",
+                bulkheads.forRequest(Operation.SCAN, "events"),
+                is((RequestLimiter) events));
+    }
+
+    @Test
+    public void selectsPoolForOperation() {
+        assertThat("requests for an operation with a pool use the pool for the operation",
+                bulkheads.forRequest(Operation.SCAN, "users"),
+                is((RequestLimiter) scans));
+    }
+
+    @Test
+    public void selectsSharedPoolByDefault() {
+        assertThat("requests without a pool use the shared pool",
+                bulkheads.forRequest(Operation.GET, "users"),
+                is(shared));
+        assertThat("requests without a table use the shared pool",
+                bulkheads.forRequest(Operation.FLUSH, (byte[]) null),
+                is(shared));
+    }
+
+    @Test
+    public void isolatesSaturatedPool() {
+        final Deferred<Object> scan = new Deferred<Object>();
+        scans.submit(request(scan));
+
+        assertThat("saturated pool does not admit more requests",
+                scans.trySubmit(request(new Deferred<Object>())), is(nullValue()));
+        assertThat("shared pool still admits requests",
+                shared.trySubmit(request(new Deferred<Object>())), is(notNullValue()));
+        assertThat("pool tracks in-flight requests",
+                scans.getInFlight(), is(1));
+
+        scan.callback("done");
+
+        assertThat("pool releases completed requests",
+                scans.getInFlight(), is(0));
+    }
+
+    @Test
+    public void borrowsFromOverflowWhenSaturated() {
+        events.submit(request(new Deferred<Object>()));
+
+        assertThat("saturated pool borrows a permit from the overflow",
+                events.trySubmit(request(new Deferred<Object>())), is(notNullValue()));
+        assertThat("borrowed requests are tracked by the pool",
+                events.getUtilization(), is(2.0));
+        assertThat("overflow has no permits left",
+                shared.trySubmit(request(new Deferred<Object>())), is(nullValue()));
+    }
+
+    @Test
+    public void doesNotBorrowPastRequestsWaitingForThePool() {
+        final SchedulingRequestLimiter pool = new SchedulingRequestLimiter(
+                1, 10, Duration.seconds(0), Collections.<String, Integer>emptyMap(), null,
+                new MetricsRegistry(), Clock.defaultClock());
+        final BulkheadRequestLimiter reports = new BulkheadRequestLimiter(
+                "table-reports", pool, 1, shared, new MetricsRegistry());
+        final Deferred<Object> borrowed = new Deferred<Object>();
+        reports.submit(request(new Deferred<Object>()));
+        reports.submit(request(borrowed));
+        final RequestClass interactive = new RequestClass(Priority.INTERACTIVE, "api");
+        RequestClass previous = RequestContext.enter(interactive);
+        try {
+            reports.submit(request(new Deferred<Object>()));
+        } finally {
+            RequestContext.restore(previous);
+        }
+        borrowed.callback("done");
+
+        previous = RequestContext.enter(new RequestClass(Priority.BATCH, "backfill"));
+        try {
+            reports.submit(request(new Deferred<Object>()));
+        } finally {
+            RequestContext.restore(previous);
+        }
+
+        assertThat("batch request waits behind the interactive request",
+                pool.getQueuedRequests(), is(2));
+        assertThat("overflow permit remains available",
+                shared.trySubmit(request(new Deferred<Object>())), is(notNullValue()));
+    }
+
+    private Callback<Deferred<Object>, Object> request(final Deferred<Object> response) {
+        return new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return response;
+            }
+        };
+    }
+}
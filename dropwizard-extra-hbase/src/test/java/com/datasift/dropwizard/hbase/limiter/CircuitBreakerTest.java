@@ -0,0 +1,210 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.CircuitOpenException;
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Clock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link CircuitBreaker}.
+ */
+public class CircuitBreakerTest {
+
+    private long time = 0;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setup() {
+        breaker = new CircuitBreaker(
+                "events",
+                0.5,
+                0.5,
+                Duration.seconds(1),
+                4,
+                Duration.seconds(10),
+                Duration.seconds(5),
+                2,
+                new Clock() {
+                    @Override
+                    public long tick() {
+                        return time;
+                    }
+                });
+    }
+
+    @Test
+    public void staysClosedBelowTheErrorRate() throws Exception {
+        succeed();
+        succeed();
+        succeed();
+        failWith(new IllegalStateException("failed"));
+
+        assertThat("circuit is closed", breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void opensAtTheErrorRate() throws Exception {
+        open();
+
+        assertThat("circuit is open", breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat("circuit opened once", breaker.getOpened(), is(1L));
+    }
+
+    @Test
+    public void needsTheMinimumRequestsToOpen() throws Exception {
+        failWith(new IllegalStateException("failed"));
+        failWith(new IllegalStateException("failed"));
+        failWith(new IllegalStateException("failed"));
+
+        assertThat("circuit is closed", breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void opensOnSlowRequests() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            final Deferred<Object> pending = new Deferred<Object>();
+            breaker.submit(dispatch(pending));
+            time += TimeUnit.SECONDS.toNanos(2);
+            pending.callback(null);
+        }
+
+        assertThat("circuit is open", breaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void staysClosedOnLatencyWithoutASlowRate() throws Exception {
+        breaker = new CircuitBreaker("events", 0.5, 0, Duration.seconds(1), 4,
+                Duration.seconds(10), Duration.seconds(5), 2, new Clock() {
+                    @Override
+                    public long tick() {
+                        return time;
+                    }
+                });
+        for (int i = 0; i < 4; i++) {
+            final Deferred<Object> pending = new Deferred<Object>();
+            breaker.submit(dispatch(pending));
+            time += TimeUnit.SECONDS.toNanos(2);
+            pending.callback(null);
+        }
+
+        assertThat("circuit is closed", breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void ignoresRejectedRequests() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            failWith(new RequestRejectedException("full"));
+        }
+
+        assertThat("circuit is closed", breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void rejectsRequestsWhileOpen() throws Exception {
+        open();
+
+        try {
+            breaker.submit(dispatch(Deferred.fromResult((Object) null))).join();
+            fail("request was not rejected");
+        } catch (final Exception e) {
+            assertThat("request is rejected", e, is(instanceOf(CircuitOpenException.class)));
+        }
+        assertThat("one request was rejected", breaker.getRejected(), is(1L));
+    }
+
+    @Test
+    public void closesAfterSuccessfulProbes() throws Exception {
+        open();
+        time += TimeUnit.SECONDS.toNanos(5);
+
+        final Deferred<Object> first = new Deferred<Object>();
+        final Deferred<Object> second = new Deferred<Object>();
+        breaker.submit(dispatch(first));
+        breaker.submit(dispatch(second));
+        assertThat("circuit is half-open",
+                breaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat("only admits the probes",
+                breaker.trySubmit(dispatch(new Deferred<Object>())), is(nullValue()));
+
+        first.callback(null);
+        second.callback(null);
+        assertThat("circuit is closed", breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void reopensAfterAFailedProbe() throws Exception {
+        open();
+        time += TimeUnit.SECONDS.toNanos(5);
+
+        failWith(new IllegalStateException("failed"));
+
+        assertThat("circuit is open", breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat("circuit opened twice", breaker.getOpened(), is(2L));
+    }
+
+    @Test
+    public void reopensWhenAProbeNeverCompletes() throws Exception {
+        open();
+        time += TimeUnit.SECONDS.toNanos(5);
+
+        breaker.submit(dispatch(new Deferred<Object>()));
+        breaker.submit(dispatch(new Deferred<Object>()));
+        time += TimeUnit.SECONDS.toNanos(5);
+
+        assertThat("rejects requests once the probes have stalled",
+                breaker.trySubmit(dispatch(new Deferred<Object>())), is(nullValue()));
+        assertThat("circuit is open", breaker.getState(), is(CircuitBreaker.State.OPEN));
+
+        time += TimeUnit.SECONDS.toNanos(5);
+        succeed();
+        succeed();
+
+        assertThat("circuit closes after new probes succeed",
+                breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnErrorRateOverOne() throws Exception {
+        new CircuitBreaker("events", 1.5, 0.5, Duration.seconds(1), 4, Duration.seconds(10),
+                Duration.seconds(5), 2, Clock.defaultClock());
+    }
+
+    private void open() throws Exception {
+        succeed();
+        succeed();
+        failWith(new IllegalStateException("failed"));
+        failWith(new IllegalStateException("failed"));
+    }
+
+    private void succeed() throws Exception {
+        breaker.submit(dispatch(Deferred.fromResult((Object) null))).join();
+    }
+
+    private void failWith(final Exception error) {
+        try {
+            breaker.submit(dispatch(Deferred.fromError(error))).join();
+        } catch (final Exception e) {
+            // expected
+        }
+    }
+
+    private Callback<Deferred<Object>, Object> dispatch(final Deferred<Object> result) {
+        return new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return result;
+            }
+        };
+    }
+}
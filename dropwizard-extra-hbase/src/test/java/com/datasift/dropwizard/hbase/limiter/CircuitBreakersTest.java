@@ -0,0 +1,66 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.Operation;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link CircuitBreakers}.
+ */
+public class CircuitBreakersTest {
+
+    @Test
+    public void createsOneCircuitPerTable() {
+        final CircuitBreakers breakers = breakers(false);
+
+        assertThat("requests for the same table share a circuit",
+                breakers.forRequest(Operation.GET, "events"),
+                is(sameInstance(breakers.forRequest(Operation.PUT, "events"))));
+        assertThat("requests for different tables have their own circuit",
+                breakers.forRequest(Operation.GET, "events"),
+                is(not(sameInstance(breakers.forRequest(Operation.GET, "users")))));
+        assertThat("creates a circuit for each table",
+                breakers.getCircuitBreakers().size(), is(2));
+    }
+
+    @Test
+    public void createsOneCircuitPerOperation() {
+        final CircuitBreakers breakers = breakers(true);
+
+        assertThat("operations on the same table have their own circuit",
+                breakers.forRequest(Operation.GET, "events"),
+                is(not(sameInstance(breakers.forRequest(Operation.PUT, "events")))));
+        assertThat("circuits are named by table and operation",
+                ((CircuitBreaker) breakers.forRequest(Operation.GET, "events")).getName(),
+                is("events-get"));
+    }
+
+    @Test
+    public void doesNotBreakRequestsWithoutATable() {
+        final CircuitBreakers breakers = breakers(false);
+
+        assertThat("requests without a table are not broken",
+                breakers.forRequest(Operation.FLUSH, (byte[]) null),
+                is(not(instanceOf(CircuitBreaker.class))));
+    }
+
+    private CircuitBreakers breakers(final boolean byOperation) {
+        return new CircuitBreakers(
+                byOperation,
+                0.5,
+                0.5,
+                Duration.seconds(0),
+                10,
+                Duration.seconds(10),
+                Duration.seconds(5),
+                3,
+                new MetricsRegistry());
+    }
+}
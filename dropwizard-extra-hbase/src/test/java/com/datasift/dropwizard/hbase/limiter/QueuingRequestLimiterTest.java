@@ -0,0 +1,145 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link QueuingRequestLimiter}.
+ */
+public class QueuingRequestLimiterTest {
+
+    private Timer timer;
+    private QueuingRequestLimiter limiter;
+
+    @Before
+    public void setup() {
+        timer = mock(Timer.class);
+        when(timer.newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class)))
+                .thenReturn(mock(Timeout.class));
+        limiter = new QueuingRequestLimiter(1, 1, Duration.seconds(1), timer);
+    }
+
+    @Test
+    public void dispatchesImmediatelyWithPermit() {
+        final Deferred<Object> resp = new Deferred<Object>();
+
+        assertThat("dispatches request without queuing",
+                limiter.submit(request(resp)), is(resp));
+        assertThat("permit is held by request",
+                limiter.getAvailablePermits(), is(0));
+
+        resp.callback("done");
+
+        assertThat("permit is released on completion",
+                limiter.getAvailablePermits(), is(1));
+    }
+
+    @Test
+    public void queuesWithNoPermit() throws Exception {
+        final Deferred<Object> first = new Deferred<Object>();
+        final Deferred<Object> second = new Deferred<Object>();
+
+        limiter.submit(request(first));
+        final Deferred<Object> queued = limiter.submit(request(second));
+
+        assertThat("request is queued",
+                limiter.getQueuedRequests(), is(1));
+
+        first.callback("first");
+
+        assertThat("queued request is dispatched when a permit is released",
+                limiter.getQueuedRequests(), is(0));
+        assertThat("permit is handed to queued request",
+                limiter.getAvailablePermits(), is(0));
+
+        second.callback("second");
+
+        assertThat("queued request yields the result of the request",
+                queued.join(), is((Object) "second"));
+        assertThat("permit is released on completion",
+                limiter.getAvailablePermits(), is(1));
+    }
+
+    @Test(expected = RequestRejectedException.class)
+    public void rejectsWhenQueueIsFull() throws Exception {
+        limiter.submit(request(new Deferred<Object>()));
+        limiter.submit(request(new Deferred<Object>()));
+
+        final Deferred<Object> rejected = limiter.submit(request(new Deferred<Object>()));
+
+        assertThat("rejected request is counted",
+                limiter.getRejectedRequests(), is(1L));
+        rejected.join();
+    }
+
+    @Test(expected = RequestRejectedException.class)
+    public void rejectsWhenQueuedForTooLong() throws Exception {
+        final ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+
+        limiter.submit(request(new Deferred<Object>()));
+        final Deferred<Object> queued = limiter.submit(request(new Deferred<Object>()));
+
+        verify(timer).newTimeout(task.capture(), eq(1L), eq(TimeUnit.SECONDS));
+        task.getValue().run(mock(Timeout.class));
+
+        assertThat("expired request is removed from the queue",
+                limiter.getQueuedRequests(), is(0));
+        queued.join();
+    }
+
+    @Test
+    public void releasesPermitWhenDispatchFails() {
+        limiter.submit(new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) throws Exception {
+                throw new IllegalStateException("failed to dispatch");
+            }
+        });
+
+        assertThat("permit is released when the request fails to dispatch",
+                limiter.getAvailablePermits(), is(1));
+    }
+
+    @Test
+    public void dispatchesALongQueueOfImmediateRequestsWithoutRecursion() throws Exception {
+        final int count = 10000;
+        limiter = new QueuingRequestLimiter(1, count, Duration.seconds(0), null);
+        final Deferred<Object> first = new Deferred<Object>();
+        limiter.submit(request(first));
+
+        final List<Deferred<Object>> queued = new ArrayList<Deferred<Object>>(count);
+        for (int i = 0; i < count; i++) {
+            queued.add(limiter.submit(request(Deferred.fromResult((Object) i))));
+        }
+        first.callback("first");
+
+        for (int i = 0; i < count; i++) {
+            assertThat("queued request is dispatched", queued.get(i).join(), is((Object) i));
+        }
+        assertThat("every permit is released", limiter.getAvailablePermits(), is(1));
+        assertThat("no requests are queued", limiter.getQueuedRequests(), is(0));
+    }
+
+    private Callback<Deferred<Object>, Object> request(final Deferred<Object> response) {
+        return new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                return response;
+            }
+        };
+    }
+}
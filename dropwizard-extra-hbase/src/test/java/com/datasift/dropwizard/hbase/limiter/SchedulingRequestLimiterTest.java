@@ -0,0 +1,228 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link SchedulingRequestLimiter}.
+ */
+public class SchedulingRequestLimiterTest {
+
+    private static final RequestClass INTERACTIVE = new RequestClass(Priority.INTERACTIVE, "api");
+    private static final RequestClass BATCH = new RequestClass(Priority.BATCH, "backfill");
+    private static final RequestClass API = new RequestClass(Priority.NORMAL, "api");
+    private static final RequestClass REPORTS = new RequestClass(Priority.NORMAL, "reports");
+
+    private final List<String> dispatched = new ArrayList<String>();
+
+    private Timer timer;
+    private Clock clock;
+    private SchedulingRequestLimiter limiter;
+
+    @Before
+    public void setup() {
+        timer = mock(Timer.class);
+        clock = mock(Clock.class);
+        when(timer.newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class)))
+                .thenReturn(mock(Timeout.class));
+
+        final Map<String, Integer> weights = new HashMap<String, Integer>();
+        weights.put("api", 2);
+        limiter = new SchedulingRequestLimiter(1, 100, Duration.seconds(1), weights, timer,
+                new MetricsRegistry(), clock);
+    }
+
+    @Test
+    public void dispatchesImmediatelyWithPermit() {
+        final Deferred<Object> resp = new Deferred<Object>();
+
+        assertThat("dispatches request without queuing",
+                limiter.submit(BATCH, request("batch", resp)), is(resp));
+        assertThat("permit is held by request", limiter.getAvailablePermits(), is(0));
+
+        resp.callback("done");
+        assertThat("permit is released on completion", limiter.getAvailablePermits(), is(1));
+    }
+
+    @Test
+    public void grantsPermitsByStrictPriority() {
+        final Deferred<Object> first = new Deferred<Object>();
+        limiter.submit(BATCH, request("first", first));
+        limiter.submit(BATCH, request("batch", Deferred.fromResult(null)));
+        limiter.submit(INTERACTIVE, request("interactive", Deferred.fromResult(null)));
+
+        first.callback(null);
+
+        assertThat("interactive request is dispatched before the earlier batch request",
+                dispatched, is(list("first", "interactive", "batch")));
+    }
+
+    @Test
+    public void sharesPermitsBetweenTenantsByWeight() {
+        final Deferred<Object> first = new Deferred<Object>();
+        limiter.submit(REPORTS, request("first", first));
+        for (int i = 0; i < 6; i++) {
+            limiter.submit(REPORTS, request("reports", Deferred.fromResult(null)));
+            limiter.submit(API, request("api", Deferred.fromResult(null)));
+        }
+
+        first.callback(null);
+
+        final List<String> granted = dispatched.subList(1, 7);
+        assertThat("tenant with twice the weight is granted twice the permits",
+                Collections.frequency(granted, "api"), is(4));
+        assertThat("other tenant is still granted permits",
+                Collections.frequency(granted, "reports"), is(2));
+    }
+
+    @Test
+    public void schedulesTenantsByWeightAgainOnceTheQueueHasDrained() {
+        for (int round = 0; round < 2; round++) {
+            dispatched.clear();
+            final Deferred<Object> first = new Deferred<Object>();
+            limiter.submit(REPORTS, request("first", first));
+            for (int i = 0; i < 6; i++) {
+                limiter.submit(REPORTS, request("reports", Deferred.fromResult(null)));
+                limiter.submit(API, request("api", Deferred.fromResult(null)));
+            }
+
+            first.callback(null);
+
+            final List<String> granted = dispatched.subList(1, 7);
+            assertThat("tenant with twice the weight is granted twice the permits",
+                    Collections.frequency(granted, "api"), is(4));
+            assertThat("queue has drained", limiter.getQueuedRequests(), is(0));
+        }
+    }
+
+    @Test
+    public void reportsRequestsWaitingAtOrAbovePriority() {
+        limiter.submit(API, request("first", new Deferred<Object>()));
+        limiter.submit(API, request("api", new Deferred<Object>()));
+
+        assertThat("a request is waiting at the same priority",
+                limiter.isWaiting(Priority.NORMAL), is(true));
+        assertThat("a request is waiting above a lower priority",
+                limiter.isWaiting(Priority.BATCH), is(true));
+        assertThat("no request is waiting at a higher priority",
+                limiter.isWaiting(Priority.INTERACTIVE), is(false));
+    }
+
+    @Test
+    public void classifiesRequestsByTheContextOfTheCallingThread() {
+        final RequestClass previous = RequestContext.enter(INTERACTIVE);
+        try {
+            limiter.submit(request("interactive", Deferred.fromResult(null)));
+        } finally {
+            RequestContext.restore(previous);
+        }
+        limiter.submit(request("default", Deferred.fromResult(null)));
+
+        assertThat("request is timed by the class of the context",
+                limiter.getWaitTime(INTERACTIVE).count(), is(1L));
+        assertThat("request outside of a context is of the default class",
+                limiter.getWaitTime(RequestClass.DEFAULT).count(), is(1L));
+    }
+
+    @Test
+    public void timesTheQueueWaitOfEachClass() {
+        when(clock.tick()).thenReturn(0L, TimeUnit.MILLISECONDS.toNanos(5));
+        final Deferred<Object> first = new Deferred<Object>();
+        limiter.submit(API, request("first", first));
+        limiter.submit(BATCH, request("batch", Deferred.fromResult(null)));
+
+        first.callback(null);
+
+        assertThat("batch request waited for the first to complete",
+                limiter.getWaitTime(BATCH).max(), is(5.0));
+        assertThat("first request did not wait",
+                limiter.getWaitTime(API).max(), is(0.0));
+    }
+
+    @Test(expected = RequestRejectedException.class)
+    public void rejectsWhenQueuedForTooLong() throws Exception {
+        final ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+
+        limiter.submit(API, request("first", new Deferred<Object>()));
+        final Deferred<Object> queued =
+                limiter.submit(BATCH, request("batch", new Deferred<Object>()));
+
+        verify(timer).newTimeout(task.capture(), eq(1L), eq(TimeUnit.SECONDS));
+        task.getValue().run(mock(Timeout.class));
+
+        assertThat("expired request is removed from the queue",
+                limiter.getQueuedRequests(), is(0));
+        assertThat("rejection is counted by class", limiter.getRejected(BATCH).count(), is(1L));
+        queued.join();
+    }
+
+    @Test(expected = RequestRejectedException.class)
+    public void rejectsWhenQueueIsFull() throws Exception {
+        limiter = new SchedulingRequestLimiter(1, 0, Duration.seconds(1),
+                Collections.<String, Integer>emptyMap(), timer, new MetricsRegistry(), clock);
+        limiter.submit(API, request("first", new Deferred<Object>()));
+
+        final Deferred<Object> rejected =
+                limiter.submit(API, request("api", new Deferred<Object>()));
+
+        assertThat("rejected request is counted", limiter.getRejectedRequests(), is(1L));
+        rejected.join();
+    }
+
+    @Test
+    public void schedulesWithoutMetrics() {
+        limiter = new SchedulingRequestLimiter(1, 0, Duration.seconds(1),
+                Collections.<String, Integer>emptyMap(), timer, null, clock);
+        final Deferred<Object> first = new Deferred<Object>();
+        limiter.submit(API, request("first", first));
+        limiter.submit(API, request("api", new Deferred<Object>()));
+        first.callback(null);
+
+        assertThat("rejected request is counted", limiter.getRejectedRequests(), is(1L));
+        assertThat("no wait times are recorded", limiter.getWaitTime(API), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresPositiveWeights() {
+        new SchedulingRequestLimiter(1, 1, Duration.seconds(1),
+                Collections.singletonMap("api", 0), timer);
+    }
+
+    private Callback<Deferred<Object>, Object> request(final String name,
+                                                       final Deferred<Object> response) {
+        return new Callback<Deferred<Object>, Object>() {
+            public Deferred<Object> call(final Object arg) {
+                dispatched.add(name);
+                return response;
+            }
+        };
+    }
+
+    private static List<String> list(final String... names) {
+        final List<String> list = new ArrayList<String>();
+        Collections.addAll(list, names);
+        return list;
+    }
+}
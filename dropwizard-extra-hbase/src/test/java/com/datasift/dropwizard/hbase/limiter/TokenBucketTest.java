@@ -0,0 +1,110 @@
+package com.datasift.dropwizard.hbase.limiter;
+
+import com.yammer.metrics.core.Clock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link TokenBucket}.
+ */
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private Clock clock;
+    private TokenBucket bucket;
+
+    @Before
+    public void setup() {
+        clock = mock(Clock.class);
+        when(clock.tick()).thenReturn(0L);
+        bucket = new TokenBucket(10, SECOND, clock);
+    }
+
+    @Test
+    public void startsFull() {
+        assertThat("burst of the full rate is allowed", bucket.reserve(10), is(0L));
+    }
+
+    @Test
+    public void waitsToRepayDebt() {
+        bucket.reserve(10);
+
+        assertThat("next token is available in a tenth of a second",
+                bucket.reserve(1), is(SECOND / 10));
+        assertThat("waiting requests proceed in the order they reserved",
+                bucket.reserve(1), is(SECOND / 5));
+    }
+
+    @Test
+    public void refillsAtTheRate() {
+        bucket.reserve(10);
+        when(clock.tick()).thenReturn(SECOND / 2);
+
+        assertThat("half the tokens accrue in half a second", bucket.reserve(5), is(0L));
+        assertThat("no more tokens have accrued", bucket.reserve(1), is(SECOND / 10));
+    }
+
+    @Test
+    public void accruesNoMoreThanTheBurst() {
+        when(clock.tick()).thenReturn(10 * SECOND);
+
+        assertThat("full burst is allowed after a quiet period", bucket.reserve(10), is(0L));
+        assertThat("no more than the burst accrued", bucket.reserve(1), is(SECOND / 10));
+    }
+
+    @Test
+    public void rejectsReservationsBeyondTheMaximumWait() {
+        bucket.reserve(10);
+
+        assertThat("reservation within the maximum wait is allowed",
+                bucket.reserve(1, SECOND / 10), is(SECOND / 10));
+        assertThat("reservation beyond the maximum wait is rejected",
+                bucket.reserve(1, SECOND / 10), is(TokenBucket.REJECTED));
+        assertThat("rejected reservation took no tokens",
+                bucket.reserve(1), is(SECOND / 5));
+    }
+
+    @Test
+    public void refundsTokens() {
+        bucket.reserve(10);
+        bucket.reserve(5);
+        bucket.refund(5);
+
+        assertThat("refunded tokens repay the debt", bucket.reserve(1), is(SECOND / 10));
+    }
+
+    @Test
+    public void refundsNoMoreThanTheBurst() {
+        bucket.refund(5);
+
+        assertThat("full burst is allowed", bucket.reserve(10), is(0L));
+        assertThat("no more than the burst was refunded", bucket.reserve(1), is(SECOND / 10));
+    }
+
+    @Test
+    public void neverWaitsWithoutALimit() {
+        bucket.setRate(0);
+
+        assertThat("unlimited bucket never waits", bucket.reserve(1000), is(0L));
+    }
+
+    @Test
+    public void changesTheRateAtRuntime() {
+        bucket.setRate(1);
+
+        assertThat("rate is changed", bucket.getRate(), is(1.0));
+        assertThat("tokens are clamped to the new burst", bucket.reserve(2), is(SECOND));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresANonNegativeRate() {
+        new TokenBucket(-1, SECOND, clock);
+    }
+}
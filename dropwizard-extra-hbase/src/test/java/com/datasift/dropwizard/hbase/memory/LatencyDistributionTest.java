@@ -0,0 +1,62 @@
+package com.datasift.dropwizard.hbase.memory;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link LatencyDistribution}.
+ */
+public class LatencyDistributionTest {
+
+    private static final long MEAN = 1000000;
+    private static final int SAMPLES = 100000;
+
+    @Test
+    public void constantLatencyIsTheMean() {
+        assertThat("constant latency is the mean",
+                LatencyDistribution.CONSTANT.sample(MEAN, new Random()), is(MEAN));
+    }
+
+    @Test
+    public void everyDistributionHasTheGivenMean() {
+        for (final LatencyDistribution distribution : LatencyDistribution.values()) {
+            final Random random = new Random(42);
+            double sum = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                final long sample = distribution.sample(MEAN, random);
+                assertThat(distribution + " latency is never negative",
+                        sample, is(greaterThanOrEqualTo(0L)));
+                sum += sample;
+            }
+            assertThat(distribution + " latency has the mean",
+                    sum / SAMPLES, is(closeTo(MEAN, MEAN * 0.05)));
+        }
+    }
+
+    @Test
+    public void noLatencyIsAlwaysZero() {
+        for (final LatencyDistribution distribution : LatencyDistribution.values()) {
+            assertThat(distribution + " latency with a mean of zero is zero",
+                    distribution.sample(0, new Random()), is(0L));
+        }
+    }
+
+    @Test
+    public void parsesNames() {
+        assertThat("names are case-insensitive",
+                LatencyDistribution.parse("Exponential"), is(LatencyDistribution.EXPONENTIAL));
+        assertThat("words may be separated by hyphens",
+                LatencyDistribution.parse("log-normal"), is(LatencyDistribution.LOG_NORMAL));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownNames() {
+        LatencyDistribution.parse("gaussian");
+    }
+}
@@ -0,0 +1,98 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.google.common.cache.CacheStats;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.metrics.core.Clock;
+import org.hbase.async.ClientStats;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link ClientStatsSampler}.
+ */
+public class ClientStatsSamplerTest {
+
+    private HBaseClient client;
+    private Clock clock;
+    private ClientStatsSampler sampler;
+
+    @Before
+    public void setup() {
+        client = mock(HBaseClient.class);
+        clock = mock(Clock.class);
+        when(clock.tick()).thenReturn(0L);
+        sampler = new ClientStatsSampler(client, Duration.seconds(1), clock);
+    }
+
+    @Test
+    public void servesTheSameSnapshotWithinTheMaximumAge() throws Exception {
+        final ClientStats first = stats(0, 0, 0, 0);
+        when(client.stats()).thenReturn(first, stats(1, 1, 1, 1));
+
+        assertThat("takes a snapshot", sampler.getStats(), is(sameInstance(first)));
+        when(clock.tick()).thenReturn(TimeUnit.MILLISECONDS.toNanos(999));
+        assertThat("reuses the snapshot", sampler.getStats(), is(sameInstance(first)));
+
+        verify(client, times(1)).stats();
+    }
+
+    @Test
+    public void takesANewSnapshotOnceTheMaximumAgeHasPassed() throws Exception {
+        final ClientStats second = stats(1, 1, 1, 1);
+        when(client.stats()).thenReturn(stats(0, 0, 0, 0), second);
+
+        sampler.getStats();
+        when(clock.tick()).thenReturn(TimeUnit.SECONDS.toNanos(1));
+
+        assertThat("takes a new snapshot", sampler.getStats(), is(sameInstance(second)));
+        verify(client, times(2)).stats();
+    }
+
+    @Test
+    public void hasNoRatesUntilTwoSnapshotsHaveBeenTaken() throws Exception {
+        when(client.stats()).thenReturn(stats(10, 10, 10, 10));
+
+        assertThat("rate is zero", sampler.getRate(ClientStatsSampler.Total.GETS), is(0.0));
+        assertThat("delta is zero", sampler.getDelta(ClientStatsSampler.Total.GETS), is(0L));
+    }
+
+    @Test
+    public void derivesRatesFromConsecutiveSnapshots() throws Exception {
+        when(client.stats()).thenReturn(stats(10, 100, 5, 2), stats(30, 300, 25, 12));
+
+        sampler.getStats();
+        when(clock.tick()).thenReturn(TimeUnit.SECONDS.toNanos(10));
+
+        assertThat("gets per second",
+                sampler.getRate(ClientStatsSampler.Total.GETS), is(2.0));
+        assertThat("NSREs per second",
+                sampler.getRate(ClientStatsSampler.Total.NO_SUCH_REGION_EXCEPTIONS), is(2.0));
+        assertThat("RPCs per second",
+                sampler.getRate(ClientStatsSampler.Total.RPCS), is(22.0));
+        assertThat("delta of puts",
+                sampler.getDelta(ClientStatsSampler.Total.PUTS), is(200L));
+        assertThat("edits per batched RPC", sampler.getBatchedRpcSize(), is(20.0));
+    }
+
+    private ClientStats stats(final long gets,
+                              final long puts,
+                              final long nsres,
+                              final long batches) throws Exception {
+        final Constructor<ClientStats> constructor = ClientStats.class.getDeclaredConstructor(
+                long.class, long.class, long.class, long.class, long.class, long.class,
+                long.class, long.class, long.class, long.class, long.class, long.class,
+                long.class, long.class, long.class, CacheStats.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(0L, 0L, 0L, 0L, 0L, nsres, 0L, batches, gets, 0L, 0L,
+                puts, 0L, 0L, 0L, new CacheStats(0, 0, 0, 0, 0, 0));
+    }
+}
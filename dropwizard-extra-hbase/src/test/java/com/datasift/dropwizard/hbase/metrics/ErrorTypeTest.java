@@ -0,0 +1,48 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.datasift.dropwizard.hbase.CircuitOpenException;
+import com.datasift.dropwizard.hbase.RequestRejectedException;
+import com.datasift.dropwizard.hbase.RequestTimeoutException;
+import org.hbase.async.TableNotFoundException;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link ErrorType}.
+ */
+public class ErrorTypeTest {
+
+    @Test
+    public void classifiesTimeouts() {
+        assertThat("timeouts are timed out",
+                ErrorType.of(new RequestTimeoutException("timed out")), is(ErrorType.TIMED_OUT));
+    }
+
+    @Test
+    public void classifiesRejections() {
+        assertThat("rejections are rejected",
+                ErrorType.of(new RequestRejectedException("rejected")), is(ErrorType.REJECTED));
+        assertThat("open circuits are rejected",
+                ErrorType.of(new CircuitOpenException("open")), is(ErrorType.REJECTED));
+    }
+
+    @Test
+    public void classifiesMissingTables() throws Exception {
+        final Constructor<TableNotFoundException> constructor =
+                TableNotFoundException.class.getDeclaredConstructor();
+        constructor.setAccessible(true);
+
+        assertThat("missing tables are not found",
+                ErrorType.of(constructor.newInstance()), is(ErrorType.TABLE_NOT_FOUND));
+    }
+
+    @Test
+    public void classifiesAnythingElseAsOther() {
+        assertThat("other failures are other",
+                ErrorType.of(new IllegalStateException()), is(ErrorType.OTHER));
+    }
+}
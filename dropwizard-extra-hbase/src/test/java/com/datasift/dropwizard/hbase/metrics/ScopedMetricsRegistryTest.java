@@ -0,0 +1,65 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link ScopedMetricsRegistry}.
+ */
+public class ScopedMetricsRegistryTest {
+
+    private MetricsRegistry registry;
+
+    @Before
+    public void setup() {
+        registry = new MetricsRegistry();
+    }
+
+    @Test
+    public void prefixesTheScopeOfEachMetricWithTheName() {
+        new ScopedMetricsRegistry(registry, "primary").newCounter(getClass(), "hits", "cache");
+
+        assertThat("registers the metric under the scoped name",
+                registry.allMetrics().containsKey(
+                        new MetricName(getClass(), "hits", "primary-cache")),
+                is(true));
+    }
+
+    @Test
+    public void scopesUnscopedMetricsByTheName() {
+        new ScopedMetricsRegistry(registry, "primary").newCounter(getClass(), "hits");
+
+        assertThat("registers the metric scoped by the name",
+                registry.allMetrics().containsKey(new MetricName(getClass(), "hits", "primary")),
+                is(true));
+    }
+
+    @Test
+    public void keepsTheMetricsOfEachNameDistinct() {
+        final Counter primary = new ScopedMetricsRegistry(registry, "primary")
+                .newCounter(getClass(), "hits", "cache");
+        final Counter replica = new ScopedMetricsRegistry(registry, "replica")
+                .newCounter(getClass(), "hits", "cache");
+
+        assertThat("each name has its own metric", primary, is(not(sameInstance(replica))));
+        assertThat("both metrics are registered", registry.allMetrics().size(), is(2));
+    }
+
+    @Test
+    public void removesScopedMetrics() {
+        final ScopedMetricsRegistry scoped = new ScopedMetricsRegistry(registry, "primary");
+        scoped.newCounter(getClass(), "hits", "cache");
+
+        scoped.removeMetric(getClass(), "hits", "cache");
+
+        assertThat("the metric is removed", registry.allMetrics().isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,140 @@
+package com.datasift.dropwizard.hbase.metrics;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.hbase.Operation;
+import com.datasift.dropwizard.metrics.LatencyRecorderType;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests {@link TableInstrumentation}.
+ */
+public class TableInstrumentationTest {
+
+    private HBaseClient client;
+    private MetricsRegistry registry;
+
+    @Before
+    public void setup() {
+        client = mock(HBaseClient.class);
+        registry = new MetricsRegistry();
+    }
+
+    @Test
+    public void createsMetricsForEachTable() {
+        final TableInstrumentation tables = new TableInstrumentation(
+                client, registry, Collections.<String>emptySet(), 2, 0);
+
+        final TableMetrics events = tables.forTable("events".getBytes());
+        assertThat("reuses the metrics of a table",
+                tables.forTable("events".getBytes()), is(sameInstance(events)));
+        assertThat("creates metrics for another table",
+                tables.forTable("users".getBytes()), is(not(sameInstance(events))));
+        assertThat("two tables have metrics", tables.getTables(), is(2));
+    }
+
+    @Test
+    public void sharesMetricsBeyondTheMaximumNumberOfTables() {
+        final TableInstrumentation tables = new TableInstrumentation(
+                client, registry, Collections.<String>emptySet(), 1, 0);
+
+        tables.forTable("events".getBytes());
+        final TableMetrics other = tables.forTable("users".getBytes());
+
+        assertThat("further tables share metrics",
+                tables.forTable("sessions".getBytes()), is(sameInstance(other)));
+        assertThat("one table has its own metrics", tables.getTables(), is(1));
+    }
+
+    @Test
+    public void onlyCreatesMetricsForTheGivenTables() {
+        final TableInstrumentation tables = new TableInstrumentation(
+                client, registry, Collections.singleton("events"), 10, 0);
+
+        final TableMetrics other = tables.forTable("users".getBytes());
+
+        assertThat("other tables share metrics",
+                tables.forTable("sessions".getBytes()), is(sameInstance(other)));
+        assertThat("given table has its own metrics",
+                tables.forTable("events".getBytes()), is(not(sameInstance(other))));
+        assertThat("one table has its own metrics", tables.getTables(), is(1));
+    }
+
+    @Test
+    public void createsNoMetricsWhenDisabled() {
+        assertThat("no metrics when disabled",
+                TableInstrumentation.DISABLED.forTable("events".getBytes()), is(nullValue()));
+    }
+
+    @Test
+    public void createsMetricsForFamiliesUpToTheMaximum() {
+        final TableInstrumentation tables = new TableInstrumentation(
+                client, registry, Collections.<String>emptySet(), 1, 1);
+        final TableMetrics events = tables.forTable("events".getBytes());
+
+        final TableMetrics data = events.forFamily("d".getBytes());
+        final TableMetrics other = events.forFamily("m".getBytes());
+
+        assertThat("reuses the metrics of a family",
+                events.forFamily("d".getBytes()), is(sameInstance(data)));
+        assertThat("further families share metrics",
+                events.forFamily("x".getBytes()), is(sameInstance(other)));
+        assertThat("one family has its own metrics", events.getFamilies(), is(1));
+    }
+
+    @Test
+    public void createsNoMetricsForFamiliesWhenDisabled() {
+        final TableInstrumentation tables = new TableInstrumentation(
+                client, registry, Collections.<String>emptySet(), 1, 0);
+
+        assertThat("no family metrics",
+                tables.forTable("events".getBytes()).forFamily("d".getBytes()),
+                is(nullValue()));
+    }
+
+    @Test
+    public void registersTimersForOperationsWhenFirstUsed() {
+        final TableInstrumentation tables = new TableInstrumentation(
+                client, registry, Collections.<String>emptySet(), 1, 0);
+        final TableMetrics events = tables.forTable("events".getBytes());
+
+        final MetricName get = new MetricName(client.getClass(), "get", "table-events");
+        assertThat("timer is not registered before use",
+                registry.allMetrics().containsKey(get), is(false));
+
+        events.getLatency(Operation.GET).record(1, TimeUnit.MILLISECONDS);
+
+        assertThat("timer is registered once used",
+                registry.allMetrics().containsKey(get), is(true));
+        assertThat("reuses the timer",
+                events.getLatency(Operation.GET),
+                is(sameInstance(events.getLatency(Operation.GET))));
+    }
+
+    @Test
+    public void recordsLatenciesWithTheGivenRecorders() {
+        final TableInstrumentation tables = new TableInstrumentation(
+                client, registry, LatencyRecorderType.HISTOGRAM,
+                Collections.<String>emptySet(), 1, 0);
+
+        tables.forTable("events".getBytes()).getLatency(Operation.GET)
+                .record(1, TimeUnit.MILLISECONDS);
+
+        assertThat("registers the percentiles of the histogram",
+                registry.allMetrics().containsKey(new MetricName(
+                        client.getClass(), "get.99percentile", "table-events")),
+                is(true));
+    }
+}
@@ -0,0 +1,119 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import com.datasift.dropwizard.hbase.util.KeyValues;
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Duration;
+import com.yammer.dropwizard.util.Size;
+import com.yammer.metrics.core.Clock;
+import org.hbase.async.KeyValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link AdaptiveRowScanner}.
+ */
+public class AdaptiveRowScannerTest {
+
+    private static final int ROW_SIZE = KeyValues.sizeOf(row(100));
+
+    private long time = 0;
+    private long latency = 0;
+    private RowScanner underlying;
+    private AdaptiveRowScanner scanner;
+
+    @Before
+    public void setup() {
+        underlying = mock(RowScanner.class);
+        scanner = new AdaptiveRowScanner(
+                underlying,
+                Size.bytes(ROW_SIZE * 1000),
+                Duration.milliseconds(100),
+                new Clock() {
+                    @Override
+                    public long tick() {
+                        final long now = time;
+                        time += latency;
+                        return now;
+                    }
+                });
+    }
+
+    @Test
+    public void startsWithTheInitialBatchSize() {
+        when(underlying.nextRows(anyInt())).thenReturn(rows(1));
+        scanner.nextRows();
+        verify(underlying).nextRows(AdaptiveRowScanner.INITIAL_ROWS);
+    }
+
+    @Test
+    public void growsBatchesOfSmallRowsGradually() {
+        when(underlying.nextRows(anyInt())).thenReturn(rows(AdaptiveRowScanner.INITIAL_ROWS));
+        scanner.nextRows();
+
+        assertThat("batch doubles in size",
+                scanner.getBatchRows(), is(AdaptiveRowScanner.INITIAL_ROWS * 2));
+        assertThat("records the size of the batch",
+                scanner.getBatchBytes(), is((long) ROW_SIZE * AdaptiveRowScanner.INITIAL_ROWS));
+    }
+
+    @Test
+    public void growsBatchesToTheTargetSize() {
+        when(underlying.nextRows(anyInt())).thenReturn(rows(AdaptiveRowScanner.INITIAL_ROWS));
+        for (int i = 0; i < 10; i++) {
+            scanner.nextRows();
+        }
+
+        assertThat("batch approaches the target size", scanner.getBatchRows(), is(1000));
+    }
+
+    @Test
+    public void shrinksBatchesThatExceedTheLatencyBudget() {
+        latency = TimeUnit.MILLISECONDS.toNanos(200);
+        when(underlying.nextRows(anyInt())).thenReturn(rows(AdaptiveRowScanner.INITIAL_ROWS));
+        scanner.nextRows();
+
+        assertThat("batch shrinks in proportion to the latency",
+                scanner.getBatchRows(), is(AdaptiveRowScanner.INITIAL_ROWS / 2));
+    }
+
+    @Test
+    public void neverExceedsTheMaximumNumberOfRows() {
+        scanner.setMaxNumRows(10);
+        when(underlying.nextRows(anyInt())).thenReturn(rows(10));
+        scanner.nextRows();
+        scanner.nextRows();
+
+        verify(underlying, times(2)).nextRows(10);
+    }
+
+    @Test
+    public void doesNotAdaptExplicitBatchSizes() {
+        when(underlying.nextRows(anyInt())).thenReturn(rows(5));
+        scanner.nextRows(5);
+
+        assertThat("batch size is unchanged",
+                scanner.getBatchRows(), is(AdaptiveRowScanner.INITIAL_ROWS));
+    }
+
+    private static ArrayList<KeyValue> row(final int size) {
+        final ArrayList<KeyValue> row = new ArrayList<KeyValue>();
+        row.add(new KeyValue(
+                "row".getBytes(), "family".getBytes(), "qualifier".getBytes(), new byte[size]));
+        return row;
+    }
+
+    private Deferred<ArrayList<ArrayList<KeyValue>>> rows(final int count) {
+        final ArrayList<ArrayList<KeyValue>> rows = new ArrayList<ArrayList<KeyValue>>();
+        for (int i = 0; i < count; i++) {
+            rows.add(row(100));
+        }
+        return Deferred.fromResult(rows);
+    }
+}
@@ -0,0 +1,138 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import com.datasift.dropwizard.hbase.memory.InjectedLatency;
+import com.datasift.dropwizard.hbase.memory.MemTable;
+import com.datasift.dropwizard.hbase.util.StripedLong;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link InMemoryRowScanner}.
+ */
+public class InMemoryRowScannerTest {
+
+    private final HashedWheelTimer timer = new HashedWheelTimer();
+    private final MemTable table = new MemTable();
+    private final StripedLong scans = new StripedLong();
+
+    @Before
+    public void setup() {
+        for (final String key : Arrays.asList("a", "b1", "b2", "c", "d")) {
+            table.put(new PutRequest(
+                    bytes("table"), bytes(key), bytes("f"), bytes("q"), bytes(key), 10));
+            table.put(new PutRequest(
+                    bytes("table"), bytes(key), bytes("g"), bytes("q"), bytes(key), 20));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void scansEveryRowInOrder() throws Exception {
+        final RowScanner scanner = scanner();
+
+        assertThat("every row is scanned",
+                keys(scanner.nextRows().join()), is(Arrays.asList("a", "b1", "b2", "c", "d")));
+        assertThat("scanner is exhausted", scanner.nextRows().join(), is(nullValue()));
+        assertThat("each batch is counted", scans.sum(), is(2L));
+    }
+
+    @Test
+    public void scansTheRangeOfKeys() throws Exception {
+        final RowScanner scanner = scanner().setStartKey("b1").setStopKey("d");
+
+        assertThat("start key is inclusive and stop key is exclusive",
+                keys(scanner.nextRows().join()), is(Arrays.asList("b1", "b2", "c")));
+    }
+
+    @Test
+    public void scansInBatches() throws Exception {
+        final RowScanner scanner = scanner().setMaxNumRows(2);
+
+        assertThat("first batch", keys(scanner.nextRows().join()), is(Arrays.asList("a", "b1")));
+        assertThat("second batch", keys(scanner.nextRows().join()), is(Arrays.asList("b2", "c")));
+        assertThat("last batch", keys(scanner.nextRows().join()), is(Arrays.asList("d")));
+        assertThat("scanner is exhausted", scanner.nextRows().join(), is(nullValue()));
+    }
+
+    @Test
+    public void neverSplitsRowsBetweenBatches() throws Exception {
+        final RowScanner scanner = scanner().setMaxNumKeyValues(3);
+
+        final ArrayList<ArrayList<KeyValue>> batch = scanner.nextRows().join();
+        assertThat("batch ends with the row that reaches the limit",
+                keys(batch), is(Arrays.asList("a", "b1")));
+        assertThat("rows are whole", batch.get(1).size(), is(2));
+    }
+
+    @Test
+    public void scansTheFamilyAndQualifier() throws Exception {
+        final ArrayList<ArrayList<KeyValue>> rows =
+                scanner().setFamily("g").setQualifier("q").nextRows().join();
+
+        assertThat("every row is scanned", rows.size(), is(5));
+        assertThat("only the family is scanned", rows.get(0).size(), is(1));
+        assertThat("only the family is scanned", new String(rows.get(0).get(0).family()), is("g"));
+    }
+
+    @Test
+    public void filtersKeysByRegexp() throws Exception {
+        assertThat("keys containing the expression are scanned",
+                keys(scanner().setKeyRegexp("b\\d").nextRows().join()),
+                is(Arrays.asList("b1", "b2")));
+    }
+
+    @Test
+    public void scansTheTimeRange() throws Exception {
+        final ArrayList<ArrayList<KeyValue>> rows =
+                scanner().setTimeRange(10, 20).nextRows().join();
+
+        assertThat("minimum is inclusive and maximum is exclusive",
+                new String(rows.get(0).get(0).family()), is("f"));
+        assertThat("only the cells in range are scanned", rows.get(0).size(), is(1));
+    }
+
+    @Test
+    public void scansNothingOnceClosed() throws Exception {
+        final RowScanner scanner = scanner();
+        scanner.close().join();
+
+        assertThat("closed scanner is exhausted", scanner.nextRows().join(), is(nullValue()));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void failsToScanWithFilters() throws Exception {
+        scanner().setFilters().nextRows().join();
+    }
+
+    private RowScanner scanner() {
+        return new InMemoryRowScanner(table, new InjectedLatency(timer), scans);
+    }
+
+    private static byte[] bytes(final String s) {
+        return s.getBytes();
+    }
+
+    private static List<String> keys(final List<ArrayList<KeyValue>> rows) {
+        final List<String> keys = new ArrayList<String>(rows.size());
+        for (final List<KeyValue> row : rows) {
+            keys.add(new String(row.get(0).key()));
+        }
+        return keys;
+    }
+}
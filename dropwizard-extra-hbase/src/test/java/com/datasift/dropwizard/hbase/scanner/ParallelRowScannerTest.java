@@ -0,0 +1,183 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.stumbleupon.async.Deferred;
+import org.hbase.async.KeyValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link ParallelRowScanner}.
+ */
+public class ParallelRowScannerTest {
+
+    private static final byte[] TABLE = "table".getBytes();
+
+    private final KeyRangeSplitter splitter = new KeyRangeSplitter() {
+        public List<byte[]> split(final byte[] startKey, final byte[] stopKey) {
+            final List<byte[]> splits = new ArrayList<byte[]>();
+            splits.add("b".getBytes());
+            splits.add("c".getBytes());
+            return splits;
+        }
+    };
+
+    private HBaseClient client;
+    private RowScanner a;
+    private RowScanner b;
+    private RowScanner c;
+    private Deferred<ArrayList<ArrayList<KeyValue>>> aRows;
+    private Deferred<ArrayList<ArrayList<KeyValue>>> bRows;
+    private Deferred<ArrayList<ArrayList<KeyValue>>> cRows;
+
+    @Before
+    public void setup() {
+        client = mock(HBaseClient.class);
+        a = mock(RowScanner.class);
+        b = mock(RowScanner.class);
+        c = mock(RowScanner.class);
+        aRows = new Deferred<ArrayList<ArrayList<KeyValue>>>();
+        bRows = new Deferred<ArrayList<ArrayList<KeyValue>>>();
+        cRows = new Deferred<ArrayList<ArrayList<KeyValue>>>();
+
+        when(client.scan(TABLE)).thenReturn(a, b, c);
+        when(a.nextRows()).thenReturn(aRows, end());
+        when(b.nextRows()).thenReturn(bRows, end());
+        when(c.nextRows()).thenReturn(cRows, end());
+        when(a.close()).thenReturn(Deferred.fromResult((Object) null));
+        when(b.close()).thenReturn(Deferred.fromResult((Object) null));
+        when(c.close()).thenReturn(Deferred.fromResult((Object) null));
+    }
+
+    @Test
+    public void scansEachSubRange() throws Exception {
+        final RowScanner scanner = scanner(3, ParallelRowScanner.Mode.UNORDERED);
+        scanner.setStartKey("a").setStopKey("d").setFamily("family");
+        scanner.nextRows();
+
+        verify(a).setFamily("family");
+        verify(a).setStartKey(aryEq("a".getBytes()));
+        verify(a).setStopKey(aryEq("b".getBytes()));
+        verify(b).setStartKey(aryEq("b".getBytes()));
+        verify(b).setStopKey(aryEq("c".getBytes()));
+        verify(c).setStartKey(aryEq("c".getBytes()));
+        verify(c).setStopKey(aryEq("d".getBytes()));
+    }
+
+    @Test
+    public void boundsConcurrentSubRanges() {
+        final RowScanner scanner = scanner(2, ParallelRowScanner.Mode.UNORDERED);
+        scanner.nextRows();
+
+        verify(client, times(2)).scan(TABLE);
+    }
+
+    @Test
+    public void startsNextSubRangeWhenOneIsExhausted() throws Exception {
+        final RowScanner scanner = scanner(2, ParallelRowScanner.Mode.UNORDERED);
+        scanner.nextRows();
+        aRows.callback(rows("a"));
+
+        verify(client, times(3)).scan(TABLE);
+    }
+
+    @Test
+    public void yieldsFirstAvailableRowsWhenUnordered() throws Exception {
+        final RowScanner scanner = scanner(3, ParallelRowScanner.Mode.UNORDERED);
+        final Deferred<ArrayList<ArrayList<KeyValue>>> first = scanner.nextRows();
+
+        bRows.callback(rows("b"));
+
+        assertThat("yields rows from the first sub-range to respond",
+                key(first.join()), is("b"));
+    }
+
+    @Test
+    public void yieldsRowsInKeyOrderWhenOrdered() throws Exception {
+        final RowScanner scanner = scanner(3, ParallelRowScanner.Mode.KEY_ORDERED);
+        final Deferred<ArrayList<ArrayList<KeyValue>>> first = scanner.nextRows();
+
+        cRows.callback(rows("c"));
+        bRows.callback(rows("b"));
+        aRows.callback(rows("a"));
+
+        assertThat("yields first sub-range first", key(first.join()), is("a"));
+        assertThat("yields second sub-range second", key(scanner.nextRows().join()), is("b"));
+        assertThat("yields third sub-range last", key(scanner.nextRows().join()), is("c"));
+        assertThat("yields null once exhausted", scanner.nextRows().join(), is(nullValue()));
+    }
+
+    @Test
+    public void yieldsNullOnceAllSubRangesAreExhausted() throws Exception {
+        final RowScanner scanner = scanner(3, ParallelRowScanner.Mode.UNORDERED);
+        scanner.nextRows();
+        aRows.callback(rows("a"));
+        bRows.callback(rows("b"));
+        cRows.callback(rows("c"));
+
+        scanner.nextRows().join();
+        scanner.nextRows().join();
+
+        assertThat("yields null once exhausted", scanner.nextRows().join(), is(nullValue()));
+        assertThat("current key is the last row yielded",
+                new String(scanner.getCurrentKey()), is("c"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void yieldsSubRangeErrors() throws Exception {
+        final RowScanner scanner = scanner(3, ParallelRowScanner.Mode.UNORDERED);
+        final Deferred<ArrayList<ArrayList<KeyValue>>> first = scanner.nextRows();
+
+        bRows.callback(new IllegalStateException("failed"));
+
+        first.join();
+    }
+
+    @Test
+    public void closesOpenSubRanges() throws Exception {
+        final RowScanner scanner = scanner(2, ParallelRowScanner.Mode.UNORDERED);
+        scanner.nextRows();
+        scanner.close().join();
+
+        verify(a).close();
+        verify(b).close();
+        verify(c, never()).close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsSettingsOnceStarted() {
+        final RowScanner scanner = scanner(2, ParallelRowScanner.Mode.UNORDERED);
+        scanner.nextRows();
+        scanner.setFamily("family");
+    }
+
+    private RowScanner scanner(final int parallelism, final ParallelRowScanner.Mode mode) {
+        return new ParallelRowScanner(client, TABLE, splitter, parallelism, mode);
+    }
+
+    private Deferred<ArrayList<ArrayList<KeyValue>>> end() {
+        return Deferred.fromResult(null);
+    }
+
+    private ArrayList<ArrayList<KeyValue>> rows(final String key) {
+        final ArrayList<KeyValue> row = new ArrayList<KeyValue>();
+        row.add(new KeyValue(
+                key.getBytes(), "family".getBytes(), "qualifier".getBytes(), "value".getBytes()));
+        final ArrayList<ArrayList<KeyValue>> rows = new ArrayList<ArrayList<KeyValue>>();
+        rows.add(row);
+        return rows;
+    }
+
+    private String key(final ArrayList<ArrayList<KeyValue>> rows) {
+        return new String(rows.get(0).get(0).key());
+    }
+}
@@ -0,0 +1,144 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import com.stumbleupon.async.Deferred;
+import com.yammer.dropwizard.util.Size;
+import org.hbase.async.KeyValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests {@link RowScannerIterator}.
+ */
+public class RowScannerIteratorTest {
+
+    private RowScanner scanner;
+
+    @Before
+    public void setup() {
+        scanner = mock(RowScanner.class);
+        when(scanner.close()).thenReturn(Deferred.fromResult((Object) null));
+    }
+
+    @Test
+    public void iteratesAllRows() {
+        when(scanner.nextRows()).thenReturn(rows("a", "b"), rows("c"), end());
+        final Iterator<ArrayList<KeyValue>> iterator = new RowScannerIterator(scanner);
+
+        assertThat("yields first row", key(iterator.next()), is("a"));
+        assertThat("yields second row", key(iterator.next()), is("b"));
+        assertThat("yields third row", key(iterator.next()), is("c"));
+        assertThat("is exhausted", iterator.hasNext(), is(false));
+    }
+
+    @Test
+    public void skipsEmptyBatches() {
+        when(scanner.nextRows()).thenReturn(rows("a"), rows(), rows(), rows("b"), rows(), end());
+        final Iterator<ArrayList<KeyValue>> iterator = new RowScannerIterator(scanner);
+
+        assertThat("yields first row", key(iterator.next()), is("a"));
+        assertThat("has a second row", iterator.hasNext(), is(true));
+        assertThat("yields second row", key(iterator.next()), is("b"));
+        assertThat("is exhausted", iterator.hasNext(), is(false));
+    }
+
+    @Test
+    public void prefetchesNextBatch() {
+        when(scanner.nextRows()).thenReturn(rows("a"), pending());
+        final Iterator<ArrayList<KeyValue>> iterator =
+                new RowScannerIterator(scanner, 1, Size.megabytes(1));
+
+        iterator.next();
+
+        verify(scanner, times(2)).nextRows();
+    }
+
+    @Test
+    public void boundsBufferedRows() {
+        when(scanner.nextRows()).thenReturn(rows("a"), rows("b"), rows("c"), end());
+        final Iterator<ArrayList<KeyValue>> iterator =
+                new RowScannerIterator(scanner, 1, Size.megabytes(1));
+
+        iterator.hasNext();
+
+        verify(scanner, times(2)).nextRows();
+    }
+
+    @Test
+    public void boundsBufferedBytes() {
+        when(scanner.nextRows()).thenReturn(rows("a"), rows("b"), rows("c"), end());
+        final Iterator<ArrayList<KeyValue>> iterator =
+                new RowScannerIterator(scanner, 100, Size.bytes(1));
+
+        iterator.hasNext();
+
+        verify(scanner, times(2)).nextRows();
+    }
+
+    @Test
+    public void closesAbandonedScanner() {
+        when(scanner.nextRows()).thenReturn(rows("a"), pending());
+        final RowScannerIterator iterator = new RowScannerIterator(scanner);
+
+        iterator.next();
+        iterator.close();
+
+        verify(scanner).close();
+        assertThat("is exhausted once closed", iterator.hasNext(), is(false));
+    }
+
+    @Test
+    public void doesNotCloseExhaustedScanner() {
+        when(scanner.nextRows()).thenReturn(end());
+        final RowScannerIterator iterator = new RowScannerIterator(scanner);
+
+        iterator.hasNext();
+        iterator.close();
+
+        verify(scanner, never()).close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void propagatesScanErrors() {
+        when(scanner.nextRows()).thenReturn(
+                Deferred.<ArrayList<ArrayList<KeyValue>>>fromError(
+                        new IllegalStateException("failed")));
+        new RowScannerIterator(scanner).hasNext();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void iterablesCanOnlyBeIteratedOnce() {
+        final RowScannerIterable iterable = new RowScannerIterable(scanner);
+        iterable.iterator();
+        iterable.iterator();
+    }
+
+    private Deferred<ArrayList<ArrayList<KeyValue>>> pending() {
+        return new Deferred<ArrayList<ArrayList<KeyValue>>>();
+    }
+
+    private Deferred<ArrayList<ArrayList<KeyValue>>> end() {
+        return Deferred.fromResult(null);
+    }
+
+    private Deferred<ArrayList<ArrayList<KeyValue>>> rows(final String... keys) {
+        final ArrayList<ArrayList<KeyValue>> rows = new ArrayList<ArrayList<KeyValue>>();
+        for (final String key : keys) {
+            final ArrayList<KeyValue> row = new ArrayList<KeyValue>();
+            row.add(new KeyValue(
+                    key.getBytes(), "family".getBytes(), "qualifier".getBytes(), "value".getBytes()));
+            rows.add(row);
+        }
+        return Deferred.fromResult(rows);
+    }
+
+    private String key(final ArrayList<KeyValue> row) {
+        return new String(row.get(0).key());
+    }
+}
@@ -0,0 +1,64 @@
+package com.datasift.dropwizard.hbase.scanner;
+
+import org.hbase.async.Bytes;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link UniformKeyRangeSplitter}.
+ */
+public class UniformKeyRangeSplitterTest {
+
+    @Test
+    public void splitsWholeTableEvenly() {
+        final List<byte[]> splits = new UniformKeyRangeSplitter(4).split(new byte[0], new byte[0]);
+
+        assertThat("splits in to 4 ranges", splits.size(), is(3));
+        assertThat("first split is a quarter of the way",
+                splits.get(0), is(new byte[] { 0x40, 0, 0, 0 }));
+        assertThat("second split is half way",
+                splits.get(1), is(new byte[] { (byte) 0x80, 0, 0, 0 }));
+        assertThat("third split is three quarters of the way",
+                splits.get(2), is(new byte[] { (byte) 0xC0, 0, 0, 0 }));
+    }
+
+    @Test
+    public void splitsWithinRange() {
+        final byte[] start = "a".getBytes();
+        final byte[] stop = "b".getBytes();
+        final List<byte[]> splits = new UniformKeyRangeSplitter(8).split(start, stop);
+
+        assertThat("splits in to 8 ranges", splits.size(), is(7));
+        byte[] previous = start;
+        for (final byte[] split : splits) {
+            assertThat("splits are ascending", Bytes.memcmp(split, previous), is(greaterThan(0)));
+            assertThat("splits are within range", Bytes.memcmp(split, stop), is(lessThan(0)));
+            previous = split;
+        }
+    }
+
+    @Test
+    public void doesNotSplitEmptyRange() {
+        assertThat("empty range is not split",
+                new UniformKeyRangeSplitter(4).split("b".getBytes(), "a".getBytes()).size(),
+                is(0));
+    }
+
+    @Test
+    public void doesNotSplitIntoOneRange() {
+        assertThat("single range is not split",
+                new UniformKeyRangeSplitter(1).split(new byte[0], new byte[0]).size(),
+                is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoRanges() {
+        new UniformKeyRangeSplitter(0);
+    }
+}
@@ -0,0 +1,62 @@
+package com.datasift.dropwizard.hbase.util;
+
+import com.datasift.dropwizard.hbase.BulkResult;
+import com.stumbleupon.async.Deferred;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link BulkResults}.
+ */
+public class BulkResultsTest {
+
+    @Test
+    public void collectsResultsInOrder() throws Exception {
+        final Deferred<String> first = new Deferred<String>();
+        final Deferred<String> second = new Deferred<String>();
+        final List<Deferred<String>> results = new ArrayList<Deferred<String>>();
+        results.add(first);
+        results.add(second);
+
+        final Deferred<List<BulkResult<String>>> collected = BulkResults.collect(results);
+        second.callback("b");
+        first.callback("a");
+
+        final List<BulkResult<String>> list = collected.join();
+        assertThat("first result is first", list.get(0).getValue(), is("a"));
+        assertThat("second result is second", list.get(1).getValue(), is("b"));
+    }
+
+    @Test
+    public void reportsFailuresPerElement() throws Exception {
+        final Deferred<String> success = new Deferred<String>();
+        final Deferred<String> failure = new Deferred<String>();
+        final List<Deferred<String>> results = new ArrayList<Deferred<String>>();
+        results.add(success);
+        results.add(failure);
+
+        final Deferred<List<BulkResult<String>>> collected = BulkResults.collect(results);
+        final IllegalStateException error = new IllegalStateException("failed");
+        success.callback("a");
+        failure.callback(error);
+
+        final List<BulkResult<String>> list = collected.join();
+        assertThat("successful request succeeded", list.get(0).isSuccess(), is(true));
+        assertThat("failed request failed", list.get(1).isSuccess(), is(false));
+        assertThat("failed request reports its error",
+                list.get(1).getError(), is(sameInstance((Exception) error)));
+    }
+
+    @Test
+    public void collectsEmptyResults() throws Exception {
+        assertThat("no requests have no results",
+                BulkResults.collect(Collections.<Deferred<String>>emptyList()).join().size(),
+                is(0));
+    }
+}
@@ -0,0 +1,77 @@
+package com.datasift.dropwizard.hbase.util;
+
+import com.yammer.metrics.core.Clock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link HedgeDelay}.
+ */
+public class HedgeDelayTest {
+
+    private static final long MIN = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long MAX_AGE = TimeUnit.SECONDS.toNanos(1);
+
+    private long now = 0;
+    private HedgeDelay delay;
+
+    @Before
+    public void setup() {
+        delay = new HedgeDelay(0.9, MIN, MAX_AGE, new Clock() {
+            @Override
+            public long tick() {
+                return now;
+            }
+        });
+    }
+
+    @Test
+    public void startsAtTheMinimum() {
+        assertThat("delay is the minimum", delay.getDelay(), is(MIN));
+    }
+
+    @Test
+    public void waitsForTheSampleToFill() {
+        record(HedgeDelay.MIN_SAMPLES - 1, TimeUnit.MILLISECONDS.toNanos(50));
+        now += MAX_AGE + 1;
+
+        assertThat("delay is the minimum", delay.getDelay(), is(MIN));
+    }
+
+    @Test
+    public void delaysByThePercentileOfLatencies() {
+        for (int i = 1; i <= 100; i++) {
+            delay.update(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertThat("delay is not recomputed until it is old", delay.getDelay(), is(MIN));
+
+        now += MAX_AGE + 1;
+        assertThat("delay is the 90th percentile",
+                delay.getDelay() / TimeUnit.MILLISECONDS.toNanos(1), is(90L));
+    }
+
+    @Test
+    public void neverDelaysLessThanTheMinimum() {
+        record(100, TimeUnit.MILLISECONDS.toNanos(1));
+        now += MAX_AGE + 1;
+
+        assertThat("delay is the minimum", delay.getDelay(), is(MIN));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidPercentiles() {
+        new HedgeDelay(1, MIN, MAX_AGE, Clock.defaultClock());
+    }
+
+    private void record(final int count, final long latency) {
+        for (int i = 0; i < count; i++) {
+            delay.update(latency);
+        }
+    }
+}
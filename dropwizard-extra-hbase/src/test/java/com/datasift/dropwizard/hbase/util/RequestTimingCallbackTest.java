@@ -0,0 +1,112 @@
+package com.datasift.dropwizard.hbase.util;
+
+import com.datasift.dropwizard.hbase.HBaseClient;
+import com.datasift.dropwizard.hbase.RequestTimeoutException;
+import com.datasift.dropwizard.hbase.metrics.ClientStatsSampler;
+import com.datasift.dropwizard.hbase.metrics.ErrorType;
+import com.datasift.dropwizard.hbase.metrics.HBaseInstrumentation;
+import com.datasift.dropwizard.metrics.LatencyRecorderType;
+import com.datasift.dropwizard.metrics.TimerLatencyRecorder;
+import com.yammer.metrics.core.Clock;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link RequestTimingCallback}.
+ */
+public class RequestTimingCallbackTest {
+
+    private Clock clock;
+    private MetricsRegistry registry;
+    private HBaseInstrumentation metrics;
+    private Timer successes;
+    private Timer failures;
+
+    @Before
+    public void setUp() throws Exception {
+        this.clock = new Clock() {
+
+            private long val = 0;
+
+            @Override
+            public long tick() {
+                return val += 50000000;
+            }
+        };
+        this.registry = new MetricsRegistry(clock);
+        this.metrics = mock(HBaseInstrumentation.class);
+        when(metrics.getClock()).thenReturn(clock);
+        this.successes = registry.newTimer(getClass(), "successes");
+        this.failures = registry.newTimer(getClass(), "failures");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        registry.shutdown();
+    }
+
+    @Test
+    public void returnsArg() throws Exception {
+        final String arg = "test";
+        assertThat("callback returns argument",
+                callback(String.class).call(arg),
+                is(arg));
+    }
+
+    @Test
+    public void recordsSuccesses() throws Exception {
+        callback(Object.class).call(new Object());
+
+        assertThat("success timer has 1 timed value", successes.count(), is(1L));
+        assertThat("success timer records the time since creation",
+                successes.max(), is(closeTo(50.0, 0.001)));
+        assertThat("failure timer has no timed values", failures.count(), is(0L));
+        verify(metrics, never()).markError(any(Throwable.class));
+    }
+
+    @Test
+    public void timesAndCountsFailures() throws Exception {
+        final Exception error = new RequestTimeoutException("timed out");
+
+        callback(Object.class).call(error);
+
+        assertThat("success timer has no timed values", successes.count(), is(0L));
+        assertThat("failure timer has 1 timed value", failures.count(), is(1L));
+        assertThat("failure timer records the time since creation",
+                failures.max(), is(closeTo(50.0, 0.001)));
+        verify(metrics).markError(error);
+    }
+
+    @Test
+    public void countsFailuresByType() throws Exception {
+        final HBaseClient client = mock(HBaseClient.class);
+        final HBaseInstrumentation instrumentation = new HBaseInstrumentation(
+                client, registry, new ClientStatsSampler(client), LatencyRecorderType.TIMER, clock);
+
+        new RequestTimingCallback<Object>(instrumentation,
+                new TimerLatencyRecorder(failures), new TimerLatencyRecorder(successes))
+                .call(new RequestTimeoutException("timed out"));
+
+        assertThat("counts the timeout",
+                instrumentation.getErrors(ErrorType.TIMED_OUT), is(1L));
+        assertThat("counts no other failures",
+                instrumentation.getErrors(ErrorType.OTHER), is(0L));
+    }
+
+    private <T> RequestTimingCallback<T> callback(final Class<T> type) {
+        return new RequestTimingCallback<T>(metrics,
+                new TimerLatencyRecorder(failures), new TimerLatencyRecorder(successes));
+    }
+}
@@ -0,0 +1,55 @@
+package com.datasift.dropwizard.hbase.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link RetryBudget}.
+ */
+public class RetryBudgetTest {
+
+    @Test
+    public void startsFull() {
+        final RetryBudget budget = new RetryBudget(0.1, 2);
+
+        assertThat("first retry is allowed", budget.tryWithdraw(), is(true));
+        assertThat("second retry is allowed", budget.tryWithdraw(), is(true));
+        assertThat("third retry is denied", budget.tryWithdraw(), is(false));
+    }
+
+    @Test
+    public void earnsAFractionOfARetryPerRequest() {
+        final RetryBudget budget = new RetryBudget(0.1, 0);
+        final RetryBudget capped = new RetryBudget(0.1, 1);
+        capped.tryWithdraw();
+
+        for (int i = 0; i < 9; i++) {
+            capped.deposit();
+        }
+        assertThat("nine requests do not earn a retry", capped.tryWithdraw(), is(false));
+
+        capped.deposit();
+        assertThat("ten requests earn a retry", capped.tryWithdraw(), is(true));
+
+        budget.deposit();
+        assertThat("budget with no capacity never allows retries",
+                budget.tryWithdraw(), is(false));
+    }
+
+    @Test
+    public void isCapped() {
+        final RetryBudget budget = new RetryBudget(1, 1);
+        for (int i = 0; i < 10; i++) {
+            budget.deposit();
+        }
+
+        assertThat("has one retry available", budget.getAvailable(), is(1.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeRatios() {
+        new RetryBudget(-0.1, 10);
+    }
+}
@@ -0,0 +1,58 @@
+package com.datasift.dropwizard.hbase.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests {@link StripedLong}.
+ */
+public class StripedLongTest {
+
+    @Test
+    public void sumsValues() {
+        final StripedLong sum = new StripedLong();
+        sum.add(1);
+        sum.add(2);
+        sum.add(-4);
+
+        assertThat("sums all values", sum.sum(), is(-1L));
+    }
+
+    @Test
+    public void resetsAfterSum() {
+        final StripedLong sum = new StripedLong();
+        sum.add(5);
+
+        assertThat("returns the sum", sum.sumThenReset(), is(5L));
+        assertThat("resets the sum", sum.sum(), is(0L));
+    }
+
+    @Test
+    public void sumsConcurrentValues() throws Exception {
+        final StripedLong sum = new StripedLong();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        sum.add(1);
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat("sums values from all threads", sum.sum(), is(80000L));
+    }
+}
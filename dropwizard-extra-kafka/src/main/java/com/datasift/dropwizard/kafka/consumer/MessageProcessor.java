@@ -1,25 +1,33 @@
 package com.datasift.dropwizard.kafka.consumer;
 
+import com.datasift.dropwizard.metrics.LatencyRecorder;
+import com.datasift.dropwizard.metrics.LatencyRecorderFactory;
+import com.datasift.dropwizard.metrics.LatencyRecorderType;
 import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Clock;
 import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
 import com.yammer.metrics.core.MetricsRegistry;
-import com.yammer.metrics.core.Timer;
-import com.yammer.metrics.core.TimerContext;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * Processes messages of type {@code T} from a Kafka message stream.
  * <p/>
- * This {@link StreamProcessor} is instrumented with {@link Metric}s; specifically, a {@link Timer}
- * that tracks the time taken to process each message in the stream.
+ * This {@link StreamProcessor} is instrumented with {@link Metric}s; specifically, a {@link
+ * LatencyRecorder} that tracks the time taken to process each message in the stream. By default,
+ * this is a {@link com.yammer.metrics.core.Timer}.
  *
  * @param <T> the decoded type of the message to process
  */
 public abstract class MessageProcessor<T> implements StreamProcessor<T> {
 
+    private static final Clock CLOCK = Clock.defaultClock();
+
     /**
-     * {@link Timer} for the processing of each message in the stream.
+     * {@link LatencyRecorder} for the processing of each message in the stream.
      */
-    private final Timer processed;
+    private final LatencyRecorder processed;
 
     /**
      * Creates a MessageProcessor; registers {@link Metric}s with the {@link
@@ -35,7 +43,21 @@ public abstract class MessageProcessor<T> implements StreamProcessor<T> {
      * @param registry the {@link MetricsRegistry} to register metrics with.
      */
     public MessageProcessor(final MetricsRegistry registry) {
-        processed = registry.newTimer(getClass(), "processed");
+        this(registry, LatencyRecorderType.TIMER);
+    }
+
+    /**
+     * Creates a MessageProcessor; registers {@link Metric}s with the given {@link MetricsRegistry},
+     * recording the time taken to process each message with a {@link LatencyRecorder} created by
+     * the given {@link LatencyRecorderFactory}.
+     *
+     * @param registry the {@link MetricsRegistry} to register metrics with.
+     * @param recorders the {@link LatencyRecorderFactory} to create the {@link LatencyRecorder}
+     *                  with.
+     */
+    public MessageProcessor(final MetricsRegistry registry,
+                            final LatencyRecorderFactory recorders) {
+        processed = recorders.newRecorder(registry, new MetricName(getClass(), "processed"));
     }
 
     /**
@@ -56,9 +78,9 @@ public abstract class MessageProcessor<T> implements StreamProcessor<T> {
      */
     public void process(final Iterable<T> stream, final String topic) {
         for (final T message : stream) {
-            final TimerContext context = processed.time();
+            final long start = CLOCK.tick();
             process(message, topic);
-            context.stop();
+            processed.record(CLOCK.tick() - start, TimeUnit.NANOSECONDS);
         }
     }
 }